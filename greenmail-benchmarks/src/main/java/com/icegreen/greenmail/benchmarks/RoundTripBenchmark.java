@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.benchmarks;
+
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetup;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import org.openjdk.jmh.annotations.*;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures end to end protocol round trips over loopback: Sending via SMTP (JavaMail client)
+ * and fetching via IMAP (plain socket, as JavaMail caches fetched data).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RoundTripBenchmark {
+    private static final String USER = "foo@localhost";
+    private static final String PASSWORD = "pwd";
+
+    private GreenMail greenMail;
+    private Session smtpSession;
+    private MimeMessage message;
+
+    @Setup(Level.Trial)
+    public void setUp() throws MessagingException {
+        greenMail = new GreenMail(ServerSetupTest.SMTP_IMAP);
+        greenMail.start();
+        greenMail.setUser(USER, PASSWORD);
+
+        smtpSession = GreenMailUtil.getSession(ServerSetupTest.SMTP);
+        message = new MimeMessage(smtpSession);
+        message.setFrom(new InternetAddress("bar@localhost"));
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress(USER));
+        message.setSubject("Round trip");
+        message.setText("Some content for measuring the round trip");
+        message.saveChanges();
+        // At least one message for fetching
+        GreenMailUtil.sendMimeMessage(message);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        greenMail.stop();
+    }
+
+    @Benchmark
+    public void smtpSend() throws MessagingException {
+        Transport.send(message);
+    }
+
+    /**
+     * Per thread IMAP connection, logged in and INBOX selected.
+     */
+    @State(Scope.Thread)
+    public static class ImapConnection {
+        private Socket socket;
+        private BufferedReader in;
+        private Writer out;
+        private int tagCounter;
+
+        @Setup(Level.Trial)
+        public void connect(RoundTripBenchmark benchmark) throws IOException {
+            ServerSetup setup = ServerSetupTest.IMAP;
+            socket = new Socket("localhost", setup.getPort());
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.ISO_8859_1));
+            in.readLine(); // Greeting
+            command("LOGIN " + USER + ' ' + PASSWORD);
+            command("SELECT INBOX");
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws IOException {
+            command("LOGOUT");
+            socket.close();
+        }
+
+        /**
+         * Sends the command and reads the response till tagged completion.
+         *
+         * @return the number of chars received.
+         */
+        int command(String command) throws IOException {
+            String tag = "b" + (tagCounter++);
+            out.write(tag + ' ' + command + "\r\n");
+            out.flush();
+            int count = 0;
+            String line;
+            while (null != (line = in.readLine())) {
+                count += line.length() + 2;
+                if (line.startsWith(tag + ' ')) {
+                    if (!line.startsWith(tag + " OK")) {
+                        throw new IOException("Command " + command + " failed: " + line);
+                    }
+                    return count;
+                }
+            }
+            throw new EOFException("Connection closed while waiting for response to " + command);
+        }
+    }
+
+    @Benchmark
+    public int imapFetchMessage(ImapConnection connection) throws IOException {
+        return connection.command("FETCH 1 (UID FLAGS BODY.PEEK[])");
+    }
+
+    @Benchmark
+    public int imapNoop(ImapConnection connection) throws IOException {
+        return connection.command("NOOP");
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.benchmarks;
+
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from constructing GreenMail till all servers (SMTP, POP3, IMAP and secure variants)
+ * accept connections.
+ * <p/>
+ * {@link #coldStart()} runs once per forked JVM, including class loading and one time initialization.
+ * {@link #warmStart()} measures restarting within a JVM, as done by test suites starting GreenMail per test.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StartupBenchmark {
+    private GreenMail greenMail;
+
+    @TearDown(Level.Invocation)
+    public void stop() {
+        if (null != greenMail) {
+            greenMail.stop();
+            greenMail = null;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    public GreenMail coldStart() {
+        return start();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 10)
+    @Measurement(iterations = 50)
+    @Fork(1)
+    public GreenMail warmStart() {
+        return start();
+    }
+
+    private GreenMail start() {
+        greenMail = new GreenMail(ServerSetupTest.ALL);
+        greenMail.start();
+        return greenMail;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.imap;
+
+import com.icegreen.greenmail.Managers;
+import com.icegreen.greenmail.store.MailFolder;
+import com.icegreen.greenmail.user.GreenMailUser;
+import org.openjdk.jmh.annotations.*;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures processing and rendering of FETCH responses, without network.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FetchBenchmark {
+    @Param({"100"})
+    public int messageCount;
+
+    @Param({"FLAGS", "ENVELOPE", "BODYSTRUCTURE", "BODY.PEEK[HEADER]", "BODY.PEEK[]"})
+    public String fetchItems;
+
+    private final ImapRequestHandler requestHandler = new ImapRequestHandler();
+    private ImapSessionImpl session;
+    private byte[] request;
+    private final ByteArrayOutputStream socketOut = new ByteArrayOutputStream();
+    private OutputStream out;
+
+    @Setup
+    public void setUp() throws Exception {
+        Managers managers = new Managers();
+        GreenMailUser user = managers.getUserManager().createUser("foo@localhost", "foo", "pwd");
+        MailFolder inbox = managers.getImapHostManager().getInbox(user);
+        Session mailSession = Session.getInstance(new Properties());
+        for (int i = 0; i < messageCount; i++) {
+            MimeMessage message = new MimeMessage(mailSession);
+            message.setFrom("bar@localhost");
+            message.setRecipients(MimeMessage.RecipientType.TO, "foo@localhost");
+            message.setSubject("Message " + i);
+            message.setText("Content of message " + i);
+            inbox.store(message);
+        }
+
+        session = new ImapSessionImpl(managers.getImapHostManager(), managers.getUserManager(),
+                null, "127.0.0.1");
+        session.setAuthenticated(user);
+        session.setSelected(inbox, false);
+
+        request = ("a FETCH 1:* (" + fetchItems + ")\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        // Same buffer size as ImapHandler
+        out = new BufferedOutputStream(socketOut, 1024);
+    }
+
+    @Benchmark
+    public int fetch() throws ProtocolException {
+        socketOut.reset();
+        requestHandler.handleRequest(new ByteArrayInputStream(request), out, session);
+        return socketOut.size();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.imap;
+
+import com.icegreen.greenmail.imap.commands.CommandParser;
+import com.icegreen.greenmail.imap.commands.IdRange;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing IMAP request lines, char by char as done for every command.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ImapRequestLineReaderBenchmark {
+    private static final byte[] FETCH_LINE =
+            "a001 FETCH 1:100,200,300:* (FLAGS BODY.PEEK[HEADER])\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] LOGIN_LINE =
+            "a002 LOGIN \"foo@localhost\" \"secret password\"\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final CommandParser parser = new CommandParser();
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    @Benchmark
+    public void fetch(Blackhole blackhole) throws ProtocolException {
+        ImapRequestLineReader request = new ImapRequestLineReader(new ByteArrayInputStream(FETCH_LINE), output);
+        blackhole.consume(parser.tag(request));
+        blackhole.consume(parser.atom(request));
+        IdRange[] ranges = parser.parseIdRange(request);
+        blackhole.consume(ranges);
+        request.consumeLine();
+    }
+
+    @Benchmark
+    public void login(Blackhole blackhole) throws ProtocolException {
+        ImapRequestLineReader request = new ImapRequestLineReader(new ByteArrayInputStream(LOGIN_LINE), output);
+        blackhole.consume(parser.tag(request));
+        blackhole.consume(parser.atom(request));
+        blackhole.consume(parser.astring(request));
+        blackhole.consume(parser.astring(request));
+        parser.endLine(request);
+    }
+}
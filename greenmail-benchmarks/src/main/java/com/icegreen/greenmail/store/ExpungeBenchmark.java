@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.store;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.mail.Flags;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures expunging every second message of a large folder.
+ * <p/>
+ * The stored messages get created once per trial and are re-added to a fresh collection
+ * before every invocation, as expunging consumes the collection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class ExpungeBenchmark {
+    @Param({"200000"})
+    public int messageCount;
+
+    private StoredMessage[] messages;
+    private ListBasedStoredMessageCollection collection;
+    private final List<FolderListener> listeners = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws MessagingException {
+        Session session = Session.getInstance(new Properties());
+        Date now = new Date();
+        messages = new StoredMessage[messageCount];
+        for (int i = 0; i < messageCount; i++) {
+            messages[i] = new StoredMessage(HierarchicalFolderBenchmark.createMessage(session, i), now, i + 1);
+            messages[i].setFlag(Flags.Flag.DELETED, i % 2 == 0);
+        }
+        listeners.add(new CountingListener());
+    }
+
+    @Setup(Level.Invocation)
+    public void fill() {
+        collection = new ListBasedStoredMessageCollection();
+        for (StoredMessage message : messages) {
+            collection.add(message);
+        }
+    }
+
+    @Benchmark
+    public int[] expungeDeleted() {
+        return collection.expungeDeleted(null);
+    }
+
+    @Benchmark
+    public int expungeAndNotify() {
+        collection.expunge(listeners);
+        return collection.size();
+    }
+
+    private static class CountingListener implements FolderListener {
+        private int expunged;
+
+        @Override
+        public void expunged(int msn) {
+            expunged++;
+        }
+
+        @Override
+        public void added(int msn) {
+            // Nothing
+        }
+
+        @Override
+        public void flagsUpdated(int msn, Flags flags, Long uid) {
+            // Nothing
+        }
+
+        @Override
+        public void mailboxDeleted() {
+            // Nothing
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.store;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.mail.Flags;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import javax.mail.search.SearchTerm;
+import javax.mail.search.SubjectTerm;
+import java.util.Date;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the folder operations used by every IMAP command, for folders of different sizes.
+ * <p/>
+ * Messages appended during an iteration get expunged after the iteration, so that
+ * the folder size stays at the configured message count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class HierarchicalFolderBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int messageCount;
+
+    private HierarchicalFolder folder;
+    private MimeMessage message;
+    private SearchTerm searchTerm;
+    private long[] uids;
+    private long lastUid;
+    private final Random random = new Random(42);
+
+    static MimeMessage createMessage(Session session, int i) throws MessagingException {
+        MimeMessage message = new MimeMessage(session);
+        message.setFrom(new InternetAddress("from@localhost"));
+        message.setRecipients(MimeMessage.RecipientType.TO, "to@localhost");
+        message.setSubject("Message " + i);
+        message.setText("Content of message " + i);
+        message.saveChanges();
+        return message;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws MessagingException {
+        Session session = Session.getInstance(new Properties());
+        folder = new HierarchicalFolder(null, "INBOX");
+        Date now = new Date();
+        for (int i = 0; i < messageCount; i++) {
+            folder.appendMessage(createMessage(session, i), new Flags(), now);
+        }
+        uids = folder.getMessageUids();
+        lastUid = uids[uids.length - 1];
+        message = createMessage(session, messageCount);
+        // Matches no message, so every message gets checked
+        searchTerm = new SubjectTerm("No such subject");
+    }
+
+    @TearDown(Level.Iteration)
+    public void removeAppended() throws FolderException {
+        Flags deleted = new Flags(Flags.Flag.DELETED);
+        for (long uid : folder.getMessageUids()) {
+            if (uid > lastUid) {
+                folder.setFlags(deleted, true, uid, null, false);
+            }
+        }
+        folder.expunge();
+    }
+
+    @Benchmark
+    public long append() {
+        return folder.appendMessage(message, new Flags(), new Date());
+    }
+
+    @Benchmark
+    public int getMsn() throws FolderException {
+        return folder.getMsn(uids[random.nextInt(uids.length)]);
+    }
+
+    @Benchmark
+    public StoredMessage getMessage() {
+        return folder.getMessage(uids[random.nextInt(uids.length)]);
+    }
+
+    @Benchmark
+    public long[] searchSubject() {
+        return folder.search(searchTerm);
+    }
+}
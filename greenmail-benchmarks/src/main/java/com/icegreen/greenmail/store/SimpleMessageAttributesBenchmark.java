@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.store;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing message attributes (envelope, body structure), done for every stored message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SimpleMessageAttributesBenchmark {
+    private MimeMessage textMessage;
+    private MimeMessage multipartMessage;
+    private final Date receivedDate = new Date();
+
+    @Setup
+    public void setUp() throws MessagingException {
+        Session session = Session.getInstance(new Properties());
+        textMessage = HierarchicalFolderBenchmark.createMessage(session, 1);
+
+        multipartMessage = new MimeMessage(session);
+        multipartMessage.setFrom(new InternetAddress("from@localhost"));
+        multipartMessage.setRecipients(MimeMessage.RecipientType.TO, "to@localhost, cc@localhost");
+        multipartMessage.setSubject("Multipart");
+        MimeMultipart multipart = new MimeMultipart();
+        MimeBodyPart text = new MimeBodyPart();
+        text.setText("Some text");
+        multipart.addBodyPart(text);
+        MimeBodyPart attachment = new MimeBodyPart();
+        char[] content = new char[16 * 1024];
+        Arrays.fill(content, 'x');
+        attachment.setText(new String(content));
+        attachment.setFileName("attachment.txt");
+        multipart.addBodyPart(attachment);
+        multipartMessage.setContent(multipart);
+        multipartMessage.saveChanges();
+    }
+
+    @Benchmark
+    public SimpleMessageAttributes text() throws MessagingException {
+        return new SimpleMessageAttributes(textMessage, receivedDate);
+    }
+
+    @Benchmark
+    public SimpleMessageAttributes multipart() throws MessagingException {
+        return new SimpleMessageAttributes(multipartMessage, receivedDate);
+    }
+}
@@ -6,8 +6,10 @@ package com.icegreen.greenmail;
 
 import com.icegreen.greenmail.imap.ImapHostManager;
 import com.icegreen.greenmail.imap.ImapHostManagerImpl;
+import com.icegreen.greenmail.metrics.GreenMailMetrics;
 import com.icegreen.greenmail.smtp.SmtpManager;
 import com.icegreen.greenmail.store.InMemoryStore;
+import com.icegreen.greenmail.store.Store;
 import com.icegreen.greenmail.user.UserManager;
 
 /**
@@ -18,7 +20,8 @@ import com.icegreen.greenmail.user.UserManager;
 public class Managers {
     private ImapHostManager imapHostManager = new ImapHostManagerImpl(new InMemoryStore());
     private UserManager userManager = new UserManager(imapHostManager);
-    private SmtpManager smtpManager = new SmtpManager(imapHostManager, userManager);
+    private GreenMailMetrics metrics = new GreenMailMetrics(imapHostManager.getStore());
+    private SmtpManager smtpManager = new SmtpManager(imapHostManager, userManager, metrics);
 
     public SmtpManager getSmtpManager() {
         return smtpManager;
@@ -31,4 +34,64 @@ public class Managers {
     public ImapHostManager getImapHostManager() {
         return imapHostManager;
     }
+
+    public GreenMailMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Captures users, folders, messages and flags, for quickly resetting to a baseline between tests
+     * without restarting any server.
+     *
+     * @return the snapshot.
+     * @see #restoreSnapshot(Snapshot)
+     */
+    public Snapshot createSnapshot() {
+        return new Snapshot(getInMemoryStore().createSnapshot(), userManager.createSnapshot(),
+                imapHostManager.getDeliveryJournal().getSequence());
+    }
+
+    /**
+     * Resets users, folders, messages and flags to given snapshot.
+     * Clients should not be connected while restoring.
+     *
+     * @param snapshot the snapshot created by these managers.
+     */
+    public void restoreSnapshot(Snapshot snapshot) {
+        getInMemoryStore().restoreSnapshot(snapshot.store);
+        userManager.restoreSnapshot(snapshot.users);
+        imapHostManager.getDeliveryJournal().truncate(snapshot.deliverySequence);
+    }
+
+    private InMemoryStore getInMemoryStore() {
+        Store store = imapHostManager.getStore();
+        if (!(store instanceof InMemoryStore)) {
+            throw new IllegalStateException("Snapshots are not supported by store " + store);
+        }
+        return (InMemoryStore) store;
+    }
+
+    /**
+     * Immutable snapshot of users and store.
+     *
+     * @see Managers#createSnapshot()
+     */
+    public static class Snapshot {
+        private final InMemoryStore.Snapshot store;
+        private final UserManager.Snapshot users;
+        private final long deliverySequence;
+
+        private Snapshot(InMemoryStore.Snapshot store, UserManager.Snapshot users, long deliverySequence) {
+            this.store = store;
+            this.users = users;
+            this.deliverySequence = deliverySequence;
+        }
+
+        /**
+         * @return the number of messages in all folders.
+         */
+        public int getMessageCount() {
+            return store.getMessageCount();
+        }
+    }
 }
@@ -92,6 +92,37 @@ public interface GreenMailOperations {
      */
     MimeMessage[] getReceivedMessagesForDomain(String domain);
 
+    /**
+     * @return the sequence number of the latest delivered message, or 0 if none delivered yet.
+     * @see #getReceivedMessagesSince(long)
+     */
+    long getReceivedMessagesSequence();
+
+    /**
+     * Gets the messages delivered after given sequence number, only looking at the new deliveries.
+     * Useful for polling for new messages:
+     * <pre>
+     * long seq = greenMail.getReceivedMessagesSequence();
+     * // ... trigger sending
+     * MimeMessage[] newMessages = greenMail.getReceivedMessagesSince(seq);
+     * </pre>
+     *
+     * @param sequence the sequence number of the last known delivery, or 0 for all deliveries.
+     * @return the delivered messages in order of delivery, once per recipient.
+     * Messages moved to another folder are included, messages no longer stored, eg expunged or evicted, are left out.
+     */
+    MimeMessage[] getReceivedMessagesSince(long sequence);
+
+    /**
+     * Looks up the messages delivered to any recipient of given domain, using an index.
+     * Unlike {@link #getReceivedMessagesForDomain(String)}, matches the envelope recipient domain exactly.
+     *
+     * @param domain the domain, such as <code>example.com</code>.
+     * @return the delivered messages in order of delivery.
+     * Messages moved to another folder are included, messages no longer stored, eg expunged or evicted, are left out.
+     */
+    MimeMessage[] getReceivedMessagesForRecipientDomain(String domain);
+
     /**
      * Sets the password for the account linked to email. If no account exits, one is automatically created when an email is received
      * The automatically created account has the account login and password equal to the email address.
@@ -146,6 +177,16 @@ public interface GreenMailOperations {
      */
     void stop();
 
+    /**
+     * Stop the GreenMail server gracefully and clear all data, like {@link #stop()}.
+     * Stops accepting connections, lets commands in progress complete and says goodbye to connected clients
+     * (SMTP 421, IMAP BYE or POP3 -ERR), closing connections still busy after the timeout by force.
+     *
+     * @param timeoutInMs max time in milliseconds for commands in progress to complete.
+     * @return the number of connections closed by force.
+     */
+    int drain(long timeoutInMs);
+
     /**
      * Restart the GreenMail server. Clear all data (send messages, users, ...)
      */
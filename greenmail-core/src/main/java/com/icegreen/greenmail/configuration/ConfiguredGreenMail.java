@@ -1,6 +1,10 @@
 package com.icegreen.greenmail.configuration;
 
 import com.icegreen.greenmail.base.GreenMailOperations;
+import com.icegreen.greenmail.imap.ImapConstants;
+import com.icegreen.greenmail.store.InMemoryStore;
+import com.icegreen.greenmail.store.OffHeapArena;
+import com.icegreen.greenmail.store.Store;
 
 /**
  * A version of GreenMailOperations that implements the configure() method.
@@ -23,6 +27,20 @@ public abstract class ConfiguredGreenMail implements GreenMailOperations {
                 setUser(user.getEmail(), user.getLogin(), user.getPassword());
             }
             getManagers().getUserManager().setAuthRequired(!config.isAuthenticationDisabled());
+            Store store = getManagers().getImapHostManager().getStore();
+            if (config.isOffHeapMessageStorage() && store instanceof InMemoryStore) {
+                ((InMemoryStore) store).setOffHeapArena(new OffHeapArena());
+            }
+            if (null != config.getRetentionPolicy()) {
+                store.setRetentionPolicy(store.getMailbox(ImapConstants.USER_NAMESPACE), config.getRetentionPolicy());
+            }
         }
     }
+
+    /**
+     * @return the configuration, or null if not configured.
+     */
+    protected GreenMailConfiguration getConfiguration() {
+        return config;
+    }
 }
@@ -1,5 +1,7 @@
 package com.icegreen.greenmail.configuration;
 
+import com.icegreen.greenmail.store.RetentionPolicy;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -7,8 +9,16 @@ import java.util.List;
  * Properties that can be defined to configure a GreenMail instance or GreenMailRule.
  */
 public class GreenMailConfiguration {
+    /**
+     * Default interval for evicting expired messages, if the retention policy has a max age.
+     */
+    public static final long DEFAULT_RETENTION_SWEEP_INTERVAL = 60000L;
+
     private final List<UserBean> usersToCreate = new ArrayList<>();
     private boolean disableAuthenticationCheck = false;
+    private RetentionPolicy retentionPolicy;
+    private long retentionSweepInterval = -1L;
+    private boolean offHeapMessageStorage = false;
 
     /**
      * The given {@link com.icegreen.greenmail.user.GreenMailUser} will be created when servers will start.
@@ -68,4 +78,72 @@ public class GreenMailConfiguration {
     public boolean isAuthenticationDisabled() {
         return disableAuthenticationCheck;
     }
+
+    /**
+     * Limits the messages kept per mailbox, evicting the oldest messages.
+     * <p/>
+     * Useful for long running instances, which would otherwise keep all messages till running out of memory.
+     * Individual mailboxes can override the policy via
+     * {@link com.icegreen.greenmail.store.Store#setRetentionPolicy(com.icegreen.greenmail.store.MailFolder, RetentionPolicy)}.
+     *
+     * @param retentionPolicy the default policy for all mailboxes.
+     * @return Modified configuration.
+     */
+    public GreenMailConfiguration withRetentionPolicy(final RetentionPolicy retentionPolicy) {
+        this.retentionPolicy = retentionPolicy;
+        return this;
+    }
+
+    /**
+     * @return the default retention policy, or null if not configured.
+     */
+    public RetentionPolicy getRetentionPolicy() {
+        return retentionPolicy;
+    }
+
+    /**
+     * Sets how often expired messages get evicted in background.
+     * <p/>
+     * Defaults to {@link #DEFAULT_RETENTION_SWEEP_INTERVAL} if the retention policy has a max age,
+     * and to no background eviction otherwise.
+     *
+     * @param intervalMillis the interval in milliseconds, or 0 for disabling background eviction.
+     * @return Modified configuration.
+     */
+    public GreenMailConfiguration withRetentionSweepInterval(final long intervalMillis) {
+        this.retentionSweepInterval = intervalMillis;
+        return this;
+    }
+
+    /**
+     * Stores the content of messages outside of the Java heap, keeping only headers and metadata on the heap.
+     * <p/>
+     * Useful for instances storing large volumes, as GC pauses would otherwise grow with the volume.
+     *
+     * @return Modified configuration.
+     * @see com.icegreen.greenmail.store.OffHeapArena
+     */
+    public GreenMailConfiguration withOffHeapMessageStorage() {
+        offHeapMessageStorage = true;
+        return this;
+    }
+
+    /**
+     * @return true, if message content is stored off heap.
+     * @see #withOffHeapMessageStorage()
+     */
+    public boolean isOffHeapMessageStorage() {
+        return offHeapMessageStorage;
+    }
+
+    /**
+     * @return the interval in milliseconds, or 0 if background eviction is disabled.
+     * @see #withRetentionSweepInterval(long)
+     */
+    public long getRetentionSweepInterval() {
+        if (retentionSweepInterval >= 0L) {
+            return retentionSweepInterval;
+        }
+        return null != retentionPolicy && retentionPolicy.getMaxAge() > 0L ? DEFAULT_RETENTION_SWEEP_INTERVAL : 0L;
+    }
 }
@@ -1,5 +1,7 @@
 package com.icegreen.greenmail.configuration;
 
+import com.icegreen.greenmail.store.RetentionPolicy;
+
 import java.util.Arrays;
 import java.util.Properties;
 
@@ -13,6 +15,11 @@ import java.util.Properties;
  * <p>Example: user1:pwd1@localhost,user2:pwd2@0.0.0.0</p>
  * <p>Note: domain part must be DNS resolvable!</p>
  * </li>
+ * <li>greenmail.auth.disabled : Disables authentication check</li>
+ * <li>greenmail.retention.max.messages, greenmail.retention.max.bytes and greenmail.retention.max.age :
+ * Retention limits per mailbox, with max age in milliseconds</li>
+ * <li>greenmail.retention.sweep.interval : Interval in milliseconds for evicting expired messages</li>
+ * <li>greenmail.store.offheap : Stores message content off heap</li>
  * </ul>
  */
 public class PropertiesBasedGreenMailConfigurationBuilder {
@@ -26,6 +33,36 @@ public class PropertiesBasedGreenMailConfigurationBuilder {
      * @see GreenMailConfiguration#withDisabledAuthentication()
      */
     public static final String GREENMAIL_AUTH_DISABLED = "greenmail.auth.disabled";
+    /**
+     * Maximum number of messages per mailbox.
+     *
+     * @see RetentionPolicy#withMaxMessages(int)
+     */
+    public static final String GREENMAIL_RETENTION_MAX_MESSAGES = "greenmail.retention.max.messages";
+    /**
+     * Maximum total size of messages per mailbox.
+     *
+     * @see RetentionPolicy#withMaxBytes(long)
+     */
+    public static final String GREENMAIL_RETENTION_MAX_BYTES = "greenmail.retention.max.bytes";
+    /**
+     * Maximum age of messages in milliseconds.
+     *
+     * @see RetentionPolicy#withMaxAge(long)
+     */
+    public static final String GREENMAIL_RETENTION_MAX_AGE = "greenmail.retention.max.age";
+    /**
+     * Interval for evicting expired messages in milliseconds.
+     *
+     * @see GreenMailConfiguration#withRetentionSweepInterval(long)
+     */
+    public static final String GREENMAIL_RETENTION_SWEEP_INTERVAL = "greenmail.retention.sweep.interval";
+    /**
+     * Stores message content off heap.
+     *
+     * @see GreenMailConfiguration#withOffHeapMessageStorage()
+     */
+    public static final String GREENMAIL_STORE_OFFHEAP = "greenmail.store.offheap";
 
     /**
      * Builds a configuration object based on given properties.
@@ -46,6 +83,29 @@ public class PropertiesBasedGreenMailConfigurationBuilder {
         if (null != disabledAuthentication) {
             configuration.withDisabledAuthentication();
         }
+        if (null != properties.getProperty(GREENMAIL_STORE_OFFHEAP)) {
+            configuration.withOffHeapMessageStorage();
+        }
+        RetentionPolicy retentionPolicy = RetentionPolicy.unlimited();
+        String maxMessages = properties.getProperty(GREENMAIL_RETENTION_MAX_MESSAGES);
+        if (null != maxMessages) {
+            retentionPolicy = retentionPolicy.withMaxMessages(Integer.parseInt(maxMessages));
+        }
+        String maxBytes = properties.getProperty(GREENMAIL_RETENTION_MAX_BYTES);
+        if (null != maxBytes) {
+            retentionPolicy = retentionPolicy.withMaxBytes(Long.parseLong(maxBytes));
+        }
+        String maxAge = properties.getProperty(GREENMAIL_RETENTION_MAX_AGE);
+        if (null != maxAge) {
+            retentionPolicy = retentionPolicy.withMaxAge(Long.parseLong(maxAge));
+        }
+        if (!retentionPolicy.isUnlimited()) {
+            configuration.withRetentionPolicy(retentionPolicy);
+        }
+        String sweepInterval = properties.getProperty(GREENMAIL_RETENTION_SWEEP_INTERVAL);
+        if (null != sweepInterval) {
+            configuration.withRetentionSweepInterval(Long.parseLong(sweepInterval));
+        }
         return configuration;
     }
 
@@ -16,7 +16,7 @@ public interface ImapConstants {
 
     String SP = " ";
     String VERSION = "IMAP4rev1";
-    String CAPABILITIES = "LITERAL+" + SP + "SORT" + SP + "UIDPLUS";
+    String CAPABILITIES = "LITERAL+" + SP + "SORT" + SP + "UIDPLUS" + SP + "MOVE" + SP + "ESEARCH" + SP + "SEARCHRES" + SP + "BINARY";
 
     String USER_NAMESPACE = "#mail";
 
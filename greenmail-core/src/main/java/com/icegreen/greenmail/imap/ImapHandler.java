@@ -6,12 +6,19 @@
  */
 package com.icegreen.greenmail.imap;
 
+import com.icegreen.greenmail.metrics.MeteredInputStream;
+import com.icegreen.greenmail.metrics.MeteredOutputStream;
+import com.icegreen.greenmail.metrics.MetricsRegistry;
 import com.icegreen.greenmail.server.BuildInfo;
+import com.icegreen.greenmail.server.DrainState;
 import com.icegreen.greenmail.server.ProtocolHandler;
 import com.icegreen.greenmail.user.UserManager;
+import com.icegreen.greenmail.util.DummySSLServerSocketFactory;
+import com.icegreen.greenmail.util.ServerSetup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.net.ssl.SSLSocket;
 import java.io.*;
 import java.net.Socket;
 
@@ -22,10 +29,14 @@ import java.net.Socket;
  * @author Peter M. Goldstein <farsight@alum.mit.edu>
  */
 public class ImapHandler implements ImapConstants, ProtocolHandler {
+    private static final String SERVER_SHUTTING_DOWN = "GreenMail server shutting down";
     protected final Logger log = LoggerFactory.getLogger(getClass());
-    private ImapRequestHandler requestHandler = new ImapRequestHandler();
+    private final ImapRequestHandler requestHandler;
+    private final MetricsRegistry metrics;
+    private final String protocol;
     private ImapSession session;
     private final Object closeMonitor = new Object();
+    private final DrainState drainState = new DrainState();
 
     /**
      * The TCP/IP socket over which the IMAP interaction
@@ -34,14 +45,23 @@ public class ImapHandler implements ImapConstants, ProtocolHandler {
     private Socket socket;
 
     private ImapResponse response;
+    private boolean startTlsRequested;
 
     UserManager userManager;
     private ImapHostManager imapHost;
 
     public ImapHandler(UserManager userManager, ImapHostManager imapHost, Socket socket) {
+        this(userManager, imapHost, socket, MetricsRegistry.NOOP, ServerSetup.PROTOCOL_IMAP);
+    }
+
+    public ImapHandler(UserManager userManager, ImapHostManager imapHost, Socket socket,
+                       MetricsRegistry metrics, String protocol) {
         this.userManager = userManager;
         this.imapHost = imapHost;
         this.socket = socket;
+        this.metrics = metrics;
+        this.protocol = protocol;
+        requestHandler = new ImapRequestHandler(metrics, protocol);
     }
 
     public void forceConnectionClose(final String message) {
@@ -52,9 +72,9 @@ public class ImapHandler implements ImapConstants, ProtocolHandler {
     @Override
     public void run() {
         // Closed automatically when socket is closed via #close()
-        try (InputStream ins = new BufferedInputStream(socket.getInputStream(), 512);
-             OutputStream outs = new BufferedOutputStream(socket.getOutputStream(), 1024)
-        ) {
+        try {
+            InputStream ins = createInputStream(socket);
+            OutputStream outs = createOutputStream(socket);
 
             response = new ImapResponse(outs);
 
@@ -68,8 +88,15 @@ public class ImapHandler implements ImapConstants, ProtocolHandler {
                     this,
                     socket.getInetAddress().getHostAddress());
 
-            while (requestHandler.handleRequest(ins, outs, session)) {
-                // Loop ...
+            while (awaitRequest(ins) && requestHandler.handleRequest(ins, outs, session)) {
+                if (startTlsRequested) {
+                    // Tagged OK has been flushed, continue with the handshake
+                    startTlsRequested = false;
+                    Socket tlsSocket = upgradeToTls();
+                    ins = createInputStream(tlsSocket);
+                    outs = createOutputStream(tlsSocket);
+                    response = new ImapResponse(outs);
+                }
             }
         } catch (Exception e) {
             log.error("Can not handle IMAP connection", e);
@@ -79,6 +106,84 @@ public class ImapHandler implements ImapConstants, ProtocolHandler {
         }
     }
 
+    /**
+     * Waits for the next request, unless draining.
+     * Responses are flushed after each request, so a goodbye can be sent by a draining thread meanwhile.
+     *
+     * @param ins the input, supporting mark.
+     * @return true, if a request is available.
+     */
+    private boolean awaitRequest(InputStream ins) {
+        int next;
+        try {
+            if (ins.available() > 0) {
+                next = 0; // Pipelined
+                if (drainState.isDraining()) {
+                    response.byeResponse(SERVER_SHUTTING_DOWN);
+                    return false;
+                }
+            } else {
+                if (!drainState.enterIdle()) {
+                    response.byeResponse(SERVER_SHUTTING_DOWN);
+                    return false;
+                }
+                ins.mark(1);
+                next = ins.read();
+                ins.reset();
+            }
+        } catch (IOException e) {
+            next = -1; // Closed, eg when drained while waiting
+        }
+        return drainState.leaveIdle() && next >= 0;
+    }
+
+    private InputStream createInputStream(Socket s) throws IOException {
+        return new BufferedInputStream(new MeteredInputStream(s.getInputStream(), metrics, protocol), 512);
+    }
+
+    private OutputStream createOutputStream(Socket s) throws IOException {
+        return new BufferedOutputStream(new MeteredOutputStream(s.getOutputStream(), metrics, protocol), 1024);
+    }
+
+    /**
+     * Requests upgrading the connection to TLS (STARTTLS), right after the current command completed.
+     */
+    void startTls() {
+        startTlsRequested = true;
+    }
+
+    /**
+     * @return true, if connection is using TLS, either by IMAPS or upgraded via STARTTLS.
+     */
+    boolean isTlsActive() {
+        return socket instanceof SSLSocket;
+    }
+
+    private Socket upgradeToTls() throws IOException {
+        synchronized (closeMonitor) {
+            if (null == socket) {
+                throw new IOException("Connection already closed");
+            }
+            socket = new DummySSLServerSocketFactory().upgradeToTls(socket);
+            return socket;
+        }
+    }
+
+    @Override
+    public void drain() {
+        drainState.drain(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (closeMonitor) {
+                    if (null != response) {
+                        response.byeResponse(SERVER_SHUTTING_DOWN);
+                    }
+                }
+                close();
+            }
+        });
+    }
+
     /**
      * Resets the handler data to a basic state.
      */
@@ -6,6 +6,7 @@
  */
 package com.icegreen.greenmail.imap;
 
+import com.icegreen.greenmail.mail.DeliveryJournal;
 import com.icegreen.greenmail.store.FolderException;
 import com.icegreen.greenmail.store.MailFolder;
 import com.icegreen.greenmail.store.Store;
@@ -40,6 +41,19 @@ public interface ImapHostManager {
      */
     List<StoredMessage> getAllMessages();
 
+    /**
+     * Returns all messages in all mailboxes of given user.
+     *
+     * @param user the user.
+     * @return a list of messages.
+     */
+    List<StoredMessage> getAllMessages(GreenMailUser user);
+
+    /**
+     * @return the journal of all messages delivered to user inboxes.
+     */
+    DeliveryJournal getDeliveryJournal();
+
     /**
      * Returns the hierarchy delimiter for mailboxes on this host.
      *
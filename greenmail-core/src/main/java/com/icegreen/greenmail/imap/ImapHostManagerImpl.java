@@ -6,6 +6,7 @@
  */
 package com.icegreen.greenmail.imap;
 
+import com.icegreen.greenmail.mail.DeliveryJournal;
 import com.icegreen.greenmail.store.*;
 import com.icegreen.greenmail.user.GreenMailUser;
 
@@ -23,6 +24,7 @@ public class ImapHostManagerImpl
         implements ImapHostManager, ImapConstants {
     private Store store;
     private MailboxSubscriptions subscriptions;
+    private final DeliveryJournal deliveryJournal = new DeliveryJournal();
 
     /**
      * Hack constructor which creates an in-memory store, and creates a console logger.
@@ -51,6 +53,24 @@ public class ImapHostManagerImpl
         return ret;
     }
 
+    @Override
+    public DeliveryJournal getDeliveryJournal() {
+        return deliveryJournal;
+    }
+
+    @Override
+    public List<StoredMessage> getAllMessages(GreenMailUser user) {
+        List<StoredMessage> ret = new ArrayList<>();
+        try {
+            for (MailFolder box : listMailboxes(user, "*")) {
+                ret.addAll(box.getMessages());
+            }
+        } catch (FolderException e) {
+            throw new IllegalStateException(e);
+        }
+        return ret;
+    }
+
     @Override
     public char getHierarchyDelimiter() {
         return HIERARCHY_DELIMITER_CHAR;
@@ -9,6 +9,8 @@ package com.icegreen.greenmail.imap;
 import com.icegreen.greenmail.imap.commands.CommandParser;
 import com.icegreen.greenmail.imap.commands.ImapCommand;
 import com.icegreen.greenmail.imap.commands.ImapCommandFactory;
+import com.icegreen.greenmail.metrics.MetricsRegistry;
+import com.icegreen.greenmail.util.ServerSetup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,6 +26,17 @@ public final class ImapRequestHandler {
     private ImapCommandFactory imapCommands = new ImapCommandFactory();
     private CommandParser parser = new CommandParser();
     private static final String REQUEST_SYNTAX = "Protocol Error: Was expecting <tag SPACE command [arguments]>";
+    private final MetricsRegistry metrics;
+    private final String protocol;
+
+    public ImapRequestHandler() {
+        this(MetricsRegistry.NOOP, ServerSetup.PROTOCOL_IMAP);
+    }
+
+    public ImapRequestHandler(MetricsRegistry metrics, String protocol) {
+        this.metrics = metrics;
+        this.protocol = protocol;
+    }
 
     /**
      * This method parses POP3 commands read off the wire in handleConnection.
@@ -47,8 +60,13 @@ public final class ImapRequestHandler {
         }
 
         ImapResponse response = new ImapResponse(output);
-
-        doProcessRequest(request, response, session);
+        // Send untagged responses together with the tagged completion
+        response.setBuffered(true);
+        try {
+            doProcessRequest(request, response, session);
+        } finally {
+            response.flush();
+        }
 
         // Consume the rest of the line, throwing away any extras. This allows us
         // to clean up after a protocol error.
@@ -95,7 +113,12 @@ public final class ImapRequestHandler {
             return;
         }
 
-        command.process(request, response, session);
+        long start = System.nanoTime();
+        try {
+            command.process(request, response, session);
+        } finally {
+            metrics.commandProcessed(protocol, command.getName(), System.nanoTime() - start);
+        }
     }
 
 
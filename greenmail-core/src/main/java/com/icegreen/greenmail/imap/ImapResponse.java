@@ -17,19 +17,62 @@ import java.io.OutputStream;
 /**
  * Class providing methods to send response messages from the server
  * to the client.
+ * <p/>
+ * By default every response line is flushed immediately.
+ * In {@link #setBuffered(boolean) buffered} mode untagged lines are collected and only
+ * flushed together with the tagged completion response, or when more than
+ * {@link #BUFFER_FLUSH_THRESHOLD} chars are pending. This avoids a write (and usually a TCP segment)
+ * per untagged line, eg for a FETCH of many messages.
  */
 public class ImapResponse implements ImapConstants {
+    /**
+     * Max number of chars kept pending in buffered mode before forcing a flush.
+     */
+    public static final int BUFFER_FLUSH_THRESHOLD = 16 * 1024;
+
     private InternetPrintWriter writer;
     private String tag = UNTAGGED;
+    private boolean buffered;
+    private boolean taggedLine;
+    private int pendingChars;
 
     public ImapResponse(OutputStream output) {
-        this.writer = InternetPrintWriter.createForEncoding(output, true, EncodingUtil.CHARSET_EIGHT_BIT_ENCODING);
+        this.writer = InternetPrintWriter.createForEncoding(output, false, EncodingUtil.CHARSET_EIGHT_BIT_ENCODING);
     }
 
     public void setTag(String tag) {
         this.tag = tag;
     }
 
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * Enables or disables buffering of untagged responses.
+     * Disabling buffering flushes any pending output.
+     *
+     * @param buffered true, if untagged responses should be buffered until the tagged response.
+     */
+    public void setBuffered(boolean buffered) {
+        this.buffered = buffered;
+        if (!buffered) {
+            flush();
+        }
+    }
+
+    public boolean isBuffered() {
+        return buffered;
+    }
+
+    /**
+     * Writes any pending buffered output to the client.
+     */
+    public void flush() {
+        writer.flush();
+        pendingChars = 0;
+    }
+
     /**
      * Writes a standard tagged OK response on completion of a command.
      * Response is writen as:
@@ -203,45 +246,56 @@ public class ImapResponse implements ImapConstants {
 
     public void byeResponse(String message) {
         untaggedResponse(BYE + SP + message);
+        // Connection usually gets closed next
+        flush();
     }
 
     private void untagged() {
-        writer.print(UNTAGGED);
+        taggedLine = false;
+        print(UNTAGGED);
     }
 
     private void tag() {
-        writer.print(tag);
+        taggedLine = true;
+        print(tag);
     }
 
     private void commandName(ImapCommand command) {
         String name = command.getName();
-        writer.print(SP);
-        writer.print(name);
+        print(SP);
+        print(name);
     }
 
     private void message(String message) {
         if (message != null) {
-            writer.print(SP);
-            writer.print(message);
+            print(SP);
+            print(message);
         }
     }
 
     private void message(int number) {
-        writer.print(SP);
-        writer.print(number);
+        print(SP);
+        print(String.valueOf(number));
     }
 
     private void responseCode(String responseCode) {
         if (responseCode != null) {
-            writer.print(" [");
-            writer.print(responseCode);
-            writer.print("]");
+            print(" [");
+            print(responseCode);
+            print("]");
         }
     }
 
+    private void print(String s) {
+        writer.print(s);
+        pendingChars += s.length();
+    }
+
     private void end() {
         writer.println();
-        writer.flush();
+        if (!buffered || taggedLine || pendingChars >= BUFFER_FLUSH_THRESHOLD) {
+            flush();
+        }
     }
 
     public void permanentFlagsResponse(Flags flags) {
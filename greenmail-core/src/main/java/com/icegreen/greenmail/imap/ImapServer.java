@@ -8,6 +8,7 @@ package com.icegreen.greenmail.imap;
 
 import com.icegreen.greenmail.server.AbstractServer;
 import com.icegreen.greenmail.Managers;
+import com.icegreen.greenmail.metrics.MetricsRegistry;
 import com.icegreen.greenmail.server.ProtocolHandler;
 import com.icegreen.greenmail.util.ServerSetup;
 import com.sun.mail.imap.IMAPStore; // NOSONAR
@@ -22,8 +23,9 @@ public final class ImapServer extends AbstractServer {
     }
 
     @Override
-    protected ProtocolHandler createProtocolHandler(Socket clientSocket) {
-        return new ImapHandler(managers.getUserManager(), managers.getImapHostManager(), clientSocket);
+    protected ProtocolHandler createProtocolHandler(Socket clientSocket, MetricsRegistry metrics) {
+        return new ImapHandler(managers.getUserManager(), managers.getImapHostManager(), clientSocket,
+                metrics, getProtocol());
     }
 
     @Override
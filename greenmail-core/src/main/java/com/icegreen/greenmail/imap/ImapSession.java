@@ -40,6 +40,16 @@ public interface ImapSession {
      */
     void closeConnection(String byeMessage);
 
+    /**
+     * Upgrades the connection to TLS once the current command has completed (STARTTLS).
+     */
+    void startTls();
+
+    /**
+     * @return true, if the connection uses TLS.
+     */
+    boolean isTlsActive();
+
     /**
      * Provides the Imap host for this server, which is used for all access to mail
      * storage and subscriptions.
@@ -108,4 +118,19 @@ public interface ImapSession {
 
     void unsolicitedResponses(ImapResponse request, boolean omitExpunged) throws FolderException;
 
+    /**
+     * Saves the result of a SEARCH RETURN (SAVE), for later reference via '$'.
+     *
+     * @param uids the UIDs of the matched messages.
+     * @see <a href="https://tools.ietf.org/html/rfc5182">RFC 5182 - SEARCHRES</a>
+     */
+    void setSearchResult(long[] uids);
+
+    /**
+     * Provides the saved search result. Reset to empty when a mailbox gets selected.
+     *
+     * @return the UIDs of the saved search result, never null.
+     */
+    long[] getSearchResult();
+
 }
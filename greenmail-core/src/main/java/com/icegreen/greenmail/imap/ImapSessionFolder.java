@@ -202,6 +202,11 @@ public class ImapSessionFolder implements MailFolder, FolderListener, UIDFolder
         return _folder.appendMessage(message, flags, receivedDate);
     }
 
+    @Override
+    public StoredMessage appendStoredMessage(MimeMessage message, Flags flags, Date receivedDate) {
+        return _folder.appendStoredMessage(message, flags, receivedDate);
+    }
+
     @Override
     public void store(MovingMessage mail) throws Exception {
         _folder.store(mail);
@@ -242,6 +247,11 @@ public class ImapSessionFolder implements MailFolder, FolderListener, UIDFolder
         return _folder.copyMessage(uid, toFolder);
     }
 
+    @Override
+    public long[] moveMessages(long[] uids, MailFolder toFolder) throws FolderException {
+        return _folder.moveMessages(uids, toFolder);
+    }
+
     @Override
     public void addListener(FolderListener listener) {
         _folder.addListener(listener);
@@ -262,6 +272,16 @@ public class ImapSessionFolder implements MailFolder, FolderListener, UIDFolder
         _folder.replaceFlags(flags, uid, silentListener, addUid);
     }
 
+    @Override
+    public void setFlags(Flags flags, boolean value, IdRange[] idSet, boolean useUids, FolderListener silentListener) {
+        _folder.setFlags(flags, value, idSet, useUids, silentListener);
+    }
+
+    @Override
+    public void replaceFlags(Flags flags, IdRange[] idSet, boolean useUids, FolderListener silentListener) {
+        _folder.replaceFlags(flags, idSet, useUids, silentListener);
+    }
+
     @Override
     public void deleteAllMessages() {
         _folder.deleteAllMessages();
@@ -20,9 +20,11 @@ import java.util.List;
  * @version $Revision: 109034 $
  */
 public final class ImapSessionImpl implements ImapSession {
+    private static final long[] EMPTY_SEARCH_RESULT = new long[0];
     private ImapSessionState state = ImapSessionState.NON_AUTHENTICATED;
     private GreenMailUser user = null;
     private ImapSessionFolder selectedMailbox = null;
+    private long[] searchResult = EMPTY_SEARCH_RESULT;
 
     private String clientAddress;
 
@@ -96,6 +98,16 @@ public final class ImapSessionImpl implements ImapSession {
         handler.close();
     }
 
+    @Override
+    public void startTls() {
+        handler.startTls();
+    }
+
+    @Override
+    public boolean isTlsActive() {
+        return handler.isTlsActive();
+    }
+
     @Override
     public UserManager getUserManager() {
         return users;
@@ -125,6 +137,7 @@ public final class ImapSessionImpl implements ImapSession {
             selectedMailbox.removeListener(selectedMailbox);
             this.selectedMailbox = null;
         }
+        this.searchResult = EMPTY_SEARCH_RESULT;
     }
 
     @Override
@@ -132,6 +145,17 @@ public final class ImapSessionImpl implements ImapSession {
         ImapSessionFolder sessionMailbox = new ImapSessionFolder(folder, this, readOnly);
         this.state = ImapSessionState.SELECTED;
         this.selectedMailbox = sessionMailbox;
+        this.searchResult = EMPTY_SEARCH_RESULT;
+    }
+
+    @Override
+    public void setSearchResult(long[] uids) {
+        this.searchResult = null == uids ? EMPTY_SEARCH_RESULT : uids;
+    }
+
+    @Override
+    public long[] getSearchResult() {
+        return searchResult;
     }
 
     @Override
@@ -38,12 +38,14 @@ class CapabilityCommand extends CommandTemplate {
             throws ProtocolException, FolderException {
         parser.endLine(request);
 
+        StringBuilder capabilities = new StringBuilder(CAPABILITY_RESPONSE);
         if( session.getHost().getStore().isQuotaSupported()) {
-            response.untaggedResponse(CAPABILITY_RESPONSE + SP + "QUOTA");
+            capabilities.append(SP).append("QUOTA");
         }
-        else {
-            response.untaggedResponse(CAPABILITY_RESPONSE);
+        if (!session.isTlsActive()) {
+            capabilities.append(SP).append(StartTlsCommand.NAME);
         }
+        response.untaggedResponse(capabilities.toString());
         session.unsolicitedResponses(response);
         response.commandComplete(this);
     }
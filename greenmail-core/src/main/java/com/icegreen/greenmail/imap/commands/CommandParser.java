@@ -8,6 +8,7 @@ package com.icegreen.greenmail.imap.commands;
 
 import com.icegreen.greenmail.imap.ImapConstants;
 import com.icegreen.greenmail.imap.ImapRequestLineReader;
+import com.icegreen.greenmail.imap.ImapSession;
 import com.icegreen.greenmail.imap.ProtocolException;
 import com.icegreen.greenmail.store.MessageFlags;
 import com.sun.mail.imap.protocol.BASE64MailboxDecoder; // NOSONAR
@@ -16,6 +17,7 @@ import javax.mail.Flags;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -33,6 +35,10 @@ public class CommandParser {
      * Carriage-Return '\r' character
      */
     static final char CHR_CR = '\r';
+    /**
+     * Reference to saved search result, see RFC 5182
+     */
+    static final char SEARCH_RESULT_REFERENCE = '$';
 
     /**
      * Reads an argument of type "atom" from the request.
@@ -394,6 +400,40 @@ public class CommandParser {
         return rangeList.toArray(new IdRange[rangeList.size()]);
     }
 
+    /**
+     * Reads a "message set" argument, which may also be the '$' reference to the saved search result.
+     *
+     * @param request the request.
+     * @param session the session holding the saved search result.
+     * @param useUids if true, the returned ranges contain UIDs, otherwise message sequence numbers.
+     * @return the id ranges.
+     * @see <a href="https://tools.ietf.org/html/rfc5182">RFC 5182 - SEARCHRES</a>
+     */
+    public IdRange[] parseIdRange(ImapRequestLineReader request, ImapSession session, boolean useUids)
+            throws ProtocolException {
+        if (request.nextWordChar() != SEARCH_RESULT_REFERENCE) {
+            return parseIdRange(request);
+        }
+        consumeChar(request, SEARCH_RESULT_REFERENCE);
+
+        long[] savedUids = session.getSearchResult();
+        if (useUids || savedUids.length == 0) {
+            return IdRange.convertUidsToIdRangeArray(savedUids);
+        }
+
+        // Map to current message sequence numbers, skipping meanwhile expunged messages
+        long[] folderUids = session.getSelected().getMessageUids();
+        long[] msns = new long[savedUids.length];
+        int count = 0;
+        for (long uid : savedUids) {
+            int idx = Arrays.binarySearch(folderUids, uid);
+            if (idx >= 0) {
+                msns[count++] = idx + 1;
+            }
+        }
+        return IdRange.convertUidsToIdRangeArray(Arrays.copyOf(msns, count));
+    }
+
     /**
      * Provides the ability to ensure characters are part of a permitted set.
      */
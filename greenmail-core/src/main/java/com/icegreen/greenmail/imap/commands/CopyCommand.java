@@ -44,7 +44,7 @@ class CopyCommand extends SelectedStateCommand implements UidEnabledCommand {
                           ImapSession session,
                           boolean useUids)
             throws ProtocolException, FolderException {
-        IdRange[] idSet = parser.parseIdRange(request);
+        IdRange[] idSet = parser.parseIdRange(request, session, useUids);
         String mailboxName = parser.mailbox(request);
         parser.endLine(request);
 
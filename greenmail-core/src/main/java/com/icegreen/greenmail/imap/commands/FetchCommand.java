@@ -8,7 +8,7 @@ package com.icegreen.greenmail.imap.commands;
 
 import com.icegreen.greenmail.imap.*;
 import com.icegreen.greenmail.store.FolderException;
-import com.icegreen.greenmail.store.MessageFlags;
+import com.icegreen.greenmail.store.HeaderIndex;
 import com.icegreen.greenmail.store.StoredMessage;
 import com.icegreen.greenmail.util.GreenMailUtil;
 
@@ -16,10 +16,13 @@ import javax.mail.BodyPart;
 import javax.mail.Flags;
 import javax.mail.MessagingException;
 import javax.mail.Multipart;
+import javax.mail.Part;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeMultipart;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.*;
 import java.util.regex.Pattern;
 
@@ -28,6 +31,9 @@ import java.util.regex.Pattern;
  * Handles processing for the FETCH imap command.
  * <p/>
  * https://tools.ietf.org/html/rfc3501#section-6.4.5
+ * <p/>
+ * Supports BINARY[], BINARY.PEEK[] and BINARY.SIZE[] of the
+ * <a href="https://tools.ietf.org/html/rfc3516">BINARY</a> extension.
  *
  * @author Darrell DeBoer <darrell@apache.org>
  * @version $Revision: 109034 $
@@ -37,6 +43,7 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
     public static final String ARGS = "<message-set> <fetch-profile>";
     private static final Flags FLAGS_SEEN = new Flags(Flags.Flag.SEEN);
     private static final Pattern NUMBER_MATCHER = Pattern.compile("^\\d+$");
+    private static final Pattern PART_SPECIFIER_MATCHER = Pattern.compile("^(\\d+(\\.\\d+)*)?$");
 
     private FetchCommandParser parser = new FetchCommandParser();
 
@@ -58,7 +65,7 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
                           ImapSession session,
                           boolean useUids)
             throws ProtocolException, FolderException {
-        IdRange[] idSet = parser.parseIdRange(request);
+        IdRange[] idSet = parser.parseIdRange(request, session, useUids);
         FetchRequest fetch = parser.fetchRequest(request);
         parser.endLine(request);
 
@@ -114,7 +121,7 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
         // FLAGS response
         if (fetch.flags || ensureFlagsResponse) {
             response.append(" FLAGS ");
-            response.append(MessageFlags.format(message.getFlags()));
+            response.append(message.formatFlags());
         }
 
         // INTERNALDATE response
@@ -170,12 +177,24 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
 
             MimeMessage mimeMessage = message.getMimeMessage();
             try {
-                handleBodyFetch(mimeMessage, sectionSpecifier, partial, response);
+                handleBodyFetch(mimeMessage, message, sectionSpecifier, partial, response);
             } catch (Exception e) {
                 throw new FolderException(e);
             }
         }
 
+        // BINARY part responses.
+        for (BinaryFetchElement binaryElement : fetch.getBinaryElements()) {
+            response.append(SP);
+            response.append(binaryElement.getResponseName());
+            if (binaryElement.isSizeOnly()) {
+                response.append(SP);
+                response.append(getBinarySize(message, binaryElement.getPartSpecifier()));
+            } else {
+                addBinaryContent(message, binaryElement.getPartSpecifier(), binaryElement.getPartial(), response);
+            }
+        }
+
         if (response.length() > 0) {
             // Remove the leading " ".
             return response.substring(1);
@@ -185,10 +204,15 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
     }
 
 
+    /**
+     * @param storedMessage the stored message for serving header fetches from its header index,
+     *                      or null for a nested message.
+     */
     private void handleBodyFetch(MimeMessage mimeMessage,
+                                 StoredMessage storedMessage,
                                  String sectionSpecifier,
                                  Partial partial,
-                                 StringBuilder response) throws IOException, MessagingException {
+                                 StringBuilder response) throws IOException, MessagingException, FolderException {
         if (log.isDebugEnabled()) {
             log.debug("Fetching body part for section specifier " + sectionSpecifier +
                     " and mime message (contentType=" + mimeMessage.getContentType());
@@ -202,16 +226,25 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
             bytes = doPartial(partial, bytes, response);
             addLiteral(bytes, response);
         } else if ("HEADER".equalsIgnoreCase(sectionSpecifier)) {
-            Enumeration<?> inum = mimeMessage.getAllHeaderLines();
-            addHeaders(inum, response, partial);
+            if (null != storedMessage) {
+                addHeaders(storedMessage.getHeaderIndex().getHeaders(), response, partial);
+            } else {
+                addHeaders(mimeMessage.getAllHeaderLines(), response, partial);
+            }
         } else if (sectionSpecifier.startsWith("HEADER.FIELDS.NOT")) {
             String[] excludeNames = extractHeaderList(sectionSpecifier, "HEADER.FIELDS.NOT".length());
-            Enumeration<?> inum = mimeMessage.getNonMatchingHeaderLines(excludeNames);
-            addHeaders(inum, response, partial);
+            if (null != storedMessage) {
+                addHeaders(storedMessage.getHeaderIndex().getHeaders(excludeNames, true), response, partial);
+            } else {
+                addHeaders(mimeMessage.getNonMatchingHeaderLines(excludeNames), response, partial);
+            }
         } else if (sectionSpecifier.startsWith("HEADER.FIELDS ")) {
             String[] includeNames = extractHeaderList(sectionSpecifier, "HEADER.FIELDS ".length());
-            Enumeration<?> inum = mimeMessage.getMatchingHeaderLines(includeNames);
-            addHeaders(inum, response, partial);
+            if (null != storedMessage) {
+                addHeaders(storedMessage.getHeaderIndex().getHeaders(includeNames, false), response, partial);
+            } else {
+                addHeaders(mimeMessage.getMatchingHeaderLines(includeNames), response, partial);
+            }
         } else if (sectionSpecifier.endsWith("MIME")) {
             String[] strs = sectionSpecifier.trim().split("\\.");
             int partNumber = Integer.parseInt(strs[0]) - 1;
@@ -258,7 +291,7 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
 
                 // A bit optimistic to only cover theses cases ... TODO
                 if ("message/rfc822".equalsIgnoreCase(part.getContentType())) {
-                    handleBodyFetch((MimeMessage) part.getContent(), spec, partial, response);
+                    handleBodyFetch((MimeMessage) part.getContent(), null, spec, partial, response);
                 } else if ("TEXT".equalsIgnoreCase(spec)) {
                     handleBodyFetchForText(mimeMessage, partial, response);
                 } else {
@@ -270,6 +303,108 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
         }
     }
 
+    /**
+     * Gets the decoded size of a body part, using the per message cache if available.
+     *
+     * @param message       the message.
+     * @param partSpecifier the part, eg "1" or "2.1" or empty for the whole message.
+     * @return the decoded size.
+     * @throws FolderException if part does not exist or can not be decoded (UNKNOWN-CTE).
+     */
+    private long getBinarySize(StoredMessage message, String partSpecifier) throws FolderException {
+        long size = message.getCachedBinarySize(partSpecifier);
+        if (size < 0L) {
+            // Only count, without keeping any decoded content
+            Literal8OutputStream out = new Literal8OutputStream(null, 0L, 0L);
+            decode(message.getMimeMessage(), partSpecifier, out);
+            size = out.size;
+            message.cacheBinarySize(partSpecifier, size);
+        }
+        return size;
+    }
+
+    /**
+     * Adds the decoded content of a body part as literal8, decoding directly into the response.
+     *
+     * @param message       the message.
+     * @param partSpecifier the part, eg "1" or "2.1" or empty for the whole message.
+     * @param partial       the partial range, or null for all content.
+     * @param response      the response.
+     * @throws FolderException if part does not exist or can not be decoded (UNKNOWN-CTE).
+     */
+    private void addBinaryContent(StoredMessage message, String partSpecifier, Partial partial,
+                                  StringBuilder response) throws FolderException {
+        if (null != partial) {
+            response.append('<').append(partial.start).append('>');
+        }
+        response.append(SP);
+        int literalStart = response.length();
+        Literal8OutputStream out = null == partial
+                ? new Literal8OutputStream(response, 0L, Long.MAX_VALUE)
+                : new Literal8OutputStream(response, partial.start, partial.size > 0 ? partial.size : Long.MAX_VALUE);
+        decode(message.getMimeMessage(), partSpecifier, out);
+        // Size is only known after decoding
+        response.insert(literalStart, "~{" + out.appended + "}\r\n");
+        message.cacheBinarySize(partSpecifier, out.size);
+    }
+
+    /**
+     * Writes the decoded content of a body part.
+     *
+     * @see <a href="https://tools.ietf.org/html/rfc3516#section-4.3">RFC 3516 UNKNOWN-CTE</a>
+     */
+    private void decode(MimeMessage mimeMessage, String partSpecifier, OutputStream out) throws FolderException {
+        if (partSpecifier.isEmpty()) {
+            // Whole message, nothing to decode
+            try {
+                mimeMessage.writeTo(out);
+            } catch (IOException | MessagingException e) {
+                throw new FolderException("Can not read message", e);
+            }
+            return;
+        }
+
+        Part part;
+        try {
+            part = findPart(mimeMessage, partSpecifier);
+        } catch (IOException | MessagingException e) {
+            throw new FolderException("Can not access part " + partSpecifier, e);
+        }
+        try (InputStream is = part.getInputStream()) {
+            byte[] buf = new byte[4096];
+            int len;
+            while ((len = is.read(buf)) != -1) {
+                out.write(buf, 0, len);
+            }
+        } catch (IOException | MessagingException e) {
+            FolderException ex = new FolderException("Can not decode content transfer encoding", e);
+            ex.setResponseCode("UNKNOWN-CTE");
+            throw ex;
+        }
+    }
+
+    private Part findPart(MimeMessage mimeMessage, String partSpecifier)
+            throws MessagingException, IOException, FolderException {
+        Part part = mimeMessage;
+        for (String number : partSpecifier.split("\\.")) {
+            int partIndex = Integer.parseInt(number) - 1;
+            if (part.isMimeType("message/rfc822")) {
+                part = (Part) part.getContent();
+            }
+            if (part.isMimeType("multipart/*")) {
+                Multipart multipart = (Multipart) part.getContent();
+                if (partIndex < 0 || partIndex >= multipart.getCount()) {
+                    throw new FolderException("No such part " + partSpecifier);
+                }
+                part = multipart.getBodyPart(partIndex);
+            } else if (partIndex != 0) {
+                // Non-multipart content only has part 1
+                throw new FolderException("No such part " + partSpecifier);
+            }
+        }
+        return part;
+    }
+
     private void handleBodyFetchForText(MimeMessage mimeMessage, Partial partial, StringBuilder response) {
         // TODO - need to use an InputStream from the response here.
         // TODO - this is a hack. To get just the body content, I'm using a null
@@ -327,18 +462,17 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
 
     private void addHeaders(Enumeration<?> inum, StringBuilder response, Partial partial) {
         StringBuilder buf = new StringBuilder();
-
-        int count = 0;
         while (inum.hasMoreElements()) {
             String line = (String) inum.nextElement();
-            count += line.length() + 2;
             buf.append(line).append("\r\n");
         }
+        addHeaders(buf, response, partial);
+    }
 
+    private void addHeaders(CharSequence headers, StringBuilder response, Partial partial) {
         if(null != partial) {
-            final String partialContent = buf.toString();
-            int len = partial.computeLength(partialContent.length()); // TODO : Charset?
-            int start = partial.computeStart(partialContent.length());
+            int len = partial.computeLength(headers.length()); // TODO : Charset?
+            int start = partial.computeStart(headers.length());
 
             response.append('<').append(partial.start).append('>');
             response.append(" {");
@@ -346,14 +480,14 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
             response.append('}');
             response.append("\r\n");
 
-            response.append(partialContent.substring(start,start + len));
+            response.append(headers, start, start + len);
         } else {
             response.append("{");
-            response.append(count);
+            response.append(headers.length());
             response.append('}');
             response.append("\r\n");
 
-            response.append(buf);
+            response.append(headers);
         }
     }
 
@@ -458,12 +592,25 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
                     fetch.add(new BodyFetchElement("BODY[" + parameter + ']', parameter, partial), false);
                 } else if ("BODY.PEEK".equalsIgnoreCase(name)) {
                     fetch.add(new BodyFetchElement("BODY[" + parameter + ']', parameter, partial), true);
+                } else if ("BINARY".equalsIgnoreCase(name) || "BINARY.PEEK".equalsIgnoreCase(name)) {
+                    validatePartSpecifier(name, parameter);
+                    fetch.add(new BinaryFetchElement("BINARY[" + parameter + ']', parameter, partial, false),
+                            "BINARY.PEEK".equalsIgnoreCase(name));
+                } else if ("BINARY.SIZE".equalsIgnoreCase(name)) {
+                    validatePartSpecifier(name, parameter);
+                    fetch.add(new BinaryFetchElement("BINARY.SIZE[" + parameter + ']', parameter, null, true), true);
                 } else {
                     throw new ProtocolException("Invalid fetch attribute: " + name + "[]");
                 }
             }
         }
 
+        private void validatePartSpecifier(String name, String parameter) throws ProtocolException {
+            if (!PART_SPECIFIER_MATCHER.matcher(parameter).matches()) {
+                throw new ProtocolException("Invalid fetch attribute: " + name + '[' + parameter + "], expected part numbers only");
+            }
+        }
+
         private Partial parsePartial(ImapRequestLineReader command) throws ProtocolException {
             consumeChar(command, '<');
             int size = (int) consumeLong(command); // Assume <start>
@@ -511,11 +658,16 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
         private boolean setSeen = false;
 
         private Set<BodyFetchElement> bodyElements = new HashSet<>();
+        private List<BinaryFetchElement> binaryElements = new ArrayList<>();
 
         public Collection<BodyFetchElement> getBodyElements() {
             return bodyElements;
         }
 
+        public Collection<BinaryFetchElement> getBinaryElements() {
+            return binaryElements;
+        }
+
         public boolean isSetSeen() {
             return setSeen;
         }
@@ -526,6 +678,13 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
             }
             bodyElements.add(element);
         }
+
+        public void add(BinaryFetchElement element, boolean peek) {
+            if (!peek) {
+                setSeen = true;
+            }
+            binaryElements.add(element);
+        }
     }
     /** See https://tools.ietf.org/html/rfc3501#page-55 : partial */
     private static class Partial {
@@ -581,6 +740,81 @@ class FetchCommand extends SelectedStateCommand implements UidEnabledCommand {
         }
     }
 
+    /**
+     * Appends content of a literal8 to the response, allowing binary content including NUL.
+     * Counts the total size, appending only the bytes within the partial range.
+     *
+     * @see <a href="https://tools.ietf.org/html/rfc3516#section-4.2">RFC 3516 literal8</a>
+     */
+    private static class Literal8OutputStream extends OutputStream {
+        private final StringBuilder response;
+        private final long start;
+        private final long maxLength;
+        private long size;
+        private long appended;
+
+        /**
+         * @param response  the response, or null for counting only.
+         * @param start     the number of bytes to skip.
+         * @param maxLength the max number of bytes to append.
+         */
+        Literal8OutputStream(StringBuilder response, long start, long maxLength) {
+            this.response = response;
+            this.start = start;
+            this.maxLength = maxLength;
+        }
+
+        @Override
+        public void write(int b) {
+            if (size >= start && appended < maxLength) {
+                response.append((char) (b & 0xff));
+                appended++;
+            }
+            size++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (null != response) {
+                for (int i = off; i < off + len; i++) {
+                    write(b[i]);
+                }
+            } else {
+                size += len;
+            }
+        }
+    }
+
+    private static class BinaryFetchElement {
+        private final String name;
+        private final String partSpecifier;
+        private final Partial partial;
+        private final boolean sizeOnly;
+
+        BinaryFetchElement(String name, String partSpecifier, Partial partial, boolean sizeOnly) {
+            this.name = name;
+            this.partSpecifier = partSpecifier;
+            this.partial = partial;
+            this.sizeOnly = sizeOnly;
+        }
+
+        public String getResponseName() {
+            return name;
+        }
+
+        public String getPartSpecifier() {
+            return partSpecifier;
+        }
+
+        public Partial getPartial() {
+            return partial;
+        }
+
+        public boolean isSizeOnly() {
+            return sizeOnly;
+        }
+    }
+
 }
 
 /*
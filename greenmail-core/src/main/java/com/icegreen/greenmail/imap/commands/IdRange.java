@@ -113,6 +113,37 @@ public class IdRange implements Serializable {
         return idRangesToString(convertUidsToIdRangeArray(uids));
     }
 
+    /**
+     * Converts ids into ranges, joining consecutive ids.
+     *
+     * @param ids the ids, in ascending order.
+     * @return the ranges, never null.
+     */
+    public static IdRange[] convertUidsToIdRangeArray(long[] ids) {
+        List<IdRange> ranges = new ArrayList<>();
+        int i = 0;
+        while (i < ids.length) {
+            long low = ids[i];
+            long high = low;
+            while (i + 1 < ids.length && ids[i + 1] == high + 1) {
+                high = ids[++i];
+            }
+            ranges.add(new IdRange(low, high));
+            i++;
+        }
+        return ranges.toArray(new IdRange[ranges.size()]);
+    }
+
+    /**
+     * Converts ids into a compact sequence set string, such as "1:3,7,9:10".
+     *
+     * @param ids the ids, in ascending order.
+     * @return the sequence set, or an empty string if no ids are given.
+     */
+    public static String uidsToRangeString(long[] ids) {
+        return idRangesToString(convertUidsToIdRangeArray(ids));
+    }
+
     public static String idRangeToString(IdRange idRange) {
         return idRange.getHighVal() == idRange.getLowVal()
                 ? Long.toString(idRange.getLowVal())
@@ -156,4 +187,39 @@ public class IdRange implements Serializable {
         }
         return false;
     }
+
+    /**
+     * Matches ascending ids against ranges in a single pass, sorting the ranges once.
+     * Unlike {@link #containsUid(IdRange[], long)}, does not scan all ranges per id.
+     */
+    public static class AscendingMatcher {
+        private final IdRange[] sorted;
+        private int next;
+        /** Max high value of the ranges starting at or below the last id */
+        private long maxHigh = Long.MIN_VALUE;
+
+        /**
+         * @param idRanges the ranges, in any order and possibly overlapping, or null for none.
+         */
+        public AscendingMatcher(IdRange[] idRanges) {
+            sorted = null == idRanges ? new IdRange[0] : idRanges.clone();
+            Arrays.sort(sorted, new Comparator<IdRange>() {
+                @Override
+                public int compare(IdRange o1, IdRange o2) {
+                    return Long.compare(o1.lowVal, o2.lowVal);
+                }
+            });
+        }
+
+        /**
+         * @param id the id, not below the id of the previous call.
+         * @return true, if any range contains given id.
+         */
+        public boolean matches(long id) {
+            while (next < sorted.length && sorted[next].lowVal <= id) {
+                maxHigh = Math.max(maxHigh, sorted[next++].highVal);
+            }
+            return id <= maxHigh;
+        }
+    }
 }
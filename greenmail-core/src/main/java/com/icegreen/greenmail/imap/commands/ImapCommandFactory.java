@@ -30,6 +30,7 @@ public class ImapCommandFactory {
         // AUTHENTICATE and LOGIN
         _imapCommands.put(AuthenticateCommand.NAME, AuthenticateCommand.class);
         _imapCommands.put(LoginCommand.NAME, LoginCommand.class);
+        _imapCommands.put(StartTlsCommand.NAME, StartTlsCommand.class);
 
         // Commands valid in AUTHENTICATED or SELECTED state.
         // RFC2060: SELECT, EXAMINE, CREATE, DELETE, RENAME, SUBSCRIBE, UNSUBSCRIBE, LIST, LSUB, STATUS, and APPEND
@@ -68,6 +69,9 @@ public class ImapCommandFactory {
         _imapCommands.put(UidCommand.NAME, UidCommand.class);
         _imapCommands.put(SortCommand.NAME, SortCommand.class);
 
+        // RFC6851 MOVE
+        _imapCommands.put(MoveCommand.NAME, MoveCommand.class);
+
         // Quota support
         _imapCommands.put(SetQuotaCommand.NAME, SetQuotaCommand.class);
         _imapCommands.put(QuotaCommand.NAME, QuotaCommand.class);
@@ -0,0 +1,123 @@
+/* -------------------------------------------------------------------
+* This software is released under the Apache license 2.0
+* -------------------------------------------------------------------
+*/
+package com.icegreen.greenmail.imap.commands;
+
+import com.icegreen.greenmail.imap.ImapRequestLineReader;
+import com.icegreen.greenmail.imap.ImapResponse;
+import com.icegreen.greenmail.imap.ImapSession;
+import com.icegreen.greenmail.imap.ImapSessionFolder;
+import com.icegreen.greenmail.imap.ProtocolException;
+import com.icegreen.greenmail.store.FolderException;
+import com.icegreen.greenmail.store.MailFolder;
+
+import java.util.Arrays;
+
+/**
+ * Handles processing for the MOVE imap command.
+ * <p>
+ * Supports <a href="https://tools.ietf.org/html/rfc6851">RFC 6851</a> MOVE and UID MOVE.
+ * The target mailbox shares the message content instead of copying it, and the source messages get expunged.
+ */
+class MoveCommand extends SelectedStateCommand implements UidEnabledCommand {
+    public static final String NAME = "MOVE";
+    public static final String ARGS = "<message-set> <mailbox>";
+
+    MoveCommand() {
+        super(NAME, ARGS);
+    }
+
+    /**
+     * @see CommandTemplate#doProcess
+     */
+    @Override
+    protected void doProcess(ImapRequestLineReader request,
+                             ImapResponse response,
+                             ImapSession session)
+            throws ProtocolException, FolderException {
+        doProcess(request, response, session, false);
+    }
+
+    @Override
+    public void doProcess(ImapRequestLineReader request,
+                          ImapResponse response,
+                          ImapSession session,
+                          boolean useUids)
+            throws ProtocolException, FolderException {
+        IdRange[] idSet = parser.parseIdRange(request, session, useUids);
+        String mailboxName = parser.mailbox(request);
+        parser.endLine(request);
+
+        ImapSessionFolder currentMailbox = session.getSelected();
+        if (currentMailbox.isReadonly()) {
+            response.commandFailed(this, "Mailbox selected read only.");
+            return;
+        }
+
+        MailFolder toFolder;
+        try {
+            toFolder = getMailbox(mailboxName, session, true);
+        } catch (FolderException e) {
+            e.setResponseCode("TRYCREATE");
+            throw e;
+        }
+
+        // Resolve the message set once, and move all messages in a single pass
+        long[] uids = currentMailbox.getMessageUids();
+        long[] movedUidsOld = new long[uids.length];
+        int count = 0;
+        for (int i = 0; i < uids.length; i++) {
+            long uid = uids[i];
+            if (includes(idSet, useUids ? uid : i + 1)) {
+                movedUidsOld[count++] = uid;
+            }
+        }
+        movedUidsOld = Arrays.copyOf(movedUidsOld, count);
+
+        if (count > 0) {
+            long[] movedUidsNew = currentMailbox.moveMessages(movedUidsOld, toFolder);
+            response.okResponse(generateCopyUidResponseCode(toFolder, movedUidsOld, movedUidsNew), null);
+        }
+        session.unsolicitedResponses(response);
+        response.commandComplete(this);
+    }
+
+    /**
+     * Generates <b>COPYUID</b> response code, sent as untagged OK response before the EXPUNGE responses.
+     *
+     * @param toFolder      target folder of the move
+     * @param movedUidsFrom source uids
+     * @param movedUidsTo   uids in target folder
+     * @return response code
+     * @see <a href="https://tools.ietf.org/html/rfc6851#section-4.3">RFC 6851 - 4.3 Interaction with UIDPLUS</a>
+     */
+    private String generateCopyUidResponseCode(MailFolder toFolder,
+                                               long[] movedUidsFrom, long[] movedUidsTo) {
+        return "COPYUID" + SP + toFolder.getUidValidity() + SP +
+                IdRange.uidsToRangeString(movedUidsFrom) + SP +
+                IdRange.uidsToRangeString(movedUidsTo);
+    }
+}
+
+/*
+https://tools.ietf.org/html/rfc6851#section-3.1 :
+
+3.1.  MOVE and UID MOVE Commands
+
+   Arguments:  sequence set
+               mailbox name
+
+   Responses:  no specific responses for this command
+
+   Result:     OK - move completed
+               NO - move error: can't move those messages or to that
+                    name
+               BAD - command unknown or arguments invalid
+
+   Example:    C: a UID MOVE 42:69 foo
+               S: * OK [COPYUID 432432 42:69 1202:1229]
+               S: * 22 EXPUNGE
+               S: (more expunges)
+               S: a OK Done
+*/
@@ -17,9 +17,15 @@ import org.slf4j.LoggerFactory;
 
 import javax.mail.search.SearchTerm;
 import java.nio.charset.CharacterCodingException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Handles processing for the SEARCH imap command.
+ * <p>
+ * Supports <a href="https://tools.ietf.org/html/rfc4731">ESEARCH</a> result options
+ * and saving the result via <a href="https://tools.ietf.org/html/rfc5182">SEARCHRES</a>.
  *
  * @author Darrell DeBoer <darrell@apache.org>
  */
@@ -50,8 +56,9 @@ class SearchCommand extends SelectedStateCommand implements UidEnabledCommand {
             throws ProtocolException, FolderException {
         // Parse the search term from the request
         SearchTerm searchTerm = null;
+        Set<SearchResultOption> resultOptions = EnumSet.noneOf(SearchResultOption.class);
         try {
-            searchTerm = parser.searchTerm(request);
+            searchTerm = parser.searchTerm(request, resultOptions);
         } catch(IllegalArgumentException ex) {
             // Not support => return "BAD"
             response.commandError("Search command not supported");
@@ -72,27 +79,103 @@ class SearchCommand extends SelectedStateCommand implements UidEnabledCommand {
 
         MailFolder folder = session.getSelected();
         long[] uids = folder.search(searchTerm);
-        StringBuilder idList = new StringBuilder();
-        for (int i = 0; i < uids.length; i++) {
-            if (i > 0) {
-                idList.append(SP);
+
+        if (resultOptions.isEmpty()) {
+            long[] ids = useUids ? uids : toMsns(folder, uids);
+            StringBuilder idList = new StringBuilder();
+            for (int i = 0; i < ids.length; i++) {
+                if (i > 0) {
+                    idList.append(SP);
+                }
+                idList.append(ids[i]);
+            }
+            response.commandResponse(this, idList.toString());
+        } else {
+            if (resultOptions.contains(SearchResultOption.SAVE)) {
+                session.setSearchResult(savedResult(uids, resultOptions));
             }
-            long uid = uids[i];
-            if (useUids) {
-                idList.append(uid);
-            } else {
-                int msn = folder.getMsn(uid);
-                idList.append(msn);
+            // SAVE only means no ESEARCH response, see https://tools.ietf.org/html/rfc5182#section-2.4
+            if (resultOptions.size() > 1 || !resultOptions.contains(SearchResultOption.SAVE)) {
+                response.untaggedResponse(esearchResponse(response.getTag(), folder, uids, resultOptions, useUids));
             }
         }
 
-        response.commandResponse(this, idList.toString());
-
         boolean omitExpunged = !useUids;
         session.unsolicitedResponses(response, omitExpunged);
         response.commandComplete(this);
     }
 
+    /**
+     * Builds the ESEARCH response, e.g. <i>ESEARCH (TAG "a1") UID MIN 4 COUNT 3 ALL 4:5,9</i>
+     */
+    private String esearchResponse(String tag, MailFolder folder, long[] uids,
+                                   Set<SearchResultOption> resultOptions, boolean useUids) {
+        StringBuilder buf = new StringBuilder("ESEARCH (TAG \"").append(tag).append("\")");
+        if (useUids) {
+            buf.append(SP).append("UID");
+        }
+        if (uids.length > 0) {
+            if (resultOptions.contains(SearchResultOption.MIN)) {
+                long min = uids[0];
+                buf.append(SP).append("MIN").append(SP).append(useUids ? min : toMsns(folder, new long[]{min})[0]);
+            }
+            if (resultOptions.contains(SearchResultOption.MAX)) {
+                long max = uids[uids.length - 1];
+                buf.append(SP).append("MAX").append(SP).append(useUids ? max : toMsns(folder, new long[]{max})[0]);
+            }
+        }
+        if (resultOptions.contains(SearchResultOption.COUNT)) {
+            buf.append(SP).append("COUNT").append(SP).append(uids.length);
+        }
+        if (uids.length > 0 && resultOptions.contains(SearchResultOption.ALL)) {
+            buf.append(SP).append("ALL").append(SP)
+                    .append(IdRange.uidsToRangeString(useUids ? uids : toMsns(folder, uids)));
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Determines the result to save. If SAVE is combined with MIN and/or MAX only,
+     * just the minimum and/or maximum message gets saved.
+     *
+     * @see <a href="https://tools.ietf.org/html/rfc5182#section-2.4">RFC 5182 2.4</a>
+     */
+    private long[] savedResult(long[] uids, Set<SearchResultOption> resultOptions) {
+        if (uids.length == 0 || resultOptions.contains(SearchResultOption.ALL)
+                || resultOptions.contains(SearchResultOption.COUNT)) {
+            return uids;
+        }
+        boolean min = resultOptions.contains(SearchResultOption.MIN);
+        boolean max = resultOptions.contains(SearchResultOption.MAX);
+        if (min && max && uids.length > 1) {
+            return new long[]{uids[0], uids[uids.length - 1]};
+        } else if (min) {
+            return new long[]{uids[0]};
+        } else if (max) {
+            return new long[]{uids[uids.length - 1]};
+        }
+        return uids;
+    }
+
+    /**
+     * Maps UIDs to message sequence numbers in one pass.
+     *
+     * @param folder the folder.
+     * @param uids   the UIDs in ascending order.
+     * @return the MSNs.
+     */
+    private long[] toMsns(MailFolder folder, long[] uids) {
+        long[] folderUids = folder.getMessageUids();
+        long[] msns = new long[uids.length];
+        int count = 0;
+        for (long uid : uids) {
+            int idx = Arrays.binarySearch(folderUids, uid);
+            if (idx >= 0) { // Skip concurrently expunged messages
+                msns[count++] = idx + 1;
+            }
+        }
+        return count == msns.length ? msns : Arrays.copyOf(msns, count);
+    }
 }
 
 /*
@@ -18,6 +18,7 @@ import javax.mail.search.SearchTerm;
 import java.nio.ByteBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
+import java.util.Set;
 
 import static com.icegreen.greenmail.imap.commands.IdRange.SEQUENCE;
 
@@ -29,6 +30,7 @@ import static com.icegreen.greenmail.imap.commands.IdRange.SEQUENCE;
 class SearchCommandParser extends CommandParser {
     private final Logger log = LoggerFactory.getLogger(SearchCommandParser.class);
     private static final String CHARSET_TOKEN = "CHARSET";
+    private static final String RETURN_TOKEN = "RETURN";
 
     /**
      * Parses the request argument into a valid search term. Not yet fully implemented - see SearchKey enum.
@@ -37,6 +39,20 @@ class SearchCommandParser extends CommandParser {
      */
     public SearchTerm searchTerm(ImapRequestLineReader request)
             throws ProtocolException, CharacterCodingException {
+        return searchTerm(request, null);
+    }
+
+    /**
+     * Parses the request argument into a valid search term, including optional ESEARCH result options
+     * (RETURN (...)) preceding the search criteria.
+     *
+     * @param request       the request.
+     * @param resultOptions collects the parsed result options. Stays empty if no RETURN is given.
+     *                      If null, RETURN is not supported.
+     * @return the search term
+     */
+    public SearchTerm searchTerm(ImapRequestLineReader request, Set<SearchResultOption> resultOptions)
+            throws ProtocolException, CharacterCodingException {
         SearchTerm resultTerm = null;
         SearchTermBuilder b = null;
         SearchKey key = null;
@@ -77,8 +93,12 @@ class SearchCommandParser extends CommandParser {
                             keyValue = keyValue.substring(1, keyValue.length() - 1);
                         }
 
+                        // Result options?
+                        if (null != resultOptions && null == resultTerm && RETURN_TOKEN.equals(keyValue)) {
+                            resultOptions(request, resultOptions);
+                        }
                         // Message set?
-                        if (SEQUENCE.matcher(keyValue).matches()) {
+                        else if (SEQUENCE.matcher(keyValue).matches()) {
                             b = SearchTermBuilder.create(SearchKey.SEQUENCE_SET);
 
                             // Try to get additional number sequences.
@@ -170,4 +190,46 @@ class SearchCommandParser extends CommandParser {
         }
         return resultTerm;
     }
+
+    /**
+     * Parses the search return options list, such as "(MIN COUNT)".
+     * An empty list defaults to ALL.
+     */
+    private void resultOptions(ImapRequestLineReader request, Set<SearchResultOption> resultOptions)
+            throws ProtocolException {
+        request.nextWordChar();
+        consumeChar(request, '(');
+        StringBuilder option = new StringBuilder();
+        char next = request.nextChar();
+        while (next != ')') {
+            if (isCrOrLf(next)) {
+                throw new ProtocolException("Missing closing ')' for search return options");
+            }
+            if (next == CHR_SPACE) {
+                addResultOption(option, resultOptions);
+            } else {
+                option.append(next);
+            }
+            request.consume();
+            next = request.nextChar();
+        }
+        consumeChar(request, ')');
+        addResultOption(option, resultOptions);
+
+        if (resultOptions.isEmpty()) {
+            resultOptions.add(SearchResultOption.ALL);
+        }
+    }
+
+    private void addResultOption(StringBuilder option, Set<SearchResultOption> resultOptions)
+            throws ProtocolException {
+        if (option.length() > 0) {
+            try {
+                resultOptions.add(SearchResultOption.valueOf(option.toString().toUpperCase()));
+            } catch (IllegalArgumentException ex) {
+                throw new ProtocolException("Unsupported search return option '" + option + "'");
+            }
+            option.setLength(0);
+        }
+    }
 }
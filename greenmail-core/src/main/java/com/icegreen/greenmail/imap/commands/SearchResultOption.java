@@ -0,0 +1,26 @@
+/* -------------------------------------------------------------------
+* This software is released under the Apache license 2.0
+* -------------------------------------------------------------------
+*/
+package com.icegreen.greenmail.imap.commands;
+
+/**
+ * Search result options of SEARCH RETURN (...).
+ * <ul>
+ * <li>MIN Return the lowest message number/UID that satisfies the SEARCH criteria.</li>
+ * <li>MAX Return the highest message number/UID that satisfies the SEARCH criteria.</li>
+ * <li>ALL Return all message numbers/UIDs that satisfy the SEARCH criteria, as sequence set.</li>
+ * <li>COUNT Return number of the messages that satisfy the SEARCH criteria.</li>
+ * <li>SAVE Saves the result for later reference via '$' (RFC 5182).</li>
+ * </ul>
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc4731">RFC 4731 - ESEARCH</a>
+ * @see <a href="https://tools.ietf.org/html/rfc5182">RFC 5182 - SEARCHRES</a>
+ */
+public enum SearchResultOption {
+    MIN,
+    MAX,
+    ALL,
+    COUNT,
+    SAVE
+}
@@ -43,48 +43,23 @@ class StoreCommand extends SelectedStateCommand implements UidEnabledCommand {
                           ImapSession session,
                           boolean useUids)
             throws ProtocolException, FolderException {
-        IdRange[] idSet = parser.parseIdRange(request);
+        IdRange[] idSet = parser.parseIdRange(request, session, useUids);
         StoreDirective directive = parser.storeDirective(request);
         Flags flags = parser.flagList(request);
         parser.endLine(request);
 
         ImapSessionFolder mailbox = session.getSelected();
-//        IdRange[] uidSet;
-//        if (useUids) {
-//           uidSet = idSet;
-//        } else {
-//            uidSet = mailbox.msnsToUids(idSet);
-//        }
-//        if (directive.getSign() < 0) {
-//            mailbox.setFlags(flags, false, uidSet, directive.isSilent());
-//        }
-//        else if (directive.getSign() > 0) {
-//            mailbox.setFlags(flags, true, uidSet, directive.isSilent());
-//        }
-//        else {
-//            mailbox.replaceFlags(flags, uidSet, directive.isSilent());
-//        }
-
         FolderListener silentListener = null;
         if (directive.isSilent()) {
             silentListener = mailbox;
         }
 
-        // TODO do this in one hit.
-        long[] uids = mailbox.getMessageUids();
-        for (long uid : uids) {
-            int msn = mailbox.getMsn(uid);
-
-            if ((useUids && includes(idSet, uid)) ||
-                    (!useUids && includes(idSet, msn))) {
-                if (directive.getSign() < 0) {
-                    mailbox.setFlags(flags, false, uid, silentListener, useUids);
-                } else if (directive.getSign() > 0) {
-                    mailbox.setFlags(flags, true, uid, silentListener, useUids);
-                } else {
-                    mailbox.replaceFlags(flags, uid, silentListener, useUids);
-                }
-            }
+        if (directive.getSign() < 0) {
+            mailbox.setFlags(flags, false, idSet, useUids, silentListener);
+        } else if (directive.getSign() > 0) {
+            mailbox.setFlags(flags, true, idSet, useUids, silentListener);
+        } else {
+            mailbox.replaceFlags(flags, idSet, useUids, silentListener);
         }
 
         boolean omitExpunged = !useUids;
@@ -1,5 +1,6 @@
 package com.icegreen.greenmail.junit;
 
+import com.icegreen.greenmail.Managers;
 import com.icegreen.greenmail.configuration.GreenMailConfiguration;
 import com.icegreen.greenmail.util.GreenMail;
 import com.icegreen.greenmail.util.GreenMailProxy;
@@ -11,9 +12,24 @@ import org.junit.runner.Description;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.Statement;
 
+/**
+ * Starts GreenMail for each test method.
+ * <p/>
+ * For keeping the servers running across the test methods of a class, use the same rule as class rule and rule.
+ * The rule then restores the users, folders and messages available after startup after each test method,
+ * instead of restarting the servers:
+ * <pre>
+ * &#64;ClassRule
+ * public static final GreenMailRule greenMail = new GreenMailRule(ServerSetupTest.SMTP_IMAP);
+ * &#64;Rule
+ * public final GreenMailRule perTest = greenMail;
+ * </pre>
+ */
 public class GreenMailRule extends GreenMailProxy implements MethodRule, TestRule {
     private GreenMail greenMail;
     private final ServerSetup[] serverSetups;
+    /** State after startup, if started as class rule */
+    private volatile Managers.Snapshot baseline;
 
     /**
      * Initialize with multiple server setups
@@ -39,6 +55,22 @@ public class GreenMailRule extends GreenMailProxy implements MethodRule, TestRul
 
     @Override
     public Statement apply(final Statement base, Description description) {
+        if (description.isSuite()) {
+            return new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    greenMail = new GreenMail(serverSetups);
+                    try {
+                        start();
+                        baseline = getManagers().createSnapshot();
+                        base.evaluate();
+                    } finally {
+                        baseline = null;
+                        stop();
+                    }
+                }
+            };
+        }
         return apply(base, null, null);
     }
 
@@ -47,6 +79,17 @@ public class GreenMailRule extends GreenMailProxy implements MethodRule, TestRul
         return new Statement() {
             @Override
             public void evaluate() throws Throwable {
+                final Managers.Snapshot snapshot = baseline;
+                if (null != snapshot) {
+                    // Servers kept running by class rule
+                    try {
+                        base.evaluate();
+                    } finally {
+                        getManagers().restoreSnapshot(snapshot);
+                    }
+                    return;
+                }
+
                 greenMail = new GreenMail(serverSetups);
                 try {
                     start();
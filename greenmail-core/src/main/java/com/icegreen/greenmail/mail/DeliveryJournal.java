@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.mail;
+
+import com.icegreen.greenmail.store.StoredMessage;
+
+import javax.mail.internet.MimeMessage;
+import java.util.*;
+
+/**
+ * Append only journal of delivered messages, numbered by a global sequence starting at 1.
+ * <p/>
+ * Indexes the deliveries by recipient and recipient domain, so that tests polling for new messages
+ * only look at the deliveries since their last poll instead of scanning all mailboxes.
+ * <p/>
+ * The journal follows the delivered messages while stored, including moves between folders.
+ * Messages removed from their folder, eg expunged or evicted, are left out right away and no longer referenced,
+ * so that the journal does not keep them on the heap or keep their off-heap content from being reclaimed.
+ * Thread safe.
+ */
+public class DeliveryJournal {
+    /** Min number of entries before dropping the entries of removed messages */
+    private static final int MIN_COMPACTION_SIZE = 1024;
+
+    /**
+     * A single delivery, following the delivered message while stored.
+     */
+    public static class Entry implements StoredMessage.Tracker {
+        private final long sequence;
+        private final String recipient;
+        /** The message as currently stored, or null once removed */
+        private volatile StoredMessage message;
+
+        Entry(long sequence, String recipient) {
+            this.sequence = sequence;
+            this.recipient = recipient;
+        }
+
+        /**
+         * @return the sequence number, increasing by one for every delivery.
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return the normalized email address of the recipient.
+         */
+        public String getRecipient() {
+            return recipient;
+        }
+
+        /**
+         * @return the message as currently stored, eg in another folder after moving, or null if removed.
+         */
+        public MimeMessage getMessage() {
+            StoredMessage stored = message;
+            return null == stored ? null : stored.getMimeMessage();
+        }
+
+        @Override
+        public void stored(StoredMessage message) {
+            this.message = message;
+        }
+
+        @Override
+        public void removed(StoredMessage message) {
+            if (this.message == message) {
+                this.message = null;
+            }
+        }
+    }
+
+    /** Entries in order of sequence, not necessarily consecutive as entries of removed messages get dropped */
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, List<Entry>> byRecipient = new HashMap<>();
+    private final Map<String, List<Entry>> byDomain = new HashMap<>();
+    /** Number of entries for next dropping the entries of removed messages */
+    private int compactionSize = MIN_COMPACTION_SIZE;
+    /** Sequence of the next delivery */
+    private long nextSequence = 1L;
+
+    /**
+     * Records a delivery, following the message from now on.
+     *
+     * @param recipient the email address of the recipient.
+     * @param message   the stored message.
+     * @return the sequence number of the delivery.
+     */
+    public synchronized long record(String recipient, StoredMessage message) {
+        if (entries.size() >= compactionSize) {
+            dropRemoved();
+        }
+        String normalized = normalize(recipient);
+        Entry entry = new Entry(nextSequence++, normalized);
+        entries.add(entry);
+        index(byRecipient, normalized, entry);
+        index(byDomain, getDomain(normalized), entry);
+        message.track(entry);
+        return entry.getSequence();
+    }
+
+    private static void index(Map<String, List<Entry>> index, String key, Entry entry) {
+        List<Entry> list = index.get(key);
+        if (null == list) {
+            list = new ArrayList<>();
+            index.put(key, list);
+        }
+        list.add(entry);
+    }
+
+    /**
+     * Drops the entries of removed messages in a single pass, and doubles the size for next dropping them.
+     * Keeps the cost per delivery constant, and the entries bounded to about twice the stored messages.
+     */
+    private void dropRemoved() {
+        dropRemoved(entries);
+        for (Iterator<List<Entry>> it = byRecipient.values().iterator(); it.hasNext(); ) {
+            if (dropRemoved(it.next())) {
+                it.remove();
+            }
+        }
+        for (Iterator<List<Entry>> it = byDomain.values().iterator(); it.hasNext(); ) {
+            if (dropRemoved(it.next())) {
+                it.remove();
+            }
+        }
+        compactionSize = Math.max(MIN_COMPACTION_SIZE, 2 * entries.size());
+    }
+
+    /**
+     * @return true, if the list is empty afterwards.
+     */
+    private static boolean dropRemoved(List<Entry> list) {
+        int kept = 0;
+        for (int i = 0; i < list.size(); i++) {
+            Entry entry = list.get(i);
+            if (null != entry.message) {
+                list.set(kept++, entry);
+            }
+        }
+        list.subList(kept, list.size()).clear();
+        return list.isEmpty();
+    }
+
+    /**
+     * @return the sequence number of the latest delivery, or 0 if nothing delivered yet.
+     */
+    public synchronized long getSequence() {
+        return nextSequence - 1L;
+    }
+
+    /**
+     * Gets the deliveries after given sequence number, in order of delivery.
+     * Only looks at the new deliveries.
+     *
+     * @param sequence the sequence number of the last known delivery, or 0 for all deliveries.
+     * @return the deliveries of messages still stored.
+     */
+    public synchronized List<Entry> getEntriesSince(long sequence) {
+        // Binary search for the first entry after sequence
+        int low = 0;
+        int high = entries.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (entries.get(mid).getSequence() <= sequence) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return copy(entries.subList(low, entries.size()));
+    }
+
+    /**
+     * @param recipient the email address, case insensitive.
+     * @return the deliveries of messages still stored to given recipient, in order of delivery.
+     */
+    public synchronized List<Entry> getEntriesForRecipient(String recipient) {
+        return copy(byRecipient.get(normalize(recipient)));
+    }
+
+    /**
+     * @param domain the domain of the recipients, case insensitive, such as <code>example.com</code>.
+     * @return the deliveries of messages still stored to any recipient of given domain, in order of delivery.
+     */
+    public synchronized List<Entry> getEntriesForDomain(String domain) {
+        return copy(byDomain.get(normalize(domain)));
+    }
+
+    private static List<Entry> copy(List<Entry> list) {
+        if (null == list || list.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Entry> copy = new ArrayList<>(list.size());
+        for (Entry entry : list) {
+            if (null != entry.message) {
+                copy.add(entry);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Drops all entries. Sequence numbers keep increasing.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        byRecipient.clear();
+        byDomain.clear();
+        compactionSize = MIN_COMPACTION_SIZE;
+    }
+
+    /**
+     * Drops all entries after given sequence number, which get reused by future deliveries.
+     *
+     * @param sequence the sequence number of the last delivery to keep.
+     */
+    public synchronized void truncate(long sequence) {
+        while (!entries.isEmpty() && entries.get(entries.size() - 1).getSequence() > sequence) {
+            Entry entry = entries.remove(entries.size() - 1);
+            removeLast(byRecipient, entry.getRecipient());
+            removeLast(byDomain, getDomain(entry.getRecipient()));
+        }
+        nextSequence = Math.min(nextSequence, sequence + 1L);
+    }
+
+    private static void removeLast(Map<String, List<Entry>> index, String key) {
+        List<Entry> list = index.get(key);
+        list.remove(list.size() - 1);
+        if (list.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ENGLISH);
+    }
+
+    private static String getDomain(String email) {
+        return email.substring(email.lastIndexOf('@') + 1);
+    }
+}
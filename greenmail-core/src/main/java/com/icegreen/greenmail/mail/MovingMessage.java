@@ -10,6 +10,7 @@ import com.icegreen.greenmail.foedus.util.Resource;
 import com.icegreen.greenmail.foedus.util.Workspace;
 import com.icegreen.greenmail.util.GreenMailUtil;
 import com.icegreen.greenmail.util.InternetPrintWriter;
+import com.icegreen.greenmail.util.LineCodec;
 
 import javax.mail.internet.MimeMessage;
 import java.io.*;
@@ -97,25 +98,58 @@ public class MovingMessage {
      */
     public void readDotTerminatedContent(BufferedReader in)
             throws IOException {
+        PrintWriter dataWriter = startContent();
+        String line;
+        do {
+            line = in.readLine();
+        } while (appendContentLine(dataWriter, line));
+        finishContent();
+    }
+
+    /**
+     * Reads the contents of the connection until
+     * &lt;CRLF&gt;.&lt;CRLF&gt; is encountered.
+     *
+     * @param header additional header lines (CRLF terminated) to prepend, such as Received.
+     * @param in     the connection to read from.
+     */
+    public void readDotTerminatedContent(String header, LineCodec in)
+            throws IOException {
+        PrintWriter dataWriter = startContent();
+        dataWriter.print(header);
+        String line;
+        do {
+            line = in.readLine();
+        } while (appendContentLine(dataWriter, line));
+        finishContent();
+    }
+
+    private PrintWriter startContent() throws IOException {
         _content = _workspace.getTmpFile();
         Writer data = _content.getWriter();
-        PrintWriter dataWriter = new InternetPrintWriter(data);
-
-        while (true) {
-            String line = in.readLine();
-            if (line == null)
-                throw new EOFException("Did not receive <CRLF>.<CRLF>");
-
-            if (".".equals(line)) {
-                dataWriter.close();
-
-                break;
-            } else if (line.startsWith(".")) {
-                dataWriter.println(line.substring(1));
-            } else {
-                dataWriter.println(line);
-            }
+        return new InternetPrintWriter(data);
+    }
+
+    /**
+     * @return true, if more lines are expected.
+     */
+    private boolean appendContentLine(PrintWriter dataWriter, String line) throws EOFException {
+        if (line == null)
+            throw new EOFException("Did not receive <CRLF>.<CRLF>");
+
+        if (".".equals(line)) {
+            dataWriter.close();
+
+            return false;
+        } else if (line.startsWith(".")) {
+            dataWriter.println(line.substring(1));
+        } else {
+            dataWriter.println(line);
         }
+        return true;
+    }
+
+    private void finishContent() {
         try {
             message = GreenMailUtil.newMimeMessage(_content.getAsString());
         } catch (Exception e) {
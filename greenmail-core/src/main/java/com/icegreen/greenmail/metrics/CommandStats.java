@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency statistics of a protocol command, such as IMAP FETCH.
+ * <p/>
+ * Durations are recorded in a histogram with power of two buckets, in microseconds:
+ * Bucket <code>i</code> counts durations less than <code>2^i</code> microseconds, so percentiles
+ * are upper bounds with a precision of factor two. This keeps recording cheap and allocation free.
+ * <p/>
+ * Instances returned by {@link GreenMailMetrics#getCommandStats()} are immutable snapshots.
+ */
+public class CommandStats {
+    static final int BUCKETS = 32;
+
+    private final long count;
+    private final long totalMicros;
+    private final long maxMicros;
+    private final long[] histogram;
+
+    CommandStats(long count, long totalMicros, long maxMicros, long[] histogram) {
+        this.count = count;
+        this.totalMicros = totalMicros;
+        this.maxMicros = maxMicros;
+        this.histogram = histogram;
+    }
+
+    /**
+     * @return number of processed commands.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return total processing time in microseconds.
+     */
+    public long getTotalMicros() {
+        return totalMicros;
+    }
+
+    /**
+     * @return mean processing time in microseconds.
+     */
+    public long getMeanMicros() {
+        return count > 0 ? totalMicros / count : 0;
+    }
+
+    /**
+     * @return max processing time in microseconds.
+     */
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    /**
+     * @return median processing time in microseconds, as upper bound.
+     */
+    public long getP50Micros() {
+        return getPercentileMicros(0.5);
+    }
+
+    /**
+     * @return 99th percentile of processing time in microseconds, as upper bound.
+     */
+    public long getP99Micros() {
+        return getPercentileMicros(0.99);
+    }
+
+    /**
+     * @return the histogram, counting durations less than <code>2^i</code> microseconds in bucket <code>i</code>.
+     */
+    public long[] getHistogram() {
+        return histogram.clone();
+    }
+
+    private long getPercentileMicros(double percentile) {
+        long threshold = (long) Math.ceil(count * percentile);
+        long sum = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            sum += histogram[i];
+            if (sum >= threshold && sum > 0) {
+                return Math.min(1L << i, maxMicros);
+            }
+        }
+        return maxMicros;
+    }
+
+    @Override
+    public String toString() {
+        return "CommandStats{count=" + count +
+                ", meanMicros=" + getMeanMicros() +
+                ", p50Micros=" + getP50Micros() +
+                ", p99Micros=" + getP99Micros() +
+                ", maxMicros=" + maxMicros +
+                '}';
+    }
+
+    /**
+     * Thread safe recorder of command durations.
+     */
+    static class Recorder {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalMicros = new AtomicLong();
+        private final AtomicLong maxMicros = new AtomicLong();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        void record(long durationNanos) {
+            long micros = durationNanos / 1000L;
+            count.incrementAndGet();
+            totalMicros.addAndGet(micros);
+            long max;
+            while (micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)) {
+                // Retry, concurrently updated
+            }
+            // Bucket i holds durations < 2^i
+            int bucket = 64 - Long.numberOfLeadingZeros(micros);
+            histogram.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+        }
+
+        CommandStats snapshot() {
+            long[] buckets = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = histogram.get(i);
+            }
+            return new CommandStats(count.get(), totalMicros.get(), maxMicros.get(), buckets);
+        }
+    }
+}
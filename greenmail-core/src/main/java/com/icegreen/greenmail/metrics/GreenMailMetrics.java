@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.metrics;
+
+import com.icegreen.greenmail.store.FolderException;
+import com.icegreen.greenmail.store.MailFolder;
+import com.icegreen.greenmail.store.Store;
+import com.icegreen.greenmail.store.StoredMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects metrics of all protocol servers in memory, and forwards measurements to
+ * any additional {@link MetricsRegistry registries}.
+ * <p/>
+ * Exposed via JMX, see {@link GreenMailMetricsMXBean}.
+ */
+public class GreenMailMetrics implements MetricsRegistry, GreenMailMetricsMXBean {
+    private static final Logger log = LoggerFactory.getLogger(GreenMailMetrics.class);
+    /**
+     * JMX domain of the registered MBean.
+     */
+    public static final String JMX_DOMAIN = "com.icegreen.greenmail";
+
+    private final Store store;
+    private final List<MetricsRegistry> registries = new CopyOnWriteArrayList<>();
+
+    private final ConcurrentMap<String, AtomicLong> activeConnections = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> totalConnections = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> bytesReceived = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> bytesSent = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CommandStats.Recorder> commands = new ConcurrentHashMap<>();
+    private final AtomicLong messagesDelivered = new AtomicLong();
+
+    private ObjectName objectName;
+
+    /**
+     * Creates the metrics, including all {@link MetricsRegistry} service providers.
+     *
+     * @param store the store, for folder statistics.
+     */
+    public GreenMailMetrics(Store store) {
+        this.store = store;
+        for (MetricsRegistry registry : ServiceLoader.load(MetricsRegistry.class)) {
+            addRegistry(registry);
+        }
+    }
+
+    /**
+     * Adds a registry receiving all further measurements.
+     *
+     * @param registry the registry.
+     */
+    public void addRegistry(MetricsRegistry registry) {
+        registries.add(registry);
+    }
+
+    /**
+     * Removes a registry.
+     *
+     * @param registry the registry.
+     */
+    public void removeRegistry(MetricsRegistry registry) {
+        registries.remove(registry);
+    }
+
+    private static AtomicLong counter(ConcurrentMap<String, AtomicLong> counters, String key) {
+        AtomicLong counter = counters.get(key);
+        if (null == counter) {
+            counter = new AtomicLong();
+            AtomicLong previous = counters.putIfAbsent(key, counter);
+            if (null != previous) {
+                counter = previous; // Concurrently created
+            }
+        }
+        return counter;
+    }
+
+    private static Map<String, Long> snapshot(ConcurrentMap<String, AtomicLong> counters) {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().get());
+        }
+        return values;
+    }
+
+    @Override
+    public void connectionOpened(String protocol) {
+        counter(activeConnections, protocol).incrementAndGet();
+        counter(totalConnections, protocol).incrementAndGet();
+        for (MetricsRegistry registry : registries) {
+            registry.connectionOpened(protocol);
+        }
+    }
+
+    @Override
+    public void connectionClosed(String protocol) {
+        counter(activeConnections, protocol).decrementAndGet();
+        for (MetricsRegistry registry : registries) {
+            registry.connectionClosed(protocol);
+        }
+    }
+
+    @Override
+    public void commandProcessed(String protocol, String command, long durationNanos) {
+        String key = protocol + ' ' + command;
+        CommandStats.Recorder recorder = commands.get(key);
+        if (null == recorder) {
+            recorder = new CommandStats.Recorder();
+            CommandStats.Recorder previous = commands.putIfAbsent(key, recorder);
+            if (null != previous) {
+                recorder = previous; // Concurrently created
+            }
+        }
+        recorder.record(durationNanos);
+        for (MetricsRegistry registry : registries) {
+            registry.commandProcessed(protocol, command, durationNanos);
+        }
+    }
+
+    @Override
+    public void bytesReceived(String protocol, long count) {
+        counter(bytesReceived, protocol).addAndGet(count);
+        for (MetricsRegistry registry : registries) {
+            registry.bytesReceived(protocol, count);
+        }
+    }
+
+    @Override
+    public void bytesSent(String protocol, long count) {
+        counter(bytesSent, protocol).addAndGet(count);
+        for (MetricsRegistry registry : registries) {
+            registry.bytesSent(protocol, count);
+        }
+    }
+
+    @Override
+    public void messageDelivered() {
+        messagesDelivered.incrementAndGet();
+        for (MetricsRegistry registry : registries) {
+            registry.messageDelivered();
+        }
+    }
+
+    @Override
+    public Map<String, Long> getActiveConnections() {
+        return snapshot(activeConnections);
+    }
+
+    @Override
+    public Map<String, Long> getTotalConnections() {
+        return snapshot(totalConnections);
+    }
+
+    @Override
+    public Map<String, Long> getBytesReceived() {
+        return snapshot(bytesReceived);
+    }
+
+    @Override
+    public Map<String, Long> getBytesSent() {
+        return snapshot(bytesSent);
+    }
+
+    @Override
+    public long getMessagesDelivered() {
+        return messagesDelivered.get();
+    }
+
+    @Override
+    public Map<String, CommandStats> getCommandStats() {
+        Map<String, CommandStats> stats = new TreeMap<>();
+        for (Map.Entry<String, CommandStats.Recorder> entry : commands.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return stats;
+    }
+
+    @Override
+    public Map<String, Long> getFolderMessageCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (MailFolder folder : listFolders()) {
+            counts.put(folder.getFullName(), (long) folder.getMessageCount());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getFolderSizes() {
+        Map<String, Long> sizes = new TreeMap<>();
+        for (MailFolder folder : listFolders()) {
+            long size = 0;
+            for (StoredMessage message : folder.getMessages()) {
+                try {
+                    size += message.getAttributes().getSize();
+                } catch (FolderException e) {
+                    log.warn("Can not get size of message " + message.getUid() + " in " + folder.getFullName(), e);
+                }
+            }
+            sizes.put(folder.getFullName(), size);
+        }
+        return sizes;
+    }
+
+    private Iterable<MailFolder> listFolders() {
+        try {
+            return store.listMailboxes("*");
+        } catch (FolderException e) {
+            throw new IllegalStateException("Can not list folders", e);
+        }
+    }
+
+    @Override
+    public void reset() {
+        totalConnections.clear();
+        bytesReceived.clear();
+        bytesSent.clear();
+        commands.clear();
+        messagesDelivered.set(0);
+    }
+
+    /**
+     * Registers the metrics at the platform MBean server.
+     * Failures are logged, as metrics are not essential for running GreenMail.
+     *
+     * @param name the name, for distinguishing several GreenMail instances.
+     */
+    public synchronized void registerMBean(String name) {
+        if (null != objectName) {
+            return;
+        }
+        try {
+            ObjectName on = new ObjectName(JMX_DOMAIN + ":type=Metrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+            objectName = on;
+        } catch (JMException e) {
+            log.warn("Can not register metrics MBean " + name, e);
+        }
+    }
+
+    /**
+     * Unregisters the metrics from the platform MBean server, if registered.
+     */
+    public synchronized void unregisterMBean() {
+        if (null == objectName) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            log.warn("Can not unregister metrics MBean " + objectName, e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    /**
+     * @return the JMX name, or null if not registered.
+     */
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link GreenMailMetrics}.
+ * <p/>
+ * Registered as <code>com.icegreen.greenmail:type=Metrics,name=...</code> while GreenMail is running.
+ */
+public interface GreenMailMetricsMXBean {
+    /**
+     * @return number of currently open connections, by protocol.
+     */
+    Map<String, Long> getActiveConnections();
+
+    /**
+     * @return number of accepted connections, by protocol.
+     */
+    Map<String, Long> getTotalConnections();
+
+    /**
+     * @return number of bytes received, by protocol.
+     */
+    Map<String, Long> getBytesReceived();
+
+    /**
+     * @return number of bytes sent, by protocol.
+     */
+    Map<String, Long> getBytesSent();
+
+    /**
+     * @return number of messages delivered to recipient mailboxes.
+     */
+    long getMessagesDelivered();
+
+    /**
+     * @return command latencies, by protocol and command name (eg "imap FETCH").
+     */
+    Map<String, CommandStats> getCommandStats();
+
+    /**
+     * @return number of messages, by folder full name.
+     */
+    Map<String, Long> getFolderMessageCounts();
+
+    /**
+     * @return size of all messages in bytes, by folder full name.
+     */
+    Map<String, Long> getFolderSizes();
+
+    /**
+     * Resets all counters and statistics, except for active connections.
+     */
+    void reset();
+}
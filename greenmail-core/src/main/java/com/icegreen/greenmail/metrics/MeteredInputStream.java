@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts bytes read, as {@link MetricsRegistry#bytesReceived(String, long)}.
+ * <p/>
+ * Should wrap the raw socket stream below any buffering, so that the registry
+ * gets called once per chunk received.
+ */
+public class MeteredInputStream extends FilterInputStream {
+    private final MetricsRegistry metrics;
+    private final String protocol;
+
+    public MeteredInputStream(InputStream in, MetricsRegistry metrics, String protocol) {
+        super(in);
+        this.metrics = metrics;
+        this.protocol = protocol;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0) {
+            metrics.bytesReceived(protocol, 1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int count = in.read(b, off, len);
+        if (count > 0) {
+            metrics.bytesReceived(protocol, count);
+        }
+        return count;
+    }
+}
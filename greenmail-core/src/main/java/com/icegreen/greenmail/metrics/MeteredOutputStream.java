@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.metrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Counts bytes written, as {@link MetricsRegistry#bytesSent(String, long)}.
+ * <p/>
+ * Should wrap the raw socket stream below any buffering, so that the registry
+ * gets called once per chunk sent.
+ */
+public class MeteredOutputStream extends FilterOutputStream {
+    private final MetricsRegistry metrics;
+    private final String protocol;
+
+    public MeteredOutputStream(OutputStream out, MetricsRegistry metrics, String protocol) {
+        super(out);
+        this.metrics = metrics;
+        this.protocol = protocol;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        metrics.bytesSent(protocol, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        metrics.bytesSent(protocol, len);
+    }
+}
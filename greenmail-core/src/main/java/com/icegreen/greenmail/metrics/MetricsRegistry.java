@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.metrics;
+
+/**
+ * Receives measurements of the protocol servers.
+ * <p/>
+ * Besides the built in {@link GreenMailMetrics}, additional registries can be plugged in
+ * via {@link GreenMailMetrics#addRegistry(MetricsRegistry)} or as a service provider
+ * (<code>META-INF/services/com.icegreen.greenmail.metrics.MetricsRegistry</code>),
+ * eg for bridging to a monitoring system.
+ * <p/>
+ * Implementations must be thread safe and should return fast, as they get invoked by the
+ * connection handler threads.
+ */
+public interface MetricsRegistry {
+    /**
+     * Registry discarding all measurements.
+     */
+    MetricsRegistry NOOP = new MetricsRegistry() {
+        @Override
+        public void connectionOpened(String protocol) {
+            // Nothing to do
+        }
+
+        @Override
+        public void connectionClosed(String protocol) {
+            // Nothing to do
+        }
+
+        @Override
+        public void commandProcessed(String protocol, String command, long durationNanos) {
+            // Nothing to do
+        }
+
+        @Override
+        public void bytesReceived(String protocol, long count) {
+            // Nothing to do
+        }
+
+        @Override
+        public void bytesSent(String protocol, long count) {
+            // Nothing to do
+        }
+
+        @Override
+        public void messageDelivered() {
+            // Nothing to do
+        }
+    };
+
+    /**
+     * Called when a client connected.
+     *
+     * @param protocol the protocol, such as smtp or imaps.
+     */
+    void connectionOpened(String protocol);
+
+    /**
+     * Called when a client connection has been closed.
+     *
+     * @param protocol the protocol, such as smtp or imaps.
+     */
+    void connectionClosed(String protocol);
+
+    /**
+     * Called after a command has been processed.
+     *
+     * @param protocol      the protocol, such as smtp or imaps.
+     * @param command       the command name, eg FETCH.
+     * @param durationNanos the processing time in nanoseconds.
+     */
+    void commandProcessed(String protocol, String command, long durationNanos);
+
+    /**
+     * Called when data has been received from a client.
+     *
+     * @param protocol the protocol, such as smtp or imaps.
+     * @param count    the number of bytes.
+     */
+    void bytesReceived(String protocol, long count);
+
+    /**
+     * Called when data has been sent to a client.
+     *
+     * @param protocol the protocol, such as smtp or imaps.
+     * @param count    the number of bytes.
+     */
+    void bytesSent(String protocol, long count);
+
+    /**
+     * Called when a message has been delivered to a recipient mailbox.
+     */
+    void messageDelivered();
+}
@@ -6,12 +6,18 @@
  */
 package com.icegreen.greenmail.pop3;
 
-import com.icegreen.greenmail.foedus.util.StreamUtils;
-import com.icegreen.greenmail.util.InternetPrintWriter;
+import com.icegreen.greenmail.metrics.MeteredInputStream;
+import com.icegreen.greenmail.metrics.MeteredOutputStream;
+import com.icegreen.greenmail.util.DummySSLServerSocketFactory;
+import com.icegreen.greenmail.util.EncodingUtil;
+import com.icegreen.greenmail.util.LineCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketException;
@@ -29,23 +35,22 @@ public class Pop3Connection {
     InetAddress _clientAddress;
 
     // IO stuff
-    BufferedReader _in;
-    InternetPrintWriter _out;
+    LineCodec _codec;
+    /** Metered socket stream below the codec, for lines bypassing the buffered ones */
+    private volatile OutputStream _out;
 
     public Pop3Connection(Pop3Handler handler, Socket socket)
             throws IOException {
+        _handler = handler;
         configureSocket(socket);
         configureStreams();
-
-        _handler = handler;
     }
 
     private void configureStreams()
             throws IOException {
-        OutputStream o = _socket.getOutputStream();
-        InputStream i = _socket.getInputStream();
-        _out = new InternetPrintWriter(o, true);
-        _in = new BufferedReader(new InputStreamReader(i));
+        _out = new MeteredOutputStream(_socket.getOutputStream(), _handler.getMetrics(), _handler.getProtocol());
+        _codec = new LineCodec(
+                new MeteredInputStream(_socket.getInputStream(), _handler.getMetrics(), _handler.getProtocol()), _out);
     }
 
     private void configureSocket(Socket socket)
@@ -61,31 +66,108 @@ public class Pop3Connection {
     }
 
     public void quit() {
+        flush();
         _handler.close();
     }
 
+    /**
+     * Sends a line. The line gets buffered until {@link #flush()} or until
+     * the next line from the client is read.
+     *
+     * @param line the line.
+     */
     public void println(String line) {
         if(log.isDebugEnabled()) {
             log.debug("S: " + line);
         }
-        _out.print(line);
-        println();
+        try {
+            _codec.writeLine(line);
+        } catch (IOException e) {
+            // Broken connection gets detected when reading next command
+            log.warn("Can not send '" + line + "'", e);
+        }
     }
 
     public void println() {
-        _out.print("\r\n");
-        _out.flush();
+        try {
+            _codec.writeLineEnd();
+        } catch (IOException e) {
+            log.warn("Can not send line end", e);
+        }
     }
 
     public void print(Reader in)
             throws IOException {
-        StreamUtils.copy(in, _out);
-        _out.flush();
+        _codec.write(in);
+    }
+
+    /**
+     * Gets a stream for writing raw bytes, buffered like lines written via {@link #println(String)}.
+     *
+     * @return the stream.
+     */
+    public OutputStream getOutputStream() {
+        return _codec.asOutputStream();
+    }
+
+    /**
+     * Sends a line right away, bypassing any buffered lines.
+     * Only for saying goodbye from another thread, while the handler waits for the next command.
+     *
+     * @param line the line.
+     */
+    void printlnImmediately(String line) {
+        if (log.isDebugEnabled()) {
+            log.debug("S: " + line);
+        }
+        try {
+            _out.write((line + "\r\n").getBytes(EncodingUtil.CHARSET_EIGHT_BIT_ENCODING));
+            _out.flush();
+        } catch (IOException e) {
+            log.debug("Can not send '" + line + "'", e);
+        }
+    }
+
+    /**
+     * Writes any buffered lines to the client.
+     */
+    public void flush() {
+        try {
+            _codec.flush();
+        } catch (IOException e) {
+            log.warn("Can not flush", e);
+        }
+    }
+
+    /**
+     * @return true, if connection is using TLS, either by POP3S or upgraded via STLS.
+     */
+    public boolean isTlsActive() {
+        return _socket instanceof SSLSocket;
+    }
+
+    /**
+     * Upgrades the connection to TLS (STLS).
+     * Replies must be flushed before, and any buffered client input gets discarded.
+     *
+     * @throws IOException on error, eg failed TLS handshake.
+     */
+    public void startTls()
+            throws IOException {
+        _socket = new DummySSLServerSocketFactory().upgradeToTls(_socket);
+        configureStreams();
+    }
+
+    /**
+     * @return true, if the next line might have been received already, so reading it does not block.
+     */
+    public boolean hasBufferedInput() {
+        return _codec.hasBufferedInput();
     }
 
     public String readLine()
             throws IOException {
-        String line = _in.readLine();
+        String line = _codec.readLine();
         
         if(log.isDebugEnabled()) {
             log.debug("C: " + line);
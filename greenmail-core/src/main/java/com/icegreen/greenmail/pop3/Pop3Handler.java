@@ -7,11 +7,14 @@
 package com.icegreen.greenmail.pop3;
 
 
+import com.icegreen.greenmail.metrics.MetricsRegistry;
 import com.icegreen.greenmail.pop3.commands.Pop3Command;
 import com.icegreen.greenmail.pop3.commands.Pop3CommandRegistry;
 import com.icegreen.greenmail.server.BuildInfo;
+import com.icegreen.greenmail.server.DrainState;
 import com.icegreen.greenmail.server.ProtocolHandler;
 import com.icegreen.greenmail.user.UserManager;
+import com.icegreen.greenmail.util.ServerSetup;
 
 import java.io.IOException;
 import java.net.Socket;
@@ -20,6 +23,7 @@ import java.util.StringTokenizer;
 
 
 public class Pop3Handler implements ProtocolHandler {
+    private static final String SERVER_SHUTTING_DOWN = "-ERR Server shutting down";
     Pop3CommandRegistry _registry;
     Pop3Connection _conn;
     UserManager _manager;
@@ -27,12 +31,31 @@ public class Pop3Handler implements ProtocolHandler {
     boolean _quitting;
     String _currentLine;
     private Socket _socket;
+    private final DrainState _drainState = new DrainState();
+    private final MetricsRegistry _metrics;
+    private final String _protocol;
 
     public Pop3Handler(Pop3CommandRegistry registry,
                        UserManager manager, Socket socket) {
+        this(registry, manager, socket, MetricsRegistry.NOOP, ServerSetup.PROTOCOL_POP3);
+    }
+
+    public Pop3Handler(Pop3CommandRegistry registry,
+                       UserManager manager, Socket socket,
+                       MetricsRegistry metrics, String protocol) {
         _registry = registry;
         _manager = manager;
         _socket = socket;
+        _metrics = metrics;
+        _protocol = protocol;
+    }
+
+    MetricsRegistry getMetrics() {
+        return _metrics;
+    }
+
+    String getProtocol() {
+        return _protocol;
     }
 
     @Override
@@ -49,9 +72,11 @@ public class Pop3Handler implements ProtocolHandler {
                 handleCommand();
             }
 
+            _conn.flush();
             _conn.close();
         } catch (SocketTimeoutException ste) {
             _conn.println("421 Service shutting down and closing transmission channel");
+            _conn.flush();
 
         } catch (Exception e) {
         } finally {
@@ -67,10 +92,36 @@ public class Pop3Handler implements ProtocolHandler {
         _conn.println("+OK POP3 GreenMail Server v" + BuildInfo.INSTANCE.getProjectVersion() + " ready");
     }
 
+    /**
+     * Handles the next command.
+     * <p/>
+     * Supports <a href="https://tools.ietf.org/html/rfc2449#section-6.6">PIPELINING</a>:
+     * responses are buffered and only flushed once all commands already received got processed,
+     * as the connection flushes pending output before blocking for more input.
+     */
     void handleCommand()
             throws IOException {
+        if (_conn.hasBufferedInput()) {
+            if (_drainState.isDraining()) {
+                sayGoodbye();
+                return;
+            }
+        } else {
+            // Flush before waiting, so that a goodbye can be sent by a draining thread meanwhile
+            _conn.flush();
+            if (!_drainState.enterIdle()) {
+                sayGoodbye();
+                return;
+            }
+        }
+
         _currentLine = _conn.readLine();
 
+        if (!_drainState.leaveIdle()) {
+            // Drained while waiting, goodbye already sent
+            return;
+        }
+
         if (_currentLine == null) {
             close();
 
@@ -94,7 +145,28 @@ public class Pop3Handler implements ProtocolHandler {
             return;
         }
 
-        command.execute(_conn, _state, _currentLine);
+        long start = System.nanoTime();
+        try {
+            command.execute(_conn, _state, _currentLine);
+        } finally {
+            _metrics.commandProcessed(_protocol, commandName, System.nanoTime() - start);
+        }
+    }
+
+    private void sayGoodbye() {
+        _conn.println(SERVER_SHUTTING_DOWN);
+        _conn.quit();
+    }
+
+    @Override
+    public void drain() {
+        _drainState.drain(new Runnable() {
+            @Override
+            public void run() {
+                _conn.printlnImmediately(SERVER_SHUTTING_DOWN);
+                close();
+            }
+        });
     }
 
     @Override
@@ -8,6 +8,7 @@ package com.icegreen.greenmail.pop3;
 
 import com.icegreen.greenmail.server.AbstractServer;
 import com.icegreen.greenmail.Managers;
+import com.icegreen.greenmail.metrics.MetricsRegistry;
 import com.icegreen.greenmail.pop3.commands.Pop3CommandRegistry;
 import com.icegreen.greenmail.server.ProtocolHandler;
 import com.icegreen.greenmail.util.ServerSetup;
@@ -23,8 +24,9 @@ public class Pop3Server extends AbstractServer {
     }
 
     @Override
-    protected ProtocolHandler createProtocolHandler(final Socket clientSocket) {
-        return new Pop3Handler(new Pop3CommandRegistry(), managers.getUserManager(), clientSocket);
+    protected ProtocolHandler createProtocolHandler(final Socket clientSocket, MetricsRegistry metrics) {
+        return new Pop3Handler(new Pop3CommandRegistry(), managers.getUserManager(), clientSocket,
+                metrics, getProtocol());
     }
 
     @Override
@@ -7,20 +7,42 @@
 package com.icegreen.greenmail.pop3;
 
 import com.icegreen.greenmail.imap.ImapHostManager;
+import com.icegreen.greenmail.imap.commands.IdRange;
 import com.icegreen.greenmail.store.FolderException;
 import com.icegreen.greenmail.store.MailFolder;
+import com.icegreen.greenmail.store.StoredMessage;
 import com.icegreen.greenmail.user.GreenMailUser;
 import com.icegreen.greenmail.user.NoSuchUserException;
 import com.icegreen.greenmail.user.UserException;
 import com.icegreen.greenmail.user.UserManager;
 
+import javax.mail.Flags;
+import javax.mail.MessagingException;
+import java.util.List;
 
+/**
+ * POP3 session state.
+ * <p/>
+ * On authentication a snapshot of the maildrop is taken, as described in
+ * <a href="https://tools.ietf.org/html/rfc1939#section-4">RFC 1939</a>:
+ * messages keep their message number and size for the whole session,
+ * and messages marked as deleted are only removed on QUIT.
+ */
 public class Pop3State {
+    private static final Flags FLAGS_DELETED = new Flags(Flags.Flag.DELETED);
+
     UserManager _manager;
     GreenMailUser _user;
     MailFolder _inbox;
     private ImapHostManager imapHostManager;
 
+    // Maildrop snapshot, indexed by message number - 1
+    private StoredMessage[] messages;
+    private long[] sizes;
+    private boolean[] deleted;
+    private int undeletedCount;
+    private long undeletedSize;
+
     public Pop3State(UserManager manager) {
         _manager = manager;
         this.imapHostManager = manager.getImapHostManager();
@@ -55,11 +77,136 @@ public class Pop3State {
             throw new UserException("No user selected");
 
         _user.authenticate(pass);
-        _inbox = imapHostManager.getInbox(_user);
+        MailFolder inbox = imapHostManager.getInbox(_user);
+        createSnapshot(inbox);
+        _inbox = inbox;
+    }
+
+    private void createSnapshot(MailFolder inbox) throws FolderException {
+        List<StoredMessage> nonDeletedMessages = inbox.getNonDeletedMessages();
+        int count = nonDeletedMessages.size();
+        messages = nonDeletedMessages.toArray(new StoredMessage[count]);
+        sizes = new long[count];
+        deleted = new boolean[count];
+        undeletedCount = count;
+        undeletedSize = 0;
+        for (int i = 0; i < count; i++) {
+            try {
+                sizes[i] = messages[i].getMimeMessage().getSize();
+            } catch (MessagingException e) {
+                throw new FolderException("Can not get size of message " + (i + 1), e);
+            }
+            undeletedSize += sizes[i];
+        }
     }
 
     public MailFolder getFolder() {
 
         return _inbox;
     }
+
+    /**
+     * @return the number of messages in the maildrop snapshot, including messages marked as deleted.
+     */
+    public int getMessageCount() {
+        return messages.length;
+    }
+
+    /**
+     * @return the number of messages not marked as deleted.
+     */
+    public int getUndeletedMessageCount() {
+        return undeletedCount;
+    }
+
+    /**
+     * @return the size in octets of all messages not marked as deleted.
+     */
+    public long getUndeletedMessageSize() {
+        return undeletedSize;
+    }
+
+    /**
+     * Gets a message by message number.
+     *
+     * @param msn the message number, starting with 1.
+     * @return the message, or null if no such message exists or message is marked as deleted.
+     */
+    public StoredMessage getMessage(int msn) {
+        return isValid(msn) && !deleted[msn - 1] ? messages[msn - 1] : null;
+    }
+
+    /**
+     * @param msn the message number, starting with 1.
+     * @return the size in octets as of session start.
+     */
+    public long getMessageSize(int msn) {
+        return sizes[msn - 1];
+    }
+
+    private boolean isValid(int msn) {
+        return msn > 0 && msn <= messages.length;
+    }
+
+    /**
+     * @param msn the message number, starting with 1.
+     * @return true if message exists and is marked as deleted.
+     */
+    public boolean isDeleted(int msn) {
+        return isValid(msn) && deleted[msn - 1];
+    }
+
+    /**
+     * Marks a message as deleted. Gets removed from the folder when the session ends via QUIT.
+     *
+     * @param msn the message number, starting with 1.
+     */
+    public void markDeleted(int msn) {
+        if (!deleted[msn - 1]) {
+            deleted[msn - 1] = true;
+            undeletedCount--;
+            undeletedSize -= sizes[msn - 1];
+        }
+    }
+
+    /**
+     * Unmarks all messages marked as deleted.
+     *
+     * @return the number of unmarked messages.
+     */
+    public int resetDeleted() {
+        int count = messages.length - undeletedCount;
+        for (int i = 0; i < deleted.length; i++) {
+            deleted[i] = false;
+        }
+        undeletedCount = messages.length;
+        undeletedSize = 0;
+        for (long size : sizes) {
+            undeletedSize += size;
+        }
+        return count;
+    }
+
+    /**
+     * Removes all messages marked as deleted from the folder.
+     *
+     * @throws FolderException on error.
+     */
+    public void expungeDeleted() throws FolderException {
+        if (null == _inbox || undeletedCount == messages.length) {
+            return; // Nothing to do
+        }
+        long[] uids = new long[messages.length - undeletedCount];
+        int idx = 0;
+        for (int i = 0; i < messages.length; i++) {
+            if (deleted[i]) {
+                uids[idx++] = messages[i].getUid();
+            }
+        }
+        // Snapshot is in ascending uid order.
+        // Single pass over the folder each, ignoring messages already removed by another session
+        IdRange[] ranges = IdRange.convertUidsToIdRangeArray(uids);
+        _inbox.setFlags(FLAGS_DELETED, true, ranges, true, null);
+        _inbox.expunge(ranges);
+    }
 }
@@ -23,8 +23,14 @@ import com.icegreen.greenmail.pop3.Pop3State;
  * Examples:
  *   C: CAPA
  *   S: +OK
+ *   S: TOP
+ *   S: USER
  *   S: UIDL
+ *   S: PIPELINING
+ *   S: STLS
  *   S: .
+ *
+ * No SASL capability is announced, as AUTH is not supported.
  */
 public class CapaCommand extends Pop3Command {
     @Override
@@ -34,9 +40,15 @@ public class CapaCommand extends Pop3Command {
 
     @Override
     public void execute(Pop3Connection conn, Pop3State state, String cmd) {
-        // We don't support any additional capabilities
         conn.println("+OK");
+        conn.println("TOP");
+        conn.println("USER");
         conn.println("UIDL");
+        // See Pop3Handler: Responses are flushed once all pipelined commands got processed
+        conn.println("PIPELINING");
+        if (!state.isAuthenticated() && !conn.isTlsActive()) {
+            conn.println("STLS");
+        }
         conn.println(".");
     }
 }
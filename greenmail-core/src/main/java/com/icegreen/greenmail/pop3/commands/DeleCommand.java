@@ -6,14 +6,8 @@
  */
 package com.icegreen.greenmail.pop3.commands;
 
-import com.icegreen.greenmail.foedus.util.MsgRangeFilter;
 import com.icegreen.greenmail.pop3.Pop3Connection;
 import com.icegreen.greenmail.pop3.Pop3State;
-import com.icegreen.greenmail.store.MailFolder;
-import com.icegreen.greenmail.store.StoredMessage;
-
-import javax.mail.Flags;
-import java.util.List;
 
 
 public class DeleCommand
@@ -28,24 +22,21 @@ public class DeleCommand
     public void execute(Pop3Connection conn, Pop3State state,
                         String cmd) {
         try {
-            MailFolder inbox = state.getFolder();
             String[] cmdLine = cmd.split(" ");
 
-            String msgNumStr = cmdLine[1];
-            List<StoredMessage> msgList = inbox.getMessages(new MsgRangeFilter(msgNumStr, false));
-            if (msgList.size() != 1) {
-                conn.println("-ERR no such message");
-
+            int msn = Integer.parseInt(cmdLine[1]);
+            if (state.isDeleted(msn)) {
+                conn.println("-ERR message already deleted");
                 return;
             }
+            if (null == state.getMessage(msn)) {
+                conn.println("-ERR no such message");
 
-            StoredMessage msg = msgList.get(0);
-            if (msg.isSet(Flags.Flag.DELETED)) {
-                conn.println("-ERR message already deleted");
                 return;
             }
 
-            msg.setFlag(Flags.Flag.DELETED, true);
+            // Removed from folder on QUIT
+            state.markDeleted(msn);
 
             conn.println("+OK message scheduled for deletion");
         } catch (Exception e) {
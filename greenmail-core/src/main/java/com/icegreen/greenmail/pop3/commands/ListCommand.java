@@ -6,13 +6,8 @@
  */
 package com.icegreen.greenmail.pop3.commands;
 
-import com.icegreen.greenmail.foedus.util.MsgRangeFilter;
 import com.icegreen.greenmail.pop3.Pop3Connection;
 import com.icegreen.greenmail.pop3.Pop3State;
-import com.icegreen.greenmail.store.MailFolder;
-import com.icegreen.greenmail.store.StoredMessage;
-
-import java.util.List;
 
 
 public class ListCommand
@@ -27,24 +22,23 @@ public class ListCommand
     public void execute(Pop3Connection conn, Pop3State state,
                         String cmd) {
         try {
-            MailFolder inbox = state.getFolder();
             String[] cmdLine = cmd.split(" ");
             if (cmdLine.length > 1) {
                 String msgNumStr = cmdLine[1];
-                List<StoredMessage> msgList = inbox.getMessages(new MsgRangeFilter(msgNumStr, false));
-                if (msgList.size() != 1) {
+                int msn = Integer.parseInt(msgNumStr);
+                if (null == state.getMessage(msn)) {
                     conn.println("-ERR no such message");
 
                     return;
                 }
 
-                StoredMessage msg = msgList.get(0);
-                conn.println("+OK " + msgNumStr + " " + msg.getMimeMessage().getSize());
+                conn.println("+OK " + msgNumStr + " " + state.getMessageSize(msn));
             } else {
-                List<StoredMessage> messages = inbox.getNonDeletedMessages();
                 conn.println("+OK");
-                for (StoredMessage msg : messages) {
-                    conn.println(inbox.getMsn(msg.getUid()) + " " + msg.getMimeMessage().getSize());
+                for (int msn = 1; msn <= state.getMessageCount(); msn++) {
+                    if (!state.isDeleted(msn)) {
+                        conn.println(msn + " " + state.getMessageSize(msn));
+                    }
                 }
 
                 conn.println(".");
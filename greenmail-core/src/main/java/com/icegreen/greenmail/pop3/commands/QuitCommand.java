@@ -9,7 +9,6 @@ package com.icegreen.greenmail.pop3.commands;
 import com.icegreen.greenmail.pop3.Pop3Connection;
 import com.icegreen.greenmail.pop3.Pop3State;
 import com.icegreen.greenmail.store.FolderException;
-import com.icegreen.greenmail.store.MailFolder;
 
 
 public class QuitCommand
@@ -24,10 +23,9 @@ public class QuitCommand
     public void execute(Pop3Connection conn, Pop3State state,
                         String cmd) {
         try {
-            MailFolder folder = state.getFolder();
-            if (folder != null) {
-                folder.expunge();
-
+            if (state.isAuthenticated()) {
+                // UPDATE state
+                state.expungeDeleted();
             }
 
             conn.println("+OK bye see you soon");
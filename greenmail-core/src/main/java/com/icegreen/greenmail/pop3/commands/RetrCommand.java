@@ -6,16 +6,12 @@
  */
 package com.icegreen.greenmail.pop3.commands;
 
-import com.icegreen.greenmail.foedus.util.MsgRangeFilter;
 import com.icegreen.greenmail.pop3.Pop3Connection;
 import com.icegreen.greenmail.pop3.Pop3State;
-import com.icegreen.greenmail.store.MailFolder;
 import com.icegreen.greenmail.store.StoredMessage;
-import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.DotStuffingOutputStream;
 
 import javax.mail.Flags;
-import java.io.StringReader;
-import java.util.List;
 
 
 public class RetrCommand
@@ -30,22 +26,20 @@ public class RetrCommand
     public void execute(Pop3Connection conn, Pop3State state,
                         String cmd) {
         try {
-            MailFolder inbox = state.getFolder();
             String[] cmdLine = cmd.split(" ");
 
-            String msgNumStr = cmdLine[1];
-            List<StoredMessage> msgList = inbox.getMessages(new MsgRangeFilter(msgNumStr, false));
-            if (msgList.size() != 1) {
+            StoredMessage msg = state.getMessage(Integer.parseInt(cmdLine[1]));
+            if (null == msg) {
                 conn.println("-ERR no such message");
 
                 return;
             }
 
-            StoredMessage msg = msgList.get(0);
-            String email = GreenMailUtil.getWholeMessage(msg.getMimeMessage());
             conn.println("+OK");
-            conn.print(new StringReader(email));
-            conn.println();
+            // Stream the message, without materializing it as String
+            DotStuffingOutputStream out = new DotStuffingOutputStream(conn.getOutputStream());
+            msg.getMimeMessage().writeTo(out);
+            out.finish();
             conn.println(".");
             msg.setFlag(Flags.Flag.SEEN, true);
         } catch (Exception e) {
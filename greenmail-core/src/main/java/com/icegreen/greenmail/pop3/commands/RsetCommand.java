@@ -2,11 +2,6 @@ package com.icegreen.greenmail.pop3.commands;
 
 import com.icegreen.greenmail.pop3.Pop3Connection;
 import com.icegreen.greenmail.pop3.Pop3State;
-import com.icegreen.greenmail.store.MailFolder;
-import com.icegreen.greenmail.store.StoredMessage;
-
-import javax.mail.Flags;
-import java.util.List;
 
 /**
  * Handles the RSET command.
@@ -37,26 +32,12 @@ import java.util.List;
 public class RsetCommand extends Pop3Command {
     @Override
     public boolean isValidForState(Pop3State state) {
-        return true;
+        return state.isAuthenticated();
     }
 
     @Override
     public void execute(Pop3Connection conn, Pop3State state, String cmd) {
-        conn.println("+OK");
-        try {
-            MailFolder inbox = state.getFolder();
-            List<StoredMessage> msgList = inbox.getMessages();
-            int count = 0;
-            for (StoredMessage msg : msgList) {
-                if (msg.isSet(Flags.Flag.DELETED)) {
-                    count++;
-                    msg.setFlag(Flags.Flag.DELETED, false);
-                }
-            }
-
-            conn.println("+OK maildrop has "+count+" messages undeleted.");
-        } catch (Exception e) {
-            conn.println("-ERR " + e);
-        }
+        int count = state.resetDeleted();
+        conn.println("+OK maildrop has "+count+" messages undeleted.");
     }
 }
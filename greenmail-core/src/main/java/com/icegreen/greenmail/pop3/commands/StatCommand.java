@@ -6,14 +6,8 @@
  */
 package com.icegreen.greenmail.pop3.commands;
 
-import com.icegreen.greenmail.mail.MailException;
 import com.icegreen.greenmail.pop3.Pop3Connection;
 import com.icegreen.greenmail.pop3.Pop3State;
-import com.icegreen.greenmail.store.MailFolder;
-import com.icegreen.greenmail.store.StoredMessage;
-
-import javax.mail.MessagingException;
-import java.util.List;
 
 
 public class StatCommand
@@ -26,28 +20,6 @@ public class StatCommand
     @Override
     public void execute(Pop3Connection conn, Pop3State state,
                         String cmd) {
-        try {
-            MailFolder inbox = state.getFolder();
-            List<StoredMessage> messages = inbox.getNonDeletedMessages();
-            long size = sumMessageSizes(messages);
-            conn.println("+OK " + messages.size() + " " + size);
-        } catch (Exception me) {
-            conn.println("-ERR " + me);
-        }
-    }
-
-    long sumMessageSizes(List<StoredMessage> messages)
-            throws MailException {
-        long total = 0;
-
-        for (StoredMessage msg : messages) {
-            try {
-                total += msg.getMimeMessage().getSize();
-            } catch (MessagingException e) {
-                throw new RuntimeException(e);
-            }
-        }
-
-        return total;
+        conn.println("+OK " + state.getUndeletedMessageCount() + " " + state.getUndeletedMessageSize());
     }
 }
\ No newline at end of file
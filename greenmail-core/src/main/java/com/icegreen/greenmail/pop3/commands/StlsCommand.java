@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.pop3.commands;
+
+import com.icegreen.greenmail.pop3.Pop3Connection;
+import com.icegreen.greenmail.pop3.Pop3State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Handles the STLS command.
+ *
+ * See https://tools.ietf.org/html/rfc2595#section-4
+ *
+ * Arguments: none
+ *
+ * Restrictions:
+ *   Only permitted in AUTHORIZATION state
+ *
+ * Possible Responses:
+ *   +OK -- begin TLS negotiation
+ *   -ERR -- TLS already active
+ */
+public class StlsCommand extends Pop3Command {
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    @Override
+    public boolean isValidForState(Pop3State state) {
+        return !state.isAuthenticated();
+    }
+
+    @Override
+    public void execute(Pop3Connection conn, Pop3State state, String cmd) {
+        if (conn.isTlsActive()) {
+            conn.println("-ERR TLS already active");
+            return;
+        }
+
+        conn.println("+OK Begin TLS negotiation");
+        conn.flush();
+        try {
+            conn.startTls();
+        } catch (IOException e) {
+            log.warn("TLS negotiation failed", e);
+            conn.quit();
+        }
+    }
+}
@@ -6,17 +6,18 @@
  */
 package com.icegreen.greenmail.pop3.commands;
 
-import com.icegreen.greenmail.foedus.util.MsgRangeFilter;
 import com.icegreen.greenmail.pop3.Pop3Connection;
 import com.icegreen.greenmail.pop3.Pop3State;
-import com.icegreen.greenmail.store.MailFolder;
 import com.icegreen.greenmail.store.StoredMessage;
-import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.DotStuffingOutputStream;
+import com.icegreen.greenmail.util.EncodingUtil;
 
-import java.io.BufferedReader;
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
 import java.io.IOException;
-import java.io.StringReader;
-import java.util.List;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
 
 
 public class TopCommand
@@ -31,55 +32,64 @@ public class TopCommand
     public void execute(Pop3Connection conn, Pop3State state,
                         String cmd) {
         try {
-            MailFolder inbox = state.getFolder();
             String[] cmdLine = cmd.split(" ");
             if (cmdLine.length < 3)
                 throw new IllegalArgumentException("range and line count required");
 
-            String msgNumStr = cmdLine[1];
-            List<StoredMessage> msgList = inbox.getMessages(new MsgRangeFilter(msgNumStr, false));
-            if (msgList.size() != 1) {
+            StoredMessage msg = state.getMessage(Integer.parseInt(cmdLine[1]));
+            if (null == msg) {
                 conn.println("-ERR no such message");
 
                 return;
             }
 
-            StoredMessage msg = msgList.get(0);
-
             int numLines = Integer.parseInt(cmdLine[2]);
 
-            try (BufferedReader in = new BufferedReader(
-                    new StringReader(GreenMailUtil.getWholeMessage(msg.getMimeMessage())))) {
-                conn.println("+OK");
-
-                copyHeaders(in, conn);
-                copyLines(in, conn, numLines);
+            MimeMessage mimeMessage = msg.getMimeMessage();
+            conn.println("+OK");
+            DotStuffingOutputStream out = new DotStuffingOutputStream(conn.getOutputStream());
+            copyHeaders(mimeMessage, out);
+            if (numLines > 0) {
+                try (InputStream in = mimeMessage.getRawInputStream()) {
+                    copyLines(in, out, numLines);
+                }
             }
+            out.finish();
             conn.println(".");
         } catch (Exception e) {
             conn.println("-ERR " + e);
         }
     }
 
-    void copyHeaders(BufferedReader in, Pop3Connection conn)
-            throws IOException {
-        String line;
-        while ((line = in.readLine()) != null) {
-            conn.println(line);
-            if ("".equals(line))
-
-                break;
+    void copyHeaders(MimeMessage mimeMessage, OutputStream out)
+            throws IOException, MessagingException {
+        Enumeration<?> headerLines = mimeMessage.getAllHeaderLines();
+        while (headerLines.hasMoreElements()) {
+            String line = (String) headerLines.nextElement();
+            out.write(line.getBytes(EncodingUtil.CHARSET_EIGHT_BIT_ENCODING));
+            out.write('\n');
         }
+        // Header separator
+        out.write('\n');
     }
 
-    void copyLines(BufferedReader in, Pop3Connection conn,
+    /**
+     * Copies the given number of lines, without reading any further.
+     */
+    void copyLines(InputStream in, OutputStream out,
                    int numLines)
             throws IOException {
+        byte[] buf = new byte[4096];
         int count = 0;
-        String line;
-        while ((line = in.readLine()) != null && count < numLines) {
-            conn.println(line);
-            count++;
+        int len;
+        while (count < numLines && (len = in.read(buf)) != -1) {
+            int end = 0;
+            while (end < len && count < numLines) {
+                if (buf[end++] == '\n') {
+                    count++;
+                }
+            }
+            out.write(buf, 0, end);
         }
     }
 }
\ No newline at end of file
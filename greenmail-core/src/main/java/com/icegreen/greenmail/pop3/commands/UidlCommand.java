@@ -6,15 +6,10 @@
  */
 package com.icegreen.greenmail.pop3.commands;
 
-import com.icegreen.greenmail.foedus.util.MsgRangeFilter;
 import com.icegreen.greenmail.pop3.Pop3Connection;
 import com.icegreen.greenmail.pop3.Pop3State;
-import com.icegreen.greenmail.store.FolderException;
-import com.icegreen.greenmail.store.MailFolder;
 import com.icegreen.greenmail.store.StoredMessage;
 
-import java.util.List;
-
 
 public class UidlCommand
         extends Pop3Command {
@@ -28,32 +23,30 @@ public class UidlCommand
     public void execute(Pop3Connection conn, Pop3State state,
                         String cmd) {
         try {
-            MailFolder inbox = state.getFolder();
             String[] cmdLine = cmd.split(" ");
-            List<StoredMessage> messages;
             if (cmdLine.length > 1) {
                 String msgNumStr = cmdLine[1];
-                List<StoredMessage> msgList = inbox.getMessages(new MsgRangeFilter(msgNumStr, false));
-                if (msgList.size() != 1) {
+                StoredMessage msg = state.getMessage(Integer.parseInt(msgNumStr));
+                if (null == msg) {
                     conn.println("-ERR no such message");
 
                     return;
                 }
 
-                StoredMessage msg = msgList.get(0);
                 conn.println("+OK " + msgNumStr + " " + msg.getUid());
             } else {
-                messages = inbox.getNonDeletedMessages();
-
                 conn.println("+OK");
-                for (StoredMessage msg : messages) {
-                    conn.println(inbox.getMsn(msg.getUid()) + " " + msg.getUid());
+                for (int msn = 1; msn <= state.getMessageCount(); msn++) {
+                    StoredMessage msg = state.getMessage(msn);
+                    if (null != msg) {
+                        conn.println(msn + " " + msg.getUid());
+                    }
                 }
 
                 conn.println(".");
             }
-        } catch (FolderException me) {
-            conn.println("-ERR " + me);
+        } catch (NumberFormatException e) {
+            conn.println("-ERR " + e);
         }
     }
 }
\ No newline at end of file
@@ -5,6 +5,7 @@
 package com.icegreen.greenmail.server;
 
 import com.icegreen.greenmail.Managers;
+import com.icegreen.greenmail.metrics.MetricsRegistry;
 import com.icegreen.greenmail.util.DummySSLServerSocketFactory;
 import com.icegreen.greenmail.util.ServerSetup;
 import com.icegreen.greenmail.util.Service;
@@ -15,8 +16,15 @@ import javax.mail.NoSuchProviderException;
 import javax.mail.Session;
 import javax.mail.Store;
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.net.*;
+import java.nio.channels.ServerSocketChannel;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Wael Chatila
@@ -29,10 +37,17 @@ public abstract class AbstractServer extends Thread implements Service {
     protected ServerSocket serverSocket = null;
     protected Managers managers;
     protected ServerSetup setup;
-    private final List<ProtocolHandler> handlers = Collections.synchronizedList(new ArrayList<ProtocolHandler>());
+    /** Open connections, with the handling thread. Concurrent, as clients connect and disconnect at high rates */
+    private final ConcurrentMap<Connection, Thread> connections = new ConcurrentHashMap<>();
     private volatile boolean keepRunning = false;
     private volatile boolean running = false;
-    private final Object startupMonitor = new Object();
+    private final CountDownLatch startupLatch = new CountDownLatch(1);
+    /** Optional latch shared by several servers starting in parallel */
+    private CountDownLatch sharedStartupLatch;
+    /** Additional acceptor threads, see {@link ServerSetup#setAcceptorThreads(int)} */
+    private final List<Thread> acceptors = new ArrayList<>();
+    /** Server sockets of additional acceptors, if bound to the same port via SO_REUSEPORT */
+    private final List<ServerSocket> acceptorSockets = new CopyOnWriteArrayList<>();
 
     protected AbstractServer(ServerSetup setup, Managers managers) {
         this.setup = setup;
@@ -53,20 +68,44 @@ public abstract class AbstractServer extends Thread implements Service {
      * Create a new, specific protocol handler such as for IMAP.
      *
      * @param clientSocket the client socket to use.
+     * @param metrics      the metrics of the connection, passing measurements on to the managers metrics.
      * @return the new protocol handler.
      */
-    protected abstract ProtocolHandler createProtocolHandler(Socket clientSocket);
+    protected abstract ProtocolHandler createProtocolHandler(Socket clientSocket, MetricsRegistry metrics);
 
+    /**
+     * Opens the server socket.
+     * <p/>
+     * Secure servers bind a plain server socket, too, and layer TLS on accepted connections
+     * (see {@link #upgradeToTls(Socket)}). This defers creating the SSL context till the first secure connection,
+     * as most started servers never get a secure connection.
+     *
+     * @return the bound server socket.
+     * @throws IOException on error, eg if port is in use.
+     */
     protected ServerSocket openServerSocket() throws IOException {
+        return openServerSocket(setup.getPort(), isReusePort());
+    }
+
+    /**
+     * @return true, if additional acceptors bind their own server socket to the same port.
+     */
+    private boolean isReusePort() {
+        return setup.getAcceptorThreads() > 1 && null != ReusePort.OPTION;
+    }
+
+    private ServerSocket openServerSocket(int port, boolean reusePort) throws IOException {
         final ServerSocket socket;
-        if (setup.isSecure()) {
-            socket = DummySSLServerSocketFactory.getDefault().createServerSocket();
+        if (reusePort) {
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            channel.setOption(ReusePort.OPTION, true);
+            socket = channel.socket();
         } else {
             socket = new ServerSocket(); // NOSONAR
         }
         socket.setReuseAddress(true); // Try to fix TIME_WAIT on Linux when quickly starting/stopping server
         try {
-            socket.bind(new InetSocketAddress(bindTo, setup.getPort()));
+            socket.bind(new InetSocketAddress(bindTo, port), setup.getAcceptBacklog());
         } catch (IOException ex) {
             try {
                 socket.close(); // Do close if bind failed!
@@ -90,29 +129,66 @@ public abstract class AbstractServer extends Thread implements Service {
             }
 
             // Handle connections
-            while (keepOn()) {
-                try {
-                    Socket clientSocket = serverSocket.accept();
-                    if (!keepOn()) {
-                        clientSocket.close();
-                    } else {
-                        handleClientSocket(clientSocket);
-                    }
-                } catch (IOException ignored) {
-                    //ignored
-                    if (log.isTraceEnabled()) {
-                        log.trace("Error while processing client socket for " + getName(), ignored);
-                    }
-                }
-            }
+            acceptConnections(serverSocket);
         } finally {
             closeServerSocket();
         }
     }
 
+    private void acceptConnections(ServerSocket socket) {
+        while (keepOn() && !socket.isClosed()) {
+            try {
+                Socket clientSocket = socket.accept();
+                if (!keepOn()) {
+                    clientSocket.close();
+                } else {
+                    handleClientSocket(clientSocket);
+                }
+            } catch (IOException ignored) {
+                //ignored
+                if (log.isTraceEnabled()) {
+                    log.trace("Error while processing client socket for " + getName(), ignored);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts the additional acceptor threads, each accepting on its own server socket if SO_REUSEPORT
+     * is supported, otherwise on the shared server socket.
+     *
+     * @throws IOException on error opening a server socket.
+     */
+    private void startAcceptors() throws IOException {
+        final boolean reusePort = isReusePort();
+        for (int i = 1; i < setup.getAcceptorThreads(); i++) {
+            final ServerSocket socket;
+            if (reusePort) {
+                // Actual port, as configured port might be 0 for any free port
+                socket = openServerSocket(serverSocket.getLocalPort(), true);
+                acceptorSockets.add(socket);
+            } else {
+                socket = serverSocket;
+            }
+            Thread acceptor = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    acceptConnections(socket);
+                }
+            }, getName() + "-acceptor-" + i);
+            acceptors.add(acceptor);
+            acceptor.start();
+        }
+        if (log.isDebugEnabled() && !acceptors.isEmpty()) {
+            log.debug("Started " + acceptors.size() + " additional acceptors for " + getName()
+                    + (reusePort ? " using SO_REUSEPORT" : " sharing server socket"));
+        }
+    }
+
     protected synchronized void initServerSocket() {
         try {
             serverSocket = openServerSocket();
+            startAcceptors();
             setRunning(true);
         } catch (IOException e) {
             final String msg = "Can not open server socket for " + getName();
@@ -121,18 +197,44 @@ public abstract class AbstractServer extends Thread implements Service {
         } finally {
             // Notify everybody that we're ready to accept connections or failed to start.
             // Otherwise will run into startup timeout, see #waitTillRunning(long).
-            synchronized (startupMonitor) {
-                startupMonitor.notifyAll();
+            startupLatch.countDown();
+            if (null != sharedStartupLatch) {
+                sharedStartupLatch.countDown();
             }
         }
     }
 
+    /**
+     * Layers TLS in server mode on an accepted connection, for implicit TLS such as IMAPS.
+     * Called by the thread handling the connection, as is the handshake on first read or write,
+     * so that setting up TLS never delays accepting further connections.
+     *
+     * @param clientSocket the accepted plain connection.
+     * @return the TLS connection.
+     * @throws IOException on error, closing the accepted connection.
+     */
+    protected Socket upgradeToTls(Socket clientSocket) throws IOException {
+        try {
+            return new DummySSLServerSocketFactory().wrap(clientSocket);
+        } catch (IOException | RuntimeException e) {
+            clientSocket.close();
+            throw new IOException("Can not set up TLS for connection " + clientSocket + " to " + getName(), e);
+        }
+    }
+
     /**
      * Closes the server socket.
      */
     protected void closeServerSocket() {
         // Close server socket, we do not accept new requests anymore.
         // This also terminates the server thread if blocking on socket.accept.
+        for (ServerSocket socket : acceptorSockets) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.warn("Can not close acceptor server socket " + socket + " for " + getName(), e);
+            }
+        }
         if (null != serverSocket) {
             try {
                 if (!serverSocket.isClosed()) {
@@ -149,9 +251,12 @@ public abstract class AbstractServer extends Thread implements Service {
         }
     }
 
-    protected void handleClientSocket(Socket clientSocket) {
-        final ProtocolHandler handler = createProtocolHandler(clientSocket);
-        addHandler(handler);
+    /**
+     * Handles an accepted connection in a new thread, which also sets up TLS for secure servers.
+     *
+     * @param clientSocket the accepted plain connection.
+     */
+    protected void handleClientSocket(final Socket clientSocket) {
         String threadName = getName() + "<-" + clientSocket.getInetAddress() + ":" + clientSocket.getPort();
         if(log.isDebugEnabled()) {
             log.debug("Handling new client connection "+threadName);
@@ -159,12 +264,16 @@ public abstract class AbstractServer extends Thread implements Service {
         final Thread thread = new Thread(new Runnable() {
             @Override
             public void run() {
+                final Socket socket;
                 try {
-                    handler.run(); // NOSONAR
-                } finally {
-                    // Make sure to de-register, see https://github.com/greenmail-mail-test/greenmail/issues/18
-                    removeHandler(handler);
+                    socket = setup.isSecure() ? upgradeToTls(clientSocket) : clientSocket;
+                } catch (IOException e) {
+                    if (log.isTraceEnabled()) {
+                        log.trace("Error while processing client socket for " + getName(), e);
+                    }
+                    return;
                 }
+                handleConnection(socket);
             }
         });
         thread.setName(threadName);
@@ -172,21 +281,64 @@ public abstract class AbstractServer extends Thread implements Service {
     }
 
     /**
-     * Adds a protocol handler, for eg. shutting down.
+     * Runs the protocol handler of a connection in the current thread, registered as open connection.
      *
-     * @param handler the handler.
+     * @param clientSocket the connection, with TLS already layered on for secure servers.
      */
-    private void addHandler(ProtocolHandler handler) {
-        handlers.add(handler);
+    private void handleConnection(Socket clientSocket) {
+        final Connection.Counters counters = new Connection.Counters(managers.getMetrics());
+        final ProtocolHandler handler = createProtocolHandler(clientSocket, counters);
+        final Connection connection = new Connection(getProtocol(),
+                (InetSocketAddress) clientSocket.getRemoteSocketAddress(), counters, handler);
+        managers.getMetrics().connectionOpened(getProtocol());
+        addConnection(connection, Thread.currentThread());
+        try {
+            if (keepOn()) {
+                handler.run(); // NOSONAR
+            } else {
+                handler.close(); // Stopped meanwhile, missed by closing the open connections
+            }
+        } finally {
+            // Make sure to de-register, see https://github.com/greenmail-mail-test/greenmail/issues/18
+            removeConnection(connection);
+            managers.getMetrics().connectionClosed(getProtocol());
+        }
+    }
+
+    /**
+     * Adds a connection, for eg. shutting down.
+     *
+     * @param connection the connection.
+     * @param thread     the thread running the protocol handler.
+     */
+    private void addConnection(Connection connection, Thread thread) {
+        connections.put(connection, thread);
     }
 
     /**
-     * Removes protocol handler, eg.  when shutting down.
+     * Removes a connection, eg. when closed by the client.
      *
-     * @param handler the handler.
+     * @param connection the connection.
      */
-    private void removeHandler(ProtocolHandler handler) {
-        handlers.remove(handler);
+    private void removeConnection(Connection connection) {
+        connections.remove(connection);
+    }
+
+    /**
+     * Lists the open connections, eg. for administration.
+     * Does not block accepting or closing connections, so the list might miss concurrent changes.
+     *
+     * @return a snapshot of the open connections.
+     */
+    public List<Connection> getConnections() {
+        return new ArrayList<>(connections.keySet());
+    }
+
+    /**
+     * @return the number of open connections.
+     */
+    public int getConnectionCount() {
+        return connections.size();
     }
 
     /**
@@ -199,12 +351,10 @@ public abstract class AbstractServer extends Thread implements Service {
         closeServerSocket();
 
         // Close all handlers. Handler threads terminate if run loop exits
-        synchronized (handlers) {
-            for (ProtocolHandler handler : handlers) {
-                handler.close();
-            }
-            handlers.clear();
+        for (Connection connection : connections.keySet()) {
+            connection.getHandler().close();
         }
+        connections.clear();
         if (log.isDebugEnabled()) {
             log.debug("Stopped " + getName());
         }
@@ -233,15 +383,7 @@ public abstract class AbstractServer extends Thread implements Service {
 
     @Override
     public boolean waitTillRunning(long timeoutInMs) throws InterruptedException {
-        long t = System.currentTimeMillis();
-        synchronized (startupMonitor) {
-            // Loop to avoid spurious wake ups, see
-            // https://www.securecoding.cert.org/confluence/display/java/THI03-J.+Always+invoke+wait%28%29+and+await%28%29+methods+inside+a+loop
-            while (!isRunning() && System.currentTimeMillis() - t < timeoutInMs) {
-                startupMonitor.wait(timeoutInMs);
-            }
-        }
-
+        startupLatch.await(timeoutInMs, TimeUnit.MILLISECONDS);
         return isRunning();
     }
 
@@ -266,6 +408,21 @@ public abstract class AbstractServer extends Thread implements Service {
         }
     }
 
+    /**
+     * Starts the service in the background, counting down given latch once up and running or failed to start.
+     * Allows starting several services in parallel and waiting for all of them at once.
+     *
+     * @param startupLatch the latch shared by the starting services.
+     */
+    public synchronized void startService(CountDownLatch startupLatch) {
+        if (keepRunning) {
+            startupLatch.countDown(); // Already started
+        } else {
+            sharedStartupLatch = startupLatch;
+            startService();
+        }
+    }
+
 
     /**
      * Stops the service. If a timeout is given and the service has still not
@@ -286,6 +443,7 @@ public abstract class AbstractServer extends Thread implements Service {
                 } else {
                     join(millis);
                 }
+                joinAcceptors(millis);
             }
         } catch (InterruptedException e) {
             //its possible that the thread exits between the lines keepRunning=false and interrupt above
@@ -293,6 +451,108 @@ public abstract class AbstractServer extends Thread implements Service {
         }
     }
 
+    /**
+     * Stops the service gracefully: Stops accepting connections and drains every open connection,
+     * so that commands in progress complete and clients get a protocol specific goodbye (see {@link ProtocolHandler#drain()}).
+     * Waits till the connection threads terminated or the timeout was reached.
+     * Connections still busy after the timeout get closed by force.
+     *
+     * @param timeoutInMs max time in milliseconds to wait for commands in progress to complete.
+     * @return the number of connections closed by force.
+     * @see #beginDrain()
+     */
+    public final int drainService(long timeoutInMs) {
+        Collection<Thread> draining = beginDrain();
+        awaitDrained(draining, System.currentTimeMillis() + timeoutInMs);
+        return finishDrain(draining, timeoutInMs);
+    }
+
+    /**
+     * First step of {@link #drainService(long)}, without waiting:
+     * Stops accepting connections and asks every open connection to drain.
+     * Allows draining several services in parallel, waiting for all of them against a single deadline.
+     *
+     * @return the threads of the draining connections, for {@link #awaitDrained(Collection, long)}.
+     */
+    public final synchronized Collection<Thread> beginDrain() {
+        running = false;
+        if (!keepRunning) {
+            return Collections.emptyList();
+        }
+        keepRunning = false;
+        closeServerSocket();
+
+        final Map<Connection, Thread> draining = new HashMap<>(connections);
+        for (Connection connection : draining.keySet()) {
+            connection.getHandler().drain();
+        }
+        return draining.values();
+    }
+
+    /**
+     * Waits till the given connection threads terminated or the deadline was reached.
+     *
+     * @param draining the connection threads, of one or more services.
+     * @param deadline the deadline in milliseconds, see {@link System#currentTimeMillis()}.
+     */
+    public static void awaitDrained(Collection<Thread> draining, long deadline) {
+        try {
+            for (Thread thread : draining) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0L) {
+                    break;
+                }
+                thread.join(remaining);
+            }
+        } catch (InterruptedException e) {
+            // Stops waiting, closing the remaining connections by force
+            LoggerFactory.getLogger(AbstractServer.class).warn("Got interrupted while draining", e);
+        }
+    }
+
+    /**
+     * Last step of {@link #drainService(long)}: Closes the connections still busy by force and stops the service.
+     *
+     * @param draining    the threads of the draining connections, as returned by {@link #beginDrain()}.
+     * @param timeoutInMs the timeout waited for, for logging.
+     * @return the number of connections closed by force.
+     */
+    public final synchronized int finishDrain(Collection<Thread> draining, long timeoutInMs) {
+        int forced = 0;
+        for (Thread thread : draining) {
+            if (thread.isAlive()) {
+                forced++;
+            }
+        }
+        if (forced > 0) {
+            log.warn("Closing " + forced + " connection(s) of " + getName() + " by force, still busy after "
+                    + timeoutInMs + "ms");
+        }
+        interrupt();
+        quit();
+        try {
+            join();
+            joinAcceptors(0L);
+        } catch (InterruptedException e) {
+            log.warn("Got interrupted while stopping " + toString(), e);
+        }
+        return forced;
+    }
+
+    /**
+     * Waits for the additional acceptor threads, terminating once the server sockets got closed.
+     *
+     * @param millis max time in ms to wait per thread, or 0 for no timeout.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private void joinAcceptors(long millis) throws InterruptedException {
+        for (Thread acceptor : acceptors) {
+            acceptor.join(millis);
+        }
+        acceptors.clear();
+        acceptorSockets.clear();
+    }
+
     /**
      * Stops the service (without timeout).
      */
@@ -351,4 +611,25 @@ public abstract class AbstractServer extends Thread implements Service {
     public Store createStore() throws NoSuchProviderException {
         return createSession().getStore(getProtocol());
     }
+
+    /**
+     * Lazily looks up SO_REUSEPORT, only available since Java 9 and on supporting platforms.
+     */
+    private static class ReusePort {
+        /** The socket option, or null if not supported */
+        static final SocketOption<Boolean> OPTION = lookup();
+
+        @SuppressWarnings("unchecked")
+        private static SocketOption<Boolean> lookup() {
+            try {
+                Field field = StandardSocketOptions.class.getField("SO_REUSEPORT");
+                SocketOption<Boolean> option = (SocketOption<Boolean>) field.get(null);
+                try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+                    return channel.supportedOptions().contains(option) ? option : null;
+                }
+            } catch (NoSuchFieldException | IllegalAccessException | IOException e) {
+                return null;
+            }
+        }
+    }
 }
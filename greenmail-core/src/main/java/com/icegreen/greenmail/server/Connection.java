@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.server;
+
+import com.icegreen.greenmail.metrics.MetricsRegistry;
+
+import java.net.InetSocketAddress;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An open client connection of a server, as listed by {@link AbstractServer#getConnections()}.
+ * <p/>
+ * Thread safe. Counters reflect the current state of the connection, without blocking the handler thread.
+ */
+public class Connection {
+    private final String protocol;
+    private final InetSocketAddress remoteAddress;
+    private final long startTime;
+    private final Counters counters;
+    private final ProtocolHandler handler;
+
+    Connection(String protocol, InetSocketAddress remoteAddress, Counters counters, ProtocolHandler handler) {
+        this.protocol = protocol;
+        this.remoteAddress = remoteAddress;
+        this.counters = counters;
+        this.handler = handler;
+        startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the protocol, such as smtp or imaps.
+     */
+    public String getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * @return the client address and port.
+     */
+    public InetSocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    /**
+     * @return the time of accepting the connection, in milliseconds since epoch.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return the number of bytes received from the client.
+     */
+    public long getBytesReceived() {
+        return counters.bytesReceived.get();
+    }
+
+    /**
+     * @return the number of bytes sent to the client.
+     */
+    public long getBytesSent() {
+        return counters.bytesSent.get();
+    }
+
+    /**
+     * @return the number of commands processed.
+     */
+    public long getCommandCount() {
+        return counters.commands.get();
+    }
+
+    /**
+     * @return the name of the last processed command, such as DATA, or null if none yet.
+     */
+    public String getLastCommand() {
+        return counters.lastCommand;
+    }
+
+    ProtocolHandler getHandler() {
+        return handler;
+    }
+
+    @Override
+    public String toString() {
+        return protocol + "<-" + remoteAddress + " since " + new Date(startTime)
+                + ", commands=" + getCommandCount() + ", last command=" + getLastCommand()
+                + ", bytes received=" + getBytesReceived() + ", bytes sent=" + getBytesSent();
+    }
+
+    /**
+     * Counts per connection, passing all measurements on to the server wide registry.
+     */
+    static class Counters implements MetricsRegistry {
+        private final MetricsRegistry metrics;
+        private final AtomicLong bytesReceived = new AtomicLong();
+        private final AtomicLong bytesSent = new AtomicLong();
+        private final AtomicLong commands = new AtomicLong();
+        private volatile String lastCommand;
+
+        Counters(MetricsRegistry metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void connectionOpened(String protocol) {
+            metrics.connectionOpened(protocol);
+        }
+
+        @Override
+        public void connectionClosed(String protocol) {
+            metrics.connectionClosed(protocol);
+        }
+
+        @Override
+        public void commandProcessed(String protocol, String command, long durationNanos) {
+            commands.incrementAndGet();
+            lastCommand = command;
+            metrics.commandProcessed(protocol, command, durationNanos);
+        }
+
+        @Override
+        public void bytesReceived(String protocol, long count) {
+            bytesReceived.addAndGet(count);
+            metrics.bytesReceived(protocol, count);
+        }
+
+        @Override
+        public void bytesSent(String protocol, long count) {
+            bytesSent.addAndGet(count);
+            metrics.bytesSent(protocol, count);
+        }
+
+        @Override
+        public void messageDelivered() {
+            metrics.messageDelivered();
+        }
+    }
+}
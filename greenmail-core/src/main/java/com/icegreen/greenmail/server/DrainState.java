@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.server;
+
+/**
+ * Coordinates draining a connection with the thread handling it, so that a command in progress
+ * is never interrupted by shutting down.
+ * <p/>
+ * The handler thread marks the connection idle while waiting for the next command.
+ * Draining an idle connection says goodbye and closes right away, otherwise the handler thread says goodbye
+ * once the current command completed.
+ *
+ * @see ProtocolHandler#drain()
+ */
+public class DrainState {
+    private boolean idle;
+    private boolean draining;
+
+    /**
+     * Marks the connection idle, before waiting for the next command.
+     * Pending output must be flushed before, as the goodbye might get written by the draining thread.
+     *
+     * @return false, if draining: The handler thread should say goodbye and close instead of waiting.
+     */
+    public synchronized boolean enterIdle() {
+        if (draining) {
+            return false;
+        }
+        idle = true;
+        return true;
+    }
+
+    /**
+     * Marks the connection busy, after receiving the next command.
+     *
+     * @return false, if drained while idle: The connection already said goodbye and got closed.
+     */
+    public synchronized boolean leaveIdle() {
+        idle = false;
+        return !draining;
+    }
+
+    /**
+     * @return true, if draining was requested.
+     */
+    public synchronized boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * Requests draining. If idle, says goodbye right away, otherwise leaves it to the handler thread.
+     * Keeps the handler thread from resuming while saying goodbye.
+     *
+     * @param goodbye says goodbye and closes the connection.
+     */
+    public synchronized void drain(Runnable goodbye) {
+        if (!draining) {
+            draining = true;
+            if (idle) {
+                goodbye.run();
+            }
+        }
+    }
+}
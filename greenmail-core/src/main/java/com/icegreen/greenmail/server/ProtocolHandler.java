@@ -8,4 +8,14 @@ public interface ProtocolHandler extends Runnable {
      * Closes all resources, such as sockets.
      */
     void close();
+
+    /**
+     * Closes the connection gracefully, saying the protocol specific goodbye (such as SMTP 421 or IMAP BYE).
+     * An idle connection gets closed right away, otherwise once the command in progress completed.
+     * <p/>
+     * Returns without waiting, the handler thread terminates once closed.
+     *
+     * @see DrainState
+     */
+    void drain();
 }
@@ -6,12 +6,17 @@
  */
 package com.icegreen.greenmail.smtp;
 
+import com.icegreen.greenmail.metrics.MeteredInputStream;
+import com.icegreen.greenmail.metrics.MeteredOutputStream;
+import com.icegreen.greenmail.util.DummySSLServerSocketFactory;
 import com.icegreen.greenmail.util.EncodingUtil;
-import com.icegreen.greenmail.util.InternetPrintWriter;
+import com.icegreen.greenmail.util.LineCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
 
@@ -23,8 +28,9 @@ public class SmtpConnection {
     // networking/io stuff
     Socket sock;
     InetAddress clientAddress;
-    InternetPrintWriter out;
-    BufferedReader in;
+    LineCodec codec;
+    /** Metered socket stream below the codec, for replies bypassing the buffered ones */
+    private volatile OutputStream out;
     SmtpHandler handler;
     String heloName;
 
@@ -33,28 +39,95 @@ public class SmtpConnection {
         this.sock = sock;
         sock.setSoTimeout(TIMEOUT_MILLIS);
         clientAddress = sock.getInetAddress();
-        OutputStream o = sock.getOutputStream();
-        InputStream i = sock.getInputStream();
-        out = InternetPrintWriter.createForEncoding(o, true, EncodingUtil.CHARSET_EIGHT_BIT_ENCODING);
-        in = new BufferedReader(new InputStreamReader(i));
-
         this.handler = handler;
+        codec = createLineCodec();
+    }
+
+    private LineCodec createLineCodec() throws IOException {
+        out = new MeteredOutputStream(sock.getOutputStream(), handler.getMetrics(), handler.getProtocol());
+        return new LineCodec(
+                new MeteredInputStream(sock.getInputStream(), handler.getMetrics(), handler.getProtocol()), out);
     }
 
+    /**
+     * Sends a reply line. The reply gets buffered until {@link #flush()} or until
+     * the next line from the client is read.
+     *
+     * @param line the reply line.
+     */
     public void send(String line) {
         if (log.isTraceEnabled()) {
             log.trace("S: " + line);
         }
-        out.println(line);
+        try {
+            codec.writeLine(line);
+        } catch (IOException e) {
+            // Broken connection gets detected when reading next command
+            log.warn("Can not send '" + line + "'", e);
+        }
+    }
+
+    /**
+     * Sends a reply right away, bypassing any buffered replies.
+     * Only for saying goodbye from another thread, while the handler waits for the next command.
+     *
+     * @param line the reply line.
+     */
+    void sendImmediately(String line) {
+        if (log.isTraceEnabled()) {
+            log.trace("S: " + line);
+        }
+        try {
+            out.write((line + "\r\n").getBytes(EncodingUtil.CHARSET_EIGHT_BIT_ENCODING));
+            out.flush();
+        } catch (IOException e) {
+            log.debug("Can not send '" + line + "'", e);
+        }
+    }
+
+    /**
+     * Writes any buffered replies to the client.
+     */
+    public void flush() {
+        try {
+            codec.flush();
+        } catch (IOException e) {
+            log.warn("Can not flush replies", e);
+        }
+    }
+
+    /**
+     * @return true, if connection is using TLS, either by SMTPS or upgraded via STARTTLS.
+     */
+    public boolean isTlsActive() {
+        return sock instanceof SSLSocket;
+    }
+
+    /**
+     * Upgrades the connection to TLS (STARTTLS).
+     * Replies must be flushed before, and any buffered client input gets discarded.
+     *
+     * @throws IOException on error, eg failed TLS handshake.
+     */
+    public void startTls() throws IOException {
+        sock = new DummySSLServerSocketFactory().upgradeToTls(sock);
+        codec = createLineCodec();
+    }
+
+    /**
+     * @return true, if the next line might have been received already, so receiving it does not block.
+     */
+    public boolean hasBufferedInput() {
+        return codec.hasBufferedInput();
     }
 
-    public BufferedReader getReader() {
-        return in;
+    public LineCodec getLineCodec() {
+        return codec;
     }
 
     public String receiveLine()
             throws IOException {
-        String line = in.readLine();
+        String line = codec.readLine();
         if (log.isTraceEnabled()) {
             log.trace("C: " + line);
         }
@@ -87,6 +160,7 @@ public class SmtpConnection {
     }
 
     public void quit() {
+        flush();
         handler.close();
     }
 }
\ No newline at end of file
@@ -7,7 +7,9 @@
 package com.icegreen.greenmail.smtp;
 
 import com.icegreen.greenmail.foedus.util.Workspace;
+import com.icegreen.greenmail.metrics.MetricsRegistry;
 import com.icegreen.greenmail.server.BuildInfo;
+import com.icegreen.greenmail.server.DrainState;
 import com.icegreen.greenmail.server.ProtocolHandler;
 import com.icegreen.greenmail.smtp.commands.SmtpCommand;
 import com.icegreen.greenmail.smtp.commands.SmtpCommandRegistry;
@@ -20,6 +22,7 @@ import java.net.SocketTimeoutException;
 
 class SmtpHandler implements ProtocolHandler {
     private static final Logger log = LoggerFactory.getLogger(SmtpHandler.class);
+    private static final String SERVICE_SHUTTING_DOWN = "421 Service shutting down and closing transmission channel";
 
     // protocol and configuration global stuff
     SmtpCommandRegistry _registry;
@@ -34,13 +37,30 @@ class SmtpHandler implements ProtocolHandler {
     boolean _quitting;
     String _currentLine;
     private Socket _socket;
+    private final DrainState _drainState = new DrainState();
+
+    /** Receives connection, command and byte counts of this connection */
+    private final MetricsRegistry _metrics;
+    /** Protocol the counts get reported for, such as smtp or smtps */
+    private final String _protocol;
 
     public SmtpHandler(SmtpCommandRegistry registry,
-                       SmtpManager manager, Workspace workspace, Socket socket) {
+                       SmtpManager manager, Workspace workspace, Socket socket,
+                       MetricsRegistry metrics, String protocol) {
         _registry = registry;
         _manager = manager;
         _workspace = workspace;
         _socket = socket;
+        _metrics = metrics;
+        _protocol = protocol;
+    }
+
+    MetricsRegistry getMetrics() {
+        return _metrics;
+    }
+
+    String getProtocol() {
+        return _protocol;
     }
 
     @Override
@@ -57,7 +77,8 @@ class SmtpHandler implements ProtocolHandler {
             }
 
         } catch (SocketTimeoutException ste) {
-            _conn.send("421 Service shutting down and closing transmission channel");
+            _conn.send(SERVICE_SHUTTING_DOWN);
+            _conn.flush();
 
         } catch (Exception e) {
             // Closing socket on blocked read
@@ -79,8 +100,27 @@ class SmtpHandler implements ProtocolHandler {
 
     protected void handleCommand()
             throws IOException {
+        if (_conn.hasBufferedInput()) {
+            if (_drainState.isDraining()) {
+                sayGoodbye();
+                return;
+            }
+        } else {
+            // Flush before waiting, so that a goodbye can be sent by a draining thread meanwhile
+            _conn.flush();
+            if (!_drainState.enterIdle()) {
+                sayGoodbye();
+                return;
+            }
+        }
+
         _currentLine = _conn.receiveLine();
 
+        if (!_drainState.leaveIdle()) {
+            // Drained while waiting, goodbye already sent
+            return;
+        }
+
         if (_currentLine == null) {
             close();
 
@@ -93,7 +133,9 @@ class SmtpHandler implements ProtocolHandler {
             return;
         }
 
-        String commandName = _currentLine.substring(0, 4).toUpperCase();
+        // Usually 4 characters, but extensions such as STARTTLS can be longer
+        int separator = _currentLine.indexOf(' ');
+        String commandName = (separator < 0 ? _currentLine : _currentLine.substring(0, separator)).toUpperCase();
 
         SmtpCommand command = _registry.getCommand(commandName);
 
@@ -103,7 +145,12 @@ class SmtpHandler implements ProtocolHandler {
             return;
         }
 
-        command.execute(_conn, _state, _manager, _currentLine);
+        long start = System.nanoTime();
+        try {
+            command.execute(_conn, _state, _manager, _currentLine);
+        } finally {
+            _metrics.commandProcessed(_protocol, commandName, System.nanoTime() - start);
+        }
     }
 
     private boolean commandLegalSize() {
@@ -113,13 +160,6 @@ class SmtpHandler implements ProtocolHandler {
             return false;
         }
 
-        if (_currentLine.length() > 4 &&
-                _currentLine.charAt(4) != ' ') {
-            _conn.send("500 Invalid command. Must be 4 characters");
-
-            return false;
-        }
-
         if (_currentLine.length() > 1000) {
             _conn.send("500 Command too long.  1000 character maximum.");
 
@@ -129,6 +169,22 @@ class SmtpHandler implements ProtocolHandler {
         return true;
     }
 
+    private void sayGoodbye() {
+        _conn.send(SERVICE_SHUTTING_DOWN);
+        _conn.quit();
+    }
+
+    @Override
+    public void drain() {
+        _drainState.drain(new Runnable() {
+            @Override
+            public void run() {
+                _conn.sendImmediately(SERVICE_SHUTTING_DOWN);
+                close();
+            }
+        });
+    }
+
     @Override
     public void close() {
         if (log.isTraceEnabled()) {
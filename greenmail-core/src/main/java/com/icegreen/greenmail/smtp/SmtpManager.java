@@ -10,7 +10,9 @@ package com.icegreen.greenmail.smtp;
 import com.icegreen.greenmail.imap.ImapHostManager;
 import com.icegreen.greenmail.mail.MailAddress;
 import com.icegreen.greenmail.mail.MovingMessage;
+import com.icegreen.greenmail.metrics.MetricsRegistry;
 import com.icegreen.greenmail.user.GreenMailUser;
+import com.icegreen.greenmail.user.Tenant;
 import com.icegreen.greenmail.user.UserManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,10 +29,16 @@ public class SmtpManager {
     UserManager userManager;
     private ImapHostManager imapHostManager;
     List<WaitObject> notifyList;
+    private final MetricsRegistry metrics;
 
     public SmtpManager(ImapHostManager imapHostManager, UserManager userManager) {
+        this(imapHostManager, userManager, MetricsRegistry.NOOP);
+    }
+
+    public SmtpManager(ImapHostManager imapHostManager, UserManager userManager, MetricsRegistry metrics) {
         this.imapHostManager = imapHostManager;
         this.userManager = userManager;
+        this.metrics = metrics;
         _incomingQueue = new Incoming();
         notifyList = Collections.synchronizedList(new ArrayList<WaitObject>());
     }
@@ -54,8 +62,23 @@ public class SmtpManager {
     public synchronized void send(SmtpState state) {
         _incomingQueue.enqueue(state.getMessage());
         for (WaitObject o : notifyList) {
-            synchronized (o) {
-                o.emailReceived();
+            if (null == o.getTenant()) {
+                synchronized (o) {
+                    o.emailReceived();
+                }
+            }
+        }
+    }
+
+    /**
+     * Notifies tenant scoped wait objects, once per delivered message.
+     */
+    private void delivered(GreenMailUser user) {
+        for (WaitObject o : notifyList) {
+            if (null != o.getTenant() && o.getTenant().contains(user)) {
+                synchronized (o) {
+                    o.emailReceived();
+                }
             }
         }
     }
@@ -73,6 +96,26 @@ public class SmtpManager {
         return ret;
     }
 
+    /**
+     * Same as {@link #createAndAddNewWaitObject(int)}, but only counting messages delivered to users of given tenant.
+     *
+     * @param emailCount the number of messages of the tenant to wait for.
+     * @param tenant     the tenant.
+     * @return null if no need to wait. Otherwise caller must call wait() on the returned object
+     */
+    public synchronized WaitObject createAndAddNewWaitObject(int emailCount, Tenant tenant) {
+        int existingCount = 0;
+        for (GreenMailUser user : userManager.listUser(tenant)) {
+            existingCount += imapHostManager.getAllMessages(user).size();
+        }
+        if (existingCount >= emailCount) {
+            return null;
+        }
+        WaitObject ret = new WaitObject(emailCount - existingCount, tenant);
+        notifyList.add(ret);
+        return ret;
+    }
+
     //~----------------------------------------------------------------------------------------------------------------
 
     /**
@@ -87,15 +130,32 @@ public class SmtpManager {
     public static class WaitObject {
         private boolean arrived = false;
         private int emailCount;
+        private final Tenant tenant;
 
         public WaitObject(int emailCount) {
+            this(emailCount, null);
+        }
+
+        /**
+         * @param emailCount the number of messages to wait for.
+         * @param tenant     the tenant whose messages to count, or null for counting all messages.
+         */
+        public WaitObject(int emailCount, Tenant tenant) {
             this.emailCount = emailCount;
+            this.tenant = tenant;
         }
 
         public int getEmailCount() {
             return emailCount;
         }
 
+        /**
+         * @return the tenant whose messages get counted, or null if counting all messages.
+         */
+        public Tenant getTenant() {
+            return tenant;
+        }
+
         public boolean isArrived() {
             return arrived;
         }
@@ -135,6 +195,8 @@ public class SmtpManager {
                 }
 
                 user.deliver(msg);
+                metrics.messageDelivered();
+                delivered(user);
             } catch (Exception e) {
                 log.error("Can not deliver message " + msg + " to " + mailAddress, e);
                 throw new RuntimeException(e);
@@ -8,6 +8,7 @@ package com.icegreen.greenmail.smtp;
 
 import com.icegreen.greenmail.Managers;
 import com.icegreen.greenmail.foedus.util.InMemoryWorkspace;
+import com.icegreen.greenmail.metrics.MetricsRegistry;
 import com.icegreen.greenmail.server.AbstractServer;
 import com.icegreen.greenmail.server.ProtocolHandler;
 import com.icegreen.greenmail.smtp.commands.SmtpCommandRegistry;
@@ -21,8 +22,8 @@ public class SmtpServer extends AbstractServer {
     }
 
     @Override
-    protected ProtocolHandler createProtocolHandler(final Socket clientSocket) {
+    protected ProtocolHandler createProtocolHandler(final Socket clientSocket, MetricsRegistry metrics) {
         return new SmtpHandler(new SmtpCommandRegistry(), managers.getSmtpManager(),
-                new InMemoryWorkspace(), clientSocket);
+                new InMemoryWorkspace(), clientSocket, metrics, getProtocol());
     }
 }
\ No newline at end of file
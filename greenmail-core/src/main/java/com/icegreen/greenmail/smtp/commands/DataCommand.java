@@ -6,15 +6,12 @@
  */
 package com.icegreen.greenmail.smtp.commands;
 
-import com.icegreen.greenmail.foedus.util.StreamUtils;
 import com.icegreen.greenmail.mail.MovingMessage;
 import com.icegreen.greenmail.smtp.SmtpConnection;
 import com.icegreen.greenmail.smtp.SmtpManager;
 import com.icegreen.greenmail.smtp.SmtpState;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.StringReader;
 
 
 /**
@@ -51,8 +48,7 @@ public class DataCommand extends SmtpCommand {
                 conn.getHeloName() + "); " +
                 new java.util.Date() + "\r\n";
 
-        msg.readDotTerminatedContent(new BufferedReader(StreamUtils.splice(new StringReader(value),
-                conn.getReader())));
+        msg.readDotTerminatedContent(value, conn.getLineCodec());
 
         String err = manager.checkData(state);
         if (err != null) {
@@ -31,7 +31,13 @@ public class HeloCommand
                         SmtpManager manager, String commandLine) {
         extractHeloName(conn, commandLine);
         state.clearMessage();
-        conn.send("250 " + conn.getServerGreetingsName());
+        if (commandLine.toUpperCase().startsWith("EHLO") && !conn.isTlsActive()) {
+            // Extended SMTP, see https://tools.ietf.org/html/rfc5321#section-4.1.1.1
+            conn.send("250-" + conn.getServerGreetingsName());
+            conn.send("250 STARTTLS");
+        } else {
+            conn.send("250 " + conn.getServerGreetingsName());
+        }
     }
 
     private void extractHeloName(SmtpConnection conn,
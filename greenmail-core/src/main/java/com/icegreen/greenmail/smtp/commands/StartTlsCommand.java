@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.smtp.commands;
+
+import com.icegreen.greenmail.smtp.SmtpConnection;
+import com.icegreen.greenmail.smtp.SmtpManager;
+import com.icegreen.greenmail.smtp.SmtpState;
+
+import java.io.IOException;
+
+
+/**
+ * STARTTLS command.
+ * <p/>
+ * Upgrades the plain connection to TLS. The client has to start over with EHLO afterwards.
+ * <p/>
+ * The spec is at <a href="https://tools.ietf.org/html/rfc3207">https://tools.ietf.org/html/rfc3207</a>.
+ */
+public class StartTlsCommand
+        extends SmtpCommand {
+    @Override
+    public void execute(SmtpConnection conn, SmtpState state,
+                        SmtpManager manager, String commandLine)
+            throws IOException {
+        if (commandLine.trim().length() > "STARTTLS".length()) {
+            conn.send("501 Syntax error (no parameters allowed)");
+            return;
+        }
+        if (conn.isTlsActive()) {
+            conn.send("503 TLS already active");
+            return;
+        }
+
+        conn.send("220 Ready to start TLS");
+        conn.flush();
+        conn.startTls();
+
+        // Discard any knowledge obtained from the client, see RFC 3207 section 4.2
+        state.clearMessage();
+        conn.setHeloName(null);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.store;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Pre-parsed header block of a message, as CRLF terminated header lines plus an index of field names and offsets.
+ * <p/>
+ * Serves IMAP BODY[HEADER], BODY[HEADER.FIELDS (...)] and BODY[HEADER.FIELDS.NOT (...)] by slicing the block,
+ * instead of re-reading the headers of the message for every fetch.
+ * Immutable.
+ */
+public class HeaderIndex {
+    private final String block;
+    private final String[] names;
+    /** Start of each header line in block, with an additional entry for the end of the block */
+    private final int[] offsets;
+
+    HeaderIndex(MimeMessage message) throws MessagingException {
+        StringBuilder buf = new StringBuilder();
+        List<String> fieldNames = new ArrayList<>();
+        List<Integer> fieldOffsets = new ArrayList<>();
+        Enumeration<?> lines = message.getAllHeaderLines();
+        while (lines.hasMoreElements()) {
+            String line = (String) lines.nextElement();
+            fieldNames.add(getName(line));
+            fieldOffsets.add(buf.length());
+            buf.append(line).append("\r\n");
+        }
+
+        block = buf.toString();
+        names = fieldNames.toArray(new String[fieldNames.size()]);
+        offsets = new int[names.length + 1];
+        for (int i = 0; i < names.length; i++) {
+            offsets[i] = fieldOffsets.get(i);
+        }
+        offsets[names.length] = block.length();
+    }
+
+    /**
+     * Extracts the field name, same as {@link javax.mail.internet.InternetHeaders} does.
+     */
+    private static String getName(String line) {
+        int colon = line.indexOf(':');
+        return (colon < 0 ? line : line.substring(0, colon)).trim();
+    }
+
+    /**
+     * @return all header lines, each terminated by CRLF.
+     */
+    public String getHeaders() {
+        return block;
+    }
+
+    /**
+     * Gets the header lines matching given field names, in order of the message.
+     *
+     * @param fieldNames the field names, case insensitive.
+     * @param exclude    if true, gets all lines not matching instead.
+     * @return the header lines, each terminated by CRLF.
+     */
+    public CharSequence getHeaders(String[] fieldNames, boolean exclude) {
+        StringBuilder buf = new StringBuilder();
+        // Appends runs of adjacent matching lines at once
+        int runStart = -1;
+        for (int i = 0; i < names.length; i++) {
+            if (matches(names[i], fieldNames) != exclude) {
+                if (runStart < 0) {
+                    runStart = offsets[i];
+                }
+            } else if (runStart >= 0) {
+                buf.append(block, runStart, offsets[i]);
+                runStart = -1;
+            }
+        }
+        if (runStart >= 0) {
+            buf.append(block, runStart, block.length());
+        }
+        return buf;
+    }
+
+    private static boolean matches(String name, String[] fieldNames) {
+        for (String fieldName : fieldNames) {
+            if (name.equalsIgnoreCase(fieldName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of header lines.
+     */
+    public int size() {
+        return names.length;
+    }
+}
@@ -31,14 +31,23 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
         PERMANENT_FLAGS.add(Flags.Flag.SEEN);
     }
 
+    /** Tie breaker lock for moving between two folders with same identity hash code */
+    private static final Object MOVE_TIE_LOCK = new Object();
+
     private final StoredMessageCollection mailMessages = new ListBasedStoredMessageCollection();
+    private final KeywordTable keywords = new KeywordTable();
     private final List<FolderListener> _mailboxListeners = Collections.synchronizedList(new ArrayList<FolderListener>());
     protected String name;
     private Collection<HierarchicalFolder> children;
     private HierarchicalFolder parent;
     private boolean isSelectable = false;
-    private long nextUid = 1;
+    /** Guarded by mailMessages, volatile for lock free reads */
+    private volatile long nextUid = 1;
     private long uidValidity;
+    /** Total size of all messages, guarded by mailMessages */
+    private long totalBytes;
+    /** Policy of this folder, or null if inherited from parent */
+    private volatile RetentionPolicy retentionPolicy;
 
     public HierarchicalFolder(HierarchicalFolder parent,
                               String name) {
@@ -179,7 +188,7 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
 
         synchronized (mailMessages) {
             for (StoredMessage mailMessage : mailMessages) {
-                if (!mailMessage.getFlags().contains(Flags.Flag.DELETED)) {
+                if (!mailMessage.isSet(Flags.Flag.DELETED)) {
                     ret.add(mailMessage);
                 }
             }
@@ -193,6 +202,27 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
         return isSelectable;
     }
 
+    /**
+     * @param retentionPolicy the policy for this folder and all children not having an own policy,
+     *                        or null for inheriting the policy of the parent folder.
+     */
+    public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+        this.retentionPolicy = retentionPolicy;
+    }
+
+    /**
+     * @return the effective policy, as set for this folder or the closest parent.
+     */
+    public RetentionPolicy getRetentionPolicy() {
+        for (HierarchicalFolder folder = this; null != folder; folder = folder.parent) {
+            RetentionPolicy policy = folder.retentionPolicy;
+            if (null != policy) {
+                return policy;
+            }
+        }
+        return RetentionPolicy.unlimited();
+    }
+
     public void setSelectable(boolean selectable) {
         isSelectable = selectable;
     }
@@ -201,22 +231,35 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
     public long appendMessage(MimeMessage message,
                               Flags flags,
                               Date receivedDate) {
-        long uid = nextUid;
-        nextUid++;
+        return appendStoredMessage(message, flags, receivedDate).getUid();
+    }
 
+    @Override
+    public StoredMessage appendStoredMessage(MimeMessage message,
+                                             Flags flags,
+                                             Date receivedDate) {
         try {
             message.setFlags(flags, true);
             message.setFlag(Flags.Flag.RECENT, true);
         } catch (MessagingException e) {
             throw new IllegalStateException("Can not set flags", e);
         }
-        StoredMessage storedMessage = new StoredMessage(message,
-                receivedDate, uid);
+        // Copy the content outside of the lock, and assign the UID when adding, same as moving messages
+        StoredMessage copied = new StoredMessage(message,
+                receivedDate, 0L, getArena(), keywords);
 
+        RetentionPolicy policy = getRetentionPolicy();
+        StoredMessage storedMessage;
         int newMsn;
+        int[] evictedMsns = new int[0];
         synchronized (mailMessages) {
+            storedMessage = new StoredMessage(copied, nextUid++, keywords);
             mailMessages.add(storedMessage);
+            totalBytes += sizeOf(storedMessage);
             newMsn = mailMessages.size();
+            if (!policy.isUnlimited()) {
+                evictedMsns = evict(policy, System.currentTimeMillis(), false);
+            }
         }
 
         // Notify all the listeners of the new message
@@ -225,8 +268,103 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
                 _mailboxListener.added(newMsn);
             }
         }
+        notifyExpunged(evictedMsns);
+
+        return storedMessage;
+    }
+
+    private OffHeapArena getArena() {
+        HierarchicalFolder folder = this;
+        while (null != folder.parent) {
+            folder = folder.parent;
+        }
+        return folder instanceof RootFolder ? ((RootFolder) folder).getArena() : null;
+    }
+
+    /**
+     * Evicts messages exceeding the retention policy, as if expunged.
+     *
+     * @param now the current time in milliseconds.
+     * @return the number of evicted messages.
+     */
+    int applyRetention(long now) {
+        RetentionPolicy policy = getRetentionPolicy();
+        if (policy.isUnlimited()) {
+            return 0;
+        }
 
-        return uid;
+        int[] evictedMsns;
+        synchronized (mailMessages) {
+            // Received dates of appended messages are not necessarily ordered, so check all
+            evictedMsns = evict(policy, now, true);
+        }
+        notifyExpunged(evictedMsns);
+        return evictedMsns.length;
+    }
+
+    /**
+     * Removes the messages exceeding the retention policy in a single pass:
+     * Any expired message if checking all, and the oldest messages while exceeding the limits,
+     * keeping at least the newest message.
+     * Caller must hold the lock of the message collection.
+     *
+     * @param checkAllAges true for removing any expired message, false for only checking the oldest messages.
+     * @return the MSNs of the removed messages, in descending order as required for sequential EXPUNGE responses.
+     */
+    private int[] evict(RetentionPolicy policy, long now, boolean checkAllAges) {
+        int size = mailMessages.size();
+        BitSet victims = new BitSet(size);
+        int remaining = size;
+        long bytes = totalBytes;
+        if (checkAllAges && policy.getMaxAge() > 0L) {
+            for (int i = 0; i < size; i++) {
+                StoredMessage message = mailMessages.get(i);
+                if (policy.isExpired(message, now)) {
+                    victims.set(i);
+                    remaining--;
+                    bytes -= sizeOf(message);
+                }
+            }
+        }
+        for (int i = victims.nextClearBit(0); i < size && remaining > 1; i = victims.nextClearBit(i + 1)) {
+            StoredMessage message = mailMessages.get(i);
+            if (!policy.exceedsCount(remaining) && !policy.exceedsBytes(bytes) && !policy.isExpired(message, now)) {
+                break;
+            }
+            victims.set(i);
+            remaining--;
+            bytes -= sizeOf(message);
+        }
+        if (remaining == size) {
+            return new int[0];
+        }
+        List<StoredMessage> evicted = new ArrayList<>(size - remaining);
+        int[] evictedMsns = mailMessages.remove(victims, evicted);
+        totalBytes = bytes;
+        for (StoredMessage message : evicted) {
+            message.markRemoved();
+        }
+        return evictedMsns;
+    }
+
+    private static long sizeOf(StoredMessage message) {
+        try {
+            return message.getAttributes().getSize();
+        } catch (FolderException e) {
+            throw new IllegalStateException("Can not get size of message " + message.getUid(), e);
+        }
+    }
+
+    /**
+     * Recalculates the total size, after restoring messages.
+     * Caller must hold the lock of the message collection.
+     */
+    private void updateTotalBytes() {
+        long bytes = 0L;
+        for (StoredMessage message : mailMessages) {
+            bytes += sizeOf(message);
+        }
+        totalBytes = bytes;
     }
 
     @Override
@@ -257,6 +395,72 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
         notifyFlagUpdate(msn, message.getFlags(), uidNotification, silentListener);
     }
 
+    @Override
+    public void setFlags(Flags flags, boolean value, IdRange[] idSet, boolean useUids, FolderListener silentListener) {
+        updateFlags(flags, value, idSet, useUids, silentListener);
+    }
+
+    @Override
+    public void replaceFlags(Flags flags, IdRange[] idSet, boolean useUids, FolderListener silentListener) {
+        updateFlags(flags, null, idSet, useUids, silentListener);
+    }
+
+    /**
+     * @param value true for setting, false for clearing and null for replacing flags.
+     */
+    private void updateFlags(Flags flags, Boolean value, IdRange[] idSet, boolean useUids, FolderListener silentListener) {
+        List<StoredMessage> updated = new ArrayList<>();
+        int[] msns;
+        synchronized (mailMessages) {
+            int size = mailMessages.size();
+            msns = new int[size];
+            // Uids ascend like MSNs
+            IdRange.AscendingMatcher matcher = new IdRange.AscendingMatcher(idSet);
+            for (int i = 0; i < size; i++) {
+                StoredMessage message = mailMessages.get(i);
+                if (matcher.matches(useUids ? message.getUid() : i + 1)) {
+                    if (null == value) {
+                        message.setFlags(MessageFlags.ALL_FLAGS, false);
+                        message.setFlags(flags, true);
+                    } else {
+                        message.setFlags(flags, value);
+                    }
+                    msns[updated.size()] = i + 1;
+                    updated.add(message);
+                }
+            }
+        }
+
+        synchronized (_mailboxListeners) {
+            if (_mailboxListeners.isEmpty() || (_mailboxListeners.size() == 1 && _mailboxListeners.contains(silentListener))) {
+                return;
+            }
+            // Messages without user flags share the flags per system flag mask
+            Map<Integer, Flags> flagsByMask = new HashMap<>();
+            for (int i = 0; i < updated.size(); i++) {
+                StoredMessage message = updated.get(i);
+                Flags messageFlags;
+                if (message.hasUserFlags()) {
+                    messageFlags = message.getFlags();
+                } else {
+                    messageFlags = flagsByMask.get(message.getSystemFlags());
+                    if (null == messageFlags) {
+                        messageFlags = message.getFlags();
+                        if (messageFlags.getUserFlags().length == 0) {
+                            flagsByMask.put(MessageFlags.toMask(messageFlags), messageFlags);
+                        }
+                    }
+                }
+                Long uidNotification = useUids ? message.getUid() : null;
+                for (FolderListener listener : _mailboxListeners) {
+                    if (listener != silentListener) {
+                        listener.flagsUpdated(msns[i], messageFlags, uidNotification);
+                    }
+                }
+            }
+        }
+    }
+
     private void notifyFlagUpdate(int msn, Flags flags, Long uidNotification, FolderListener silentListener) {
         synchronized (_mailboxListeners) {
             for (FolderListener listener : _mailboxListeners) {
@@ -272,7 +476,11 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
     @Override
     public void deleteAllMessages() {
         synchronized (mailMessages) {
+            for (StoredMessage message : mailMessages) {
+                message.markRemoved();
+            }
             mailMessages.clear();
+            totalBytes = 0L;
         }
     }
 
@@ -292,7 +500,9 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
     @Override
     public StoredMessage getMessage(long uid) {
         synchronized (mailMessages) {
-            for (StoredMessage mailMessage : mailMessages) {
+            // Backwards, as recently appended messages are most likely looked up
+            for (int i = mailMessages.size() - 1; i >= 0; i--) {
+                StoredMessage mailMessage = mailMessages.get(i);
                 if (mailMessage.getUid() == uid) {
                     return mailMessage;
                 }
@@ -345,14 +555,141 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
         return toFolder.appendMessage(newMime, originalMessage.getFlags(), originalMessage.getReceivedDate());
     }
 
+    @Override
+    public long[] moveMessages(long[] uids, MailFolder toFolder) throws FolderException {
+        if (!(toFolder instanceof HierarchicalFolder)) {
+            // Unknown folder implementation, can not share content
+            long[] newUids = new long[uids.length];
+            for (int i = 0; i < uids.length; i++) {
+                newUids[i] = copyMessage(uids[i], toFolder);
+            }
+            removeMessages(uids);
+            return newUids;
+        }
+
+        HierarchicalFolder target = (HierarchicalFolder) toFolder;
+        RetentionPolicy policy = target.getRetentionPolicy();
+        // Always acquire folder locks in same order, avoiding dead locks for concurrent moves A->B and B->A
+        int sourceHash = System.identityHashCode(mailMessages);
+        int targetHash = System.identityHashCode(target.mailMessages);
+        MoveResult result;
+        if (sourceHash < targetHash) {
+            synchronized (mailMessages) {
+                synchronized (target.mailMessages) {
+                    result = relinkMessages(uids, target, policy);
+                }
+            }
+        } else if (sourceHash > targetHash) {
+            synchronized (target.mailMessages) {
+                synchronized (mailMessages) {
+                    result = relinkMessages(uids, target, policy);
+                }
+            }
+        } else {
+            synchronized (MOVE_TIE_LOCK) {
+                synchronized (mailMessages) {
+                    synchronized (target.mailMessages) {
+                        result = relinkMessages(uids, target, policy);
+                    }
+                }
+            }
+        }
+
+        // Notify listeners outside of the folder locks. Same as appending, evictions follow the additions
+        notifyExpunged(result.expungedMsns);
+        synchronized (target._mailboxListeners) {
+            for (int i = 0; i < result.uids.length; i++) {
+                for (FolderListener listener : target._mailboxListeners) {
+                    listener.added(result.firstAddedMsn + i);
+                }
+            }
+        }
+        target.notifyExpunged(result.evictedMsns);
+
+        return result.uids;
+    }
+
+    /**
+     * Removes the messages from this folder in a single pass, and appends messages sharing the content
+     * to the target folder. The removed messages stay untouched, as they might still be referenced,
+     * eg by POP3 sessions. Applies the retention policy of the target folder, same as appending.
+     * Caller must hold the locks of both message collections.
+     */
+    private MoveResult relinkMessages(long[] uids, HierarchicalFolder target, RetentionPolicy policy)
+            throws FolderException {
+        List<StoredMessage> removed = new ArrayList<>(uids.length);
+        int[] expungedMsns = mailMessages.remove(uids, removed);
+        int firstAddedMsn = target.mailMessages.size() + 1;
+        long[] newUids = new long[removed.size()];
+        for (int i = 0; i < newUids.length; i++) {
+            StoredMessage message = removed.get(i);
+            long size = sizeOf(message);
+            totalBytes -= size;
+
+            newUids[i] = target.nextUid++;
+            StoredMessage moved = new StoredMessage(message, newUids[i], target.keywords);
+            moved.setFlag(Flags.Flag.RECENT, true);
+            target.mailMessages.add(moved);
+            message.markMovedTo(moved);
+            target.totalBytes += size;
+        }
+        int[] evictedMsns = new int[0];
+        if (!policy.isUnlimited()) {
+            evictedMsns = target.evict(policy, System.currentTimeMillis(), false);
+        }
+        return new MoveResult(expungedMsns, firstAddedMsn, newUids, evictedMsns);
+    }
+
+    private void removeMessages(long[] uids) throws FolderException {
+        int[] expungedMsns;
+        synchronized (mailMessages) {
+            List<StoredMessage> removed = new ArrayList<>(uids.length);
+            expungedMsns = mailMessages.remove(uids, removed);
+            for (StoredMessage message : removed) {
+                totalBytes -= sizeOf(message);
+                message.markRemoved();
+            }
+        }
+        notifyExpunged(expungedMsns);
+    }
+
+    private void notifyExpunged(int[] expungedMsns) {
+        synchronized (_mailboxListeners) {
+            for (int msn : expungedMsns) {
+                for (FolderListener listener : _mailboxListeners) {
+                    listener.expunged(msn);
+                }
+            }
+        }
+    }
+
     @Override
     public void expunge() throws FolderException {
-        mailMessages.expunge(_mailboxListeners);
+        expunge(null);
     }
 
     @Override
     public void expunge(IdRange[] idRanges) {
-        mailMessages.expunge(_mailboxListeners, idRanges);
+        int[] expungedMsns;
+        synchronized (mailMessages) {
+            List<StoredMessage> removed = new ArrayList<>();
+            expungedMsns = mailMessages.expungeDeleted(idRanges, removed);
+            for (StoredMessage message : removed) {
+                totalBytes -= sizeOf(message);
+                message.markRemoved();
+            }
+        }
+
+        // Notify outside of the message lock, so that readers do not wait for slow listeners
+        if (expungedMsns.length > 0) {
+            synchronized (_mailboxListeners) {
+                for (int msn : expungedMsns) {
+                    for (FolderListener listener : _mailboxListeners) {
+                        listener.expunged(msn);
+                    }
+                }
+            }
+        }
     }
 
     @Override
@@ -378,6 +715,22 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
                 '}';
     }
 
+    private static final class MoveResult {
+        /** Descending, as required for sequential EXPUNGE responses */
+        private final int[] expungedMsns;
+        private final int firstAddedMsn;
+        private final long[] uids;
+        /** Evicted from the target folder after adding, descending */
+        private final int[] evictedMsns;
+
+        MoveResult(int[] expungedMsns, int firstAddedMsn, long[] uids, int[] evictedMsns) {
+            this.expungedMsns = expungedMsns;
+            this.firstAddedMsn = firstAddedMsn;
+            this.uids = uids;
+            this.evictedMsns = evictedMsns;
+        }
+    }
+
     @Override
     public long getUIDValidity() throws MessagingException {
         return getUidValidity();
@@ -420,6 +773,97 @@ class HierarchicalFolder implements MailFolder, UIDFolder {
         }
     }
 
+    /**
+     * Captures the state of this folder and all sub folders.
+     *
+     * @return the immutable state.
+     */
+    State captureState() {
+        return new State(this);
+    }
+
+    /**
+     * Resets this folder and all sub folders to a previously captured state, re-linking the captured
+     * folders and messages instead of copying them.
+     * Folders created after capturing get dropped. Listeners are kept.
+     *
+     * @param state the state captured from this folder.
+     */
+    void restoreState(State state) {
+        if (state.folder != this) {
+            throw new IllegalArgumentException("State of folder " + state.folder.getFullName()
+                    + " can not be restored to " + getFullName());
+        }
+        synchronized (mailMessages) {
+            name = state.name;
+            isSelectable = state.selectable;
+            nextUid = state.nextUid;
+            uidValidity = state.uidValidity;
+            retentionPolicy = state.retentionPolicy;
+            for (StoredMessage message : mailMessages) {
+                message.markRemoved();
+            }
+            mailMessages.clear();
+            for (StoredMessage.State messageState : state.messages) {
+                mailMessages.add(messageState.restore());
+            }
+            updateTotalBytes();
+        }
+        children.clear();
+        for (State childState : state.children) {
+            HierarchicalFolder child = childState.folder;
+            child.parent = this;
+            child.restoreState(childState);
+            children.add(child);
+        }
+    }
+
+    /**
+     * Immutable state of a folder, referencing but not copying the folder objects and messages.
+     */
+    static class State {
+        private final HierarchicalFolder folder;
+        private final String name;
+        private final boolean selectable;
+        private final long nextUid;
+        private final long uidValidity;
+        private final RetentionPolicy retentionPolicy;
+        private final StoredMessage.State[] messages;
+        private final State[] children;
+
+        private State(HierarchicalFolder folder) {
+            this.folder = folder;
+            synchronized (folder.mailMessages) {
+                name = folder.name;
+                selectable = folder.isSelectable;
+                nextUid = folder.nextUid;
+                uidValidity = folder.uidValidity;
+                retentionPolicy = folder.retentionPolicy;
+                messages = new StoredMessage.State[folder.mailMessages.size()];
+                int i = 0;
+                for (StoredMessage message : folder.mailMessages) {
+                    messages[i++] = message.captureState();
+                }
+            }
+            List<State> childStates = new ArrayList<>();
+            for (HierarchicalFolder child : new ArrayList<>(folder.children)) {
+                childStates.add(new State(child));
+            }
+            children = childStates.toArray(new State[childStates.size()]);
+        }
+
+        /**
+         * @return the number of captured messages, including sub folders.
+         */
+        int getMessageCount() {
+            int count = messages.length;
+            for (State child : children) {
+                count += child.getMessageCount();
+            }
+            return count;
+        }
+    }
+
     @Override
     public long getUID(Message message) throws MessagingException {
         // Check if we have a message with same object reference ... otherwise, not supported.
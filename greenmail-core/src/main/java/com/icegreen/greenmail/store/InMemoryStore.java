@@ -271,6 +271,99 @@ public class InMemoryStore
         }
     }
 
+    /**
+     * Stores the content of all messages appended from now on outside of the Java heap.
+     *
+     * @param arena the arena, or null for storing on heap.
+     */
+    public void setOffHeapArena(OffHeapArena arena) {
+        rootMailbox.setArena(arena);
+    }
+
+    /**
+     * @return the arena for storing message content off heap, or null if storing on heap.
+     */
+    public OffHeapArena getOffHeapArena() {
+        return rootMailbox.getArena();
+    }
+
+    @Override
+    public void setRetentionPolicy(MailFolder folder, RetentionPolicy policy) {
+        ((HierarchicalFolder) folder).setRetentionPolicy(policy);
+    }
+
+    @Override
+    public int applyRetention() {
+        return applyRetention(rootMailbox, System.currentTimeMillis());
+    }
+
+    private int applyRetention(HierarchicalFolder folder, long now) {
+        int count = folder.applyRetention(now);
+        for (HierarchicalFolder child : new ArrayList<>(folder.getChildren())) {
+            count += applyRetention(child, now);
+        }
+        return count;
+    }
+
+    /**
+     * Captures all folders, messages, flags and quotas, for resetting this store later on.
+     * <p/>
+     * Cheap, as the snapshot references the existing folders and messages instead of copying them.
+     *
+     * @return the snapshot.
+     * @see #restoreSnapshot(Snapshot)
+     */
+    public Snapshot createSnapshot() {
+        Map<String, Set<Quota>> quotas = new HashMap<>();
+        for (Map.Entry<String, Set<Quota>> entry : quotaMap.entrySet()) {
+            quotas.put(entry.getKey(), new HashSet<>(entry.getValue()));
+        }
+        return new Snapshot(this, rootMailbox.captureState(), quotas);
+    }
+
+    /**
+     * Resets this store to given snapshot, dropping all folders and messages created since.
+     * <p/>
+     * Clients should not be connected while restoring, as open sessions still refer to
+     * the message sequence numbers before restoring.
+     *
+     * @param snapshot the snapshot created by this store.
+     */
+    public void restoreSnapshot(Snapshot snapshot) {
+        if (snapshot.store != this) {
+            throw new IllegalArgumentException("Snapshot was created by another store");
+        }
+        rootMailbox.restoreState(snapshot.root);
+        quotaMap.clear();
+        for (Map.Entry<String, Set<Quota>> entry : snapshot.quotas.entrySet()) {
+            quotaMap.put(entry.getKey(), new HashSet<>(entry.getValue()));
+        }
+    }
+
+    /**
+     * Immutable snapshot of an in memory store.
+     *
+     * @see InMemoryStore#createSnapshot()
+     */
+    public static class Snapshot {
+        private final InMemoryStore store;
+        private final HierarchicalFolder.State root;
+        private final Map<String, Set<Quota>> quotas;
+
+        private Snapshot(InMemoryStore store, HierarchicalFolder.State root, Map<String, Set<Quota>> quotas) {
+            this.store = store;
+            this.root = root;
+            this.quotas = quotas;
+        }
+
+        /**
+         * @return the number of messages in all folders.
+         */
+        public int getMessageCount() {
+            return root.getMessageCount();
+        }
+    }
+
     @Override
     public boolean isQuotaSupported() {
         return quotaSupported;
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.store;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns ids to user flags (keywords) of a folder, so that messages only keep a bit set of ids.
+ * <p/>
+ * Keywords are case insensitive, as for {@link javax.mail.Flags}, keeping the spelling of first use.
+ * Ids never get reused. Thread safe.
+ */
+class KeywordTable {
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[0];
+
+    /**
+     * Gets the id of given keyword, assigning a new id if unknown.
+     *
+     * @param keyword the keyword.
+     * @return the id.
+     */
+    int getOrAssignId(String keyword) {
+        String key = keyword.toLowerCase(Locale.ENGLISH);
+        Integer id = ids.get(key);
+        if (null != id) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(key);
+            if (null == id) {
+                String[] newNames = Arrays.copyOf(names, names.length + 1);
+                newNames[names.length] = keyword;
+                id = names.length;
+                names = newNames;
+                ids.put(key, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * @param keyword the keyword.
+     * @return the id, or -1 if unknown.
+     */
+    int getId(String keyword) {
+        Integer id = ids.get(keyword.toLowerCase(Locale.ENGLISH));
+        return null == id ? -1 : id;
+    }
+
+    /**
+     * @param id the id.
+     * @return the keyword.
+     */
+    String getName(int id) {
+        return names[id];
+    }
+}
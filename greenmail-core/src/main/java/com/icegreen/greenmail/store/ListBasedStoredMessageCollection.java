@@ -31,22 +31,6 @@ public class ListBasedStoredMessageCollection implements StoredMessageCollection
         mailMessages.clear();
     }
 
-    private void expungeMessage(int msn, Collection<FolderListener> mailboxListeners) {
-        // Notify all the listeners of the pending delete
-        synchronized (mailboxListeners) {
-            deleteMessage(msn);
-            for (FolderListener expungeListener : mailboxListeners) {
-                expungeListener.expunged(msn);
-            }
-        }
-    }
-
-    private void deleteMessage(int msn) {
-        synchronized (mailMessages) {
-            mailMessages.remove(msn - 1); // input is 1 based index
-        }
-    }
-
     @Override
     public int getFirstUnseen() {
         synchronized (mailMessages) {
@@ -115,22 +99,114 @@ public class ListBasedStoredMessageCollection implements StoredMessageCollection
 
     @Override
     public void expunge(List<FolderListener> folderListeners, IdRange[] idRanges) {
+        int[] expungedMsns = expungeDeleted(idRanges, new ArrayList<StoredMessage>());
+        synchronized (folderListeners) {
+            for (int msn : expungedMsns) {
+                for (FolderListener expungeListener : folderListeners) {
+                    expungeListener.expunged(msn);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int[] expungeDeleted(IdRange[] idRanges, List<StoredMessage> removed) {
         synchronized (mailMessages) {
-            for (int i = mailMessages.size() - 1; i >= 0; i--) {
+            int size = mailMessages.size();
+            int[] expungedMsns = new int[size];
+            int expungedCount = 0;
+            IdRange.AscendingMatcher matcher = idRanges == null ? null : new IdRange.AscendingMatcher(idRanges);
+            // Moves each kept message down to its final position, shifting every message at most once
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
                 StoredMessage message = mailMessages.get(i);
                 if (message.isSet(Flags.Flag.DELETED) &&
-                        (idRanges == null || IdRange.containsUid(idRanges, message.getUid()))) {
-                    expungeMessage(i + 1, folderListeners); // MSNs start counting at 1
+                        (matcher == null || matcher.matches(message.getUid()))) {
+                    expungedMsns[expungedCount++] = i + 1; // MSNs start counting at 1
+                    removed.add(message);
+                } else {
+                    if (kept != i) {
+                        mailMessages.set(kept, message);
+                    }
+                    kept++;
+                }
+            }
+            if (expungedCount == 0) {
+                return new int[0];
+            }
+            mailMessages.subList(kept, size).clear();
+            return descending(expungedMsns, expungedCount);
+        }
+    }
+
+    @Override
+    public int[] remove(long[] uids, List<StoredMessage> removed) throws FolderException {
+        long[] sortedUids = uids.clone();
+        Arrays.sort(sortedUids);
+        synchronized (mailMessages) {
+            int size = mailMessages.size();
+            BitSet indexes = new BitSet(size);
+            int found = 0;
+            for (int i = 0; i < size && found < sortedUids.length; i++) {
+                if (Arrays.binarySearch(sortedUids, mailMessages.get(i).getUid()) >= 0) {
+                    indexes.set(i);
+                    found++;
                 }
             }
+            if (found < sortedUids.length) {
+                throw new FolderException("No such message.");
+            }
+            return remove(indexes, removed);
         }
     }
 
+    @Override
+    public int[] remove(BitSet indexes, List<StoredMessage> removed) {
+        synchronized (mailMessages) {
+            int size = mailMessages.size();
+            int first = indexes.nextSetBit(0);
+            if (first < 0 || first >= size) {
+                return new int[0];
+            }
+            int[] removedMsns = new int[size - first];
+            int removedCount = 0;
+            // Moves each kept message down to its final position, shifting every message at most once
+            int kept = first;
+            for (int i = first; i < size; i++) {
+                StoredMessage message = mailMessages.get(i);
+                if (indexes.get(i)) {
+                    removed.add(message);
+                    removedMsns[removedCount++] = i + 1; // MSNs start counting at 1
+                } else {
+                    mailMessages.set(kept++, message);
+                }
+            }
+            mailMessages.subList(kept, size).clear();
+            return descending(removedMsns, removedCount);
+        }
+    }
+
+    /**
+     * Reverses ascending MSNs, so that each MSN is still valid after the previous ones got expunged.
+     */
+    private static int[] descending(int[] msns, int count) {
+        int[] descending = new int[count];
+        for (int i = 0; i < count; i++) {
+            descending[i] = msns[count - 1 - i];
+        }
+        return descending;
+    }
+
     @Override
     public StoredMessage get(int i) {
         return mailMessages.get(i);
     }
 
+    @Override
+    public StoredMessage remove(int msn) {
+        return mailMessages.remove(msn - 1); // input is 1 based index
+    }
+
     @Override
     public Iterator<StoredMessage> iterator() {
         return mailMessages.iterator();
@@ -57,6 +57,16 @@ public interface MailFolder {
      */
     long appendMessage(MimeMessage message, Flags flags, Date internalDate);
 
+    /**
+     * Appends a message, same as {@link #appendMessage(MimeMessage, Flags, Date)}.
+     *
+     * @param message the message.
+     * @param flags the flags.
+     * @param internalDate the received date
+     * @return the stored message as appended, for referencing it without looking it up by UID.
+     */
+    StoredMessage appendStoredMessage(MimeMessage message, Flags flags, Date internalDate);
+
     void deleteAllMessages();
 
     void expunge() throws FolderException;
@@ -85,10 +95,51 @@ public interface MailFolder {
     long copyMessage(long uid, MailFolder toFolder)
             throws FolderException;
 
+    /**
+     * Moves messages to another folder (RFC 6851).
+     * <p>
+     * The target folder shares the content of the messages with new UIDs instead of copying it,
+     * and listeners of this folder are notified about the expunges.
+     *
+     * @param uids the uids of the messages to move, in order of the messages in this folder.
+     * @param toFolder the target folder.
+     * @return the new uids in the target folder, in the same order.
+     * @throws FolderException if any message does not exist. No message gets moved then.
+     */
+    long[] moveMessages(long[] uids, MailFolder toFolder)
+            throws FolderException;
+
     void setFlags(Flags flags, boolean value, long uid, FolderListener silentListener, boolean addUid) throws FolderException;
 
     void replaceFlags(Flags flags, long uid, FolderListener silentListener, boolean addUid) throws FolderException;
 
+    /**
+     * Sets or clears flags of all messages in given id set, in a single pass.
+     * <p>
+     * Listeners get notified about all updated messages at once after updating.
+     * Listeners must not modify the notified flags, as these are shared between listeners.
+     *
+     * @param flags the flags.
+     * @param value true for setting, false for clearing.
+     * @param idSet the message set.
+     * @param useUids true if the message set contains UIDs, which are then also included in notifications.
+     *                Otherwise MSNs.
+     * @param silentListener a listener not getting notified, or null.
+     */
+    void setFlags(Flags flags, boolean value, IdRange[] idSet, boolean useUids, FolderListener silentListener);
+
+    /**
+     * Replaces the system flags of all messages in given id set, in a single pass.
+     *
+     * @param flags the flags.
+     * @param idSet the message set.
+     * @param useUids true if the message set contains UIDs, which are then also included in notifications.
+     *                Otherwise MSNs.
+     * @param silentListener a listener not getting notified, or null.
+     * @see #setFlags(Flags, boolean, IdRange[], boolean, FolderListener)
+     */
+    void replaceFlags(Flags flags, IdRange[] idSet, boolean useUids, FolderListener silentListener);
+
     int getMsn(long uid) throws FolderException;
 
     void signalDeletion();
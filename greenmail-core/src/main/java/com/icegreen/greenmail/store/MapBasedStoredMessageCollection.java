@@ -110,23 +110,39 @@ public class MapBasedStoredMessageCollection implements StoredMessageCollection
 
     @Override
     public void expunge(List<FolderListener> mailboxListeners, IdRange[] idRanges) {
+        int[] expungedMsns = expungeDeleted(idRanges, new ArrayList<StoredMessage>());
+        synchronized (mailboxListeners) {
+            for (int msn : expungedMsns) {
+                for (FolderListener expungeListener : mailboxListeners) {
+                    expungeListener.expunged(msn);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int[] expungeDeleted(IdRange[] idRanges, List<StoredMessage> removed) {
+        final List<Integer> expungedMsns = new ArrayList<>();
         int i = 1;
+        final IdRange.AscendingMatcher matcher = idRanges == null ? null : new IdRange.AscendingMatcher(idRanges);
         synchronized (mailMessages) {
             for (final Iterator<Map.Entry<Long, StoredMessage>> messageEntryIt = mailMessages.entrySet().iterator(); messageEntryIt.hasNext(); ) {
                 final Map.Entry<Long, StoredMessage> messageEntry = messageEntryIt.next();
                 if (messageEntry.getValue().isSet(Flags.Flag.DELETED) &&
-                        (idRanges == null || IdRange.containsUid(idRanges, messageEntry.getValue().getUid()))) {
-                    // Notify all the listeners of the pending delete
-                    synchronized (mailboxListeners) {
-                        messageEntryIt.remove();
-                        for (FolderListener expungeListener : mailboxListeners) {
-                            expungeListener.expunged(i);
-                        }
-                    }
+                        (matcher == null || matcher.matches(messageEntry.getValue().getUid()))) {
+                    messageEntryIt.remove();
+                    removed.add(messageEntry.getValue());
+                    expungedMsns.add(i);
                 }
                 i++;
             }
         }
+        // Descending, so that each MSN is still valid after the previous ones got expunged
+        final int[] descending = new int[expungedMsns.size()];
+        for (int j = 0; j < descending.length; j++) {
+            descending[j] = expungedMsns.get(descending.length - 1 - j);
+        }
+        return descending;
     }
 
     @Override
@@ -143,6 +159,60 @@ public class MapBasedStoredMessageCollection implements StoredMessageCollection
         throw new IllegalArgumentException(format("No message with index %d found", messageIndex));
     }
 
+    @Override
+    public StoredMessage remove(int msn) {
+        synchronized (mailMessages) {
+            return mailMessages.remove(get(msn - 1).getUid());
+        }
+    }
+
+    @Override
+    public int[] remove(long[] uids, List<StoredMessage> removed) throws FolderException {
+        final Set<Long> remaining = new HashSet<>();
+        for (long uid : uids) {
+            remaining.add(uid);
+        }
+        synchronized (mailMessages) {
+            if (!mailMessages.keySet().containsAll(remaining)) {
+                throw new FolderException("No such message.");
+            }
+            final int[] removedMsns = new int[remaining.size()];
+            int removedCount = 0;
+            int i = 1;
+            for (final Iterator<StoredMessage> messageIt = mailMessages.values().iterator();
+                 messageIt.hasNext() && !remaining.isEmpty(); ) {
+                final StoredMessage message = messageIt.next();
+                if (remaining.remove(message.getUid())) {
+                    messageIt.remove();
+                    removed.add(message);
+                    // Descending, so that each MSN is still valid after the previous ones got expunged
+                    removedMsns[removedMsns.length - 1 - removedCount++] = i;
+                }
+                i++;
+            }
+            return removedMsns;
+        }
+    }
+
+    @Override
+    public int[] remove(BitSet indexes, List<StoredMessage> removed) {
+        synchronized (mailMessages) {
+            final int[] removedMsns = new int[mailMessages.size()];
+            int removedCount = 0;
+            int i = 0;
+            for (final Iterator<StoredMessage> messageIt = mailMessages.values().iterator(); messageIt.hasNext(); i++) {
+                final StoredMessage message = messageIt.next();
+                if (indexes.get(i)) {
+                    messageIt.remove();
+                    removed.add(message);
+                    // Descending, so that each MSN is still valid after the previous ones got expunged
+                    removedMsns[removedMsns.length - 1 - removedCount++] = i + 1;
+                }
+            }
+            return Arrays.copyOfRange(removedMsns, removedMsns.length - removedCount, removedMsns.length);
+        }
+    }
+
     @Override
     public Iterator<StoredMessage> iterator() {
         return mailMessages.values().iterator();
@@ -37,35 +37,103 @@ public class MessageFlags {
     public static final String SEEN = "\\SEEN";
     public static final String RECENT = "\\RECENT" ;
 
+    /**
+     * System flags in IMAP format order, with the bit of each flag in a flag mask being 1 &lt;&lt; index.
+     */
+    private static final Flags.Flag[] SYSTEM_FLAGS = {
+            Flags.Flag.ANSWERED, Flags.Flag.DELETED, Flags.Flag.DRAFT,
+            Flags.Flag.FLAGGED, Flags.Flag.RECENT, Flags.Flag.SEEN, Flags.Flag.USER
+    };
+    private static final String[] SYSTEM_FLAG_NAMES = {
+            "\\Answered", "\\Deleted", "\\Draft", "\\Flagged", "\\Recent", "\\Seen"
+    };
+    /** Bits of flags getting formatted, excluding USER */
+    private static final int FORMATTED_MASK = (1 << SYSTEM_FLAG_NAMES.length) - 1;
+    /** Preformatted flag lists, indexed by flag mask */
+    private static final String[] FORMATTED = new String[FORMATTED_MASK + 1];
+
+    static {
+        for (int mask = 0; mask < FORMATTED.length; mask++) {
+            FORMATTED[mask] = format(mask, null);
+        }
+    }
+
     protected MessageFlags() {
         // Not instantiable
     }
 
     /**
-     * Returns IMAP formatted String of MessageFlags for named user
+     * Gets the bit of given system flag, for a compact flag mask.
+     *
+     * @param flag the system flag.
+     * @return the bit.
      */
-    public static String format(Flags flags) {
-        StringBuilder buf = new StringBuilder();
-        buf.append('(');
-        if (flags.contains(Flags.Flag.ANSWERED)) {
-            buf.append("\\Answered ");
-        }
-        if (flags.contains(Flags.Flag.DELETED)) {
-            buf.append("\\Deleted ");
+    public static int toMask(Flags.Flag flag) {
+        for (int i = 0; i < SYSTEM_FLAGS.length; i++) {
+            if (SYSTEM_FLAGS[i] == flag) {
+                return 1 << i;
+            }
         }
-        if (flags.contains(Flags.Flag.DRAFT)) {
-            buf.append("\\Draft ");
+        throw new IllegalArgumentException("Unsupported flag " + flag);
+    }
+
+    /**
+     * Gets the system flags as a compact flag mask, ignoring any user flags.
+     *
+     * @param flags the flags.
+     * @return the flag mask.
+     */
+    public static int toMask(Flags flags) {
+        int mask = 0;
+        for (Flags.Flag flag : flags.getSystemFlags()) {
+            mask |= toMask(flag);
         }
-        if (flags.contains(Flags.Flag.FLAGGED)) {
-            buf.append("\\Flagged ");
+        return mask;
+    }
+
+    /**
+     * Adds the system flags of given flag mask.
+     *
+     * @param mask  the flag mask.
+     * @param flags the flags to add to.
+     */
+    public static void addTo(int mask, Flags flags) {
+        for (int i = 0; i < SYSTEM_FLAGS.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                flags.add(SYSTEM_FLAGS[i]);
+            }
         }
-        if (flags.contains(Flags.Flag.RECENT)) {
-            buf.append("\\Recent ");
+    }
+
+    /**
+     * Returns IMAP formatted String of MessageFlags for named user
+     */
+    public static String format(Flags flags) {
+        return format(toMask(flags), flags.getUserFlags());
+    }
+
+    /**
+     * Formats the flags, without allocating for system flags only.
+     *
+     * @param mask      the system flags as flag mask.
+     * @param userFlags the user flags, or null.
+     * @return the IMAP formatted flag list.
+     */
+    public static String format(int mask, String[] userFlags) {
+        if (null == userFlags || userFlags.length == 0) {
+            String formatted = FORMATTED[mask & FORMATTED_MASK];
+            if (null != formatted) {
+                return formatted;
+            }
         }
-        if (flags.contains(Flags.Flag.SEEN)) {
-            buf.append("\\Seen ");
+
+        StringBuilder buf = new StringBuilder();
+        buf.append('(');
+        for (int i = 0; i < SYSTEM_FLAG_NAMES.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                buf.append(SYSTEM_FLAG_NAMES[i]).append(' ');
+            }
         }
-        String[] userFlags = flags.getUserFlags();
         if(null!=userFlags) {
             for(String uf: userFlags) {
                 buf.append(uf).append(' ');
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.store;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Stores raw message content outside of the Java heap, in direct byte buffer slabs.
+ * <p/>
+ * Messages get parsed from the stored content via {@link javax.mail.internet.SharedInputStream},
+ * so that only headers and metadata stay on the heap while the content gets read on demand.
+ * This keeps GC pauses independent of the stored volume.
+ * <p/>
+ * Space is allocated best fit from a free list, and freed space gets merged with adjacent free space.
+ * Content is freed once the message has been removed and is no longer referenced, eg by a
+ * POP3 maildrop snapshot or a FETCH in progress, as reading freed and reallocated content would be fatal.
+ * Messages larger than the slab size get a dedicated buffer.
+ * <p/>
+ * Note that the total size is limited by the JVM option -XX:MaxDirectMemorySize.
+ */
+public class OffHeapArena {
+    /**
+     * Default size of a slab, 4 MiB.
+     */
+    public static final int DEFAULT_SLAB_SIZE = 4 << 20;
+    /** Granularity of allocations, avoiding tiny unusable free blocks */
+    private static final int ALIGNMENT = 64;
+
+    private final int slabSize;
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    /** Free blocks by start address, for merging */
+    private final TreeMap<Long, Integer> freeByAddress = new TreeMap<>();
+    /** Free blocks by size and address, for best fit */
+    private final TreeSet<long[]> freeBySize = new TreeSet<>(new Comparator<long[]>() {
+        @Override
+        public int compare(long[] o1, long[] o2) {
+            int c = Long.compare(o1[1], o2[1]);
+            return c != 0 ? c : Long.compare(o1[0], o2[0]);
+        }
+    });
+    private final ReferenceQueue<Object> unreferenced = new ReferenceQueue<>();
+    /** Keeps the phantom references reachable till processed */
+    private final Set<Allocation> allocations = new HashSet<>();
+    private long usedBytes;
+    private long dedicatedBytes;
+
+    /**
+     * Creates an arena with {@link #DEFAULT_SLAB_SIZE}.
+     */
+    public OffHeapArena() {
+        this(DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param slabSize the size of each direct buffer allocated.
+     */
+    public OffHeapArena(int slabSize) {
+        if (slabSize < ALIGNMENT) {
+            throw new IllegalArgumentException("Expected slab size >= " + ALIGNMENT + " but got " + slabSize);
+        }
+        this.slabSize = slabSize / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * Copies the content of given message into this arena.
+     *
+     * @param message the message.
+     * @return a stream for parsing the stored message, implementing {@link javax.mail.internet.SharedInputStream}.
+     * @throws MessagingException on error writing the message.
+     */
+    public InputStream store(MimeMessage message) throws MessagingException {
+        ExposedByteArrayOutputStream bytes = new ExposedByteArrayOutputStream();
+        try {
+            message.writeTo(bytes);
+        } catch (IOException e) {
+            throw new MessagingException("Can not write message " + message, e);
+        }
+        return store(bytes.getBuffer(), 0, bytes.size());
+    }
+
+    /**
+     * Copies given content into this arena.
+     *
+     * @param content the content.
+     * @param offset  the offset.
+     * @param length  the length.
+     * @return a stream of the stored content, implementing {@link javax.mail.internet.SharedInputStream}.
+     */
+    public InputStream store(byte[] content, int offset, int length) {
+        Owner owner = new Owner();
+        ByteBuffer region;
+        synchronized (this) {
+            reclaim();
+            int size = align(Math.max(length, 1));
+            if (size > slabSize) {
+                region = ByteBuffer.allocateDirect(length);
+                dedicatedBytes += length;
+                owner.allocation = new Allocation(owner, -1L, length, unreferenced);
+            } else {
+                long address = allocate(size);
+                ByteBuffer slab = slabs.get((int) (address / slabSize)).duplicate();
+                int start = (int) (address % slabSize);
+                slab.limit(start + length);
+                slab.position(start);
+                region = slab.slice();
+                usedBytes += size;
+                owner.allocation = new Allocation(owner, address, size, unreferenced);
+            }
+            allocations.add(owner.allocation);
+        }
+        // Regions are disjoint, so no need to hold the lock while copying
+        region.put(content, offset, length);
+        region.flip();
+        return new SharedByteBufferInputStream(region, owner);
+    }
+
+    private long allocate(int size) {
+        long[] block = freeBySize.ceiling(new long[]{-1L, size});
+        if (null == block) {
+            ByteBuffer slab = ByteBuffer.allocateDirect(slabSize);
+            slabs.add(slab);
+            addFree((long) (slabs.size() - 1) * slabSize, slabSize);
+            block = freeBySize.ceiling(new long[]{-1L, size});
+        }
+        removeFree(block[0], (int) block[1]);
+        if (block[1] > size) {
+            addFree(block[0] + size, (int) block[1] - size);
+        }
+        return block[0];
+    }
+
+    private void free(long address, int size) {
+        long start = address;
+        int length = size;
+        // Merge with adjacent free blocks of same slab
+        Map.Entry<Long, Integer> before = freeByAddress.lowerEntry(address);
+        if (null != before && before.getKey() + before.getValue() == address
+                && before.getKey() / slabSize == address / slabSize) {
+            removeFree(before.getKey(), before.getValue());
+            start = before.getKey();
+            length += before.getValue();
+        }
+        Integer after = freeByAddress.get(address + size);
+        if (null != after && (address + size) / slabSize == address / slabSize) {
+            removeFree(address + size, after);
+            length += after;
+        }
+        addFree(start, length);
+    }
+
+    private void addFree(long address, int size) {
+        freeByAddress.put(address, size);
+        freeBySize.add(new long[]{address, size});
+    }
+
+    private void removeFree(long address, int size) {
+        freeByAddress.remove(address);
+        freeBySize.remove(new long[]{address, size});
+    }
+
+    private static int align(int size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * Frees the space of all content no longer referenced.
+     */
+    public synchronized void reclaim() {
+        Reference<?> ref;
+        while (null != (ref = unreferenced.poll())) {
+            Allocation allocation = (Allocation) ref;
+            allocations.remove(allocation);
+            if (allocation.address < 0L) {
+                // Dedicated buffer gets released by GC
+                dedicatedBytes -= allocation.size;
+            } else {
+                usedBytes -= allocation.size;
+                free(allocation.address, allocation.size);
+            }
+        }
+    }
+
+    /**
+     * Frees the space of given content right away, instead of once no longer referenced.
+     * For testing, as the content must not be read afterwards.
+     *
+     * @param content a stream returned by this arena, or any sub stream.
+     */
+    synchronized void release(InputStream content) {
+        Owner owner = (Owner) ((SharedByteBufferInputStream) content).getOwner();
+        owner.allocation.enqueue();
+        reclaim();
+    }
+
+    /**
+     * @return the number of slabs allocated.
+     */
+    public synchronized int getSlabCount() {
+        return slabs.size();
+    }
+
+    /**
+     * @return the total capacity of all slabs and dedicated buffers, in bytes.
+     */
+    public synchronized long getCapacity() {
+        return (long) slabs.size() * slabSize + dedicatedBytes;
+    }
+
+    /**
+     * @return the bytes used by content, including content not yet {@link #reclaim() reclaimed}.
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes + dedicatedBytes;
+    }
+
+    /**
+     * @return the number of free blocks, as a measure of fragmentation.
+     */
+    public synchronized int getFreeBlockCount() {
+        return freeByAddress.size();
+    }
+
+    /**
+     * Owner of the content of all streams of a region.
+     */
+    private static class Owner {
+        /** Guarded by the arena */
+        private Allocation allocation;
+    }
+
+    private static class Allocation extends PhantomReference<Object> {
+        private final long address;
+        private final int size;
+
+        Allocation(Object owner, long address, int size, ReferenceQueue<Object> queue) {
+            super(owner, queue);
+            this.address = address;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Avoids copying the buffer when storing.
+     */
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        ExposedByteArrayOutputStream() {
+            super(8192);
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.store;
+
+/**
+ * Limits the messages kept in a mailbox, by count, total size and age.
+ * <p/>
+ * When a limit is exceeded, the oldest messages get evicted as if expunged, notifying all
+ * {@link FolderListener}s. Count and size limits are enforced when appending a message,
+ * age limits additionally by {@link Store#applyRetention()}.
+ * <p/>
+ * Instances are immutable. Example:
+ * <pre>
+ * RetentionPolicy.unlimited().withMaxMessages(10000).withMaxAge(TimeUnit.DAYS.toMillis(7))
+ * </pre>
+ */
+public final class RetentionPolicy {
+    private static final RetentionPolicy UNLIMITED = new RetentionPolicy(0, 0L, 0L);
+
+    private final int maxMessages;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+
+    private RetentionPolicy(int maxMessages, long maxBytes, long maxAgeMillis) {
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * @return a policy keeping all messages.
+     */
+    public static RetentionPolicy unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * @param maxMessages the maximum number of messages per mailbox, or 0 for no limit.
+     * @return a copy of this policy with given limit.
+     */
+    public RetentionPolicy withMaxMessages(int maxMessages) {
+        if (maxMessages < 0) {
+            throw new IllegalArgumentException("Expected max messages >= 0 but got " + maxMessages);
+        }
+        return new RetentionPolicy(maxMessages, maxBytes, maxAgeMillis);
+    }
+
+    /**
+     * @param maxBytes the maximum total size of all messages per mailbox, or 0 for no limit.
+     * @return a copy of this policy with given limit.
+     */
+    public RetentionPolicy withMaxBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Expected max bytes >= 0 but got " + maxBytes);
+        }
+        return new RetentionPolicy(maxMessages, maxBytes, maxAgeMillis);
+    }
+
+    /**
+     * @param maxAgeMillis the maximum age of a message in milliseconds, relative to its received date,
+     *                     or 0 for no limit.
+     * @return a copy of this policy with given limit.
+     */
+    public RetentionPolicy withMaxAge(long maxAgeMillis) {
+        if (maxAgeMillis < 0) {
+            throw new IllegalArgumentException("Expected max age >= 0 but got " + maxAgeMillis);
+        }
+        return new RetentionPolicy(maxMessages, maxBytes, maxAgeMillis);
+    }
+
+    /**
+     * @return the maximum number of messages, or 0 for no limit.
+     */
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+
+    /**
+     * @return the maximum total size of all messages, or 0 for no limit.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the maximum age in milliseconds, or 0 for no limit.
+     */
+    public long getMaxAge() {
+        return maxAgeMillis;
+    }
+
+    /**
+     * @return true, if no limit is set.
+     */
+    public boolean isUnlimited() {
+        return maxMessages == 0 && maxBytes == 0L && maxAgeMillis == 0L;
+    }
+
+    boolean exceedsCount(int count) {
+        return maxMessages > 0 && count > maxMessages;
+    }
+
+    boolean exceedsBytes(long bytes) {
+        return maxBytes > 0L && bytes > maxBytes;
+    }
+
+    boolean isExpired(StoredMessage message, long now) {
+        return maxAgeMillis > 0L && now - message.getReceivedDate().getTime() > maxAgeMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RetentionPolicy)) {
+            return false;
+        }
+        RetentionPolicy that = (RetentionPolicy) o;
+        return maxMessages == that.maxMessages && maxBytes == that.maxBytes && maxAgeMillis == that.maxAgeMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = maxMessages;
+        result = 31 * result + (int) (maxBytes ^ (maxBytes >>> 32));
+        result = 31 * result + (int) (maxAgeMillis ^ (maxAgeMillis >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "RetentionPolicy{" +
+                "maxMessages=" + maxMessages +
+                ", maxBytes=" + maxBytes +
+                ", maxAgeMillis=" + maxAgeMillis +
+                '}';
+    }
+}
@@ -10,10 +10,23 @@ import com.icegreen.greenmail.imap.ImapConstants;
  * @author Raimund Klein <raimund.klein@gmx.de>
  */
 class RootFolder extends HierarchicalFolder {
+    private volatile OffHeapArena arena;
+
     public RootFolder() {
         super(null, ImapConstants.USER_NAMESPACE);
     }
 
+    /**
+     * @return the arena for storing message content off heap, or null for storing on heap.
+     */
+    OffHeapArena getArena() {
+        return arena;
+    }
+
+    void setArena(OffHeapArena arena) {
+        this.arena = arena;
+    }
+
     @Override
     public String getFullName() {
         return name;
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.store;
+
+import javax.mail.internet.SharedInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads from a region of a (direct) byte buffer, like {@link javax.mail.util.SharedByteArrayInputStream}.
+ * <p/>
+ * A {@link javax.mail.internet.MimeMessage} parsed from this stream keeps a sub stream for its content
+ * instead of copying the content onto the heap.
+ * All sub streams reference the same owner, so that the region stays allocated as long as any stream is reachable.
+ */
+class SharedByteBufferInputStream extends InputStream implements SharedInputStream {
+    /** Positions are relative to the start of this stream, as for SharedByteArrayInputStream */
+    private final ByteBuffer buffer;
+    private final Object owner;
+    private int mark;
+
+    /**
+     * @param buffer a buffer with position and limit set to the shared region.
+     * @param owner  the owner of the region.
+     */
+    SharedByteBufferInputStream(ByteBuffer buffer, Object owner) {
+        this.buffer = buffer.slice();
+        this.owner = owner;
+    }
+
+    /**
+     * @return the owner of the shared region.
+     */
+    Object getOwner() {
+        return owner;
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        int count = Math.min(len, buffer.remaining());
+        if (count == 0) {
+            return -1;
+        }
+        buffer.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        int count = (int) Math.max(0L, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readLimit) {
+        mark = buffer.position();
+    }
+
+    @Override
+    public void reset() {
+        buffer.position(mark);
+    }
+
+    @Override
+    public long getPosition() {
+        return buffer.position();
+    }
+
+    @Override
+    public InputStream newStream(long start, long end) {
+        int length = buffer.limit();
+        if (start < 0 || start > length) {
+            throw new IllegalArgumentException("Expected start in [0," + length + "] but got " + start);
+        }
+        if (end == -1) {
+            end = length;
+        }
+        if (end < start || end > length) {
+            throw new IllegalArgumentException("Expected end in [" + start + ',' + length + "] but got " + end);
+        }
+        ByteBuffer sub = buffer.duplicate();
+        sub.limit((int) end);
+        sub.position((int) start);
+        return new SharedByteBufferInputStream(sub, owner);
+    }
+}
@@ -134,4 +134,21 @@ public interface Store {
      * @param pQuotaSupported true, if supported.
      */
     void setQuotaSupported(boolean pQuotaSupported);
+
+    /**
+     * Sets the retention policy of a mailbox, which also applies to all child mailboxes without own policy.
+     * Use the root mailbox {@link com.icegreen.greenmail.imap.ImapConstants#USER_NAMESPACE} for a store wide default.
+     *
+     * @param folder the mailbox.
+     * @param policy the policy, or null for inheriting the policy of the parent mailbox.
+     */
+    void setRetentionPolicy(MailFolder folder, RetentionPolicy policy);
+
+    /**
+     * Evicts all messages exceeding the retention policies, including expired messages of idle mailboxes.
+     *
+     * @return the number of evicted messages.
+     * @see RetentionPolicy
+     */
+    int applyRetention();
 }
@@ -6,10 +6,18 @@
  */
 package com.icegreen.greenmail.store;
 
+import com.icegreen.greenmail.util.MaxSizeLinkedHashMap;
+
 import javax.mail.Flags;
 import javax.mail.MessagingException;
+import javax.mail.Session;
 import javax.mail.internet.MimeMessage;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Enumeration;
+import java.util.Map;
 
 /**
  * A mail message with all of the extra stuff that IMAP requires.
@@ -20,10 +28,51 @@ import java.util.Date;
  * @version $Revision: 109034 $
  */
 public class StoredMessage {
+    /**
+     * Max number of decoded body part sizes cached per message.
+     */
+    static final int MAX_CACHED_BINARY_SIZES = 16;
+
     private UidAwareMimeMessage mimeMessage;
     private Date receivedDate;
-    private long uid;
+    private final long uid;
     private SimpleMessageAttributes attributes;
+    /** System flags, see {@link MessageFlags#toMask(Flags.Flag)}. Modified while holding the lock of this message */
+    private volatile int systemFlags;
+    /** Bit set of user flag ids in keywords, or null if none. Copy on write */
+    private volatile long[] userFlags;
+    private final KeywordTable keywords;
+    /** Built on first header fetch */
+    private volatile HeaderIndex headerIndex;
+    /** Decoded sizes of body parts by part specifier, for BINARY.SIZE */
+    private final Map<String, Long> binarySizes =
+            Collections.synchronizedMap(new MaxSizeLinkedHashMap<String, Long>(MAX_CACHED_BINARY_SIZES));
+    /** Follows this message while stored, or null. Guarded by this message */
+    private Tracker tracker;
+    /** Message stored instead of this one after moving, or null. Guarded by this message */
+    private StoredMessage movedTo;
+    /** True once removed from its folder. Guarded by this message */
+    private boolean removed;
+
+    /**
+     * Follows a message while stored, across moves between folders, such as an entry of the delivery journal.
+     * Gets called while holding the lock of the message, so implementations must not block.
+     */
+    public interface Tracker {
+        /**
+         * Called once the message is stored, initially or as another message after moving or restoring a snapshot.
+         *
+         * @param message the message as stored now.
+         */
+        void stored(StoredMessage message);
+
+        /**
+         * Called once the message got removed, eg expunged or evicted.
+         *
+         * @param message the removed message. Ignore unless the message is still tracked as stored.
+         */
+        void removed(StoredMessage message);
+    }
 
     /**
      * Wraps a mime message and provides support for uid.
@@ -32,12 +81,49 @@ public class StoredMessage {
      * @see com.icegreen.greenmail.imap.commands.SearchTermBuilder.UidSearchTerm
      */
     public static class UidAwareMimeMessage extends MimeMessage {
-        private long uid;
+        private final long uid;
+        /** Stored message holding the flags, or null if flags are held by this message */
+        private StoredMessage storedMessage;
         public UidAwareMimeMessage(MimeMessage source, long uid) throws MessagingException {
             super(source);
             this.uid = uid;
         }
 
+        /**
+         * Parses the message from given content. Keeps referencing the content instead of copying it,
+         * if the stream is a {@link javax.mail.internet.SharedInputStream}.
+         *
+         * @param content the raw message.
+         * @param flags   the flags.
+         * @param uid     the UID.
+         * @throws MessagingException on parse error.
+         */
+        public UidAwareMimeMessage(InputStream content, Flags flags, long uid) throws MessagingException {
+            super((Session) null, content);
+            setFlags(flags, true);
+            this.uid = uid;
+        }
+
+        /**
+         * Creates a message with another UID, sharing the parsed content of given message instead of copying it.
+         *
+         * @param source the message.
+         * @param uid    the UID.
+         * @throws MessagingException on error reading the headers.
+         */
+        UidAwareMimeMessage(UidAwareMimeMessage source, long uid) throws MessagingException {
+            super((Session) null);
+            Enumeration<?> headerLines = source.getAllHeaderLines();
+            while (headerLines.hasMoreElements()) {
+                headers.addHeaderLine((String) headerLines.nextElement());
+            }
+            content = source.content;
+            contentStream = source.contentStream;
+            modified = false;
+            saved = true;
+            this.uid = uid;
+        }
+
         /**
          * @return the UID.
          */
@@ -53,53 +139,298 @@ public class StoredMessage {
         public void updateMessageNumber(int messageNumber) {
             setMessageNumber(messageNumber);
         }
+
+        @Override
+        public Flags getFlags() throws MessagingException {
+            return null == storedMessage ? super.getFlags() : storedMessage.getFlags();
+        }
+
+        @Override
+        public boolean isSet(Flags.Flag flag) throws MessagingException {
+            return null == storedMessage ? super.isSet(flag) : storedMessage.isSet(flag);
+        }
+
+        @Override
+        public void setFlags(Flags flag, boolean set) throws MessagingException {
+            if (null == storedMessage) {
+                super.setFlags(flag, set);
+            } else {
+                storedMessage.setFlags(flag, set);
+            }
+        }
     }
 
     StoredMessage(MimeMessage mimeMessage,
                   Date receivedDate, long uid) {
+        this(mimeMessage, receivedDate, uid, null, new KeywordTable());
+    }
+
+    /**
+     * @param arena    the arena for storing the content off heap, or null for storing on heap.
+     * @param keywords the user flag ids of the folder.
+     */
+    StoredMessage(MimeMessage mimeMessage,
+                  Date receivedDate, long uid, OffHeapArena arena, KeywordTable keywords) {
         this.receivedDate = receivedDate;
         this.uid = uid;
+        this.keywords = keywords;
         try {
-            this.mimeMessage = new UidAwareMimeMessage(mimeMessage, uid);
+            setFlags(mimeMessage.getFlags(), true);
+            if (null == arena) {
+                this.mimeMessage = new UidAwareMimeMessage(mimeMessage, uid);
+            } else {
+                this.mimeMessage = new UidAwareMimeMessage(arena.store(mimeMessage), mimeMessage.getFlags(), uid);
+            }
             this.attributes = new SimpleMessageAttributes(mimeMessage, receivedDate);
         } catch (MessagingException e) {
             throw new IllegalStateException("Could not parse mime message " + mimeMessage + " with uid " + uid, e);
         }
+        // Flags of the mime message are backed by this message from now on
+        this.mimeMessage.storedMessage = this;
+    }
+
+    /**
+     * Creates a message for another folder, sharing the content of given message, eg when moving.
+     * The given message stays untouched, as POP3 sessions or fetches in progress might still reference it.
+     *
+     * @param source   the message.
+     * @param uid      the UID in the target folder.
+     * @param keywords the user flag ids of the target folder.
+     */
+    StoredMessage(StoredMessage source, long uid, KeywordTable keywords) {
+        this.receivedDate = source.receivedDate;
+        this.uid = uid;
+        this.keywords = keywords;
+        this.attributes = source.attributes;
+        this.headerIndex = source.headerIndex;
+        synchronized (source) {
+            systemFlags = source.systemFlags;
+            String[] names = source.getUserFlags(source.userFlags);
+            userFlags = null == names ? null : updateUserFlags(null, names, true);
+        }
+        try {
+            this.mimeMessage = new UidAwareMimeMessage(source.mimeMessage, uid);
+        } catch (MessagingException e) {
+            throw new IllegalStateException("Could not copy message with uid " + source.uid, e);
+        }
+        this.mimeMessage.storedMessage = this;
     }
 
     public MimeMessage getMimeMessage() {
         return mimeMessage;
     }
 
+    /**
+     * Starts following this message while stored. A message has a single tracker.
+     * Follows the message moved to, if moved meanwhile.
+     *
+     * @param tracker the tracker, notified right away whether stored or removed meanwhile.
+     */
+    public void track(Tracker tracker) {
+        StoredMessage target;
+        synchronized (this) {
+            target = movedTo;
+            if (null == target) {
+                this.tracker = tracker;
+                if (removed) {
+                    tracker.removed(this);
+                } else {
+                    tracker.stored(this);
+                }
+                return;
+            }
+        }
+        target.track(tracker);
+    }
+
+    /**
+     * Marks this message as removed from its folder, notifying the tracker.
+     */
+    void markRemoved() {
+        synchronized (this) {
+            removed = true;
+            if (null != tracker) {
+                tracker.removed(this);
+            }
+        }
+    }
+
+    /**
+     * Marks this message as moved, handing the tracker over to the message stored instead.
+     *
+     * @param target the message stored in the target folder.
+     */
+    void markMovedTo(StoredMessage target) {
+        Tracker moved;
+        synchronized (this) {
+            removed = true;
+            movedTo = target;
+            moved = tracker;
+            tracker = null;
+        }
+        if (null != moved) {
+            target.track(moved);
+        }
+    }
+
+    /**
+     * @return a copy of the flags.
+     */
     public Flags getFlags() {
-        try {
-            return getMimeMessage().getFlags();
-        } catch (MessagingException e) {
-            throw new IllegalStateException("Can not access flags", e);
+        Flags flags = new Flags();
+        MessageFlags.addTo(systemFlags, flags);
+        String[] names = getUserFlags();
+        if (null != names) {
+            for (String name : names) {
+                flags.add(name);
+            }
         }
+        return flags;
     }
 
-    public boolean isSet(Flags.Flag flag) {
-        try {
-            return getMimeMessage().isSet(flag);
-        } catch (MessagingException e) {
-            throw new IllegalStateException("Can not access flag " + flag, e);
+    /**
+     * @return the IMAP formatted flag list, without allocation unless having user flags.
+     */
+    public String formatFlags() {
+        return MessageFlags.format(systemFlags, getUserFlags());
+    }
+
+    /**
+     * @return the system flags as mask, see {@link MessageFlags#toMask(Flags.Flag)}.
+     */
+    public int getSystemFlags() {
+        return systemFlags;
+    }
+
+    /**
+     * @return true, if any user flag is set.
+     */
+    boolean hasUserFlags() {
+        return null != userFlags;
+    }
+
+    private String[] getUserFlags() {
+        if (null == userFlags) {
+            return null;
+        }
+        synchronized (this) {
+            return getUserFlags(userFlags);
         }
     }
 
+    /**
+     * Caller must hold the lock of this message, as ids depend on the keywords.
+     */
+    private String[] getUserFlags(long[] ids) {
+        if (null == ids) {
+            return null;
+        }
+        int count = 0;
+        for (long word : ids) {
+            count += Long.bitCount(word);
+        }
+        String[] names = new String[count];
+        int i = 0;
+        for (int w = 0; w < ids.length; w++) {
+            for (long word = ids[w]; word != 0L; word &= word - 1) {
+                names[i++] = keywords.getName(w * 64 + Long.numberOfTrailingZeros(word));
+            }
+        }
+        return names;
+    }
+
+    public boolean isSet(Flags.Flag flag) {
+        return (systemFlags & MessageFlags.toMask(flag)) != 0;
+    }
+
     public void setFlag(Flags.Flag flag, boolean value) {
-        try {
-            getMimeMessage().setFlag(flag, value);
-        } catch (MessagingException e) {
-            throw new IllegalStateException("Can not set flag " + flag + " to " + value, e);
+        int mask = MessageFlags.toMask(flag);
+        synchronized (this) {
+            systemFlags = value ? systemFlags | mask : systemFlags & ~mask;
         }
     }
 
     public void setFlags(Flags flags, boolean value) {
-        try {
-            getMimeMessage().setFlags(flags, value);
-        } catch (MessagingException e) {
-            throw new IllegalStateException("Can not set flags " + flags + " to " + value, e);
+        int mask = MessageFlags.toMask(flags);
+        String[] names = flags.getUserFlags();
+        synchronized (this) {
+            systemFlags = value ? systemFlags | mask : systemFlags & ~mask;
+            if (names.length > 0) {
+                userFlags = updateUserFlags(userFlags, names, value);
+            }
+        }
+    }
+
+    private long[] updateUserFlags(long[] ids, String[] names, boolean value) {
+        long[] updated = null == ids ? new long[1] : ids.clone();
+        for (String name : names) {
+            int id = value ? keywords.getOrAssignId(name) : keywords.getId(name);
+            if (id >= 0) {
+                int w = id / 64;
+                if (w >= updated.length) {
+                    if (!value) {
+                        continue;
+                    }
+                    updated = Arrays.copyOf(updated, w + 1);
+                }
+                if (value) {
+                    updated[w] |= 1L << id;
+                } else {
+                    updated[w] &= ~(1L << id);
+                }
+            }
+        }
+        for (long word : updated) {
+            if (word != 0L) {
+                return updated;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Captures the mutable state, for restoring this message later on.
+     *
+     * @return the immutable state.
+     */
+    synchronized State captureState() {
+        return new State(this);
+    }
+
+    /**
+     * Immutable state of a message, sharing the message content.
+     * As user flags are copy on write and ids never get reused by a folder, the bit set can be shared, too.
+     */
+    static class State {
+        private final StoredMessage message;
+        private final int systemFlags;
+        private final long[] userFlags;
+        private final Tracker tracker;
+
+        private State(StoredMessage message) {
+            this.message = message;
+            systemFlags = message.systemFlags;
+            userFlags = message.userFlags;
+            tracker = message.tracker;
+        }
+
+        /**
+         * Resets the message to the captured state, stored again even if moved or removed meanwhile.
+         *
+         * @return the message.
+         */
+        StoredMessage restore() {
+            synchronized (message) {
+                message.systemFlags = systemFlags;
+                message.userFlags = userFlags;
+                message.removed = false;
+                message.movedTo = null;
+                message.tracker = tracker;
+                if (null != tracker) {
+                    tracker.stored(message);
+                }
+            }
+            return message;
         }
     }
 
@@ -123,4 +454,48 @@ public class StoredMessage {
     public void updateMessageNumber(int messageNumber) {
         mimeMessage.updateMessageNumber(messageNumber);
     }
+
+    /**
+     * Gets the pre-parsed header block, for serving header fetches without accessing the message.
+     * Built on first access, as most messages never get their headers fetched more than once.
+     *
+     * @return the header index.
+     * @throws FolderException if the headers can not be read.
+     */
+    public HeaderIndex getHeaderIndex() throws FolderException {
+        HeaderIndex index = headerIndex;
+        if (null == index) {
+            try {
+                index = new HeaderIndex(mimeMessage);
+            } catch (MessagingException e) {
+                throw new FolderException("Can not read headers of message " + uid, e);
+            }
+            headerIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Gets a previously cached decoded size of a body part.
+     *
+     * @param partSpecifier the part specifier, such as "1.2".
+     * @return the decoded size, or -1 if not cached.
+     * @see #cacheBinarySize(String, long)
+     */
+    public long getCachedBinarySize(String partSpecifier) {
+        Long size = binarySizes.get(partSpecifier);
+        return null == size ? -1L : size;
+    }
+
+    /**
+     * Caches the decoded size of a body part, so that BINARY.SIZE fetches skip decoding.
+     * Decoded content is never cached, as the content is kept by the message anyway and decoding streams.
+     * The cache is bounded to {@value #MAX_CACHED_BINARY_SIZES} parts, evicting the eldest entry.
+     *
+     * @param partSpecifier the part specifier, such as "1.2".
+     * @param size          the decoded size.
+     */
+    public void cacheBinarySize(String partSpecifier, long size) {
+        binarySizes.put(partSpecifier, size);
+    }
 }
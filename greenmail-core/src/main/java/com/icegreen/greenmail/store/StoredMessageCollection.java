@@ -7,6 +7,7 @@ package com.icegreen.greenmail.store;
 import com.icegreen.greenmail.foedus.util.MsgRangeFilter;
 import com.icegreen.greenmail.imap.commands.IdRange;
 
+import java.util.BitSet;
 import java.util.List;
 
 /**
@@ -39,6 +40,46 @@ public interface StoredMessageCollection extends Iterable<StoredMessage> {
      */
     void expunge(List<FolderListener> mailboxListeners, IdRange[] idRanges);
 
+    /**
+     * Removes all messages flagged deleted and with UID in given ranges in a single pass,
+     * without any listener notification.
+     *
+     * @param idRanges the UID message set ranges, or null for all messages.
+     * @param removed  receives the removed messages, in order of their MSNs.
+     * @return the MSNs of the removed messages, in descending order as required for sequential
+     * EXPUNGE responses (RFC 3501, 7.4.1).
+     */
+    int[] expungeDeleted(IdRange[] idRanges, List<StoredMessage> removed);
+
     StoredMessage get(int i);
 
+    /**
+     * Removes the message at given message sequence number, without any listener notification.
+     *
+     * @param msn the 1-based message sequence number.
+     * @return the removed message.
+     */
+    StoredMessage remove(int msn);
+
+    /**
+     * Removes the messages with given UIDs in a single pass, without any listener notification.
+     *
+     * @param uids    the UIDs.
+     * @param removed receives the removed messages, in order of their MSNs.
+     * @return the MSNs of the removed messages, in descending order as required for sequential
+     * EXPUNGE responses (RFC 3501, 7.4.1).
+     * @throws FolderException if any of the messages does not exist. No message gets removed then.
+     */
+    int[] remove(long[] uids, List<StoredMessage> removed) throws FolderException;
+
+    /**
+     * Removes the messages at given positions in a single pass, without any listener notification.
+     *
+     * @param indexes the 0-based positions of the messages, that is MSN - 1.
+     * @param removed receives the removed messages, in order of their MSNs.
+     * @return the MSNs of the removed messages, in descending order as required for sequential
+     * EXPUNGE responses (RFC 3501, 7.4.1).
+     */
+    int[] remove(BitSet indexes, List<StoredMessage> removed);
+
 }
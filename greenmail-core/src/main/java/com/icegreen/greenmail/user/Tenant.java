@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.user;
+
+import java.util.Locale;
+
+/**
+ * Partition of users and their mailboxes, for isolating parallel tests sharing one GreenMail instance.
+ * <p/>
+ * A user belongs to a tenant if the domain of the email equals the tenant name,
+ * such as <code>foo@test1.localhost</code> for tenant <code>test1.localhost</code>,
+ * or if the login starts with the tenant name and {@value #LOGIN_SEPARATOR}, such as <code>test1.localhost/foo</code>.
+ * As users and mailboxes are identified by email and login, users of different tenants never collide.
+ * <p/>
+ * Immutable.
+ */
+public class Tenant {
+    /**
+     * Separates tenant name and user name of a login.
+     */
+    public static final char LOGIN_SEPARATOR = '/';
+
+    private final String name;
+
+    /**
+     * @param name the tenant name, used as email domain.
+     */
+    public Tenant(String name) {
+        if (null == name || name.trim().isEmpty() || name.indexOf('@') >= 0
+                || name.indexOf(LOGIN_SEPARATOR) >= 0) {
+            throw new IllegalArgumentException("Invalid tenant name " + name);
+        }
+        this.name = name.trim().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * @return the normalized tenant name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param email the email address.
+     * @return true, if the domain of the email is this tenant.
+     */
+    public boolean containsEmail(String email) {
+        int at = null == email ? -1 : email.lastIndexOf('@');
+        return at >= 0 && name.equalsIgnoreCase(email.substring(at + 1).trim());
+    }
+
+    /**
+     * @param login the login.
+     * @return true, if the login is qualified by this tenant.
+     */
+    public boolean containsLogin(String login) {
+        return null != login && login.length() > name.length()
+                && login.charAt(name.length()) == LOGIN_SEPARATOR
+                && login.regionMatches(true, 0, name, 0, name.length());
+    }
+
+    /**
+     * @param user the user.
+     * @return true, if the user belongs to this tenant.
+     */
+    public boolean contains(GreenMailUser user) {
+        return containsEmail(user.getEmail()) || containsLogin(user.getLogin());
+    }
+
+    /**
+     * Gets the email address of a user of this tenant.
+     *
+     * @param localPart the local part, such as <code>foo</code>.
+     * @return the email address, such as <code>foo@test1.localhost</code>.
+     */
+    public String toEmail(String localPart) {
+        return localPart + '@' + name;
+    }
+
+    /**
+     * Gets the login qualified by this tenant.
+     *
+     * @param login the login, such as <code>foo</code>.
+     * @return the qualified login, such as <code>test1.localhost/foo</code>.
+     */
+    public String toLogin(String login) {
+        return name + LOGIN_SEPARATOR + login;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof Tenant && name.equals(((Tenant) o).name));
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Tenant{" + name + '}';
+    }
+}
@@ -11,8 +11,12 @@ import com.icegreen.greenmail.imap.ImapConstants;
 import com.icegreen.greenmail.imap.ImapHostManager;
 import com.icegreen.greenmail.mail.MovingMessage;
 import com.icegreen.greenmail.store.FolderException;
+import com.icegreen.greenmail.store.MailFolder;
+import com.icegreen.greenmail.store.StoredMessage;
 
+import javax.mail.Flags;
 import javax.mail.internet.MimeMessage;
+import java.util.Date;
 
 
 public class UserImpl implements GreenMailUser {
@@ -53,7 +57,7 @@ public class UserImpl implements GreenMailUser {
     @Override
     public void deliver(MovingMessage msg) {
         try {
-            imapHostManager.getInbox(this).store(msg);
+            deliverToInbox(msg.getMessage());
         } catch (Exception e) {
             throw new IllegalStateException("Can not deliver " + msg + " for user " + this, e);
         }
@@ -62,12 +66,18 @@ public class UserImpl implements GreenMailUser {
     @Override
     public void deliver(MimeMessage msg) {
         try {
-            imapHostManager.getInbox(this).store(msg);
+            deliverToInbox(msg);
         } catch (Exception e) {
             throw new IllegalStateException("Can not deliver " + msg + " for user " + this, e);
         }
     }
 
+    private void deliverToInbox(MimeMessage msg) throws FolderException {
+        MailFolder inbox = imapHostManager.getInbox(this);
+        StoredMessage storedMessage = inbox.appendStoredMessage(msg, new Flags(), new Date());
+        imapHostManager.getDeliveryJournal().record(email, storedMessage);
+    }
+
     @Override
     public String getEmail() {
         return email;
@@ -59,6 +59,24 @@ public class UserManager {
         return Collections.unmodifiableCollection(loginToUser.values());
     }
 
+    /**
+     * Lists the users of given tenant.
+     *
+     * @param tenant the tenant.
+     * @return a copy of the users of the tenant.
+     */
+    public List<GreenMailUser> listUser(Tenant tenant) {
+        List<GreenMailUser> users = new ArrayList<>();
+        synchronized (loginToUser) {
+            for (GreenMailUser user : loginToUser.values()) {
+                if (tenant.contains(user)) {
+                    users.add(user);
+                }
+            }
+        }
+        return users;
+    }
+
     public boolean test(String userId, String password) {
         if (log.isDebugEnabled()) {
             log.debug("Authenticating user "+userId);
@@ -103,6 +121,64 @@ public class UserManager {
         return login.trim().toLowerCase(Locale.ENGLISH);
     }
 
+    /**
+     * Captures all users and their passwords, for resetting this manager later on.
+     *
+     * @return the snapshot.
+     * @see #restoreSnapshot(Snapshot)
+     */
+    public Snapshot createSnapshot() {
+        synchronized (loginToUser) {
+            return new Snapshot(this, new ArrayList<>(loginToUser.values()), authRequired);
+        }
+    }
+
+    /**
+     * Resets the users to given snapshot, dropping users created since.
+     * Only restores the users, not their mailboxes, see
+     * {@link com.icegreen.greenmail.store.InMemoryStore#restoreSnapshot(com.icegreen.greenmail.store.InMemoryStore.Snapshot)}.
+     *
+     * @param snapshot the snapshot created by this manager.
+     */
+    public void restoreSnapshot(Snapshot snapshot) {
+        if (snapshot.userManager != this) {
+            throw new IllegalArgumentException("Snapshot was created by another user manager");
+        }
+        synchronized (loginToUser) {
+            loginToUser.clear();
+            emailToUser.clear();
+            for (int i = 0; i < snapshot.users.size(); i++) {
+                GreenMailUser user = snapshot.users.get(i);
+                user.setPassword(snapshot.passwords[i]);
+                loginToUser.put(normalizerUserName(user.getLogin()), user);
+                emailToUser.put(normalizerUserName(user.getEmail()), user);
+            }
+        }
+        authRequired = snapshot.authRequired;
+    }
+
+    /**
+     * Immutable snapshot of the users.
+     *
+     * @see UserManager#createSnapshot()
+     */
+    public static class Snapshot {
+        private final UserManager userManager;
+        private final List<GreenMailUser> users;
+        private final String[] passwords;
+        private final boolean authRequired;
+
+        private Snapshot(UserManager userManager, List<GreenMailUser> users, boolean authRequired) {
+            this.userManager = userManager;
+            this.users = users;
+            this.authRequired = authRequired;
+            passwords = new String[users.size()];
+            for (int i = 0; i < passwords.length; i++) {
+                passwords[i] = users.get(i).getPassword();
+            }
+        }
+    }
+
     /**
      * Checks if user exists.
      *
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes data as multi-line protocol response, such as POP3 RETR.
+ * <p/>
+ * Lines starting with a '.' get an additional '.' prepended ("dot stuffing") and bare LFs
+ * are written as CRLF, while streaming. The terminating "CRLF.CRLF" is not written, but
+ * {@link #finish()} makes sure the data ends with a line break.
+ * <p/>
+ * Closing this stream does not close the wrapped stream.
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc1939#section-3">RFC 1939</a>
+ */
+public class DotStuffingOutputStream extends FilterOutputStream {
+    private boolean atLineStart = true;
+    private boolean lastWasCr;
+
+    public DotStuffingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (b == '\n') {
+            if (!lastWasCr) {
+                out.write('\r');
+            }
+            out.write('\n');
+            atLineStart = true;
+            lastWasCr = false;
+        } else {
+            if (atLineStart && b == '.') {
+                out.write('.');
+            }
+            out.write(b);
+            atLineStart = false;
+            lastWasCr = b == '\r';
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        // Pass through runs of regular bytes in one go
+        int runStart = off;
+        for (int i = off, end = off + len; i < end; i++) {
+            byte c = b[i];
+            if (c == '\n' || c == '\r' || (atLineStart && c == '.')) {
+                if (i > runStart) {
+                    out.write(b, runStart, i - runStart);
+                    atLineStart = false;
+                    lastWasCr = false;
+                }
+                write(c);
+                runStart = i + 1;
+            } else {
+                atLineStart = false;
+            }
+        }
+        if (off + len > runStart) {
+            out.write(b, runStart, off + len - runStart);
+            atLineStart = false;
+            lastWasCr = false;
+        }
+    }
+
+    /**
+     * Terminates the last line with CRLF, if not already terminated.
+     *
+     * @throws IOException on error.
+     */
+    public void finish() throws IOException {
+        if (!atLineStart) {
+            write('\n');
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        flush();
+    }
+}
@@ -9,6 +9,7 @@ import com.icegreen.greenmail.configuration.ConfiguredGreenMail;
 import com.icegreen.greenmail.configuration.GreenMailConfiguration;
 import com.icegreen.greenmail.imap.ImapHostManager;
 import com.icegreen.greenmail.imap.ImapServer;
+import com.icegreen.greenmail.mail.DeliveryJournal;
 import com.icegreen.greenmail.pop3.Pop3Server;
 import com.icegreen.greenmail.server.AbstractServer;
 import com.icegreen.greenmail.smtp.SmtpManager;
@@ -16,8 +17,10 @@ import com.icegreen.greenmail.smtp.SmtpServer;
 import com.icegreen.greenmail.store.FolderException;
 import com.icegreen.greenmail.store.InMemoryStore;
 import com.icegreen.greenmail.store.MailFolder;
+import com.icegreen.greenmail.store.Store;
 import com.icegreen.greenmail.store.StoredMessage;
 import com.icegreen.greenmail.user.GreenMailUser;
+import com.icegreen.greenmail.user.Tenant;
 import com.icegreen.greenmail.user.UserException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,6 +28,11 @@ import org.slf4j.LoggerFactory;
 import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Utility class that manages a greenmail server with support for multiple protocols
@@ -34,6 +42,7 @@ public class GreenMail extends ConfiguredGreenMail {
     private Managers managers;
     private Map<String, AbstractServer> services;
     private ServerSetup[] config;
+    private ScheduledExecutorService retentionSweeper;
 
     /**
      * Creates a SMTP, SMTPS, POP3, POP3S, IMAP, and IMAPS server binding onto non-default ports.
@@ -79,24 +88,25 @@ public class GreenMail extends ConfiguredGreenMail {
         init();
 
         final Collection<AbstractServer> servers = services.values();
+        // Services bind in parallel, so wait once for all of them instead of for each in turn
+        final CountDownLatch startupLatch = new CountDownLatch(servers.size());
+        long startupTimeout = 0L;
         for (AbstractServer service : servers) {
-            service.startService();
+            service.startService(startupLatch);
+            startupTimeout = Math.max(startupTimeout, service.getServerSetup().getServerStartupTimeout());
         }
 
         // Wait till all services are up and running
-        for (AbstractServer service : servers) {
-            try {
-                service.waitTillRunning(service.getServerSetup().getServerStartupTimeout());
-            } catch (InterruptedException ex) {
-                throw new IllegalStateException("Could not start mail service " + service, ex);
-            }
-
+        try {
+            startupLatch.await(startupTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            throw new IllegalStateException("Could not start mail services " + servers, ex);
         }
 
         if (log.isDebugEnabled()) {
             log.debug("Started services, performing check if all up");
         }
-        // Make sure if all services are up in a second loop, giving slow services more time.
+        // Make sure all services are up, as the latch also gets counted down on failure
         for (AbstractServer service : servers) {
             if (!service.isRunning()) {
                 throw new IllegalStateException("Could not start mail server " + service
@@ -106,6 +116,10 @@ public class GreenMail extends ConfiguredGreenMail {
         }
 
         doConfigure();
+        startRetentionSweeper();
+
+        // Expose metrics via JMX, named by instance as several GreenMail instances might run in parallel
+        managers.getMetrics().registerMBean("GreenMail@" + Integer.toHexString(System.identityHashCode(this)));
     }
 
     @Override
@@ -122,10 +136,87 @@ public class GreenMail extends ConfiguredGreenMail {
                 service.stopService();
             }
         }
+        cleanUp();
+    }
+
+    @Override
+    public synchronized int drain(long timeoutInMs) {
+        if (log.isDebugEnabled()) {
+            log.debug("Draining GreenMail ...");
+        }
+
+        int forced = 0;
+        if (services != null) {
+            // Drain all services at once, waiting for all connections against one deadline
+            final long deadline = System.currentTimeMillis() + timeoutInMs;
+            final Map<AbstractServer, Collection<Thread>> draining = new HashMap<>();
+            final List<Thread> threads = new ArrayList<>();
+            for (AbstractServer service : services.values()) {
+                Collection<Thread> serviceThreads = service.beginDrain();
+                draining.put(service, serviceThreads);
+                threads.addAll(serviceThreads);
+            }
+            AbstractServer.awaitDrained(threads, deadline);
+            for (Map.Entry<AbstractServer, Collection<Thread>> entry : draining.entrySet()) {
+                forced += entry.getKey().finishDrain(entry.getValue(), timeoutInMs);
+            }
+        }
+        cleanUp();
+        return forced;
+    }
+
+    /**
+     * Cleans up after stopping the services, clearing all data.
+     */
+    private void cleanUp() {
+        if (retentionSweeper != null) {
+            retentionSweeper.shutdownNow();
+            retentionSweeper = null;
+        }
+        if (managers != null) {
+            managers.getMetrics().unregisterMBean();
+        }
         managers = new Managers();
         services = null;
     }
 
+    /**
+     * Evicts expired messages in background, if configured.
+     *
+     * @see GreenMailConfiguration#withRetentionSweepInterval(long)
+     */
+    private void startRetentionSweeper() {
+        GreenMailConfiguration configuration = getConfiguration();
+        long interval = null == configuration ? 0L : configuration.getRetentionSweepInterval();
+        if (interval <= 0L) {
+            return;
+        }
+
+        final Store store = managers.getImapHostManager().getStore();
+        retentionSweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "greenmail-retention");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        retentionSweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int evicted = store.applyRetention();
+                    if (evicted > 0 && log.isDebugEnabled()) {
+                        log.debug("Evicted " + evicted + " messages exceeding retention policy");
+                    }
+                } catch (RuntimeException e) {
+                    // Keep sweeping, as an uncaught exception would cancel any further runs
+                    log.warn("Can not apply retention policy", e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
     @Override
     public void reset() {
         stop();
@@ -196,7 +287,17 @@ public class GreenMail extends ConfiguredGreenMail {
     //~ Convenience Methods, often needed while testing ---------------------------------------------------------------
     @Override
     public boolean waitForIncomingEmail(long timeout, int emailCount) {
-        final SmtpManager.WaitObject o = managers.getSmtpManager().createAndAddNewWaitObject(emailCount);
+        return waitFor(managers.getSmtpManager().createAndAddNewWaitObject(emailCount), timeout);
+    }
+
+    /**
+     * Waits till the expected messages arrived.
+     *
+     * @param o       the wait object, or null if no need to wait.
+     * @param timeout the timeout in ms.
+     * @return true if arrived, false if timed out.
+     */
+    static boolean waitFor(SmtpManager.WaitObject o, long timeout) {
         if (null == o) {
             return true;
         }
@@ -261,11 +362,47 @@ public class GreenMail extends ConfiguredGreenMail {
         return ret.toArray(new MimeMessage[ret.size()]);
     }
 
+    @Override
+    public long getReceivedMessagesSequence() {
+        return managers.getImapHostManager().getDeliveryJournal().getSequence();
+    }
+
+    @Override
+    public MimeMessage[] getReceivedMessagesSince(long sequence) {
+        return toMessages(managers.getImapHostManager().getDeliveryJournal().getEntriesSince(sequence));
+    }
+
+    @Override
+    public MimeMessage[] getReceivedMessagesForRecipientDomain(String domain) {
+        return toMessages(managers.getImapHostManager().getDeliveryJournal().getEntriesForDomain(domain));
+    }
+
+    private static MimeMessage[] toMessages(List<DeliveryJournal.Entry> entries) {
+        List<MimeMessage> ret = new ArrayList<>(entries.size());
+        for (DeliveryJournal.Entry entry : entries) {
+            MimeMessage message = entry.getMessage();
+            if (null != message) { // Unless removed meanwhile
+                ret.add(message);
+            }
+        }
+        return ret.toArray(new MimeMessage[ret.size()]);
+    }
+
     @Override
     public GreenMailUser setUser(String login, String password) {
         return setUser(login, login, password);
     }
 
+    /**
+     * Gets a view on the users and messages of given tenant, for tests sharing this instance.
+     *
+     * @param name the tenant name, used as email domain of tenant users.
+     * @return the tenant view.
+     */
+    public GreenMailTenant getTenant(String name) {
+        return new GreenMailTenant(this, new Tenant(name));
+    }
+
     @Override
     public GreenMailUser setUser(String email, String login, String password) {
         GreenMailUser user = managers.getUserManager().getUser(login);
@@ -310,6 +447,7 @@ public class GreenMail extends ConfiguredGreenMail {
         for (MailFolder folder : mailboxes) {
             folder.deleteAllMessages();
         }
+        imaphost.getDeliveryJournal().clear();
     }
 
     /**
@@ -7,6 +7,7 @@ import com.icegreen.greenmail.pop3.Pop3Server;
 import com.icegreen.greenmail.smtp.SmtpServer;
 import com.icegreen.greenmail.store.FolderException;
 import com.icegreen.greenmail.user.GreenMailUser;
+import com.icegreen.greenmail.user.Tenant;
 
 import javax.mail.internet.MimeMessage;
 import java.util.Properties;
@@ -79,6 +80,21 @@ public abstract class GreenMailProxy extends ConfiguredGreenMail {
         return getGreenMail().getReceivedMessagesForDomain(domain);
     }
 
+    @Override
+    public long getReceivedMessagesSequence() {
+        return getGreenMail().getReceivedMessagesSequence();
+    }
+
+    @Override
+    public MimeMessage[] getReceivedMessagesSince(long sequence) {
+        return getGreenMail().getReceivedMessagesSince(sequence);
+    }
+
+    @Override
+    public MimeMessage[] getReceivedMessagesForRecipientDomain(String domain) {
+        return getGreenMail().getReceivedMessagesForRecipientDomain(domain);
+    }
+
     @Override
     public GreenMailUser setUser(String login, String password) {
         return getGreenMail().setUser(login, password);
@@ -89,6 +105,15 @@ public abstract class GreenMailProxy extends ConfiguredGreenMail {
         return getGreenMail().setUser(email, login, password);
     }
 
+    /**
+     * @param name the tenant name, used as email domain of tenant users.
+     * @return a view on the users and messages of given tenant.
+     * @see GreenMail#getTenant(String)
+     */
+    public GreenMailTenant getTenant(String name) {
+        return new GreenMailTenant(this, new Tenant(name));
+    }
+
     @Override
     public void setUsers(Properties users) {
         getGreenMail().setUsers(users);
@@ -111,6 +136,11 @@ public abstract class GreenMailProxy extends ConfiguredGreenMail {
         getGreenMail().stop();
     }
 
+    @Override
+    public int drain(long timeoutInMs) {
+        return getGreenMail().drain(timeoutInMs);
+    }
+
     @Override
     public void reset() {
         getGreenMail().reset();
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.util;
+
+import com.icegreen.greenmail.Managers;
+import com.icegreen.greenmail.base.GreenMailOperations;
+import com.icegreen.greenmail.store.FolderException;
+import com.icegreen.greenmail.store.MailFolder;
+import com.icegreen.greenmail.store.StoredMessage;
+import com.icegreen.greenmail.user.GreenMailUser;
+import com.icegreen.greenmail.user.Tenant;
+import com.icegreen.greenmail.user.UserException;
+
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scopes users, received messages and waiting to a single tenant, so that parallel tests can share
+ * one GreenMail instance without seeing each others messages.
+ * <p/>
+ * Example, using a unique tenant per test:
+ * <pre>
+ * GreenMailTenant tenant = greenMail.getTenant("test" + testId + ".localhost");
+ * tenant.setUser("foo", "pwd"); // Email foo@test1.localhost, login test1.localhost/foo
+ * GreenMailUtil.sendTextEmailTest(tenant.getTenant().toEmail("foo"), "from@localhost", "subject", "body");
+ * tenant.waitForIncomingEmail(1);
+ * </pre>
+ *
+ * @see Tenant
+ */
+public class GreenMailTenant {
+    private final GreenMailOperations greenMail;
+    private final Tenant tenant;
+
+    GreenMailTenant(GreenMailOperations greenMail, Tenant tenant) {
+        this.greenMail = greenMail;
+        this.tenant = tenant;
+    }
+
+    /**
+     * @return the tenant.
+     */
+    public Tenant getTenant() {
+        return tenant;
+    }
+
+    /**
+     * Creates or updates a user of this tenant.
+     *
+     * @param name     the user name, used as local part of the email and qualified by the tenant as login.
+     * @param password the password.
+     * @return the user.
+     */
+    public GreenMailUser setUser(String name, String password) {
+        String email = tenant.toEmail(name);
+        String login = tenant.toLogin(name);
+        GreenMailUser user = getManagers().getUserManager().getUser(login);
+        if (null == user) {
+            try {
+                user = getManagers().getUserManager().createUser(email, login, password);
+            } catch (UserException e) {
+                throw new IllegalStateException("Can not create user " + login, e);
+            }
+        } else {
+            user.setPassword(password);
+        }
+        return user;
+    }
+
+    /**
+     * @return the users of this tenant, including users auto created when receiving messages.
+     */
+    public List<GreenMailUser> getUsers() {
+        return getManagers().getUserManager().listUser(tenant);
+    }
+
+    /**
+     * @return the messages in all mailboxes of all users of this tenant.
+     */
+    public MimeMessage[] getReceivedMessages() {
+        List<MimeMessage> ret = new ArrayList<>();
+        for (GreenMailUser user : getUsers()) {
+            for (StoredMessage message : getManagers().getImapHostManager().getAllMessages(user)) {
+                ret.add(message.getMimeMessage());
+            }
+        }
+        return ret.toArray(new MimeMessage[ret.size()]);
+    }
+
+    /**
+     * Waits till the users of this tenant received given number of messages in total.
+     *
+     * @param timeout    the timeout in ms.
+     * @param emailCount the number of messages.
+     * @return true if arrived, false if timed out.
+     */
+    public boolean waitForIncomingEmail(long timeout, int emailCount) {
+        return GreenMail.waitFor(getManagers().getSmtpManager().createAndAddNewWaitObject(emailCount, tenant), timeout);
+    }
+
+    /**
+     * Same as {@link #waitForIncomingEmail(long, int)}, with a timeout of 5000ms.
+     *
+     * @param emailCount the number of messages.
+     * @return true if arrived, false if timed out.
+     */
+    public boolean waitForIncomingEmail(int emailCount) {
+        return waitForIncomingEmail(5000L, emailCount);
+    }
+
+    /**
+     * Removes all messages from all mailboxes of the users of this tenant.
+     *
+     * @throws FolderException on error.
+     */
+    public void purgeEmailFromAllMailboxes() throws FolderException {
+        for (GreenMailUser user : getUsers()) {
+            for (MailFolder folder : getManagers().getImapHostManager().listMailboxes(user, "*")) {
+                folder.deleteAllMessages();
+            }
+        }
+    }
+
+    /**
+     * Deletes all users of this tenant, including their messages.
+     *
+     * @throws FolderException on error.
+     */
+    public void deleteUsers() throws FolderException {
+        purgeEmailFromAllMailboxes();
+        for (GreenMailUser user : getUsers()) {
+            getManagers().getUserManager().deleteUser(user);
+        }
+    }
+
+    private Managers getManagers() {
+        return greenMail.getManagers();
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+
+/**
+ * Reads and writes CRLF terminated lines directly on byte buffers, as used by line based
+ * protocols such as SMTP and POP3.
+ * <p/>
+ * Lines are converted using {@link EncodingUtil#CHARSET_EIGHT_BIT_ENCODING} (ISO-8859-1), which maps
+ * every byte to exactly one char. This makes the conversion independent of the platform charset,
+ * keeps 8bit content (8BITMIME) unmodified when the chars get written back as bytes and is a plain copy
+ * for ASCII content.
+ * <p/>
+ * Output is buffered and only written when {@link #flush() flushing}, when the buffer is full
+ * or before blocking for more input, so that the peer always receives pending responses before
+ * being expected to send.
+ * <p/>
+ * Not thread safe.
+ */
+public class LineCodec {
+    static final int BUFFER_SIZE = 8192;
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final byte UNMAPPABLE = '?';
+
+    private final InputStream in;
+    private final OutputStream out;
+
+    private final byte[] readBuffer = new byte[BUFFER_SIZE];
+    private int readPos;
+    private int readLimit;
+    // Collects lines spanning multiple reads
+    private byte[] lineBuffer = new byte[256];
+
+    private final byte[] writeBuffer = new byte[BUFFER_SIZE];
+    private int writePos;
+
+    public LineCodec(InputStream in, OutputStream out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    /**
+     * Reads a line terminated by CRLF or a bare LF.
+     *
+     * @return the line without terminator, or null if end of stream has been reached.
+     * @throws IOException on error.
+     */
+    public String readLine() throws IOException {
+        int lineLength = 0;
+        while (true) {
+            if (readPos >= readLimit && !fill()) {
+                // End of stream, return any unterminated content
+                return lineLength > 0 ? decode(lineBuffer, 0, lineLength) : null;
+            }
+
+            int start = readPos;
+            int end = start;
+            while (end < readLimit && readBuffer[end] != LF) {
+                end++;
+            }
+
+            if (end < readLimit) {
+                readPos = end + 1;
+                if (lineLength == 0) {
+                    // Complete line in read buffer, no copy required
+                    return decode(readBuffer, start, end - start);
+                }
+                lineLength = appendToLine(lineLength, start, end - start);
+                return decode(lineBuffer, 0, lineLength);
+            }
+
+            lineLength = appendToLine(lineLength, start, end - start);
+            readPos = readLimit;
+        }
+    }
+
+    /**
+     * @return true, if input has already been received, so reading the next line might not block.
+     */
+    public boolean hasBufferedInput() {
+        return readPos < readLimit;
+    }
+
+    private int appendToLine(int lineLength, int offset, int length) {
+        int newLength = lineLength + length;
+        if (newLength > lineBuffer.length) {
+            byte[] grown = new byte[Math.max(newLength, lineBuffer.length * 2)];
+            System.arraycopy(lineBuffer, 0, grown, 0, lineLength);
+            lineBuffer = grown;
+        }
+        System.arraycopy(readBuffer, offset, lineBuffer, lineLength, length);
+        return newLength;
+    }
+
+    private static String decode(byte[] buf, int offset, int length) {
+        if (length > 0 && buf[offset + length - 1] == CR) {
+            length--;
+        }
+        return new String(buf, offset, length, EncodingUtil.CHARSET_EIGHT_BIT_ENCODING);
+    }
+
+    private boolean fill() throws IOException {
+        // Peer might wait for pending responses before sending more
+        if (writePos > 0) {
+            flush();
+        }
+        int count = in.read(readBuffer, 0, readBuffer.length);
+        if (count < 0) {
+            readPos = readLimit = 0;
+            return false;
+        }
+        readPos = 0;
+        readLimit = count;
+        return true;
+    }
+
+    /**
+     * Writes given line followed by CRLF.
+     *
+     * @param line the line.
+     * @throws IOException on error.
+     */
+    public void writeLine(String line) throws IOException {
+        write(line);
+        writeLineEnd();
+    }
+
+    /**
+     * Writes CRLF.
+     *
+     * @throws IOException on error.
+     */
+    public void writeLineEnd() throws IOException {
+        ensureWriteCapacity(2);
+        writeBuffer[writePos++] = CR;
+        writeBuffer[writePos++] = LF;
+    }
+
+    /**
+     * Writes given chars, without any line ending.
+     *
+     * @param s the chars to write.
+     * @throws IOException on error.
+     */
+    public void write(String s) throws IOException {
+        int length = s.length();
+        for (int i = 0; i < length; ) {
+            ensureWriteCapacity(1);
+            int chunk = Math.min(length - i, writeBuffer.length - writePos);
+            for (int end = i + chunk; i < end; i++) {
+                writeBuffer[writePos++] = toByte(s.charAt(i));
+            }
+        }
+    }
+
+    /**
+     * Writes given chars, without any line ending.
+     *
+     * @param chars  the chars to write.
+     * @param offset the offset.
+     * @param length the number of chars.
+     * @throws IOException on error.
+     */
+    public void write(char[] chars, int offset, int length) throws IOException {
+        for (int i = offset, end = offset + length; i < end; ) {
+            ensureWriteCapacity(1);
+            int chunkEnd = Math.min(end, i + writeBuffer.length - writePos);
+            for (; i < chunkEnd; i++) {
+                writeBuffer[writePos++] = toByte(chars[i]);
+            }
+        }
+    }
+
+    /**
+     * Writes all remaining content of given reader, and closes the reader.
+     *
+     * @param reader the reader.
+     * @throws IOException on error.
+     */
+    public void write(Reader reader) throws IOException {
+        try (Reader r = reader) {
+            char[] buf = new char[BUFFER_SIZE];
+            int len;
+            while ((len = r.read(buf)) != -1) {
+                write(buf, 0, len);
+            }
+        }
+    }
+
+    /**
+     * Writes raw bytes.
+     *
+     * @param bytes  the bytes.
+     * @param offset the offset.
+     * @param length the number of bytes.
+     * @throws IOException on error.
+     */
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (length >= writeBuffer.length) {
+            // Too big for buffering
+            flushBuffer();
+            out.write(bytes, offset, length);
+        } else {
+            ensureWriteCapacity(length);
+            System.arraycopy(bytes, offset, writeBuffer, writePos, length);
+            writePos += length;
+        }
+    }
+
+    /**
+     * Provides a view for writing raw bytes, eg for streaming message content.
+     * Closing the stream does not close the connection.
+     *
+     * @return the output stream, buffered by this codec.
+     */
+    public OutputStream asOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                ensureWriteCapacity(1);
+                writeBuffer[writePos++] = (byte) b;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                LineCodec.this.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                LineCodec.this.flush();
+            }
+        };
+    }
+
+    private static byte toByte(char c) {
+        return c <= 0xff ? (byte) c : UNMAPPABLE;
+    }
+
+    private void ensureWriteCapacity(int length) throws IOException {
+        if (writePos + length > writeBuffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (writePos > 0) {
+            out.write(writeBuffer, 0, writePos);
+            writePos = 0;
+        }
+    }
+
+    /**
+     * Writes all buffered output to the underlying stream and flushes it.
+     *
+     * @throws IOException on error.
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+}
@@ -79,6 +79,16 @@ public class ServerSetup {
      */
     private long serverStartupTimeout = 1000L;
 
+    /**
+     * Number of threads accepting connections.
+     */
+    private int acceptorThreads = 1;
+
+    /**
+     * Max number of pending connections not yet accepted, or 0 for the JDK default.
+     */
+    private int acceptBacklog = 0;
+
     public ServerSetup(int port, String bindAddress, String protocol) {
         this.port = port;
         if (null == bindAddress || bindAddress.length() == 0) {
@@ -170,6 +180,44 @@ public class ServerSetup {
         this.serverStartupTimeout = timeoutInMs;
     }
 
+    public int getAcceptorThreads() {
+        return acceptorThreads;
+    }
+
+    /**
+     * Sets the number of threads accepting connections, for connection storms such as thousands of clients
+     * connecting at once. Defaults to one.
+     * <p/>
+     * If supported by the JDK and platform (SO_REUSEPORT), each thread accepts on its own server socket
+     * bound to the same port. Otherwise the threads share one server socket.
+     * <p/>
+     * Note: With SO_REUSEPORT, binding a port already in use no longer fails. Another GreenMail instance
+     * with more than one acceptor thread silently binds the same port, and connections get spread over
+     * both instances.
+     *
+     * @param acceptorThreads the number of threads, at least one.
+     */
+    public void setAcceptorThreads(int acceptorThreads) {
+        if (acceptorThreads < 1) {
+            throw new IllegalArgumentException("Requires at least one acceptor thread, got " + acceptorThreads);
+        }
+        this.acceptorThreads = acceptorThreads;
+    }
+
+    public int getAcceptBacklog() {
+        return acceptBacklog;
+    }
+
+    /**
+     * Sets the max number of pending connections not yet accepted. Further clients get refused.
+     * The operating system might limit the backlog, such as net.core.somaxconn on Linux.
+     *
+     * @param acceptBacklog the backlog, or 0 for the JDK default (50).
+     */
+    public void setAcceptBacklog(int acceptBacklog) {
+        this.acceptBacklog = acceptBacklog;
+    }
+
     /**
      * Creates default properties for a JavaMail session.
      * Concrete server implementations can add protocol specific settings.
@@ -245,6 +293,8 @@ public class ServerSetup {
         if (connectionTimeout != that.connectionTimeout) return false;
         if (writeTimeout != that.writeTimeout) return false;
         if (serverStartupTimeout != that.serverStartupTimeout) return false;
+        if (acceptorThreads != that.acceptorThreads) return false;
+        if (acceptBacklog != that.acceptBacklog) return false;
         if (bindAddress != null ? !bindAddress.equals(that.bindAddress) : that.bindAddress != null) return false;
         return !(protocol != null ? !protocol.equals(that.protocol) : that.protocol != null);
 
@@ -259,6 +309,8 @@ public class ServerSetup {
         result = 31 * result + (int) (connectionTimeout ^ (connectionTimeout >>> 32));
         result = 31 * result + (int) (writeTimeout ^ (writeTimeout >>> 32));
         result = 31 * result + (int) (serverStartupTimeout ^ (serverStartupTimeout >>> 32));
+        result = 31 * result + acceptorThreads;
+        result = 31 * result + acceptBacklog;
         return result;
     }
 
@@ -272,6 +324,8 @@ public class ServerSetup {
                 ", connectionTimeout=" + connectionTimeout +
                 ", writeTimeout=" + writeTimeout +
                 ", serverStartupTimeout=" + serverStartupTimeout +
+                ", acceptorThreads=" + acceptorThreads +
+                ", acceptBacklog=" + acceptBacklog +
                 ", verbose=" + isVerbose() +
                 '}';
     }
@@ -294,6 +348,8 @@ public class ServerSetup {
     public ServerSetup createCopy(String bindAddress) {
         ServerSetup setup = new ServerSetup(getPort(), bindAddress, getProtocol());
         setup.setServerStartupTimeout(getServerStartupTimeout());
+        setup.setAcceptorThreads(getAcceptorThreads());
+        setup.setAcceptBacklog(getAcceptBacklog());
         setup.setConnectionTimeout(getConnectionTimeout());
         setup.setReadTimeout(getReadTimeout());
         setup.setWriteTimeout(getWriteTimeout());
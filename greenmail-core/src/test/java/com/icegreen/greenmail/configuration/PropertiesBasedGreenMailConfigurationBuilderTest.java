@@ -1,5 +1,6 @@
 package com.icegreen.greenmail.configuration;
 
+import com.icegreen.greenmail.store.RetentionPolicy;
 import org.junit.Test;
 
 import java.util.Properties;
@@ -40,6 +41,17 @@ public class PropertiesBasedGreenMailConfigurationBuilderTest {
         assertTrue(config.isAuthenticationDisabled());
     }
 
+    @Test
+    public void testBuildWithRetentionPolicy() {
+        Properties props = createPropertiesFor(PropertiesBasedGreenMailConfigurationBuilder.GREENMAIL_RETENTION_MAX_MESSAGES, "100");
+        props.setProperty(PropertiesBasedGreenMailConfigurationBuilder.GREENMAIL_RETENTION_MAX_AGE, "3600000");
+        GreenMailConfiguration config = new PropertiesBasedGreenMailConfigurationBuilder().build(props);
+
+        assertEquals(RetentionPolicy.unlimited().withMaxMessages(100).withMaxAge(3600000L), config.getRetentionPolicy());
+        assertEquals(GreenMailConfiguration.DEFAULT_RETENTION_SWEEP_INTERVAL, config.getRetentionSweepInterval());
+        assertNull(new PropertiesBasedGreenMailConfigurationBuilder().build(new Properties()).getRetentionPolicy());
+    }
+
     private Properties createPropertiesFor(String key, String value) {
         Properties props = new Properties();
         props.setProperty(key, value);
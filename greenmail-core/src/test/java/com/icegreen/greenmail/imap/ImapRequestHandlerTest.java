@@ -0,0 +1,76 @@
+package com.icegreen.greenmail.imap;
+
+import com.icegreen.greenmail.Managers;
+import com.icegreen.greenmail.store.MailFolder;
+import com.icegreen.greenmail.user.GreenMailUser;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import org.junit.Test;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the number of writes hitting the connection, which maps to syscalls and usually TCP segments.
+ */
+public class ImapRequestHandlerTest {
+    private static final int NUMBER_OF_MESSAGES = 1000;
+
+    @Test
+    public void testFetchFlagsIsWrittenInFewWrites() throws Exception {
+        Managers managers = new Managers();
+        GreenMailUser user = managers.getUserManager().createUser("foo@localhost", "foo", "pwd");
+        MailFolder inbox = managers.getImapHostManager().getInbox(user);
+        Session mailSession = GreenMailUtil.getSession(ServerSetupTest.IMAP);
+        for (int i = 0; i < NUMBER_OF_MESSAGES; i++) {
+            MimeMessage message = new MimeMessage(mailSession);
+            message.setSubject("Test " + i);
+            message.setText("content " + i);
+            inbox.store(message);
+        }
+
+        ImapSessionImpl session = new ImapSessionImpl(managers.getImapHostManager(), managers.getUserManager(),
+                null, "127.0.0.1");
+        session.setAuthenticated(user);
+        session.setSelected(inbox, false);
+
+        CountingOutputStream socketOut = new CountingOutputStream();
+        // Same buffer size as ImapHandler
+        OutputStream out = new BufferedOutputStream(socketOut, 1024);
+        InputStream in = new ByteArrayInputStream(
+                "a FETCH 1:1000 (FLAGS)\r\n".getBytes(StandardCharsets.ISO_8859_1));
+
+        assertTrue(new ImapRequestHandler().handleRequest(in, out, session));
+
+        String response = socketOut.toString();
+        String[] lines = response.split("\r\n");
+        assertEquals(NUMBER_OF_MESSAGES + 1, lines.length);
+        assertEquals("* 1 FETCH (FLAGS (\\Recent))", lines[0]);
+        assertEquals("a OK FETCH completed.", lines[NUMBER_OF_MESSAGES]);
+
+        // Unbuffered, every single FETCH line would be written separately
+        assertTrue("Writes: " + socketOut.writes,
+                socketOut.writes <= response.length() / ImapResponse.BUFFER_FLUSH_THRESHOLD + 4);
+    }
+
+    static class CountingOutputStream extends ByteArrayOutputStream {
+        int writes;
+
+        @Override
+        public synchronized void write(int b) {
+            writes++;
+            super.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            writes++;
+            super.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.icegreen.greenmail.imap.commands;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class IdRangeTest {
+    @Test
+    public void testAscendingMatcher() {
+        IdRange[] ranges = {new IdRange(7, 9), new IdRange(2), new IdRange(3, 4), new IdRange(3, 8), new IdRange(12)};
+        IdRange.AscendingMatcher matcher = new IdRange.AscendingMatcher(ranges);
+        StringBuilder matched = new StringBuilder();
+        for (long id = 1; id <= 13; id++) {
+            boolean matches = matcher.matches(id);
+            assertEquals(IdRange.containsUid(ranges, id), matches);
+            if (matches) {
+                matched.append(id).append(' ');
+            }
+        }
+        assertEquals("2 3 4 5 6 7 8 9 12 ", matched.toString());
+
+        // Skipping ids
+        matcher = new IdRange.AscendingMatcher(ranges);
+        assertEquals(false, matcher.matches(1));
+        assertEquals(true, matcher.matches(9));
+        assertEquals(false, matcher.matches(10));
+        assertEquals(true, matcher.matches(12));
+        assertEquals(false, new IdRange.AscendingMatcher(null).matches(1));
+    }
+}
@@ -18,7 +18,9 @@ import org.junit.Test;
 
 import javax.mail.*;
 import javax.mail.internet.MimeMessage;
-import java.io.IOException;
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -274,6 +276,161 @@ public class ImapProtocolTest {
         }
     }
 
+    @Test
+    public void testSearchReturnOptions() throws MessagingException {
+        store.connect("foo@localhost", "pwd");
+        try {
+            IMAPFolder folder = (IMAPFolder) store.getFolder("INBOX");
+            folder.open(Folder.READ_ONLY);
+            Response[] ret = (Response[]) folder.doCommand(new IMAPFolder.ProtocolCommand() {
+                @Override
+                public Object doCommand(IMAPProtocol protocol) throws ProtocolException {
+                    return protocol.command("SEARCH RETURN (MIN MAX COUNT ALL) 2:4 8", null);
+                }
+            });
+            IMAPResponse response = (IMAPResponse) ret[0];
+            assertFalse(response.isBAD());
+            assertTrue(response.keyEquals("ESEARCH"));
+            assertTrue(response.getRest(), response.getRest().endsWith(") MIN 2 MAX 8 COUNT 4 ALL 2:4,8"));
+            assertTrue(ret[1].isOK());
+
+            // Empty result
+            ret = (Response[]) folder.doCommand(new IMAPFolder.ProtocolCommand() {
+                @Override
+                public Object doCommand(IMAPProtocol protocol) throws ProtocolException {
+                    return protocol.command("SEARCH RETURN (MIN COUNT) DELETED", null);
+                }
+            });
+            response = (IMAPResponse) ret[0];
+            assertTrue(response.getRest(), response.getRest().endsWith(") COUNT 0"));
+            assertTrue(ret[1].isOK());
+
+            // Unknown option
+            ret = (Response[]) folder.doCommand(new IMAPFolder.ProtocolCommand() {
+                @Override
+                public Object doCommand(IMAPProtocol protocol) throws ProtocolException {
+                    return protocol.command("SEARCH RETURN (FOO) ALL", null);
+                }
+            });
+            assertTrue(ret[0].isBAD());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testSearchResultSave() throws MessagingException {
+        store.connect("foo@localhost", "pwd");
+        try {
+            IMAPFolder folder = (IMAPFolder) store.getFolder("INBOX");
+            folder.open(Folder.READ_WRITE);
+            Response[] ret = (Response[]) folder.doCommand(new IMAPFolder.ProtocolCommand() {
+                @Override
+                public Object doCommand(IMAPProtocol protocol) throws ProtocolException {
+                    return protocol.command("SEARCH RETURN (SAVE) 3:5", null);
+                }
+            });
+            assertEquals(1, ret.length); // No ESEARCH response for SAVE only
+            assertTrue(ret[0].isOK());
+
+            ret = (Response[]) folder.doCommand(new IMAPFolder.ProtocolCommand() {
+                @Override
+                public Object doCommand(IMAPProtocol protocol) throws ProtocolException {
+                    return protocol.command("STORE $ +FLAGS.SILENT (\\Flagged)", null);
+                }
+            });
+            assertTrue(ret[ret.length - 1].isOK());
+
+            ret = (Response[]) folder.doCommand(new IMAPFolder.ProtocolCommand() {
+                @Override
+                public Object doCommand(IMAPProtocol protocol) throws ProtocolException {
+                    return protocol.command("SEARCH FLAGGED", null);
+                }
+            });
+            IMAPResponse response = (IMAPResponse) ret[0];
+            assertEquals("3 4 5", response.getRest());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testFetchBinary() throws IOException {
+        // JavaMail does not parse BINARY fetch items, so talk plain IMAP
+        try (Socket socket = new Socket(greenMail.getImap().getBindTo(), greenMail.getImap().getPort())) {
+            socket.setSoTimeout(5000);
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.ISO_8859_1);
+            in.readLine(); // Greeting
+            sendAndRead(in, out, "a", "LOGIN foo@localhost pwd");
+            sendAndRead(in, out, "b", "SELECT INBOX");
+
+            String response = sendAndRead(in, out, "c", "FETCH 1 (BINARY.SIZE[1] BINARY.PEEK[1])");
+            assertTrue(response, response.startsWith("* 1 FETCH (BINARY.SIZE[1] 23 BINARY[1] ~{23}\r\nTest message content0\r\n"));
+            assertTrue(response, response.endsWith("c OK FETCH completed.\r\n"));
+
+            response = sendAndRead(in, out, "d", "FETCH 1 (BINARY[1]<5.7>)");
+            assertTrue(response, response.startsWith("* 1 FETCH (FLAGS (\\Seen) BINARY[1]<5> ~{7}\r\nmessage)"));
+
+            // Size of whole part, not of partial fetch
+            response = sendAndRead(in, out, "d2", "FETCH 1 (BINARY.SIZE[1])");
+            assertTrue(response, response.startsWith("* 1 FETCH (BINARY.SIZE[1] 23)"));
+
+            response = sendAndRead(in, out, "e", "FETCH 1 (BINARY[TEXT])");
+            assertTrue(response, response.startsWith("e BAD"));
+
+            response = sendAndRead(in, out, "f", "FETCH 1 (BINARY[3])");
+            assertTrue(response, response.startsWith("f NO"));
+        }
+    }
+
+    @Test
+    public void testStoreMessageSet() throws IOException {
+        try (Socket socket = new Socket(greenMail.getImap().getBindTo(), greenMail.getImap().getPort())) {
+            socket.setSoTimeout(5000);
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.ISO_8859_1);
+            in.readLine(); // Greeting
+            sendAndRead(in, out, "a", "LOGIN foo@localhost pwd");
+            sendAndRead(in, out, "b", "SELECT INBOX");
+
+            String response = sendAndRead(in, out, "c", "STORE 2:4,9 +FLAGS (\\Flagged)");
+            assertEquals("* 2 FETCH (FLAGS (\\Flagged))\r\n" +
+                    "* 3 FETCH (FLAGS (\\Flagged))\r\n" +
+                    "* 4 FETCH (FLAGS (\\Flagged))\r\n" +
+                    "* 9 FETCH (FLAGS (\\Flagged))\r\n" +
+                    "c OK STORE completed.\r\n", response);
+
+            response = sendAndRead(in, out, "d", "STORE 3:* FLAGS.SILENT (\\Seen Work)");
+            assertEquals("d OK STORE completed.\r\n", response);
+
+            response = sendAndRead(in, out, "e", "UID STORE 1:3 -FLAGS (\\Flagged)");
+            assertEquals("* 1 FETCH (FLAGS () UID 1)\r\n" +
+                    "* 2 FETCH (FLAGS () UID 2)\r\n" +
+                    "* 3 FETCH (FLAGS (\\Seen Work) UID 3)\r\n" +
+                    "e OK STORE completed.\r\n", response);
+
+            response = sendAndRead(in, out, "f", "FETCH 1:10 FLAGS");
+            assertTrue(response, response.startsWith("* 1 FETCH (FLAGS ())\r\n* 2 FETCH (FLAGS ())\r\n" +
+                    "* 3 FETCH (FLAGS (\\Seen Work))\r\n* 4 FETCH (FLAGS (\\Seen Work))\r\n"));
+            assertTrue(response, response.contains("* 9 FETCH (FLAGS (\\Seen Work))\r\n")); // Replaced
+        }
+    }
+
+    private String sendAndRead(BufferedReader in, Writer out, String tag, String command) throws IOException {
+        out.write(tag + ' ' + command + "\r\n");
+        out.flush();
+        StringBuilder buf = new StringBuilder();
+        String line;
+        do {
+            line = in.readLine();
+            buf.append(line).append("\r\n");
+        } while (!line.startsWith(tag + ' '));
+        return buf.toString();
+    }
+
     @Test
     public void testSearchNotFlags() throws MessagingException {
         store.connect("foo@localhost", "pwd");
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.mail;
+
+import com.icegreen.greenmail.imap.ImapConstants;
+import com.icegreen.greenmail.store.FolderException;
+import com.icegreen.greenmail.store.InMemoryStore;
+import com.icegreen.greenmail.store.MailFolder;
+import com.icegreen.greenmail.store.StoredMessage;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.mail.Flags;
+import javax.mail.MessagingException;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class DeliveryJournalTest {
+    private InMemoryStore store;
+    private MailFolder inbox;
+
+    @Before
+    public void setUp() throws FolderException {
+        store = new InMemoryStore();
+        inbox = createFolder("INBOX");
+    }
+
+    @Test
+    public void testJournal() throws MessagingException {
+        DeliveryJournal journal = new DeliveryJournal();
+        assertEquals(0L, journal.getSequence());
+        StoredMessage message = deliver("test");
+
+        assertEquals(1L, journal.record("Foo@Example.com", message));
+        assertEquals(2L, journal.record("bar@example.com", message));
+        assertEquals(3L, journal.record("foo@other.com", message));
+        assertEquals(3L, journal.getSequence());
+
+        assertEquals(3, journal.getEntriesSince(0L).size());
+        assertEquals(1, journal.getEntriesSince(2L).size());
+        assertEquals(3L, journal.getEntriesSince(2L).get(0).getSequence());
+        assertEquals(0, journal.getEntriesSince(3L).size());
+        assertSame(message.getMimeMessage(), journal.getEntriesSince(2L).get(0).getMessage());
+        assertEquals(2, journal.getEntriesForDomain("EXAMPLE.com").size());
+        assertEquals("foo@example.com", journal.getEntriesForRecipient("foo@example.com").get(0).getRecipient());
+
+        journal.truncate(1L);
+        assertEquals(1L, journal.getSequence());
+        assertEquals(1, journal.getEntriesForDomain("example.com").size());
+        assertEquals(0, journal.getEntriesForDomain("other.com").size());
+        assertEquals(2L, journal.record("foo@other.com", message));
+
+        // Sequence keeps increasing after clearing
+        journal.clear();
+        assertEquals(2L, journal.getSequence());
+        assertEquals(0, journal.getEntriesSince(0L).size());
+        assertEquals(3L, journal.record("foo@other.com", message));
+        assertEquals(1, journal.getEntriesSince(0L).size());
+        assertEquals(1, journal.getEntriesSince(2L).size());
+    }
+
+    @Test
+    public void testLeavesOutRemovedMessages() throws MessagingException, FolderException {
+        DeliveryJournal journal = new DeliveryJournal();
+        StoredMessage kept = deliver("kept");
+        journal.record("foo@example.com", kept);
+        journal.record("foo@example.com", deliver("expunged"));
+        journal.record("bar@example.com", deliver("deleted"));
+
+        inbox.setFlags(new Flags(Flags.Flag.DELETED), true, 2L, null, false);
+        inbox.expunge();
+        assertEquals(2, journal.getEntriesSince(0L).size());
+        assertSame(kept.getMimeMessage(), journal.getEntriesForRecipient("foo@example.com").get(0).getMessage());
+        assertEquals(1, journal.getEntriesForRecipient("foo@example.com").size());
+
+        InMemoryStore.Snapshot snapshot = store.createSnapshot();
+        inbox.deleteAllMessages();
+        assertEquals(0, journal.getEntriesSince(0L).size());
+        assertEquals(3L, journal.getSequence());
+
+        // Follows the messages again once restored
+        store.restoreSnapshot(snapshot);
+        assertEquals(2, journal.getEntriesSince(0L).size());
+        assertEquals("deleted", journal.getEntriesForDomain("example.com").get(1).getMessage().getSubject());
+    }
+
+    @Test
+    public void testFollowsMovedMessages() throws MessagingException, FolderException {
+        DeliveryJournal journal = new DeliveryJournal();
+        MailFolder archive = createFolder("Archive");
+        journal.record("foo@example.com", deliver("moved"));
+        journal.record("foo@example.com", deliver("kept"));
+
+        inbox.moveMessages(new long[]{1L}, archive);
+        assertEquals(1, inbox.getMessageCount());
+        assertEquals(2, journal.getEntriesSince(0L).size());
+        StoredMessage moved = archive.getMessage(archive.getMessageUids()[0]);
+        assertSame(moved.getMimeMessage(), journal.getEntriesSince(0L).get(0).getMessage());
+
+        // Keeps following the moved message until removed from the target folder
+        archive.deleteAllMessages();
+        assertEquals(1, journal.getEntriesSince(0L).size());
+        assertEquals("kept", journal.getEntriesSince(0L).get(0).getMessage().getSubject());
+    }
+
+    private MailFolder createFolder(String name) throws FolderException {
+        return store.createMailbox(store.getMailbox(ImapConstants.USER_NAMESPACE), name, true);
+    }
+
+    private StoredMessage deliver(String subject) throws MessagingException {
+        return inbox.appendStoredMessage(
+                GreenMailUtil.newMimeMessage("Subject: " + subject + "\r\n\r\nbody\r\n"), new Flags(), new Date());
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.store;
+
+import com.icegreen.greenmail.util.GreenMailUtil;
+import org.junit.Test;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.util.Date;
+import java.util.Enumeration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class HeaderIndexTest {
+    private static final String MESSAGE = "From: from@localhost\r\n" +
+            "To: to@localhost\r\n" +
+            "Subject: folded\r\n" +
+            "  subject\r\n" +
+            "X-Custom: 1\r\n" +
+            "x-custom: 2\r\n" +
+            "Date: Tue, 1 Jan 2019 10:00:00 +0000\r\n" +
+            "\r\n" +
+            "body\r\n";
+
+    @Test
+    public void testHeaderFields() throws MessagingException, FolderException {
+        MimeMessage mimeMessage = GreenMailUtil.newMimeMessage(MESSAGE);
+        StoredMessage message = new StoredMessage(mimeMessage, new Date(), 1L);
+        HeaderIndex index = message.getHeaderIndex();
+        assertSame(index, message.getHeaderIndex());
+        assertEquals(6, index.size());
+
+        assertEquals(join(mimeMessage.getAllHeaderLines()), index.getHeaders());
+        assertEquals(MESSAGE.substring(0, MESSAGE.indexOf("\r\n\r\n") + 2), index.getHeaders());
+
+        String[] names = {"SUBJECT", "X-Custom", "Date"};
+        assertEquals(join(mimeMessage.getMatchingHeaderLines(names)), index.getHeaders(names, false).toString());
+        assertEquals("Subject: folded\r\n  subject\r\nX-Custom: 1\r\nx-custom: 2\r\nDate: Tue, 1 Jan 2019 10:00:00 +0000\r\n",
+                index.getHeaders(names, false).toString());
+        assertEquals(join(mimeMessage.getNonMatchingHeaderLines(names)), index.getHeaders(names, true).toString());
+        assertEquals("From: from@localhost\r\nTo: to@localhost\r\n", index.getHeaders(names, true).toString());
+        assertEquals("", index.getHeaders(new String[]{"Cc"}, false).toString());
+    }
+
+    private static String join(Enumeration<?> lines) {
+        StringBuilder buf = new StringBuilder();
+        while (lines.hasMoreElements()) {
+            buf.append(lines.nextElement()).append("\r\n");
+        }
+        return buf.toString();
+    }
+}
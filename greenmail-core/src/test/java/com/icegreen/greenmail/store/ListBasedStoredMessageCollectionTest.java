@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.store;
+
+import com.icegreen.greenmail.imap.commands.IdRange;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import org.junit.Test;
+
+import javax.mail.Flags;
+import javax.mail.MessagingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ListBasedStoredMessageCollectionTest {
+    private static ListBasedStoredMessageCollection createMessages(int count, long... deletedUids) throws MessagingException {
+        ListBasedStoredMessageCollection messages = new ListBasedStoredMessageCollection();
+        for (long uid = 1; uid <= count; uid++) {
+            StoredMessage message = new StoredMessage(
+                    GreenMailUtil.newMimeMessage("Subject: " + uid + "\r\n\r\nbody\r\n"), new Date(), uid);
+            if (Arrays.binarySearch(deletedUids, uid) >= 0) {
+                message.setFlag(Flags.Flag.DELETED, true);
+            }
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    @Test
+    public void testExpungeDeleted() throws MessagingException {
+        ListBasedStoredMessageCollection messages = createMessages(8, 1, 3, 4, 8);
+        List<StoredMessage> removed = new ArrayList<>();
+        assertArrayEquals(new int[]{8, 4, 3, 1}, messages.expungeDeleted(null, removed));
+        assertArrayEquals(new long[]{2, 5, 6, 7}, messages.getMessageUids());
+        assertEquals(4, removed.size());
+        assertEquals(3L, removed.get(1).getUid());
+
+        assertEquals(0, messages.expungeDeleted(null, removed).length);
+        assertEquals(4, messages.size());
+    }
+
+    @Test
+    public void testExpungeDeletedInRange() throws MessagingException {
+        ListBasedStoredMessageCollection messages = createMessages(6, 2, 3, 5);
+        List<StoredMessage> removed = new ArrayList<>();
+        assertArrayEquals(new int[]{5, 3}, messages.expungeDeleted(new IdRange[]{IdRange.parseRange("3:5")}, removed));
+        assertArrayEquals(new long[]{1, 2, 4, 6}, messages.getMessageUids());
+
+        // Remaining deleted message moved to MSN 2
+        assertArrayEquals(new int[]{2}, messages.expungeDeleted(null, removed));
+        assertArrayEquals(new long[]{1, 4, 6}, messages.getMessageUids());
+    }
+
+    @Test
+    public void testRemoveUids() throws MessagingException, FolderException {
+        ListBasedStoredMessageCollection messages = createMessages(6);
+        List<StoredMessage> removed = new ArrayList<>();
+        assertArrayEquals(new int[]{6, 4, 2}, messages.remove(new long[]{4, 2, 6}, removed));
+        assertArrayEquals(new long[]{1, 3, 5}, messages.getMessageUids());
+        assertEquals(3, removed.size());
+        assertEquals(2L, removed.get(0).getUid());
+        assertEquals(6L, removed.get(2).getUid());
+
+        // Nothing removed if any message does not exist
+        try {
+            messages.remove(new long[]{1, 2}, removed);
+            fail("Expected FolderException");
+        } catch (FolderException expected) {
+            assertArrayEquals(new long[]{1, 3, 5}, messages.getMessageUids());
+        }
+    }
+
+    @Test
+    public void testRemoveIndexes() throws MessagingException {
+        ListBasedStoredMessageCollection messages = createMessages(6);
+        BitSet indexes = new BitSet();
+        indexes.set(0, 2);
+        indexes.set(4);
+        List<StoredMessage> removed = new ArrayList<>();
+        assertArrayEquals(new int[]{5, 2, 1}, messages.remove(indexes, removed));
+        assertArrayEquals(new long[]{3, 4, 6}, messages.getMessageUids());
+        assertEquals(3, removed.size());
+        assertEquals(5L, removed.get(2).getUid());
+
+        assertEquals(0, messages.remove(new BitSet(), removed).length);
+        assertEquals(3, messages.size());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.store;
+
+import com.icegreen.greenmail.util.GreenMailUtil;
+import org.junit.Test;
+
+import javax.mail.Flags;
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class MessageFlagsTest {
+    @Test
+    public void testFormat() {
+        Flags flags = new Flags();
+        assertEquals("()", MessageFlags.format(flags));
+        flags.add(Flags.Flag.SEEN);
+        flags.add(Flags.Flag.ANSWERED);
+        flags.add(Flags.Flag.USER);
+        assertEquals("(\\Answered \\Seen)", MessageFlags.format(flags));
+        // Preformatted
+        assertSame(MessageFlags.format(flags), MessageFlags.format(MessageFlags.toMask(flags), null));
+        flags.add("$Forwarded");
+        assertEquals("(\\Answered \\Seen $Forwarded)", MessageFlags.format(flags));
+    }
+
+    @Test
+    public void testStoredMessageFlags() throws MessagingException {
+        MimeMessage source = GreenMailUtil.newMimeMessage("Subject: test\r\n\r\nbody\r\n");
+        source.setFlag(Flags.Flag.DRAFT, true);
+        KeywordTable keywords = new KeywordTable();
+        StoredMessage message = new StoredMessage(source, new Date(), 1L, null, keywords);
+        assertTrue(message.isSet(Flags.Flag.DRAFT));
+        assertEquals("(\\Draft)", message.formatFlags());
+
+        Flags flags = new Flags(Flags.Flag.SEEN);
+        flags.add("Work");
+        flags.add("Private");
+        message.setFlags(flags, true);
+        assertEquals("(\\Draft \\Seen Work Private)", message.formatFlags());
+        assertTrue(message.getFlags().contains("work"));
+
+        // Mime message flags are backed by stored message, eg for SEARCH
+        MimeMessage mimeMessage = message.getMimeMessage();
+        assertTrue(mimeMessage.isSet(Flags.Flag.SEEN));
+        assertTrue(mimeMessage.getFlags().contains("Private"));
+        mimeMessage.setFlag(Flags.Flag.SEEN, false);
+        assertFalse(message.isSet(Flags.Flag.SEEN));
+        mimeMessage.setFlags(new Flags("WORK"), false);
+        assertEquals("(\\Draft Private)", message.formatFlags());
+
+        // Ids of another folder, eg when moving
+        KeywordTable target = new KeywordTable();
+        target.getOrAssignId("Other");
+        StoredMessage moved = new StoredMessage(message, 7L, target);
+        assertEquals("(\\Draft Private)", moved.formatFlags());
+        assertEquals(1, target.getId("private"));
+        assertEquals(7L, moved.getUid());
+        assertEquals("test", moved.getMimeMessage().getSubject());
+
+        moved.setFlags(new Flags("Private"), false);
+        assertEquals("(\\Draft)", moved.formatFlags());
+        assertEquals(0, moved.getFlags().getUserFlags().length);
+
+        // Source message stays untouched
+        assertEquals(1L, message.getUid());
+        assertEquals(1L, ((StoredMessage.UidAwareMimeMessage) message.getMimeMessage()).getUid());
+        assertEquals("(\\Draft Private)", message.formatFlags());
+    }
+
+    @Test
+    public void testManyUserFlags() throws MessagingException {
+        MimeMessage source = GreenMailUtil.newMimeMessage("Subject: test\r\n\r\nbody\r\n");
+        StoredMessage message = new StoredMessage(source, new Date(), 1L);
+        Flags flags = new Flags();
+        for (int i = 0; i < 100; i++) {
+            flags.add("k" + i);
+        }
+        message.setFlags(flags, true);
+        assertEquals(100, message.getFlags().getUserFlags().length);
+        message.setFlags(new Flags("k70"), false);
+        assertFalse(message.getFlags().contains("k70"));
+        assertTrue(message.getFlags().contains("k99"));
+        assertEquals(99, message.getFlags().getUserFlags().length);
+    }
+}
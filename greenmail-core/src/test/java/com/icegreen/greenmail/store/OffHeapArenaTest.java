@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.store;
+
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.junit.GreenMailRule;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.Retriever;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.mail.BodyPart;
+import javax.mail.Message;
+import javax.mail.internet.MimeMultipart;
+import javax.mail.internet.SharedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class OffHeapArenaTest {
+    @Rule
+    public final GreenMailRule greenMail = new GreenMailRule(ServerSetupTest.SMTP_IMAP)
+            .withConfiguration(GreenMailConfiguration.aConfig().withOffHeapMessageStorage());
+
+    @Test
+    public void testSharedStreams() throws IOException {
+        OffHeapArena arena = new OffHeapArena(1024);
+        byte[] content = "0123456789".getBytes(StandardCharsets.US_ASCII);
+        InputStream in = arena.store(content, 2, 6);
+        assertEquals('2', in.read());
+        assertEquals(1L, ((SharedInputStream) in).getPosition());
+
+        // Positions are relative to the stream, as for SharedByteArrayInputStream
+        InputStream sub = ((SharedInputStream) in).newStream(1, -1);
+        assertEquals("34567", read(sub));
+        InputStream subSub = ((SharedInputStream) sub).newStream(1, 3);
+        assertEquals("45", read(subSub));
+        assertEquals("34567", read(in));
+    }
+
+    @Test
+    public void testReclaim() {
+        OffHeapArena arena = new OffHeapArena(1024);
+        InputStream[] streams = new InputStream[10];
+        for (int i = 0; i < streams.length; i++) {
+            streams[i] = arena.store(new byte[200], 0, 200);
+        }
+        // 4 x 256 bytes aligned per slab
+        assertEquals(3, arena.getSlabCount());
+        assertEquals(2560L, arena.getUsedBytes());
+
+        InputStream large = arena.store(new byte[2000], 0, 2000);
+        assertEquals(3, arena.getSlabCount());
+        assertEquals(3072L + 2000L, arena.getCapacity());
+        assertNotNull(large);
+
+        // Drop every other stream, leaving fragmented free space
+        for (int i = 0; i < streams.length; i += 2) {
+            arena.release(streams[i]);
+            streams[i] = null;
+        }
+        assertEquals(1280L + 2000L, arena.getUsedBytes());
+        assertEquals(6, arena.getFreeBlockCount());
+
+        // Freed space gets reused instead of allocating a new slab
+        for (int i = 0; i < streams.length; i += 2) {
+            streams[i] = arena.store(new byte[200], 0, 200);
+        }
+        assertEquals(3, arena.getSlabCount());
+
+        // All freed space of a slab merges into one block
+        for (InputStream stream : streams) {
+            arena.release(stream);
+        }
+        arena.release(large);
+        assertEquals(0L, arena.getUsedBytes());
+        assertEquals(3, arena.getFreeBlockCount());
+        assertEquals(3072L, arena.getCapacity());
+    }
+
+    @Test
+    public void testReceiveStoredOffHeap() throws Exception {
+        String to = "to@localhost";
+        greenMail.setUser(to, to);
+        GreenMailUtil.sendAttachmentEmail(to, "from@localhost", "subject", "body", new byte[]{0, 1, 2},
+                "image/gif", "testimage_filename", "testimage_description", ServerSetupTest.SMTP);
+        assertTrue(greenMail.waitForIncomingEmail(5000, 1));
+
+        OffHeapArena arena = ((InMemoryStore) greenMail.getManagers().getImapHostManager().getStore()).getOffHeapArena();
+        assertTrue(arena.getUsedBytes() > 0L);
+
+        try (Retriever retriever = new Retriever(greenMail.getImap())) {
+            Message[] messages = retriever.getMessages(to);
+            assertEquals("subject", messages[0].getSubject());
+            MimeMultipart mp = (MimeMultipart) messages[0].getContent();
+            assertEquals(2, mp.getCount());
+            assertEquals("body", GreenMailUtil.getBody(mp.getBodyPart(0)).trim());
+            BodyPart attachment = mp.getBodyPart(1);
+            assertEquals("testimage_filename", attachment.getFileName());
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            GreenMailUtil.copyStream(attachment.getInputStream(), bout);
+            assertArrayEquals(new byte[]{0, 1, 2}, bout.toByteArray());
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GreenMailUtil.copyStream(in, out);
+        return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+}
@@ -7,6 +7,7 @@ import org.junit.Rule;
 import org.junit.Test;
 
 import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
 
 import static org.junit.Assert.assertEquals;
 
@@ -31,5 +32,23 @@ public class CatchAllTest {
         assertEquals(2, greenMail.getReceivedMessagesForDomain("domain1.com").length);
         assertEquals(1, greenMail.getReceivedMessagesForDomain("domain2.com").length);
         assertEquals(3, greenMail.getReceivedMessagesForDomain("domain3.com").length);
+        assertEquals(3, greenMail.getReceivedMessagesForRecipientDomain("domain3.com").length);
+        assertEquals(0, greenMail.getReceivedMessagesForRecipientDomain("domain").length);
+    }
+
+    @Test
+    public void testReceivedMessagesSince() throws MessagingException {
+        assertEquals(0L, greenMail.getReceivedMessagesSequence());
+        GreenMailUtil.sendTextEmailTest("to11@domain1.com", "from@localhost.com", "subject1", "body");
+        long sequence = greenMail.getReceivedMessagesSequence();
+        assertEquals(1L, sequence);
+        GreenMailUtil.sendTextEmailTest("to12@domain1.com", "from@localhost.com", "subject2", "body");
+        GreenMailUtil.sendTextEmailTest("to21@domain2.com", "from@localhost.com", "subject3", "body");
+
+        MimeMessage[] messages = greenMail.getReceivedMessagesSince(sequence);
+        assertEquals(2, messages.length);
+        assertEquals("subject2", messages[0].getSubject());
+        assertEquals("subject3", messages[1].getSubject());
+        assertEquals(3, greenMail.getReceivedMessagesSince(0L).length);
     }
 }
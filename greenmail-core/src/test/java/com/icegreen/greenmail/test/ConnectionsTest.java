@@ -0,0 +1,58 @@
+package com.icegreen.greenmail.test;
+
+import com.icegreen.greenmail.junit.GreenMailRule;
+import com.icegreen.greenmail.server.AbstractServer;
+import com.icegreen.greenmail.server.Connection;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests listing open connections.
+ */
+public class ConnectionsTest {
+    @Rule
+    public final GreenMailRule greenMail = new GreenMailRule(ServerSetupTest.SMTP);
+
+    @Test
+    public void testConnections() throws IOException, InterruptedException {
+        AbstractServer smtp = greenMail.getSmtp();
+        assertEquals(0, smtp.getConnectionCount());
+        assertTrue(smtp.getConnections().isEmpty());
+
+        long start = System.currentTimeMillis();
+        try (Socket socket = new Socket(smtp.getBindTo(), smtp.getPort())) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+            assertTrue(in.readLine().startsWith("220 "));
+            out.write("HELO localhost\r\n");
+            out.flush();
+            assertTrue(in.readLine().startsWith("250 "));
+
+            assertEquals(1, smtp.getConnectionCount());
+            List<Connection> connections = smtp.getConnections();
+            assertEquals(1, connections.size());
+            Connection connection = connections.get(0);
+            assertEquals(ServerSetupTest.SMTP.getProtocol(), connection.getProtocol());
+            assertEquals(socket.getLocalPort(), connection.getRemoteAddress().getPort());
+            assertTrue(connection.getStartTime() >= start);
+            assertEquals(1L, connection.getCommandCount());
+            assertEquals("HELO", connection.getLastCommand());
+            assertEquals("HELO localhost\r\n".length(), connection.getBytesReceived());
+            assertTrue(connection.getBytesSent() > 0L);
+        }
+
+        // De-registered once the handler thread noticed the closed connection
+        for (int i = 0; i < 100 && smtp.getConnectionCount() > 0; i++) {
+            Thread.sleep(10L);
+        }
+        assertEquals(0, smtp.getConnectionCount());
+    }
+}
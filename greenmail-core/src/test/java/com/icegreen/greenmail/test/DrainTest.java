@@ -0,0 +1,185 @@
+package com.icegreen.greenmail.test;
+
+import com.icegreen.greenmail.metrics.GreenMailMetrics;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests graceful shutdown, draining connections.
+ */
+public class DrainTest {
+    private GreenMail greenMail;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        greenMail = new GreenMail(ServerSetupTest.SMTP_POP3_IMAP);
+        greenMail.start();
+        greenMail.setUser("foo@localhost", "pwd");
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        greenMail.stop();
+    }
+
+    @Test
+    public void testDrainIdleConnections() throws IOException, InterruptedException {
+        try (Connection smtp = new Connection(ServerSetupTest.SMTP);
+             Connection pop3 = new Connection(ServerSetupTest.POP3);
+             Connection imap = new Connection(ServerSetupTest.IMAP)) {
+            assertTrue(smtp.readLine().startsWith("220 "));
+            assertTrue(pop3.readLine().startsWith("+OK "));
+            assertTrue(imap.readLine().startsWith("* OK "));
+            GreenMailMetrics metrics = greenMail.getManagers().getMetrics();
+            long smtpSent = awaitBytesSent(metrics, "smtp");
+            long pop3Sent = awaitBytesSent(metrics, "pop3");
+
+            assertEquals(0, greenMail.drain(5000L));
+            // Goodbye counted, too
+            assertEquals(smtpSent + 60L, metrics.getBytesSent().get("smtp").longValue());
+            assertEquals(pop3Sent + 27L, metrics.getBytesSent().get("pop3").longValue());
+
+            assertEquals("421 Service shutting down and closing transmission channel", smtp.readLine());
+            assertNull(smtp.readLine());
+            assertEquals("-ERR Server shutting down", pop3.readLine());
+            assertNull(pop3.readLine());
+            assertEquals("* BYE GreenMail server shutting down", imap.readLine());
+            assertNull(imap.readLine());
+        }
+    }
+
+    @Test
+    public void testDrainCompletesCommandInProgress() throws Exception {
+        try (Connection smtp = new Connection(ServerSetupTest.SMTP)) {
+            startData(smtp);
+
+            // Sending mail data is still in progress while draining
+            Future<Integer> forced = executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return greenMail.drain(10000L);
+                }
+            });
+            Thread.sleep(100L);
+            assertFalse(forced.isDone());
+
+            smtp.writeLine("Subject: drain");
+            smtp.writeLine("");
+            smtp.writeLine("body");
+            smtp.writeLine(".");
+            assertTrue(smtp.readLine().startsWith("250 "));
+            assertEquals("421 Service shutting down and closing transmission channel", smtp.readLine());
+            assertNull(smtp.readLine());
+            assertEquals(Integer.valueOf(0), forced.get(10L, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testDrainServicesInParallel() throws Exception {
+        try (Connection smtp = new Connection(ServerSetupTest.SMTP);
+             Connection pop3 = new Connection(ServerSetupTest.POP3);
+             Connection imap = new Connection(ServerSetupTest.IMAP)) {
+            startData(smtp);
+            assertTrue(pop3.readLine().startsWith("+OK "));
+            assertTrue(imap.readLine().startsWith("* OK "));
+
+            Future<Integer> forced = executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return greenMail.drain(10000L);
+                }
+            });
+            // Idle connections of other services get drained without waiting for the busy one
+            assertEquals("-ERR Server shutting down", pop3.readLine());
+            assertEquals("* BYE GreenMail server shutting down", imap.readLine());
+            assertFalse(forced.isDone());
+
+            smtp.writeLine(".");
+            assertTrue(smtp.readLine().startsWith("250 "));
+            assertEquals(Integer.valueOf(0), forced.get(10L, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testDrainTimeout() throws IOException {
+        try (Connection smtp = new Connection(ServerSetupTest.SMTP);
+             Connection imap = new Connection(ServerSetupTest.IMAP)) {
+            startData(smtp);
+            assertTrue(imap.readLine().startsWith("* OK "));
+
+            long start = System.currentTimeMillis();
+            assertEquals(1, greenMail.drain(200L));
+            assertTrue(System.currentTimeMillis() - start < 5000L);
+
+            assertEquals("* BYE GreenMail server shutting down", imap.readLine());
+            try {
+                assertNull(smtp.readLine());
+            } catch (IOException expected) {
+                // Closed by force, eg connection reset
+            }
+        }
+    }
+
+    /**
+     * Waits for the greeting getting counted, as counted only after written to the socket.
+     */
+    private static long awaitBytesSent(GreenMailMetrics metrics, String protocol) throws InterruptedException {
+        for (int i = 0; i < 100 && null == metrics.getBytesSent().get(protocol); i++) {
+            Thread.sleep(10L);
+        }
+        return metrics.getBytesSent().get(protocol);
+    }
+
+    private void startData(Connection smtp) throws IOException {
+        assertTrue(smtp.readLine().startsWith("220 "));
+        smtp.writeLine("HELO localhost");
+        assertTrue(smtp.readLine().startsWith("250 "));
+        smtp.writeLine("MAIL FROM:<bar@localhost>");
+        assertTrue(smtp.readLine().startsWith("250 "));
+        smtp.writeLine("RCPT TO:<foo@localhost>");
+        assertTrue(smtp.readLine().startsWith("250 "));
+        smtp.writeLine("DATA");
+        assertTrue(smtp.readLine().startsWith("354 "));
+    }
+
+    private static class Connection implements Closeable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final Writer out;
+
+        Connection(ServerSetup setup) throws IOException {
+            socket = new Socket(setup.getBindAddress(), setup.getPort());
+            socket.setSoTimeout(10000);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+        }
+
+        String readLine() throws IOException {
+            return in.readLine();
+        }
+
+        void writeLine(String line) throws IOException {
+            out.write(line + "\r\n");
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
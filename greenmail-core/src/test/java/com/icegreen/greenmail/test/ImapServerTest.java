@@ -602,4 +602,49 @@ public class ImapServerTest {
             store.close();
         }
     }
+
+    @Test
+    public void testMove() throws MessagingException {
+        greenMail.setUser("foo@localhost", "pwd");
+
+        for (int i = 0; i < 6; i++) {
+            GreenMailUtil.sendTextEmail("foo@localhost", "bar@localhost", "Test subject #" + i,
+                    "Test message", ServerSetupTest.SMTP);
+        }
+        final IMAPStore store = greenMail.getImap().createStore();
+        store.connect("foo@localhost", "pwd");
+        try {
+            assertTrue(store.hasCapability("MOVE"));
+
+            IMAPFolder inboxFolder = (IMAPFolder) store.getFolder("INBOX");
+            inboxFolder.open(Folder.READ_WRITE);
+            IMAPFolder targetFolder = (IMAPFolder) inboxFolder.getFolder("target");
+            assertTrue(targetFolder.create(Folder.HOLDS_MESSAGES));
+
+            Message[] messages = inboxFolder.getMessages();
+            assertEquals(6, messages.length);
+            inboxFolder.moveMessages(new Message[]{messages[1], messages[2], messages[4]}, targetFolder);
+            assertTrue(messages[1].isExpunged());
+
+            inboxFolder.close(false);
+            inboxFolder.open(Folder.READ_ONLY);
+            messages = inboxFolder.getMessages();
+            assertEquals(3, messages.length);
+            assertEquals("Test subject #0", messages[0].getSubject());
+            assertEquals("Test subject #3", messages[1].getSubject());
+            assertEquals("Test subject #5", messages[2].getSubject());
+
+            targetFolder.open(Folder.READ_ONLY);
+            messages = targetFolder.getMessages();
+            assertEquals(3, messages.length);
+            assertEquals("Test subject #1", messages[0].getSubject());
+            assertEquals("Test subject #2", messages[1].getSubject());
+            assertEquals("Test subject #4", messages[2].getSubject());
+            assertEquals(1L, targetFolder.getUID(messages[0]));
+            assertEquals(3L, targetFolder.getUID(messages[2]));
+            targetFolder.close(false);
+        } finally {
+            store.close();
+        }
+    }
 }
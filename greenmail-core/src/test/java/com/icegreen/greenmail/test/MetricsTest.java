@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.test;
+
+import com.icegreen.greenmail.junit.GreenMailRule;
+import com.icegreen.greenmail.metrics.CommandStats;
+import com.icegreen.greenmail.metrics.GreenMailMetrics;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.mail.Folder;
+import javax.mail.Store;
+import javax.management.MBeanServer;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+    @Rule
+    public final GreenMailRule greenMail = new GreenMailRule(ServerSetupTest.SMTP_IMAP);
+
+    @Test
+    public void testMetrics() throws Exception {
+        greenMail.setUser("foo@localhost", "pwd");
+        GreenMailUtil.sendTextEmailTest("foo@localhost", "bar@localhost", "subject", "body");
+        assertTrue(greenMail.waitForIncomingEmail(5000, 1));
+
+        Store store = greenMail.getImap().createStore();
+        store.connect("foo@localhost", "pwd");
+        try {
+            Folder inbox = store.getFolder("INBOX");
+            inbox.open(Folder.READ_ONLY);
+            assertEquals("subject", inbox.getMessage(1).getSubject());
+            inbox.close(false);
+        } finally {
+            store.close();
+        }
+
+        GreenMailMetrics metrics = greenMail.getManagers().getMetrics();
+        assertEquals(1L, metrics.getMessagesDelivered());
+        assertEquals(Long.valueOf(1L), metrics.getTotalConnections().get("smtp"));
+        assertEquals(Long.valueOf(1L), metrics.getTotalConnections().get("imap"));
+        assertTrue(metrics.getBytesReceived().get("smtp") > 0L);
+        assertTrue(metrics.getBytesSent().get("imap") > 0L);
+
+        Map<String, CommandStats> commandStats = metrics.getCommandStats();
+        assertEquals(1L, commandStats.get("smtp DATA").getCount());
+        assertEquals(1L, commandStats.get("imap LOGIN").getCount());
+        CommandStats fetch = commandStats.get("imap FETCH");
+        assertTrue(fetch.getCount() > 0);
+        assertTrue(fetch.getP99Micros() <= fetch.getMaxMicros());
+
+        String inboxName = greenMail.getManagers().getImapHostManager()
+                .getInbox(greenMail.getManagers().getUserManager().getUser("foo@localhost")).getFullName();
+        assertEquals(Long.valueOf(1L), metrics.getFolderMessageCounts().get(inboxName));
+        assertTrue(metrics.getFolderSizes().get(inboxName) > 0L);
+
+        // JMX
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertNotNull(metrics.getObjectName());
+        assertEquals(1L, server.getAttribute(metrics.getObjectName(), "MessagesDelivered"));
+        TabularData stats = (TabularData) server.getAttribute(metrics.getObjectName(), "CommandStats");
+        CompositeData data = (CompositeData) stats.get(new Object[]{"smtp DATA"}).get("value");
+        assertEquals(1L, data.get("count"));
+
+        greenMail.stop();
+        assertNull(metrics.getObjectName());
+    }
+}
@@ -0,0 +1,68 @@
+package com.icegreen.greenmail.test;
+
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests servers with multiple acceptor threads.
+ */
+public class MultiAcceptorTest {
+    private static final int CONNECTIONS = 200;
+
+    @Test
+    public void testMultipleAcceptors() throws IOException {
+        ServerSetup setup = ServerSetupTest.SMTP.createCopy();
+        setup.setAcceptorThreads(4);
+        setup.setAcceptBacklog(500);
+        GreenMail greenMail = new GreenMail(setup);
+        greenMail.start();
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            assertEquals(3, countAcceptorThreads());
+            for (int i = 0; i < CONNECTIONS; i++) {
+                Socket socket = new Socket(setup.getBindAddress(), setup.getPort());
+                socket.setSoTimeout(10000);
+                sockets.add(socket);
+            }
+            for (Socket socket : sockets) {
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                assertTrue(in.readLine().startsWith("220 "));
+            }
+            assertEquals(CONNECTIONS, greenMail.getSmtp().getConnectionCount());
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            greenMail.stop();
+        }
+        assertEquals(0, countAcceptorThreads());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidAcceptorThreads() {
+        ServerSetupTest.SMTP.createCopy().setAcceptorThreads(0);
+    }
+
+    private static int countAcceptorThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().contains("-acceptor-")) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -5,6 +5,7 @@
 package com.icegreen.greenmail.test;
 
 import com.icegreen.greenmail.junit.GreenMailRule;
+import com.icegreen.greenmail.store.MailFolder;
 import com.icegreen.greenmail.user.UserException;
 import com.icegreen.greenmail.util.GreenMailUtil;
 import com.icegreen.greenmail.util.Retriever;
@@ -15,10 +16,16 @@ import org.junit.Rule;
 import org.junit.Test;
 
 import javax.mail.BodyPart;
+import javax.mail.Flags;
 import javax.mail.Message;
 import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeMultipart;
-import java.io.ByteArrayOutputStream;
+import java.io.*;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -39,6 +46,10 @@ public class Pop3ServerTest {
         store.connect("testPop3Capabillities@localhost.com", "pwd");
         try {
             assertTrue(store.capabilities().containsKey("UIDL"));
+            assertTrue(store.capabilities().containsKey("TOP"));
+            assertTrue(store.capabilities().containsKey("USER"));
+            assertTrue(store.capabilities().containsKey("PIPELINING"));
+            assertFalse(store.capabilities().containsKey("SASL"));
         } finally {
             store.close();
         }
@@ -65,6 +76,131 @@ public class Pop3ServerTest {
         }
     }
 
+    @Test
+    public void testRetrieveDotStuffed() throws Exception {
+        final String subject = GreenMailUtil.random();
+        final String body = "first line\r\n.dot line\r\n..two dots\r\n.\r\nlast line";
+        String to = "test@localhost.com";
+        GreenMailUtil.sendTextEmailTest(to, "from@localhost.com", subject, body);
+        greenMail.waitForIncomingEmail(5000, 1);
+
+        try (Retriever retriever = new Retriever(greenMail.getPop3())) {
+            Message[] messages = retriever.getMessages(to);
+            assertEquals(1, messages.length);
+            assertEquals(subject, messages[0].getSubject());
+            assertEquals(body, GreenMailUtil.getBody(messages[0]).trim());
+        }
+    }
+
+    @Test
+    public void testTop() throws Exception {
+        final String subject = GreenMailUtil.random();
+        String to = "test@localhost.com";
+        GreenMailUtil.sendTextEmailTest(to, "from@localhost.com", subject, "line 1\r\n.line 2\r\nline 3");
+        greenMail.waitForIncomingEmail(5000, 1);
+
+        try (Socket socket = new Socket(greenMail.getPop3().getBindTo(), greenMail.getPop3().getPort())) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), "US-ASCII");
+            out.write("USER " + to + "\r\nPASS " + to + "\r\nTOP 1 2\r\nQUIT\r\n");
+            out.flush();
+
+            assertTrue(in.readLine().startsWith("+OK")); // Greeting
+            assertTrue(in.readLine().startsWith("+OK")); // USER
+            assertTrue(in.readLine().startsWith("+OK")); // PASS
+            assertEquals("+OK", in.readLine());
+            List<String> lines = new ArrayList<>();
+            String line;
+            while (!".".equals(line = in.readLine())) {
+                lines.add(line);
+            }
+            assertTrue(lines.contains("Subject: " + subject));
+            int bodyStart = lines.indexOf("") + 1;
+            assertEquals(Arrays.asList("line 1", "..line 2"), lines.subList(bodyStart, lines.size()));
+            assertTrue(in.readLine().startsWith("+OK")); // QUIT
+        }
+    }
+
+    @Test
+    public void testDeleteOnQuit() throws Exception {
+        String to = "test@localhost.com";
+        for (int i = 0; i < 3; i++) {
+            GreenMailUtil.sendTextEmailTest(to, "from@localhost.com", "subject " + i, "body " + i);
+        }
+        greenMail.waitForIncomingEmail(5000, 3);
+
+        try (Socket socket = new Socket(greenMail.getPop3().getBindTo(), greenMail.getPop3().getPort())) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), "US-ASCII");
+            in.readLine(); // Greeting
+            out.write("USER " + to + "\r\nPASS " + to + "\r\nSTAT\r\nDELE 2\r\nDELE 2\r\nRSET\r\n"
+                    + "DELE 2\r\nSTAT\r\nRETR 2\r\nUIDL\r\n");
+            out.flush();
+            assertTrue(in.readLine().startsWith("+OK")); // USER
+            assertTrue(in.readLine().startsWith("+OK")); // PASS
+            String stat = in.readLine();
+            assertTrue(stat, stat.startsWith("+OK 3 "));
+            long size = Long.parseLong(stat.substring("+OK 3 ".length()));
+            assertTrue(in.readLine().startsWith("+OK")); // DELE
+            assertTrue(in.readLine().startsWith("-ERR")); // DELE again
+            assertEquals("+OK maildrop has 1 messages undeleted.", in.readLine()); // RSET
+            assertTrue(in.readLine().startsWith("+OK")); // DELE
+            stat = in.readLine();
+            assertTrue(stat, stat.startsWith("+OK 2 "));
+            assertTrue(Long.parseLong(stat.substring("+OK 2 ".length())) < size);
+            assertTrue(in.readLine().startsWith("-ERR")); // RETR of deleted message
+            assertEquals("+OK", in.readLine()); // UIDL
+            assertTrue(in.readLine().startsWith("1 "));
+            assertTrue(in.readLine().startsWith("3 "));
+            assertEquals(".", in.readLine());
+
+            // Still available until QUIT
+            assertEquals(3, greenMail.getReceivedMessages().length);
+            out.write("QUIT\r\n");
+            out.flush();
+            assertTrue(in.readLine().startsWith("+OK"));
+        }
+
+        MimeMessage[] messages = greenMail.getReceivedMessages();
+        assertEquals(2, messages.length);
+        assertEquals("subject 0", messages[0].getSubject());
+        assertEquals("subject 2", messages[1].getSubject());
+    }
+
+    @Test
+    public void testDeleteOnQuitAfterRemovedElsewhere() throws Exception {
+        String to = "test@localhost.com";
+        for (int i = 0; i < 3; i++) {
+            GreenMailUtil.sendTextEmailTest(to, "from@localhost.com", "subject " + i, "body " + i);
+        }
+        greenMail.waitForIncomingEmail(5000, 3);
+
+        try (Socket socket = new Socket(greenMail.getPop3().getBindTo(), greenMail.getPop3().getPort())) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), "US-ASCII");
+            in.readLine(); // Greeting
+            out.write("USER " + to + "\r\nPASS " + to + "\r\nDELE 1\r\nDELE 3\r\n");
+            out.flush();
+            for (int i = 0; i < 4; i++) {
+                assertTrue(in.readLine().startsWith("+OK"));
+            }
+
+            // Removed by another session before QUIT
+            MailFolder inbox = greenMail.getManagers().getImapHostManager().getInbox(
+                    greenMail.getManagers().getUserManager().getUser(to));
+            inbox.setFlags(new Flags(Flags.Flag.DELETED), true, inbox.getMessageUids()[0], null, false);
+            inbox.expunge();
+
+            out.write("QUIT\r\n");
+            out.flush();
+            assertTrue(in.readLine().startsWith("+OK"));
+        }
+
+        MimeMessage[] messages = greenMail.getReceivedMessages();
+        assertEquals(1, messages.length);
+        assertEquals("subject 1", messages[0].getSubject());
+    }
+
     @Test
     public void testPop3sReceive() throws Throwable {
         assertNotNull(greenMail.getPop3s());
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.test;
+
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.junit.GreenMailRule;
+import com.icegreen.greenmail.store.FolderListener;
+import com.icegreen.greenmail.store.MailFolder;
+import com.icegreen.greenmail.store.RetentionPolicy;
+import com.icegreen.greenmail.store.Store;
+import com.icegreen.greenmail.user.GreenMailUser;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.mail.Flags;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class RetentionPolicyTest {
+    @Rule
+    public final GreenMailRule greenMail = new GreenMailRule(ServerSetupTest.SMTP)
+            .withConfiguration(GreenMailConfiguration.aConfig()
+                    .withRetentionPolicy(RetentionPolicy.unlimited().withMaxMessages(3)));
+
+    @Test
+    public void testMaxMessages() throws Exception {
+        GreenMailUser user = greenMail.setUser("foo@localhost", "pwd");
+        MailFolder inbox = greenMail.getManagers().getImapHostManager().getInbox(user);
+        RecordingListener listener = new RecordingListener();
+        inbox.addListener(listener);
+
+        for (int i = 0; i < 5; i++) {
+            GreenMailUtil.sendTextEmailTest("foo@localhost", "bar@localhost", "subject" + i, "body");
+        }
+        assertEquals(3, inbox.getMessageCount());
+        assertEquals("subject2", inbox.getMessages().get(0).getMimeMessage().getSubject());
+        assertEquals("subject4", inbox.getMessages().get(2).getMimeMessage().getSubject());
+        // Oldest message is always MSN 1 when evicted
+        assertEquals("[1, 1]", listener.expunged.toString());
+    }
+
+    @Test
+    public void testMaxAgeAndMailboxOverride() throws Exception {
+        GreenMailUser user = greenMail.setUser("foo@localhost", "pwd");
+        Store store = greenMail.getManagers().getImapHostManager().getStore();
+        MailFolder inbox = greenMail.getManagers().getImapHostManager().getInbox(user);
+        store.setRetentionPolicy(inbox, RetentionPolicy.unlimited().withMaxAge(TimeUnit.MINUTES.toMillis(1)));
+        RecordingListener listener = new RecordingListener();
+        inbox.addListener(listener);
+
+        long now = System.currentTimeMillis();
+        for (long age : new long[]{0L, TimeUnit.HOURS.toMillis(1), 0L, 0L, TimeUnit.HOURS.toMillis(2)}) {
+            MimeMessage message = GreenMailUtil.createTextEmail("foo@localhost", "bar@localhost",
+                    "age" + age, "body", greenMail.getSmtp().getServerSetup());
+            inbox.appendMessage(message, new Flags(), new Date(now - age));
+        }
+        // Mailbox policy overrides max messages of server
+        assertEquals(5, inbox.getMessageCount());
+        assertEquals(0, listener.expunged.size());
+
+        assertEquals(2, store.applyRetention());
+        assertEquals(3, inbox.getMessageCount());
+        // Evicted in descending order, as for EXPUNGE
+        assertEquals("[5, 2]", listener.expunged.toString());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("age0", inbox.getMessages().get(i).getMimeMessage().getSubject());
+        }
+
+        // Inherit from server again
+        store.setRetentionPolicy(inbox, null);
+        GreenMailUtil.sendTextEmailTest("foo@localhost", "bar@localhost", "subject", "body");
+        assertEquals(3, inbox.getMessageCount());
+        assertEquals("subject", inbox.getMessages().get(2).getMimeMessage().getSubject());
+    }
+
+    @Test
+    public void testMaxAgeAndMaxMessagesInSinglePass() throws Exception {
+        GreenMailUser user = greenMail.setUser("foo@localhost", "pwd");
+        Store store = greenMail.getManagers().getImapHostManager().getStore();
+        MailFolder inbox = greenMail.getManagers().getImapHostManager().getInbox(user);
+        RetentionPolicy maxAge = RetentionPolicy.unlimited().withMaxAge(TimeUnit.MINUTES.toMillis(1));
+        store.setRetentionPolicy(inbox, maxAge);
+        RecordingListener listener = new RecordingListener();
+        inbox.addListener(listener);
+
+        long now = System.currentTimeMillis();
+        for (long age : new long[]{0L, TimeUnit.HOURS.toMillis(1), 0L, 0L, TimeUnit.HOURS.toMillis(2)}) {
+            MimeMessage message = GreenMailUtil.createTextEmail("foo@localhost", "bar@localhost",
+                    "age" + age, "body", greenMail.getSmtp().getServerSetup());
+            inbox.appendMessage(message, new Flags(), new Date(now - age));
+        }
+        assertEquals(0, listener.expunged.size());
+        store.setRetentionPolicy(inbox, maxAge.withMaxMessages(2));
+
+        // Expired MSNs 2 and 5, then oldest remaining MSN 1 for exceeding the count
+        assertEquals(3, store.applyRetention());
+        assertEquals(2, inbox.getMessageCount());
+        assertEquals("[5, 2, 1]", listener.expunged.toString());
+    }
+
+    @Test
+    public void testMove() throws Exception {
+        GreenMailUser user = greenMail.setUser("foo@localhost", "pwd");
+        Store store = greenMail.getManagers().getImapHostManager().getStore();
+        MailFolder inbox = greenMail.getManagers().getImapHostManager().getInbox(user);
+        MailFolder archive = greenMail.getManagers().getImapHostManager().createMailbox(user, "Archive");
+        store.setRetentionPolicy(archive, RetentionPolicy.unlimited().withMaxMessages(2));
+        RecordingListener listener = new RecordingListener();
+        archive.addListener(listener);
+
+        for (int i = 0; i < 3; i++) {
+            GreenMailUtil.sendTextEmailTest("foo@localhost", "bar@localhost", "subject" + i, "body");
+        }
+        inbox.moveMessages(inbox.getMessageUids(), archive);
+
+        assertEquals(0, inbox.getMessageCount());
+        assertEquals(2, archive.getMessageCount());
+        assertEquals("subject1", archive.getMessages().get(0).getMimeMessage().getSubject());
+        // Evictions follow the additions, same as appending
+        assertEquals("[1, 2, 3]", listener.added.toString());
+        assertEquals("[1]", listener.expunged.toString());
+    }
+
+    private static class RecordingListener implements FolderListener {
+        private final List<Integer> expunged = new ArrayList<>();
+        private final List<Integer> added = new ArrayList<>();
+
+        @Override
+        public void expunged(int msn) {
+            expunged.add(msn);
+        }
+
+        @Override
+        public void added(int msn) {
+            added.add(msn);
+        }
+
+        @Override
+        public void flagsUpdated(int msn, Flags flags, Long uid) {
+            // Nothing
+        }
+
+        @Override
+        public void mailboxDeleted() {
+            // Nothing
+        }
+    }
+}
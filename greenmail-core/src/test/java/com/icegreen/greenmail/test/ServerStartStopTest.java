@@ -5,6 +5,7 @@ import com.icegreen.greenmail.util.ServerSetup;
 import com.icegreen.greenmail.util.ServerSetupTest;
 import org.junit.Test;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -63,4 +64,31 @@ public class ServerStartStopTest {
             service.stop();
         }
     }
+
+    @Test
+    public void testServerStartupFailsFast() {
+        GreenMail service = new GreenMail(ServerSetupTest.ALL);
+        service.start();
+        try {
+            // Ports are in use, so binding fails without waiting for the startup timeout
+            ServerSetup setups[] = new ServerSetup[ServerSetupTest.ALL.length];
+            for (int i = 0; i < ServerSetupTest.ALL.length; i++) {
+                setups[i] = ServerSetupTest.ALL[i].createCopy();
+                setups[i].setServerStartupTimeout(60000L);
+            }
+            GreenMail conflicting = new GreenMail(setups);
+            long start = System.currentTimeMillis();
+            try {
+                conflicting.start();
+                fail("Expected port conflict");
+            } catch (IllegalStateException ex) {
+                assertTrue(System.currentTimeMillis() - start < 10000L);
+                assertFalse(conflicting.getImap().isRunning());
+            } finally {
+                conflicting.stop();
+            }
+        } finally {
+            service.stop();
+        }
+    }
 }
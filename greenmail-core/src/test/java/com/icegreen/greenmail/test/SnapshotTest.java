@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.test;
+
+import com.icegreen.greenmail.Managers;
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.imap.ImapHostManager;
+import com.icegreen.greenmail.junit.GreenMailRule;
+import com.icegreen.greenmail.smtp.SmtpServer;
+import com.icegreen.greenmail.store.MailFolder;
+import com.icegreen.greenmail.user.GreenMailUser;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.mail.Flags;
+
+import static org.junit.Assert.*;
+
+public class SnapshotTest {
+    @ClassRule
+    public static final GreenMailRule greenMail = new GreenMailRule(ServerSetupTest.SMTP_IMAP)
+            .withConfiguration(GreenMailConfiguration.aConfig().withUser("foo@localhost", "pwd"));
+    @Rule
+    public final GreenMailRule perTest = greenMail;
+
+    /** Servers must be kept running across test methods */
+    private static SmtpServer smtpServer;
+
+    @Test
+    public void testKeepServersAndRestoreBaseline1() throws Exception {
+        checkBaselineAndModify();
+    }
+
+    @Test
+    public void testKeepServersAndRestoreBaseline2() throws Exception {
+        checkBaselineAndModify();
+    }
+
+    private void checkBaselineAndModify() throws Exception {
+        if (null == smtpServer) {
+            smtpServer = greenMail.getSmtp();
+        } else {
+            assertSame(smtpServer, greenMail.getSmtp());
+        }
+        Managers managers = greenMail.getManagers();
+        assertEquals(0, greenMail.getReceivedMessages().length);
+        assertEquals(1, managers.getUserManager().listUser().size());
+        assertEquals("pwd", managers.getUserManager().getUser("foo@localhost").getPassword());
+
+        GreenMailUtil.sendTextEmailTest("foo@localhost", "bar@localhost", "subject", "body");
+        GreenMailUtil.sendTextEmailTest("other@localhost", "bar@localhost", "subject", "body");
+        greenMail.setUser("foo@localhost", "changed");
+        assertEquals(2, greenMail.getReceivedMessages().length);
+    }
+
+    @Test
+    public void testRestoreSnapshot() throws Exception {
+        Managers managers = greenMail.getManagers();
+        ImapHostManager imapHostManager = managers.getImapHostManager();
+        GreenMailUser user = managers.getUserManager().getUser("foo@localhost");
+        for (int i = 0; i < 3; i++) {
+            GreenMailUtil.sendTextEmailTest("foo@localhost", "bar@localhost", "subject" + i, "body");
+        }
+        MailFolder inbox = imapHostManager.getInbox(user);
+        MailFolder archive = imapHostManager.createMailbox(user, "archive");
+        inbox.setFlags(new Flags(Flags.Flag.SEEN), true, inbox.getMessageUids()[0], null, false);
+        long nextUid = inbox.getUidNext();
+
+        Managers.Snapshot snapshot = managers.createSnapshot();
+        assertEquals(3, snapshot.getMessageCount());
+
+        // Modify flags, messages, folders and users
+        long[] uids = inbox.getMessageUids();
+        inbox.setFlags(new Flags(Flags.Flag.SEEN), false, uids[0], null, false);
+        inbox.setFlags(new Flags("keyword"), true, uids[1], null, false);
+        inbox.moveMessages(new long[]{uids[2]}, archive);
+        inbox.setFlags(new Flags(Flags.Flag.DELETED), true, uids[1], null, false);
+        inbox.expunge();
+        imapHostManager.createMailbox(user, "drafts");
+        imapHostManager.deleteMailbox(user, "archive");
+        GreenMailUtil.sendTextEmailTest("foo@localhost", "bar@localhost", "new", "body");
+        greenMail.setUser("bar@localhost", "pwd");
+        assertEquals(2, greenMail.getReceivedMessages().length);
+
+        managers.restoreSnapshot(snapshot);
+        assertEquals(3, greenMail.getReceivedMessages().length);
+        assertSame(inbox, imapHostManager.getInbox(user));
+        assertArrayEquals(uids, inbox.getMessageUids());
+        assertEquals(nextUid, inbox.getUidNext());
+        assertEquals("(\\Recent \\Seen)", inbox.getMessages().get(0).formatFlags());
+        assertEquals("(\\Recent)", inbox.getMessages().get(1).formatFlags());
+        assertEquals("(\\Recent)", inbox.getMessages().get(2).formatFlags());
+        assertEquals("subject2", inbox.getMessages().get(2).getMimeMessage().getSubject());
+        assertSame(archive, imapHostManager.getFolder(user, "archive"));
+        assertEquals(0, archive.getMessageCount());
+        assertNull(imapHostManager.getFolder(user, "drafts"));
+        assertFalse(managers.getUserManager().hasUser("bar@localhost"));
+
+        // Restorable more than once
+        inbox.setFlags(new Flags(Flags.Flag.FLAGGED), true, uids[0], null, false);
+        managers.restoreSnapshot(snapshot);
+        assertEquals("(\\Recent \\Seen)", inbox.getMessages().get(0).formatFlags());
+    }
+}
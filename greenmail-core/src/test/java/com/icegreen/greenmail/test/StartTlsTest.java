@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.test;
+
+import com.icegreen.greenmail.junit.GreenMailRule;
+import com.icegreen.greenmail.util.DummySSLServerSocketFactory;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetup;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.Session;
+import javax.mail.Store;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.io.File;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests upgrading plain connections via STARTTLS (SMTP, IMAP) and STLS (POP3).
+ */
+public class StartTlsTest {
+    @Rule
+    public final GreenMailRule greenMail = new GreenMailRule(ServerSetupTest.SMTP_POP3_IMAP);
+
+    @BeforeClass
+    public static void setUpKeyStore() throws Exception {
+        // RSA key, as default keystore does not work with recent JDKs
+        File keyStore = new File(StartTlsTest.class.getResource("/greenmail-test-rsa.jks").toURI());
+        System.setProperty(DummySSLServerSocketFactory.GREENMAIL_KEYSTORE_FILE_PROPERTY, keyStore.getAbsolutePath());
+    }
+
+    @AfterClass
+    public static void tearDownKeyStore() {
+        System.clearProperty(DummySSLServerSocketFactory.GREENMAIL_KEYSTORE_FILE_PROPERTY);
+    }
+
+    private static Session createSession(ServerSetup setup) {
+        Properties props = new Properties();
+        String protocol = setup.getProtocol();
+        props.setProperty("mail." + protocol + ".starttls.enable", "true");
+        props.setProperty("mail." + protocol + ".starttls.required", "true");
+        props.setProperty("mail." + protocol + ".ssl.trust", "*");
+        return GreenMailUtil.getSession(setup, props);
+    }
+
+    @Test
+    public void testStartTls() throws Exception {
+        greenMail.setUser("foo@localhost", "foo@localhost", "pwd");
+
+        Session smtpSession = createSession(ServerSetupTest.SMTP);
+        MimeMessage message = new MimeMessage(smtpSession);
+        message.setFrom(new InternetAddress("bar@localhost"));
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress("foo@localhost"));
+        message.setSubject("STARTTLS");
+        message.setText("Sent via STARTTLS");
+        Transport.send(message);
+        assertTrue(greenMail.waitForIncomingEmail(5000, 1));
+
+        for (ServerSetup setup : new ServerSetup[]{ServerSetupTest.IMAP, ServerSetupTest.POP3}) {
+            Store store = createSession(setup).getStore(setup.getProtocol());
+            store.connect("foo@localhost", "pwd");
+            try {
+                Folder inbox = store.getFolder("INBOX");
+                inbox.open(Folder.READ_ONLY);
+                Message[] messages = inbox.getMessages();
+                assertEquals(1, messages.length);
+                assertEquals("STARTTLS", messages[0].getSubject());
+                inbox.close(false);
+            } finally {
+                store.close();
+            }
+        }
+    }
+
+    @Test
+    public void testSslContextShared() {
+        assertSame(new DummySSLServerSocketFactory().getKeyStore(), new DummySSLServerSocketFactory().getKeyStore());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.test;
+
+import com.icegreen.greenmail.junit.GreenMailRule;
+import com.icegreen.greenmail.user.Tenant;
+import com.icegreen.greenmail.util.GreenMailTenant;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.Retriever;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.mail.Message;
+
+import static org.junit.Assert.*;
+
+public class TenantTest {
+    @Rule
+    public final GreenMailRule greenMail = new GreenMailRule(ServerSetupTest.SMTP_IMAP);
+
+    @Test
+    public void testMembership() {
+        Tenant tenant = new Tenant("Test1.localhost");
+        assertEquals("test1.localhost", tenant.getName());
+        assertTrue(tenant.containsEmail("foo@TEST1.localhost"));
+        assertFalse(tenant.containsEmail("foo@test10.localhost"));
+        assertFalse(tenant.containsEmail("test1.localhost"));
+        assertTrue(tenant.containsLogin("test1.localhost/foo"));
+        assertFalse(tenant.containsLogin("test1.localhost"));
+        assertFalse(tenant.containsLogin("test10.localhost/foo"));
+        assertEquals("foo@test1.localhost", tenant.toEmail("foo"));
+        assertEquals("test1.localhost/foo", tenant.toLogin("foo"));
+        assertEquals(tenant, new Tenant("test1.localhost"));
+
+        for (String invalid : new String[]{"", " ", "foo@localhost", "a/b"}) {
+            try {
+                new Tenant(invalid);
+                fail("Expected invalid tenant name " + invalid);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testIsolation() throws Exception {
+        GreenMailTenant tenant1 = greenMail.getTenant("test1.localhost");
+        GreenMailTenant tenant2 = greenMail.getTenant("test2.localhost");
+        tenant1.setUser("foo", "pwd1");
+        tenant2.setUser("foo", "pwd2");
+
+        GreenMailUtil.sendTextEmailTest("foo@test1.localhost", "from@localhost", "subject1", "body");
+        GreenMailUtil.sendTextEmailTest("foo@test2.localhost", "from@localhost", "subject2", "body");
+        // Auto created user of tenant
+        GreenMailUtil.sendTextEmailTest("bar@test1.localhost", "from@localhost", "subject3", "body");
+        GreenMailUtil.sendTextEmailTest("foo@localhost", "from@localhost", "subject4", "body");
+
+        assertTrue(tenant1.waitForIncomingEmail(2));
+        assertTrue(tenant2.waitForIncomingEmail(1));
+        assertFalse(tenant2.waitForIncomingEmail(100L, 2));
+        assertEquals(2, tenant1.getUsers().size());
+        assertEquals(2, tenant1.getReceivedMessages().length);
+        assertEquals(1, tenant2.getReceivedMessages().length);
+        assertEquals("subject2", tenant2.getReceivedMessages()[0].getSubject());
+        assertEquals(4, greenMail.getReceivedMessages().length);
+
+        // Login qualified by tenant
+        try (Retriever retriever = new Retriever(greenMail.getImap())) {
+            Message[] messages = retriever.getMessages("test2.localhost/foo", "pwd2");
+            assertEquals(1, messages.length);
+            assertEquals("subject2", messages[0].getSubject());
+        }
+
+        tenant1.deleteUsers();
+        assertEquals(0, tenant1.getUsers().size());
+        assertEquals(0, tenant1.getReceivedMessages().length);
+        assertEquals(1, tenant2.getReceivedMessages().length);
+        assertEquals(2, greenMail.getReceivedMessages().length);
+    }
+}
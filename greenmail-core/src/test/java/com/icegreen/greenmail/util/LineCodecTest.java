@@ -0,0 +1,111 @@
+package com.icegreen.greenmail.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class LineCodecTest {
+    private ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    private LineCodec codec(byte[] input) {
+        return new LineCodec(new ByteArrayInputStream(input), out);
+    }
+
+    @Test
+    public void testReadLines() throws IOException {
+        LineCodec codec = codec("HELO foo\r\nbare lf\n\r\nno line end".getBytes(EncodingUtil.CHARSET_EIGHT_BIT_ENCODING));
+        assertEquals("HELO foo", codec.readLine());
+        assertEquals("bare lf", codec.readLine());
+        assertEquals("", codec.readLine());
+        assertEquals("no line end", codec.readLine());
+        assertNull(codec.readLine());
+    }
+
+    @Test
+    public void testReadLinesSpanningBuffer() throws IOException {
+        char[] chars = new char[LineCodec.BUFFER_SIZE * 2 + 3];
+        Arrays.fill(chars, 'x');
+        String longLine = new String(chars);
+        // CR is last byte of first buffer, LF first byte of second buffer
+        String shortLine = longLine.substring(0, LineCodec.BUFFER_SIZE - 1);
+        LineCodec codec = codec((shortLine + "\r\n" + longLine + "\r\n")
+                .getBytes(EncodingUtil.CHARSET_EIGHT_BIT_ENCODING));
+        assertEquals(shortLine, codec.readLine());
+        assertEquals(longLine, codec.readLine());
+        assertNull(codec.readLine());
+    }
+
+    @Test
+    public void testEightBitRoundTrip() throws IOException {
+        byte[] eightBit = new byte[256];
+        for (int i = 0; i < eightBit.length; i++) {
+            eightBit[i] = (byte) i;
+        }
+        eightBit['\n'] = 'x';
+        eightBit['\r'] = 'x';
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        input.write(eightBit);
+        input.write('\r');
+        input.write('\n');
+
+        LineCodec codec = codec(input.toByteArray());
+        String line = codec.readLine();
+        assertEquals(eightBit.length, line.length());
+        codec.writeLine(line);
+        codec.flush();
+        assertArrayEquals(input.toByteArray(), out.toByteArray());
+    }
+
+    @Test
+    public void testWriteIsBufferedUntilFlush() throws IOException {
+        LineCodec codec = codec(new byte[0]);
+        codec.writeLine("+OK");
+        codec.write(new StringReader("line 1\r\nline 2\r\n"));
+        codec.writeLine(".");
+        assertEquals(0, out.size());
+
+        codec.flush();
+        assertEquals("+OK\r\nline 1\r\nline 2\r\n.\r\n", out.toString("US-ASCII"));
+    }
+
+    @Test
+    public void testFlushBeforeBlockingRead() throws IOException {
+        LineCodec codec = codec("DATA\r\n".getBytes(EncodingUtil.CHARSET_EIGHT_BIT_ENCODING));
+        codec.writeLine("250 OK");
+        assertEquals("DATA", codec.readLine());
+        assertEquals("250 OK\r\n", out.toString("US-ASCII"));
+    }
+
+    @Test
+    public void testPipelinedCommandsFlushOnce() throws IOException {
+        final int[] writes = new int[1];
+        out = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                writes[0]++;
+                super.write(b, off, len);
+            }
+        };
+        LineCodec codec = codec("LIST 1\r\nLIST 2\r\nLIST 3\r\n".getBytes(EncodingUtil.CHARSET_EIGHT_BIT_ENCODING));
+        String line;
+        while ((line = codec.readLine()) != null) {
+            codec.writeLine("+OK " + line.substring(5) + " 100");
+        }
+        assertEquals(1, writes[0]);
+        assertEquals("+OK 1 100\r\n+OK 2 100\r\n+OK 3 100\r\n", out.toString("US-ASCII"));
+    }
+
+    @Test
+    public void testUnmappableChar() throws IOException {
+        LineCodec codec = codec(new byte[0]);
+        codec.writeLine("ä€");
+        codec.flush();
+        assertArrayEquals(new byte[]{(byte) 0xe4, '?', '\r', '\n'}, out.toByteArray());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.standalone.loadgen;
+
+import java.io.IOException;
+
+/**
+ * Logs in as one of the recipients and fetches or searches messages in the INBOX.
+ */
+class ImapWorker extends Worker {
+    private static final long IDLE_MILLIS = 100L;
+    private final int user;
+    private int tagCounter;
+    private int exists;
+
+    ImapWorker(LoadGenerator generator, long deadlineNanos, long seed, int user) {
+        super(generator, deadlineNanos, seed);
+        this.user = user;
+    }
+
+    @Override
+    protected void runSession() throws IOException {
+        start("imap connect");
+        try (ProtocolClient client = new ProtocolClient(config.host, config.imapPort)) {
+            String greeting = client.readLine();
+            if (!greeting.startsWith("* OK")) {
+                throw new IOException("Unexpected IMAP greeting '" + greeting + '\'');
+            }
+            stop();
+
+            start("imap login");
+            command(client, "LOGIN \"" + config.getEmail(user) + "\" \"" + config.getPassword(user) + '"');
+            stop();
+
+            start("imap select");
+            exists = 0;
+            command(client, "SELECT INBOX");
+            stop();
+
+            while (keepRunning()) {
+                if (exists == 0) {
+                    // Wait for delivery
+                    start("imap noop");
+                    command(client, "NOOP");
+                    stop();
+                    pause(IDLE_MILLIS);
+                } else if (random.nextInt(100) < config.imapSearchPercent) {
+                    start("imap search");
+                    command(client, "SEARCH SUBJECT " + SmtpWorker.SUBJECT_PREFIX
+                            + random.nextInt(SmtpWorker.SUBJECT_VARIANTS));
+                    stop();
+                } else {
+                    start("imap fetch");
+                    command(client, "FETCH " + (1 + random.nextInt(exists)) + " (FLAGS BODY.PEEK[])");
+                    stop();
+                }
+            }
+
+            start("imap logout");
+            command(client, "LOGOUT");
+            stop();
+        }
+    }
+
+    /**
+     * Sends the command and reads the response till the tagged completion,
+     * skipping literals and keeping track of the number of messages.
+     */
+    private void command(ProtocolClient client, String command) throws IOException {
+        String tag = "t" + (tagCounter++);
+        client.writeLine(tag + ' ' + command);
+        client.flush();
+        while (true) {
+            String line = client.readLine();
+            if (line.startsWith(tag + ' ')) {
+                if (!line.startsWith(tag + " OK")) {
+                    throw new IOException("Command '" + command + "' failed: " + line);
+                }
+                return;
+            }
+            if (line.startsWith("* ") && line.endsWith(" EXISTS")) {
+                exists = Integer.parseInt(line.substring(2, line.length() - " EXISTS".length()));
+            } else if (line.endsWith("}")) {
+                int literalStart = line.lastIndexOf('{');
+                if (literalStart >= 0) {
+                    client.skip(Long.parseLong(line.substring(literalStart + 1, line.length() - 1)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.standalone.loadgen;
+
+/**
+ * Records the latencies of an operation, such as an SMTP transaction.
+ * <p/>
+ * Samples are counted in a fixed size histogram with logarithmic buckets, so memory stays constant
+ * however long the load runs: Every power of two range is split into {@value #SUB_BUCKETS} linear buckets.
+ * Percentiles are upper bounds, exceeding the actual latency by less than 1/{@value #SUB_BUCKETS}.
+ * The max latency is exact.
+ * Thread safe.
+ */
+public class LatencyStats {
+    static final int SUB_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 4;
+    /** Enough buckets for any positive long */
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final String operation;
+    private final long[] histogram = new long[BUCKETS];
+    private long count;
+    private long max;
+    private long errors;
+
+    public LatencyStats(String operation) {
+        this.operation = operation;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Records a successful operation.
+     *
+     * @param durationNanos the duration in nanoseconds.
+     */
+    public synchronized void record(long durationNanos) {
+        long duration = Math.max(0L, durationNanos);
+        histogram[bucketOf(duration)]++;
+        count++;
+        max = Math.max(max, duration);
+    }
+
+    /**
+     * Records a failed operation.
+     */
+    public synchronized void recordError() {
+        errors++;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @param percentile the percentile, eg 99.9.
+     * @return the latency in nanoseconds as upper bound, or 0 if no samples were recorded.
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long threshold = Math.max(1L, (long) Math.ceil(percentile / 100.0 * count));
+        long sum = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            sum += histogram[i];
+            if (sum >= threshold) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Values below {@value #SUB_BUCKETS} get a bucket each, larger values share a bucket with the values
+     * having the same highest {@value #SUB_BUCKET_BITS} bits after the leading one bit.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the largest value counted in given bucket.
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
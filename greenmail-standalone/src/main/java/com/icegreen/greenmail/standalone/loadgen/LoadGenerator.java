@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.standalone.loadgen;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates load against a running GreenMail, for soak testing and capacity planning.
+ * <p/>
+ * Runs concurrent SMTP sessions sending messages of configurable sizes and recipient counts,
+ * plus IMAP workers (FETCH, SEARCH) and POP3 workers (RETR), all on raw sockets so that the
+ * measurements reflect the server rather than a client library.
+ * When done, it reports throughput and latency percentiles per operation.
+ * <p/>
+ * Example: java -Dgreenmail.loadgen.duration=60 -Dgreenmail.loadgen.smtp.sessions=50
+ * -cp greenmail-standalone.jar com.icegreen.greenmail.standalone.loadgen.LoadGenerator
+ *
+ * @see LoadGeneratorConfig
+ */
+public class LoadGenerator {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final LoadGeneratorConfig config;
+    private final ConcurrentMap<String, LatencyStats> stats = new ConcurrentHashMap<>();
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong deliveries = new AtomicLong();
+    private long elapsedNanos;
+
+    public LoadGenerator(LoadGeneratorConfig config) {
+        this.config = config;
+    }
+
+    LoadGeneratorConfig getConfig() {
+        return config;
+    }
+
+    LatencyStats getStats(String operation) {
+        LatencyStats s = stats.get(operation);
+        if (null == s) {
+            s = new LatencyStats(operation);
+            LatencyStats previous = stats.putIfAbsent(operation, s);
+            if (null != previous) {
+                s = previous; // Concurrently created
+            }
+        }
+        return s;
+    }
+
+    void messageSent(int recipientCount) {
+        messagesSent.incrementAndGet();
+        deliveries.addAndGet(recipientCount);
+    }
+
+    /**
+     * @return recorded statistics, by operation name.
+     */
+    public Map<String, LatencyStats> getStats() {
+        return new TreeMap<String, LatencyStats>(stats);
+    }
+
+    public long getMessagesSent() {
+        return messagesSent.get();
+    }
+
+    /**
+     * Runs all workers for the configured duration, blocking till done.
+     *
+     * @throws InterruptedException if interrupted while waiting for the workers.
+     */
+    public void run() throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(config.durationSeconds);
+
+        List<Thread> threads = new ArrayList<>();
+        long seed = 0;
+        for (int i = 0; i < config.smtpSessions; i++) {
+            threads.add(new Thread(new SmtpWorker(this, deadline, seed++), "loadgen-smtp-" + i));
+        }
+        for (int i = 0; i < config.imapWorkers; i++) {
+            threads.add(new Thread(new ImapWorker(this, deadline, seed++, i % config.users), "loadgen-imap-" + i));
+        }
+        for (int i = 0; i < config.pop3Workers; i++) {
+            threads.add(new Thread(new Pop3Worker(this, deadline, seed++, i % config.users), "loadgen-pop3-" + i));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } finally {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Prints throughput and latency percentiles per operation.
+     *
+     * @param out the target.
+     */
+    public void printReport(PrintStream out) {
+        double seconds = elapsedNanos / 1e9;
+        out.println(String.format("Ran %d SMTP sessions, %d IMAP workers and %d POP3 workers against %s for %.1fs",
+                config.smtpSessions, config.imapWorkers, config.pop3Workers, config.host, seconds));
+        out.println(String.format("Sent %d messages (%.1f/s) with %d recipients in total",
+                messagesSent.get(), messagesSent.get() / seconds, deliveries.get()));
+        out.println();
+
+        StringBuilder header = new StringBuilder(String.format("%-18s %10s %8s %10s", "Operation", "Count", "Errors", "Ops/s"));
+        for (double percentile : PERCENTILES) {
+            header.append(String.format(" %10s", "p" + formatPercentile(percentile) + "[ms]"));
+        }
+        header.append(String.format(" %10s", "max[ms]"));
+        out.println(header);
+
+        for (LatencyStats s : getStats().values()) {
+            StringBuilder row = new StringBuilder(String.format("%-18s %10d %8d %10.1f",
+                    s.getOperation(), s.getCount(), s.getErrors(), s.getCount() / seconds));
+            for (double percentile : PERCENTILES) {
+                row.append(String.format(" %10.3f", s.getPercentile(percentile) / 1e6));
+            }
+            row.append(String.format(" %10.3f", s.getPercentile(100) / 1e6));
+            out.println(row);
+        }
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+
+    private static void printUsage(PrintStream out) {
+        out.println("Usage: java OPTIONS -cp greenmail-standalone.jar " + LoadGenerator.class.getName());
+        out.println("\nOPTIONS:");
+        for (String[] option : LoadGeneratorConfig.OPTIONS) {
+            out.println(String.format("%1$-52s : %2$s", "-D" + LoadGeneratorConfig.PREFIX + option[0] + "=...", option[1]));
+        }
+        out.println();
+        out.println("Example: ");
+        out.println(" java -Dgreenmail.setup.test.all -Dgreenmail.auth.disabled -jar greenmail-standalone.jar");
+        out.println(" java -Dgreenmail.loadgen.duration=60 -Dgreenmail.loadgen.smtp.sessions=50 -cp greenmail-standalone.jar "
+                + LoadGenerator.class.getName());
+        out.println("       Runs 50 SMTP sessions, 2 IMAP and 2 POP3 workers for 60s against GreenMail started before");
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length > 0) {
+            printUsage(System.out);
+            return;
+        }
+        LoadGenerator generator = new LoadGenerator(LoadGeneratorConfig.build(System.getProperties()));
+        generator.run();
+        generator.printReport(System.out);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.standalone.loadgen;
+
+import com.icegreen.greenmail.util.ServerSetupTest;
+
+import java.util.Properties;
+
+/**
+ * Configuration of the {@link LoadGenerator}, built from properties such as system properties.
+ * <p/>
+ * Defaults match a GreenMail started with <code>-Dgreenmail.setup.test.all -Dgreenmail.auth.disabled</code>.
+ */
+public class LoadGeneratorConfig {
+    public static final String PREFIX = "greenmail.loadgen.";
+
+    String host = "127.0.0.1";
+    int smtpPort = ServerSetupTest.SMTP.getPort();
+    int imapPort = ServerSetupTest.IMAP.getPort();
+    int pop3Port = ServerSetupTest.POP3.getPort();
+    int durationSeconds = 30;
+
+    int smtpSessions = 10;
+    int messagesPerSession = 100;
+    WeightedDistribution messageSizes = WeightedDistribution.parse("1024:70,10240:25,102400:5");
+    WeightedDistribution recipients = WeightedDistribution.parse("1:80,5:15,20:5");
+
+    int users = 10;
+    String domain = "localhost";
+    String password;
+
+    int imapWorkers = 2;
+    int imapSearchPercent = 20;
+
+    int pop3Workers = 2;
+    int pop3RetrievesPerSession = 10;
+
+    /**
+     * Options, as property name suffix and description.
+     */
+    static final String[][] OPTIONS = {
+            {"host", "Host of the GreenMail server (default: 127.0.0.1)"},
+            {"smtp.port", "SMTP port (default: 3025)"},
+            {"imap.port", "IMAP port (default: 3143)"},
+            {"pop3.port", "POP3 port (default: 3110)"},
+            {"duration", "Duration of the run in seconds (default: 30)"},
+            {"smtp.sessions", "Number of concurrent SMTP sessions (default: 10)"},
+            {"smtp.messagesPerSession", "Messages sent per SMTP session before reconnecting (default: 100)"},
+            {"smtp.messageSizes", "Message size distribution in bytes, as size:weight,... (default: 1024:70,10240:25,102400:5)"},
+            {"smtp.recipients", "Recipients per message distribution, as count:weight,... (default: 1:80,5:15,20:5)"},
+            {"users", "Number of distinct recipients, user<n>@<domain> (default: 10)"},
+            {"domain", "Recipient domain (default: localhost)"},
+            {"password", "Password for IMAP/POP3 logins (default: email, matching users created on delivery)"},
+            {"imap.workers", "Number of concurrent IMAP sessions doing FETCH/SEARCH (default: 2)"},
+            {"imap.searchPercent", "Percentage of IMAP SEARCH vs FETCH commands (default: 20)"},
+            {"pop3.workers", "Number of concurrent POP3 workers doing RETR (default: 2)"},
+            {"pop3.retrievesPerSession", "RETR commands per POP3 session before reconnecting (default: 10)"},
+    };
+
+    /**
+     * Builds a configuration.
+     *
+     * @param properties the properties, using prefix {@value #PREFIX}.
+     * @return the configuration.
+     */
+    public static LoadGeneratorConfig build(Properties properties) {
+        LoadGeneratorConfig config = new LoadGeneratorConfig();
+        config.host = properties.getProperty(PREFIX + "host", config.host);
+        config.smtpPort = getInt(properties, "smtp.port", config.smtpPort);
+        config.imapPort = getInt(properties, "imap.port", config.imapPort);
+        config.pop3Port = getInt(properties, "pop3.port", config.pop3Port);
+        config.durationSeconds = getInt(properties, "duration", config.durationSeconds);
+        config.smtpSessions = getInt(properties, "smtp.sessions", config.smtpSessions);
+        config.messagesPerSession = getInt(properties, "smtp.messagesPerSession", config.messagesPerSession);
+        if (properties.containsKey(PREFIX + "smtp.messageSizes")) {
+            config.messageSizes = WeightedDistribution.parse(properties.getProperty(PREFIX + "smtp.messageSizes"));
+        }
+        if (properties.containsKey(PREFIX + "smtp.recipients")) {
+            config.recipients = WeightedDistribution.parse(properties.getProperty(PREFIX + "smtp.recipients"));
+        }
+        config.users = getInt(properties, "users", config.users);
+        config.domain = properties.getProperty(PREFIX + "domain", config.domain);
+        config.password = properties.getProperty(PREFIX + "password");
+        config.imapWorkers = getInt(properties, "imap.workers", config.imapWorkers);
+        config.imapSearchPercent = getInt(properties, "imap.searchPercent", config.imapSearchPercent);
+        config.pop3Workers = getInt(properties, "pop3.workers", config.pop3Workers);
+        config.pop3RetrievesPerSession = getInt(properties, "pop3.retrievesPerSession", config.pop3RetrievesPerSession);
+        return config;
+    }
+
+    private static int getInt(Properties properties, String name, int defaultValue) {
+        String value = properties.getProperty(PREFIX + name);
+        if (null == value) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a number for " + PREFIX + name + " but got '" + value + "'", e);
+        }
+    }
+
+    String getEmail(int user) {
+        return "user" + user + '@' + domain;
+    }
+
+    String getPassword(int user) {
+        return null == password ? getEmail(user) : password;
+    }
+}
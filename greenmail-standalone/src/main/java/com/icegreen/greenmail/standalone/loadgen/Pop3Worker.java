@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.standalone.loadgen;
+
+import java.io.IOException;
+
+/**
+ * Logs in as one of the recipients and retrieves messages, reconnecting after the configured number of RETRs.
+ */
+class Pop3Worker extends Worker {
+    private static final long IDLE_MILLIS = 100L;
+    private final int user;
+
+    Pop3Worker(LoadGenerator generator, long deadlineNanos, long seed, int user) {
+        super(generator, deadlineNanos, seed);
+        this.user = user;
+    }
+
+    @Override
+    protected void runSession() throws IOException {
+        start("pop3 connect");
+        try (ProtocolClient client = new ProtocolClient(config.host, config.pop3Port)) {
+            expectOk(client);
+            stop();
+
+            start("pop3 login");
+            client.writeLine("USER " + config.getEmail(user));
+            client.flush();
+            if (!client.readLine().startsWith("+OK")) {
+                // Unknown user, not yet created by first delivery
+                pause(IDLE_MILLIS);
+                return;
+            }
+            command(client, "PASS " + config.getPassword(user));
+            stop();
+
+            start("pop3 stat");
+            String stat = command(client, "STAT");
+            stop();
+            // +OK <count> <size>
+            int count = Integer.parseInt(stat.split(" ")[1]);
+
+            for (int i = 0; i < config.pop3RetrievesPerSession && count > 0 && keepRunning(); i++) {
+                start("pop3 retr");
+                command(client, "RETR " + (1 + random.nextInt(count)));
+                String line;
+                do {
+                    line = client.readLine();
+                } while (!".".equals(line));
+                stop();
+            }
+
+            start("pop3 quit");
+            command(client, "QUIT");
+            stop();
+
+            if (count == 0) {
+                // Wait for delivery
+                pause(IDLE_MILLIS);
+            }
+        }
+    }
+
+    private static String command(ProtocolClient client, String command) throws IOException {
+        client.writeLine(command);
+        client.flush();
+        return expectOk(client);
+    }
+
+    private static String expectOk(ProtocolClient client) throws IOException {
+        String line = client.readLine();
+        if (!line.startsWith("+OK")) {
+            throw new IOException("Unexpected POP3 response '" + line + '\'');
+        }
+        return line;
+    }
+}
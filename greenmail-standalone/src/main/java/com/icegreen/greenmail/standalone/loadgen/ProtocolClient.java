@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.standalone.loadgen;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal client for line based mail protocols, working on the raw socket.
+ * <p/>
+ * Intentionally does not parse more than needed, so that measurements reflect the server.
+ */
+class ProtocolClient implements Closeable {
+    private static final int TIMEOUT_MILLIS = 30 * 1000;
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final StringBuilder line = new StringBuilder(256);
+
+    ProtocolClient(String host, int port) throws IOException {
+        socket = new Socket();
+        socket.setSoTimeout(TIMEOUT_MILLIS);
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress(host, port), TIMEOUT_MILLIS);
+        in = new BufferedInputStream(socket.getInputStream(), 8192);
+        out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+    }
+
+    /**
+     * Reads a line, without line ending.
+     *
+     * @return the line.
+     * @throws EOFException if connection got closed.
+     */
+    String readLine() throws IOException {
+        line.setLength(0);
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new EOFException("Connection closed by server");
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * Skips given number of bytes, eg an IMAP literal.
+     *
+     * @param count the number of bytes.
+     */
+    void skip(long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Connection closed by server");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * Buffers given line with CRLF. Call {@link #flush()} for sending.
+     *
+     * @param s the line.
+     */
+    void writeLine(String s) throws IOException {
+        out.write(s.getBytes(StandardCharsets.ISO_8859_1));
+        out.write('\r');
+        out.write('\n');
+    }
+
+    void write(byte[] bytes) throws IOException {
+        out.write(bytes);
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
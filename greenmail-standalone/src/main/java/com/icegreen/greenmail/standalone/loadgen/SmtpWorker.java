@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.standalone.loadgen;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Sends messages in a loop, reconnecting after the configured number of messages.
+ */
+class SmtpWorker extends Worker {
+    static final String SUBJECT_PREFIX = "loadgen-";
+    static final int SUBJECT_VARIANTS = 100;
+    private static final int LINE_LENGTH = 76;
+    private static final ConcurrentMap<Integer, byte[]> BODIES = new ConcurrentHashMap<>();
+
+    SmtpWorker(LoadGenerator generator, long deadlineNanos, long seed) {
+        super(generator, deadlineNanos, seed);
+    }
+
+    @Override
+    protected void runSession() throws IOException {
+        start("smtp connect");
+        try (ProtocolClient client = new ProtocolClient(config.host, config.smtpPort)) {
+            expectReply(client, '2');
+            client.writeLine("EHLO loadgen");
+            client.flush();
+            expectReply(client, '2');
+            stop();
+
+            for (int i = 0; i < config.messagesPerSession && keepRunning(); i++) {
+                start("smtp transaction");
+                sendMessage(client);
+                stop();
+            }
+
+            start("smtp quit");
+            client.writeLine("QUIT");
+            client.flush();
+            expectReply(client, '2');
+            stop();
+        }
+    }
+
+    private void sendMessage(ProtocolClient client) throws IOException {
+        int recipientCount = config.recipients.next(random);
+        client.writeLine("MAIL FROM:<loadgen@" + config.domain + '>');
+        client.flush();
+        expectReply(client, '2');
+        StringBuilder to = new StringBuilder();
+        for (int i = 0; i < recipientCount; i++) {
+            String rcpt = config.getEmail(random.nextInt(config.users));
+            client.writeLine("RCPT TO:<" + rcpt + '>');
+            client.flush();
+            expectReply(client, '2');
+            if (i > 0) {
+                to.append(", ");
+            }
+            to.append(rcpt);
+        }
+        client.writeLine("DATA");
+        client.flush();
+        expectReply(client, '3');
+
+        client.writeLine("From: loadgen@" + config.domain);
+        client.writeLine("To: " + to);
+        client.writeLine("Subject: " + SUBJECT_PREFIX + random.nextInt(SUBJECT_VARIANTS));
+        client.writeLine("");
+        client.write(getBody(config.messageSizes.next(random)));
+        client.writeLine(".");
+        client.flush();
+        expectReply(client, '2');
+        generator.messageSent(recipientCount);
+    }
+
+    /**
+     * Provides a body of lines of 'x' with given size, which never needs dot stuffing.
+     */
+    static byte[] getBody(int size) {
+        byte[] body = BODIES.get(size);
+        if (null == body) {
+            body = new byte[Math.max(size, 2)];
+            Arrays.fill(body, (byte) 'x');
+            // Lines end with CRLF, including the last line
+            for (int i = LINE_LENGTH; i + 1 < body.length - 2; i += LINE_LENGTH + 2) {
+                body[i] = '\r';
+                body[i + 1] = '\n';
+            }
+            body[body.length - 2] = '\r';
+            body[body.length - 1] = '\n';
+            BODIES.putIfAbsent(size, body);
+        }
+        return body;
+    }
+
+    private static void expectReply(ProtocolClient client, char expectedCodeClass) throws IOException {
+        String line;
+        do {
+            line = client.readLine();
+        } while (line.length() > 3 && line.charAt(3) == '-'); // Multi line reply
+        if (line.isEmpty() || line.charAt(0) != expectedCodeClass) {
+            throw new IOException("Unexpected SMTP reply '" + line + "', expected " + expectedCodeClass + "xx");
+        }
+    }
+}
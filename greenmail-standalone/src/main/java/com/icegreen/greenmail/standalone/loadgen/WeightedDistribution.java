@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.standalone.loadgen;
+
+import java.util.Random;
+
+/**
+ * A discrete distribution of values, such as message sizes.
+ * <p/>
+ * Parsed from a list of <code>value:weight</code> pairs, eg <code>1024:70,10240:25,1048576:5</code>
+ * for 70% 1KiB, 25% 10KiB and 5% 1MiB. The weight defaults to 1 if omitted.
+ */
+public class WeightedDistribution {
+    private final int[] values;
+    private final int[] cumulativeWeights;
+
+    WeightedDistribution(int[] values, int[] weights) {
+        if (values.length == 0 || values.length != weights.length) {
+            throw new IllegalArgumentException("Expected same non zero number of values and weights");
+        }
+        this.values = values.clone();
+        cumulativeWeights = new int[weights.length];
+        int sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] < 0) {
+                throw new IllegalArgumentException("Negative weight " + weights[i]);
+            }
+            sum += weights[i];
+            cumulativeWeights[i] = sum;
+        }
+        if (sum == 0) {
+            throw new IllegalArgumentException("Expected at least one positive weight");
+        }
+    }
+
+    /**
+     * Parses a distribution.
+     *
+     * @param spec the distribution, as comma separated <code>value[:weight]</code> pairs.
+     * @return the distribution.
+     */
+    public static WeightedDistribution parse(String spec) {
+        String[] entries = spec.split(",");
+        int[] values = new int[entries.length];
+        int[] weights = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            String entry = entries[i].trim();
+            int separator = entry.indexOf(':');
+            try {
+                if (separator < 0) {
+                    values[i] = Integer.parseInt(entry);
+                    weights[i] = 1;
+                } else {
+                    values[i] = Integer.parseInt(entry.substring(0, separator).trim());
+                    weights[i] = Integer.parseInt(entry.substring(separator + 1).trim());
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Can not parse distribution entry '" + entry + "' of '" + spec + "'", e);
+            }
+        }
+        return new WeightedDistribution(values, weights);
+    }
+
+    /**
+     * Picks a value according to the weights.
+     *
+     * @param random the random source.
+     * @return the value.
+     */
+    public int next(Random random) {
+        int r = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (r < cumulativeWeights[i]) {
+                return values[i];
+            }
+        }
+        return values[values.length - 1]; // Not reached
+    }
+}
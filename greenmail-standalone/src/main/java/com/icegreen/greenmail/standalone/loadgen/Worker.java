@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2014 Wael Chatila / Icegreen Technologies. All Rights Reserved.
+ * This software is released under the Apache license 2.0
+ */
+package com.icegreen.greenmail.standalone.loadgen;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Runs protocol sessions till the deadline, recording latencies per operation.
+ */
+abstract class Worker implements Runnable {
+    protected final Logger log = LoggerFactory.getLogger(getClass());
+    private static final long ERROR_BACKOFF_MILLIS = 100L;
+
+    protected final LoadGenerator generator;
+    protected final LoadGeneratorConfig config;
+    protected final Random random;
+    private final long deadlineNanos;
+    private LatencyStats currentOperation;
+    private long operationStart;
+
+    Worker(LoadGenerator generator, long deadlineNanos, long seed) {
+        this.generator = generator;
+        config = generator.getConfig();
+        this.deadlineNanos = deadlineNanos;
+        random = new Random(seed);
+    }
+
+    @Override
+    public void run() {
+        while (keepRunning()) {
+            try {
+                runSession();
+            } catch (IOException e) {
+                if (null != currentOperation) {
+                    currentOperation.recordError();
+                    currentOperation = null;
+                }
+                log.debug("Session failed", e);
+                pause(ERROR_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Runs a session, from connecting till disconnecting.
+     */
+    protected abstract void runSession() throws IOException;
+
+    protected boolean keepRunning() {
+        return System.nanoTime() - deadlineNanos < 0 && !Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Starts timing an operation.
+     *
+     * @param operation the operation name.
+     */
+    protected void start(String operation) {
+        currentOperation = generator.getStats(operation);
+        operationStart = System.nanoTime();
+    }
+
+    /**
+     * Records the duration of the operation started last.
+     */
+    protected void stop() {
+        currentOperation.record(System.nanoTime() - operationStart);
+        currentOperation = null;
+    }
+
+    protected void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.icegreen.greenmail.standalone.loadgen;
+
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LoadGeneratorTest {
+
+    @Test
+    public void testWeightedDistribution() {
+        WeightedDistribution distribution = WeightedDistribution.parse("1:3, 5:0, 10");
+        Random random = new Random(1);
+        int ones = 0;
+        for (int i = 0; i < 1000; i++) {
+            int value = distribution.next(random);
+            assertTrue(value == 1 || value == 10);
+            if (value == 1) {
+                ones++;
+            }
+        }
+        assertTrue(ones > 650 && ones < 850);
+    }
+
+    @Test
+    public void testBodyLines() {
+        for (int size : new int[]{1, 2, 77, 78, 79, 80, 1024}) {
+            String body = new String(SmtpWorker.getBody(size));
+            assertTrue(body.endsWith("\r\n"));
+            assertEquals(Math.max(size, 2), body.length());
+            assertFalse(body.contains("\r\r"));
+            assertEquals(body.replace("\r\n", "").indexOf('\r'), -1);
+        }
+    }
+
+    @Test
+    public void testLatencyStats() {
+        LatencyStats stats = new LatencyStats("test");
+        assertEquals(0L, stats.getPercentile(50));
+        for (long i = 1; i <= 1000; i++) {
+            stats.record(i * 1000L);
+        }
+        assertEquals(1000L, stats.getCount());
+        // Upper bounds, less than 1/16 above the exact values
+        long p50 = stats.getPercentile(50);
+        assertTrue(String.valueOf(p50), p50 >= 500000L && p50 < 500000L * 17 / 16);
+        long p99 = stats.getPercentile(99);
+        assertTrue(String.valueOf(p99), p99 >= 990000L && p99 < 990000L * 17 / 16);
+        assertEquals(1000000L, stats.getPercentile(100));
+
+        // Each value falls into a bucket bounding it
+        for (long value : new long[]{0L, 15L, 16L, 17L, 31L, 32L, 1000L, 123456789L, Long.MAX_VALUE}) {
+            int bucket = LatencyStats.bucketOf(value);
+            assertTrue(value + " in bucket " + bucket, value <= LatencyStats.upperBound(bucket));
+            assertTrue(value + " in bucket " + bucket, bucket == 0 || value > LatencyStats.upperBound(bucket - 1));
+        }
+    }
+
+    @Test
+    public void testRun() throws InterruptedException {
+        GreenMail greenMail = new GreenMail(ServerSetupTest.SMTP_POP3_IMAP)
+                .withConfiguration(GreenMailConfiguration.aConfig().withDisabledAuthentication());
+        greenMail.start();
+        try {
+            Properties properties = new Properties();
+            properties.setProperty(LoadGeneratorConfig.PREFIX + "duration", "2");
+            properties.setProperty(LoadGeneratorConfig.PREFIX + "smtp.sessions", "2");
+            properties.setProperty(LoadGeneratorConfig.PREFIX + "smtp.messageSizes", "100:1,2000:1");
+            properties.setProperty(LoadGeneratorConfig.PREFIX + "users", "2");
+            LoadGenerator generator = new LoadGenerator(LoadGeneratorConfig.build(properties));
+            generator.run();
+
+            ByteArrayOutputStream report = new ByteArrayOutputStream();
+            generator.printReport(new PrintStream(report));
+            assertTrue(report.toString(), report.toString().contains("smtp transaction"));
+
+            assertTrue(generator.getMessagesSent() > 0);
+            Map<String, LatencyStats> stats = generator.getStats();
+            for (LatencyStats s : stats.values()) {
+                assertEquals(s.getOperation(), 0L, s.getErrors());
+            }
+            assertTrue(stats.get("smtp transaction").getCount() > 0);
+            assertTrue(stats.get("imap fetch").getCount() > 0);
+            assertTrue(stats.get("pop3 retr").getCount() > 0);
+        } finally {
+            greenMail.stop();
+        }
+    }
+}